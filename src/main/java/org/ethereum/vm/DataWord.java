@@ -18,15 +18,17 @@
 package org.ethereum.vm;
 
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.ethereum.vm.util.HexUtil;
+import org.ethereum.vm.util.UInt256;
 
 /**
  * DataWord is the 32-byte array representation of a 256-bit number.
  *
- * @ImplNote DataWord objects are immutable.
+ * @ImplNote DataWord objects are immutable. The value is kept as four
+ *           {@code long} limbs and all arithmetic is delegated to
+ *           {@link UInt256}, avoiding {@link BigInteger} on the hot path.
  */
 public class DataWord implements Comparable<DataWord> {
 
@@ -38,20 +40,18 @@ public class DataWord implements Comparable<DataWord> {
 
     public static final int SIZE = 32;
 
-    private final byte[] data;
+    private final long[] limbs;
 
     public static DataWord of(byte num) {
-        byte[] bb = new byte[32];
-        bb[31] = num;
-        return new DataWord(bb, false);
+        return new DataWord(0, 0, 0, num & 0xffL);
     }
 
     public static DataWord of(int num) {
-        return new DataWord(ByteBuffer.allocate(Integer.BYTES).putInt(num).array(), false);
+        return new DataWord(0, 0, 0, num & 0xffffffffL);
     }
 
     public static DataWord of(long num) {
-        return new DataWord(ByteBuffer.allocate(Long.BYTES).putLong(num).array(), false);
+        return new DataWord(0, 0, 0, num);
     }
 
     public static DataWord of(BigInteger num) {
@@ -64,10 +64,9 @@ public class DataWord implements Comparable<DataWord> {
         int copyOffset = Math.max(bytes.length - SIZE, 0);
         int copyLength = bytes.length - copyOffset;
 
-        byte[] data = new byte[SIZE];
-        System.arraycopy(bytes, copyOffset, data, SIZE - copyLength, copyLength);
-
-        return new DataWord(data, false);
+        long[] limbs = new long[UInt256.LIMBS];
+        UInt256.load(limbs, 0, bytes, copyOffset, copyLength);
+        return new DataWord(limbs);
     }
 
     public static DataWord of(String hex) {
@@ -84,19 +83,87 @@ public class DataWord implements Comparable<DataWord> {
      * @param data
      *            an byte array
      * @param unsafe
-     *            whether the data is safe to refer
+     *            whether the data is safe to refer; the bytes are always copied
+     *            into limbs, so this is kept for compatibility only
      */
     protected DataWord(byte[] data, boolean unsafe) {
         if (data == null || data.length > SIZE) {
             throw new IllegalArgumentException("Input data can't be NULL or exceed " + SIZE + " bytes");
         }
 
-        if (data.length == SIZE) {
-            this.data = unsafe ? data.clone() : data;
-        } else {
-            this.data = new byte[SIZE];
-            System.arraycopy(data, 0, this.data, SIZE - data.length, data.length);
-        }
+        this.limbs = new long[UInt256.LIMBS];
+        UInt256.load(limbs, 0, data, 0, data.length);
+    }
+
+    private DataWord(long l0, long l1, long l2, long l3) {
+        this.limbs = new long[] { l0, l1, l2, l3 };
+    }
+
+    private DataWord(long[] limbs) {
+        this.limbs = limbs;
+    }
+
+    /**
+     * Creates a DataWord from a 256-bit value stored in the given limb slot.
+     *
+     * @param src
+     *            the limb array
+     * @param offset
+     *            the offset of the slot, see {@link UInt256}
+     * @return a DataWord instance
+     */
+    public static DataWord of(long[] src, int offset) {
+        return new DataWord(src[offset], src[offset + 1], src[offset + 2], src[offset + 3]);
+    }
+
+    /**
+     * Creates a DataWord from 32 bytes of the given array, starting at the offset.
+     *
+     * @param src
+     *            the source array
+     * @param offset
+     *            the offset of the first byte
+     * @return a DataWord instance
+     */
+    public static DataWord of(byte[] src, int offset) {
+        long[] limbs = new long[UInt256.LIMBS];
+        UInt256.load(limbs, 0, src, offset, SIZE);
+        return new DataWord(limbs);
+    }
+
+    /**
+     * Copies the limbs of this DataWord into the given slot.
+     *
+     * @param dst
+     *            the limb array
+     * @param offset
+     *            the offset of the slot, see {@link UInt256}
+     */
+    public void copyTo(long[] dst, int offset) {
+        UInt256.copy(dst, offset, limbs, 0);
+    }
+
+    /**
+     * Returns a 64-bit limb of this DataWord.
+     *
+     * @param index
+     *            the limb index, 0 being the most significant, see {@link UInt256}
+     * @return the limb
+     */
+    public long getLimb(int index) {
+        return limbs[index];
+    }
+
+    /**
+     * Writes the 32-byte representation of this DataWord into the given array.
+     *
+     * @param dst
+     *            the destination array
+     * @param offset
+     *            the offset of the first byte
+     */
+    public void copyTo(byte[] dst, int offset) {
+        UInt256.store(limbs, 0, dst, offset);
     }
 
     /**
@@ -105,7 +172,9 @@ public class DataWord implements Comparable<DataWord> {
      * @return a byte array
      */
     public byte[] getData() {
-        return data.clone();
+        byte[] data = new byte[SIZE];
+        UInt256.store(limbs, 0, data, 0);
+        return data;
     }
 
     /**
@@ -114,7 +183,7 @@ public class DataWord implements Comparable<DataWord> {
      * @return
      */
     public byte[] getLast20Bytes() {
-        return Arrays.copyOfRange(data, SIZE - 20, SIZE);
+        return Arrays.copyOfRange(getData(), SIZE - 20, SIZE);
     }
 
     /**
@@ -124,15 +193,15 @@ public class DataWord implements Comparable<DataWord> {
      * @return
      */
     public byte getByte(int index) {
-        return data[index];
+        return UInt256.getByte(limbs, 0, index);
     }
 
     public BigInteger value() {
-        return new BigInteger(1, data);
+        return new BigInteger(1, getData());
     }
 
     public BigInteger sValue() {
-        return new BigInteger(data);
+        return new BigInteger(getData());
     }
 
     /**
@@ -175,136 +244,130 @@ public class DataWord implements Comparable<DataWord> {
     }
 
     public boolean isZero() {
-        for (byte b : data) {
-            if (b != 0) {
-                return false;
-            }
-        }
-        return true;
+        return UInt256.isZero(limbs, 0);
     }
 
     public boolean isNegative() {
-        return (data[0] & 0x80) != 0;
+        return UInt256.isNegative(limbs, 0);
     }
 
     public DataWord and(DataWord w2) {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 0; i < this.data.length; ++i) {
-            buffer[i] = (byte) (this.data[i] & w2.data[i]);
-        }
-        return new DataWord(buffer, false);
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.and(r, 0, this.limbs, 0, w2.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord or(DataWord w2) {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 0; i < this.data.length; ++i) {
-            buffer[i] = (byte) (this.data[i] | w2.data[i]);
-        }
-        return new DataWord(buffer, false);
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.or(r, 0, this.limbs, 0, w2.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord xor(DataWord w2) {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 0; i < this.data.length; ++i) {
-            buffer[i] = (byte) (this.data[i] ^ w2.data[i]);
-        }
-        return new DataWord(buffer, false);
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.xor(r, 0, this.limbs, 0, w2.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord negate() {
-        return isZero() ? ZERO : bnot().add(DataWord.ONE);
+        if (isZero()) {
+            return ZERO;
+        }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.negate(r, 0, this.limbs, 0);
+        return new DataWord(r);
     }
 
     // bitwise not
     public DataWord bnot() {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 0; i < this.data.length; ++i) {
-            buffer[i] = (byte) (~this.data[i]);
-        }
-        return new DataWord(buffer, false);
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.not(r, 0, this.limbs, 0);
+        return new DataWord(r);
     }
 
-    // Credit -> http://stackoverflow.com/a/24023466/459349
     public DataWord add(DataWord word) {
-        byte[] buffer = new byte[SIZE];
-        for (int i = 31, overflow = 0; i >= 0; i--) {
-            int v = (this.data[i] & 0xff) + (word.data[i] & 0xff) + overflow;
-            buffer[i] = (byte) v;
-            overflow = v >>> 8;
-        }
-        return new DataWord(buffer, false);
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.add(r, 0, this.limbs, 0, word.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord mul(DataWord word) {
-        BigInteger result = value().multiply(word.value());
-
-        return of(result.and(MAX_VALUE));
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.mul(r, 0, this.limbs, 0, word.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord div(DataWord word) {
         if (word.isZero()) {
             return ZERO;
-        } else {
-            BigInteger result = value().divide(word.value());
-            return of(result.and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.div(r, 0, this.limbs, 0, word.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord sDiv(DataWord word) {
         if (word.isZero()) {
             return ZERO;
-        } else {
-            BigInteger result = sValue().divide(word.sValue());
-            return of(result.and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.sdiv(r, 0, this.limbs, 0, word.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord sub(DataWord word) {
-        BigInteger result = value().subtract(word.value());
-        return of(result.and(MAX_VALUE));
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.sub(r, 0, this.limbs, 0, word.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord exp(DataWord word) {
-        BigInteger result = value().modPow(word.value(), TWO_POW_256);
-        return of(result);
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.exp(r, 0, this.limbs, 0, word.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord mod(DataWord word) {
         if (word.isZero()) {
             return ZERO;
-        } else {
-            BigInteger result = value().mod(word.value());
-            return of(result.and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.mod(r, 0, this.limbs, 0, word.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord sMod(DataWord word) {
         if (word.isZero()) {
             return ZERO;
-        } else {
-            BigInteger result = sValue().abs().mod(word.sValue().abs());
-            result = (sValue().signum() == -1) ? result.negate() : result;
-
-            return of(result.and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.smod(r, 0, this.limbs, 0, word.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord addmod(DataWord word1, DataWord word2) {
         if (word2.isZero()) {
             return ZERO;
-        } else {
-            BigInteger result = value().add(word1.value()).mod(word2.value());
-            return of(result.and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.addmod(r, 0, this.limbs, 0, word1.limbs, 0, word2.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord mulmod(DataWord word1, DataWord word2) {
         if (this.isZero() || word1.isZero() || word2.isZero()) {
             return ZERO;
-        } else {
-            BigInteger result = value().multiply(word1.value()).mod(word2.value());
-            return of(result.and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.mulmod(r, 0, this.limbs, 0, word1.limbs, 0, word2.limbs, 0);
+        return new DataWord(r);
     }
 
     public DataWord signExtend(byte k) {
@@ -312,23 +375,13 @@ public class DataWord implements Comparable<DataWord> {
             throw new IndexOutOfBoundsException();
         }
 
-        byte[] buffer = data.clone();
-        byte mask = this.sValue().testBit((k * 8) + 7) ? (byte) 0xff : 0;
-        for (int i = 31; i > k; i--) {
-            buffer[31 - i] = mask;
-        }
-
-        return new DataWord(buffer, false);
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.signExtend(r, 0, this.limbs, 0, k);
+        return new DataWord(r);
     }
 
     public int bytesOccupied() {
-        for (int i = 0; i < SIZE; i++) {
-            if (data[i] != 0) {
-                return SIZE - i;
-            }
-        }
-
-        return 0;
+        return UInt256.bytesOccupied(limbs, 0);
     }
 
     /**
@@ -338,11 +391,13 @@ public class DataWord implements Comparable<DataWord> {
      * @return this << arg
      */
     public DataWord shiftLeft(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(SIZE * 8)) > 0) {
+        if (!UInt256.fitsIn(arg.limbs, 0, 16)) {
             return ZERO;
-        } else {
-            return DataWord.of(value().shiftLeft(arg.intValue()).and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.shiftLeft(r, 0, this.limbs, 0, arg.intValue());
+        return new DataWord(r);
     }
 
     /**
@@ -352,11 +407,13 @@ public class DataWord implements Comparable<DataWord> {
      * @return this >>> arg
      */
     public DataWord shiftRight(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(SIZE * 8)) > 0) {
+        if (!UInt256.fitsIn(arg.limbs, 0, 16)) {
             return ZERO;
-        } else {
-            return DataWord.of(value().shiftRight(arg.intValue()).and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.shiftRight(r, 0, this.limbs, 0, arg.intValue());
+        return new DataWord(r);
     }
 
     /**
@@ -366,15 +423,29 @@ public class DataWord implements Comparable<DataWord> {
      * @return this >> arg
      */
     public DataWord shiftRightSigned(DataWord arg) {
-        if (arg.value().compareTo(BigInteger.valueOf(SIZE * 8)) > 0) {
+        if (!UInt256.fitsIn(arg.limbs, 0, 16)) {
             if (this.isNegative()) {
                 return DataWord.ONE.negate();
             } else {
                 return DataWord.ZERO;
             }
-        } else {
-            return DataWord.of(sValue().shiftRight(arg.intValue()).and(MAX_VALUE));
         }
+
+        long[] r = new long[UInt256.LIMBS];
+        UInt256.shiftRightSigned(r, 0, this.limbs, 0, arg.intValue());
+        return new DataWord(r);
+    }
+
+    /**
+     * Compares this DataWord with the specified one, both treated as two's
+     * complement signed integers.
+     *
+     * @param o
+     * @return a negative integer, zero, or a positive integer as this is less than,
+     *         equal to, or greater than the specified one
+     */
+    public int signedCompareTo(DataWord o) {
+        return UInt256.compareSigned(this.limbs, 0, o.limbs, 0);
     }
 
     @Override
@@ -387,26 +458,26 @@ public class DataWord implements Comparable<DataWord> {
             return false;
         }
 
-        return Arrays.equals(data, ((DataWord) o).data);
+        return UInt256.equals(limbs, 0, ((DataWord) o).limbs, 0);
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(data);
+        return Arrays.hashCode(limbs);
     }
 
     @Override
     public int compareTo(DataWord o) {
-        return org.bouncycastle.util.Arrays.compareUnsigned(this.data, o.data);
+        return UInt256.compare(this.limbs, 0, o.limbs, 0);
     }
 
     @Override
     public String toString() {
-        return HexUtil.toHexString(data);
+        return HexUtil.toHexString(getData());
     }
 
     private int intValue(boolean safe) {
-        if (bytesOccupied() > 4 || (data[SIZE - 4] & 0x80) != 0) {
+        if (!UInt256.fitsIn(limbs, 0, 31)) {
             if (safe) {
                 return Integer.MAX_VALUE;
             } else {
@@ -414,16 +485,11 @@ public class DataWord implements Comparable<DataWord> {
             }
         }
 
-        int value = 0;
-        for (int i = 0; i < 4; i++) {
-            value = (value << 8) + (0xff & data[SIZE - 4 + i]);
-        }
-
-        return value;
+        return (int) limbs[3];
     }
 
     private long longValue(boolean safe) {
-        if (bytesOccupied() > 8 || (data[SIZE - 8] & 0x80) != 0) {
+        if (!UInt256.fitsIn(limbs, 0, 63)) {
             if (safe) {
                 return Long.MAX_VALUE;
             } else {
@@ -431,11 +497,6 @@ public class DataWord implements Comparable<DataWord> {
             }
         }
 
-        long value = 0;
-        for (int i = 0; i < 8; i++) {
-            value = (value << 8) + (0xff & data[SIZE - 8 + i]);
-        }
-
-        return value;
+        return limbs[3];
     }
 }
@@ -0,0 +1,298 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import static org.ethereum.vm.util.ByteArrayUtil.EMPTY_BYTE_ARRAY;
+
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.Stack;
+import org.ethereum.vm.program.exception.ExceptionFactory;
+
+/**
+ * A dispatch table of the 256 opcodes, resolved against a {@link Spec}.
+ *
+ * Each entry carries the static gas cost and the stack bounds of the
+ * instruction, so that the interpreter can validate and charge an instruction
+ * with one lookup. Opcodes that are undefined, or disabled by the spec, resolve
+ * to a handler which throws an invalid opcode exception.
+ *
+ * Instructions whose gas depends on the operands (memory expansion, SSTORE,
+ * calls, etc.) have no handler; they are left to the generic implementation in
+ * {@link VM}.
+ */
+public class InstructionTable {
+
+    /**
+     * The implementation of an instruction.
+     */
+    @FunctionalInterface
+    public interface Handler {
+        void execute(Program program);
+    }
+
+    public static class Instruction {
+        private final OpCode op;
+        private final String name;
+        private final long gas;
+        private final int minStack;
+        private final int maxStack;
+        private final Handler handler;
+
+        private Instruction(OpCode op, String name, long gas, int minStack, int maxStack, Handler handler) {
+            this.op = op;
+            this.name = name;
+            this.gas = gas;
+            this.minStack = minStack;
+            this.maxStack = maxStack;
+            this.handler = handler;
+        }
+
+        /**
+         * Returns the opcode, or null if the instruction is invalid.
+         */
+        public OpCode getOp() {
+            return op;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the static gas cost.
+         */
+        public long getGas() {
+            return gas;
+        }
+
+        /**
+         * Returns the minimum stack size before execution.
+         */
+        public int getMinStack() {
+            return minStack;
+        }
+
+        /**
+         * Returns the maximum stack size before execution.
+         */
+        public int getMaxStack() {
+            return maxStack;
+        }
+
+        /**
+         * Returns the handler, or null if the instruction has dynamic gas cost.
+         */
+        public Handler getHandler() {
+            return handler;
+        }
+    }
+
+    private static final Handler INVALID = program -> {
+        throw ExceptionFactory.invalidOpCode(program.getCurrentOp());
+    };
+
+    private final Instruction[] instructions = new Instruction[256];
+
+    public InstructionTable(Spec spec) {
+        for (int i = 0; i < instructions.length; i++) {
+            instructions[i] = new Instruction(null, "INVALID", 0, 0, Integer.MAX_VALUE, INVALID);
+        }
+
+        FeeSchedule feeSchedule = spec.getFeeSchedule();
+
+        // dynamic gas cost
+        for (OpCode op : OpCode.values()) {
+            register(op, 0, null);
+        }
+        if (!spec.eip145()) {
+            disable(OpCode.SHL, OpCode.SHR, OpCode.SAR);
+        }
+        if (!spec.eip1052()) {
+            disable(OpCode.EXTCODEHASH);
+        }
+        if (!spec.eip1014()) {
+            disable(OpCode.CREATE2);
+        }
+
+        // stop and arithmetic
+        register(OpCode.STOP, feeSchedule.getSTOP(), program -> {
+            program.setHReturn(EMPTY_BYTE_ARRAY);
+            program.stop();
+        });
+        registerStackOperation(OpCode.ADD, Stack::add);
+        registerStackOperation(OpCode.MUL, Stack::mul);
+        registerStackOperation(OpCode.SUB, Stack::sub);
+        registerStackOperation(OpCode.DIV, Stack::div);
+        registerStackOperation(OpCode.SDIV, Stack::sdiv);
+        registerStackOperation(OpCode.MOD, Stack::mod);
+        registerStackOperation(OpCode.SMOD, Stack::smod);
+        registerStackOperation(OpCode.ADDMOD, Stack::addmod);
+        registerStackOperation(OpCode.MULMOD, Stack::mulmod);
+        registerStackOperation(OpCode.SIGNEXTEND, Stack::signExtend);
+
+        // comparison and bitwise logic
+        registerStackOperation(OpCode.LT, Stack::lt);
+        registerStackOperation(OpCode.GT, Stack::gt);
+        registerStackOperation(OpCode.SLT, Stack::slt);
+        registerStackOperation(OpCode.SGT, Stack::sgt);
+        registerStackOperation(OpCode.EQ, Stack::eq);
+        registerStackOperation(OpCode.ISZERO, Stack::isZero);
+        registerStackOperation(OpCode.AND, Stack::and);
+        registerStackOperation(OpCode.OR, Stack::or);
+        registerStackOperation(OpCode.XOR, Stack::xor);
+        registerStackOperation(OpCode.NOT, Stack::not);
+        registerStackOperation(OpCode.BYTE, Stack::byteAt);
+        if (spec.eip145()) {
+            registerStackOperation(OpCode.SHL, Stack::shl);
+            registerStackOperation(OpCode.SHR, Stack::shr);
+            registerStackOperation(OpCode.SAR, Stack::sar);
+        }
+
+        // environmental and block information
+        registerContextValue(OpCode.ADDRESS, Program::getOwnerAddress);
+        register(OpCode.BALANCE, feeSchedule.getBALANCE(), program -> {
+            program.stackPush(program.getBalance(program.stackPop()));
+            program.step();
+        });
+        registerContextValue(OpCode.ORIGIN, Program::getOriginAddress);
+        registerContextValue(OpCode.CALLER, Program::getCallerAddress);
+        registerContextValue(OpCode.CALLVALUE, Program::getCallValue);
+        register(OpCode.CALLDATALOAD, OpCode.CALLDATALOAD.getTier().asInt(), program -> {
+            program.stackPush(program.getDataValue(program.stackPop()));
+            program.step();
+        });
+        registerContextValue(OpCode.CALLDATASIZE, Program::getDataSize);
+        registerContextValue(OpCode.CODESIZE, program -> DataWord.of(program.getCode().length));
+        registerContextValue(OpCode.GASPRICE, Program::getGasPrice);
+        registerContextValue(OpCode.RETURNDATASIZE, Program::getReturnDataBufferSize);
+        register(OpCode.EXTCODESIZE, feeSchedule.getEXT_CODE_SIZE(), program -> {
+            program.stackPush(DataWord.of(program.getCodeSizeAt(program.stackPop())));
+            program.step();
+        });
+        if (spec.eip1052()) {
+            register(OpCode.EXTCODEHASH, feeSchedule.getEXT_CODE_HASH(), program -> {
+                program.stackPush(program.getCodeHashAt(program.stackPop()));
+                program.step();
+            });
+        }
+        register(OpCode.BLOCKHASH, OpCode.BLOCKHASH.getTier().asInt(), program -> {
+            program.stackPush(program.getBlockHash(program.stackPop().intValueSafe()));
+            program.step();
+        });
+        registerContextValue(OpCode.COINBASE, Program::getBlockCoinbase);
+        registerContextValue(OpCode.TIMESTAMP, Program::getBlockTimestamp);
+        registerContextValue(OpCode.NUMBER, Program::getBlockNumber);
+        registerContextValue(OpCode.DIFFICULTY, Program::getBlockDifficulty);
+        registerContextValue(OpCode.GASLIMIT, Program::getBlockGasLimit);
+
+        // stack, storage and flow
+        registerStackOperation(OpCode.POP, Stack::drop);
+        register(OpCode.SLOAD, feeSchedule.getSLOAD(), program -> {
+            DataWord val = program.getCurrentStorageValue(program.stackPop());
+            program.stackPush(val == null ? DataWord.ZERO : val);
+            program.step();
+        });
+        register(OpCode.JUMP, OpCode.JUMP.getTier().asInt(), program -> {
+            program.setPC(program.verifyJumpDest(program.stackPop()));
+        });
+        register(OpCode.JUMPI, OpCode.JUMPI.getTier().asInt(), program -> {
+            DataWord pos = program.stackPop();
+            DataWord cond = program.stackPop();
+            if (!cond.isZero()) {
+                program.setPC(program.verifyJumpDest(pos));
+            } else {
+                program.step();
+            }
+        });
+        registerContextValue(OpCode.PC, program -> DataWord.of(program.getPC()));
+        registerContextValue(OpCode.MSIZE, program -> DataWord.of(program.getMemSize()));
+        registerContextValue(OpCode.GAS, program -> DataWord.of(program.getGasLeft()));
+        register(OpCode.JUMPDEST, OpCode.JUMPDEST.getTier().asInt(), Program::step);
+
+        for (int i = 0; i < 32; i++) {
+            OpCode op = OpCode.code((byte) (OpCode.PUSH1.val() + i));
+            int n = i + 1;
+            register(op, op.getTier().asInt(), program -> {
+                program.step();
+                program.sweepAndPush(n);
+            });
+        }
+        for (int i = 0; i < 16; i++) {
+            OpCode op = OpCode.code((byte) (OpCode.DUP1.val() + i));
+            int n = i + 1;
+            registerStackOperation(op, stack -> stack.dup(n));
+        }
+        for (int i = 0; i < 16; i++) {
+            OpCode op = OpCode.code((byte) (OpCode.SWAP1.val() + i));
+            int n = i + 2;
+            registerStackOperation(op, stack -> stack.swap(stack.size() - 1, stack.size() - n));
+        }
+    }
+
+    /**
+     * Returns the instruction of the given opcode.
+     *
+     * @param code
+     * @return
+     */
+    public Instruction get(byte code) {
+        return instructions[code & 0xff];
+    }
+
+    private void register(OpCode op, long gas, Handler handler) {
+        instructions[op.val() & 0xff] = new Instruction(op, op.name(), gas, op.require(),
+                Stack.MAX_SIZE + op.require() - op.ret(), handler);
+    }
+
+    /**
+     * Registers an instruction which operates on the stack only.
+     */
+    private void registerStackOperation(OpCode op, StackOperation operation) {
+        register(op, op.getTier().asInt(), program -> {
+            operation.apply(program.getStack());
+            program.step();
+        });
+    }
+
+    /**
+     * Registers an instruction which pushes a value of the execution context.
+     */
+    private void registerContextValue(OpCode op, ContextValue value) {
+        register(op, op.getTier().asInt(), program -> {
+            program.stackPush(value.get(program));
+            program.step();
+        });
+    }
+
+    private void disable(OpCode... ops) {
+        for (OpCode op : ops) {
+            instructions[op.val() & 0xff] = new Instruction(null, "INVALID", 0, 0, Integer.MAX_VALUE, INVALID);
+        }
+    }
+
+    @FunctionalInterface
+    private interface StackOperation {
+        void apply(Stack stack);
+    }
+
+    @FunctionalInterface
+    private interface ContextValue {
+        DataWord get(Program program);
+    }
+}
@@ -24,18 +24,27 @@ import static org.ethereum.vm.util.ByteArrayUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.vm.util.VMUtil.getSizeInWords;
 
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 
 import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.client.Block;
+import org.ethereum.vm.client.BlockStore;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.client.Transaction;
+import org.ethereum.vm.client.TransactionExecutor;
+import org.ethereum.vm.client.TransactionReceipt;
+import org.ethereum.vm.program.ExecutionContext;
 import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.ProgramPreprocess;
 import org.ethereum.vm.program.Stack;
 import org.ethereum.vm.program.exception.ExceptionFactory;
 import org.ethereum.vm.program.exception.ReturnDataCopyIllegalBoundsException;
 import org.ethereum.vm.program.exception.StaticCallModificationException;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
 import org.ethereum.vm.util.HashUtil;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * The Ethereum Virtual Machine (EVM) is responsible for initialization and
@@ -73,33 +82,51 @@ import org.slf4j.LoggerFactory;
  */
 public class VM {
 
-    private static final Logger logger = LoggerFactory.getLogger(VM.class);
+    // theoretical limit, which keeps the memory arithmetic within a long
+    private static final long MAX_MEM_SIZE = Integer.MAX_VALUE;
 
-    private static final BigInteger THIRTY_TWO = BigInteger.valueOf(32);
-
-    // theoretical limit, used to reduce expensive BigInt arithmetic
-    private static final BigInteger MAX_MEM_SIZE = BigInteger.valueOf(Integer.MAX_VALUE);
+    /**
+     * The instruction dispatch strategies.
+     */
+    public enum Interpreter {
+        /**
+         * Decodes, validates and executes every instruction through switch statements.
+         */
+        SWITCH,
+
+        /**
+         * Dispatches through the pre-resolved {@link InstructionTable} of the spec.
+         */
+        TABLE
+    }
 
     private final Spec spec;
+    private final Interpreter interpreter;
+    private final InstructionTable instructions;
 
     public VM() {
         this(Spec.DEFAULT);
     }
 
     public VM(Spec spec) {
+        this(spec, Interpreter.SWITCH);
+    }
+
+    public VM(Spec spec, Interpreter interpreter) {
         this.spec = spec;
+        this.interpreter = interpreter;
+        this.instructions = (interpreter == Interpreter.TABLE) ? spec.getInstructionTable() : null;
     }
 
-    private long calcMemGas(FeeSchedule feeSchedule, long oldMemSize, BigInteger newMemSize, long copySize) {
-        long gasCost = 0;
+    public Interpreter getInterpreter() {
+        return interpreter;
+    }
 
-        // avoid overflows
-        if (newMemSize.compareTo(MAX_MEM_SIZE) > 0) {
-            throw ExceptionFactory.gasOverflow(newMemSize, MAX_MEM_SIZE);
-        }
+    private long calcMemGas(FeeSchedule feeSchedule, long oldMemSize, long newMemSize, long copySize) {
+        long gasCost = 0;
 
-        // memory gas calc
-        long memoryUsage = (newMemSize.longValue() + 31) / 32 * 32;
+        // memory gas calc, the new size has been checked against MAX_MEM_SIZE
+        long memoryUsage = (newMemSize + 31) / 32 * 32;
         if (memoryUsage > oldMemSize) {
             long memWords = (memoryUsage / 32);
             long memWordsOld = (oldMemSize / 32);
@@ -122,6 +149,32 @@ public class VM {
 
     public void step(Program program) {
         try {
+            if (instructions != null) {
+                InstructionTable.Instruction instruction = instructions.get(program.getCurrentOp());
+                InstructionTable.Handler handler = instruction.getHandler();
+
+                if (handler != null && enterBlock(program)) {
+                    // charged and validated on the block entry
+                    handler.execute(program);
+                    return;
+                }
+
+                int stackSize = program.getStack().size();
+                if (stackSize < instruction.getMinStack() || stackSize > instruction.getMaxStack()) {
+                    OpCode op = instruction.getOp();
+                    program.verifyStackUnderflow(op.require());
+                    program.verifyStackOverflow(op.require(), op.ret());
+                }
+
+                if (handler == null) {
+                    execute(program, instruction.getOp());
+                } else {
+                    program.spendGas(instruction.getGas(), instruction.getName());
+                    handler.execute(program);
+                }
+                return;
+            }
+
             OpCode op = OpCode.code(program.getCurrentOp());
             if (op == null) {
                 throw ExceptionFactory.invalidOpCode(program.getCurrentOp());
@@ -152,972 +205,971 @@ public class VM {
             program.verifyStackUnderflow(op.require());
             program.verifyStackOverflow(op.require(), op.ret()); // Check not exceeding stack limits
 
-            long oldMemSize = program.getMemSize();
-            Stack stack = program.getStack();
+            execute(program, op);
+        } catch (RuntimeException e) {
+            program.spendAllGas();
+            program.resetFutureRefund();
+            program.stop();
+            throw e;
+        }
+    }
 
-            long gasCost = op.getTier().asInt();
-            FeeSchedule feeSchedule = spec.getFeeSchedule();
-            long adjustedCallGas = 0;
+    /**
+     * Checks whether the current instruction belongs to a basic block which has
+     * been charged and validated in advance, entering the block if the current
+     * instruction starts one.
+     *
+     * A block is entered only if its whole gas cost can be paid and its stack range
+     * is satisfied; otherwise its instructions are charged one by one, so that an
+     * exception is raised by the same instruction as without blocks.
+     */
+    private boolean enterBlock(Program program) {
+        int pc = program.getPC();
 
-            // Calculate fees and spend gas
-            switch (op) {
-            case STOP:
-                gasCost = feeSchedule.getSTOP();
-                break;
-            case SUICIDE:
-                gasCost = feeSchedule.getSUICIDE();
-                DataWord suicideAddressWord = stack.get(stack.size() - 1);
-                if (isDeadAccount(program, suicideAddressWord.getLast20Bytes()) &&
-                        !program.getBalance(program.getOwnerAddress()).isZero()) {
-                    gasCost += feeSchedule.getNEW_ACCT_SUICIDE();
-                }
-                break;
-            case SSTORE:
-                DataWord currentValue = program.getCurrentStorageValue(stack.peek());
-                if (currentValue == null)
-                    currentValue = DataWord.ZERO;
-                DataWord newValue = stack.get(stack.size() - 2);
-
-                if (spec.eip1283()) { // Net gas metering for SSTORE
-                    if (newValue.equals(currentValue)) {
-                        gasCost = feeSchedule.getREUSE_SSTORE();
+        int last = program.getBlockLast();
+        if (last < 0) {
+            ProgramPreprocess preprocess = program.getProgramPreprocess();
+            int block = preprocess.getBlock(pc);
+            if (block < 0) {
+                return false;
+            }
+
+            int stackSize = program.getStack().size();
+            long gas = preprocess.getBlockGas(block);
+            if (gas > program.getGasLeft()
+                    || stackSize < preprocess.getBlockMinStack(block)
+                    || stackSize > preprocess.getBlockMaxStack(block)) {
+                return false;
+            }
+
+            program.spendGas(gas, "basic block");
+            last = preprocess.getBlockLast(block);
+        }
+
+        // control only leaves a block after its last instruction
+        program.setBlockLast(pc < last ? last : -1);
+        return true;
+    }
+
+    /**
+     * Charges and executes a validated instruction.
+     */
+    private void execute(Program program, OpCode op) {
+        long oldMemSize = program.getMemSize();
+        Stack stack = program.getStack();
+
+        long gasCost = op.getTier().asInt();
+        FeeSchedule feeSchedule = spec.getFeeSchedule();
+        long adjustedCallGas = 0;
+
+        // Calculate fees and spend gas
+        switch (op) {
+        case STOP:
+            gasCost = feeSchedule.getSTOP();
+            break;
+        case SUICIDE:
+            gasCost = feeSchedule.getSUICIDE();
+            DataWord suicideAddressWord = stack.get(stack.size() - 1);
+            if (isDeadAccount(program, suicideAddressWord.getLast20Bytes()) &&
+                    !program.getBalance(program.getOwnerAddress()).isZero()) {
+                gasCost += feeSchedule.getNEW_ACCT_SUICIDE();
+            }
+            break;
+        case SSTORE:
+            DataWord currentValue = program.getCurrentStorageValue(stack.peek());
+            if (currentValue == null)
+                currentValue = DataWord.ZERO;
+            DataWord newValue = stack.get(stack.size() - 2);
+
+            if (spec.eip1283()) { // Net gas metering for SSTORE
+                if (newValue.equals(currentValue)) {
+                    gasCost = feeSchedule.getREUSE_SSTORE();
+                } else {
+                    DataWord origValue = program.getOriginalStorageValue(stack.peek());
+                    if (origValue == null)
+                        origValue = DataWord.ZERO;
+                    if (currentValue.equals(origValue)) {
+                        if (origValue.isZero()) {
+                            gasCost = feeSchedule.getSET_SSTORE();
+                        } else {
+                            gasCost = feeSchedule.getCLEAR_SSTORE();
+                            if (newValue.isZero()) {
+                                program.futureRefundGas(feeSchedule.getREFUND_SSTORE());
+                            }
+                        }
                     } else {
-                        DataWord origValue = program.getOriginalStorageValue(stack.peek());
-                        if (origValue == null)
-                            origValue = DataWord.ZERO;
-                        if (currentValue.equals(origValue)) {
+                        gasCost = feeSchedule.getREUSE_SSTORE();
+                        if (!origValue.isZero()) {
+                            if (currentValue.isZero()) {
+                                program.futureRefundGas(-feeSchedule.getREFUND_SSTORE());
+                            } else if (newValue.isZero()) {
+                                program.futureRefundGas(feeSchedule.getREFUND_SSTORE());
+                            }
+                        }
+                        if (origValue.equals(newValue)) {
                             if (origValue.isZero()) {
-                                gasCost = feeSchedule.getSET_SSTORE();
+                                program.futureRefundGas(
+                                        feeSchedule.getSET_SSTORE() - feeSchedule.getREUSE_SSTORE());
                             } else {
-                                gasCost = feeSchedule.getCLEAR_SSTORE();
-                                if (newValue.isZero()) {
-                                    program.futureRefundGas(feeSchedule.getREFUND_SSTORE());
-                                }
-                            }
-                        } else {
-                            gasCost = feeSchedule.getREUSE_SSTORE();
-                            if (!origValue.isZero()) {
-                                if (currentValue.isZero()) {
-                                    program.futureRefundGas(-feeSchedule.getREFUND_SSTORE());
-                                } else if (newValue.isZero()) {
-                                    program.futureRefundGas(feeSchedule.getREFUND_SSTORE());
-                                }
-                            }
-                            if (origValue.equals(newValue)) {
-                                if (origValue.isZero()) {
-                                    program.futureRefundGas(
-                                            feeSchedule.getSET_SSTORE() - feeSchedule.getREUSE_SSTORE());
-                                } else {
-                                    program.futureRefundGas(
-                                            feeSchedule.getCLEAR_SSTORE() - feeSchedule.getREUSE_SSTORE());
-                                }
+                                program.futureRefundGas(
+                                        feeSchedule.getCLEAR_SSTORE() - feeSchedule.getREUSE_SSTORE());
                             }
                         }
                     }
-                } else { // Before EIP-1283 cost calculation
-                    if (currentValue.isZero() && !newValue.isZero())
-                        gasCost = feeSchedule.getSET_SSTORE();
-                    else if (!currentValue.isZero() && newValue.isZero()) {
-                        // refund step cost policy.
-                        program.futureRefundGas(feeSchedule.getREFUND_SSTORE());
-                        gasCost = feeSchedule.getCLEAR_SSTORE();
-                    } else {
-                        gasCost = feeSchedule.getRESET_SSTORE();
-                    }
                 }
-
-                break;
-            case SLOAD:
-                gasCost = feeSchedule.getSLOAD();
-                break;
-            case BALANCE:
-                gasCost = feeSchedule.getBALANCE();
-                break;
-
-            // These all operate on memory and therefore potentially expand it:
-            case MSTORE:
-            case MLOAD:
-                gasCost += calcMemGas(feeSchedule, oldMemSize, memNeeded(stack.peek(), DataWord.of(32)), 0);
-                break;
-            case MSTORE8:
-                gasCost += calcMemGas(feeSchedule, oldMemSize, memNeeded(stack.peek(), DataWord.of(1)), 0);
-                break;
-            case RETURN:
-            case REVERT:
-                gasCost = feeSchedule.getSTOP() + calcMemGas(feeSchedule, oldMemSize,
-                        memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
-                break;
-            case SHA3:
-                gasCost = feeSchedule.getSHA3() + calcMemGas(feeSchedule, oldMemSize,
-                        memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
-                DataWord size = stack.get(stack.size() - 2);
-                long chunkUsed = getSizeInWords(size.longValueSafe());
-                gasCost += chunkUsed * feeSchedule.getSHA3_WORD();
-                break;
-            case CALLDATACOPY:
-            case RETURNDATACOPY:
-            case CODECOPY:
-                gasCost += calcMemGas(feeSchedule, oldMemSize,
-                        memNeeded(stack.peek(), stack.get(stack.size() - 3)),
-                        stack.get(stack.size() - 3).longValueSafe());
-                break;
-            case EXTCODESIZE:
-                gasCost = feeSchedule.getEXT_CODE_SIZE();
-                break;
-            case EXTCODECOPY:
-                gasCost = feeSchedule.getEXT_CODE_COPY() + calcMemGas(feeSchedule, oldMemSize,
-                        memNeeded(stack.get(stack.size() - 2), stack.get(stack.size() - 4)),
-                        stack.get(stack.size() - 4).longValueSafe());
-                break;
-            case EXTCODEHASH:
-                gasCost = feeSchedule.getEXT_CODE_HASH();
-                break;
-            case CALL:
-            case CALLCODE:
-            case DELEGATECALL:
-            case STATICCALL:
-
-                gasCost = feeSchedule.getCALL();
-                DataWord callGasWord = stack.get(stack.size() - 1);
-
-                DataWord callAddressWord = stack.get(stack.size() - 2);
-
-                DataWord value = op.callHasValue() ? stack.get(stack.size() - 3) : DataWord.ZERO;
-
-                // check to see if account does not exist and is not a precompiled contract
-                if (op == CALL) {
-                    if (isDeadAccount(program, callAddressWord.getLast20Bytes()) && !value.isZero()) {
-                        gasCost += feeSchedule.getNEW_ACCT_CALL();
-                    }
-                }
-
-                // TODO: Make sure this is converted to BigInteger (256num support)
-                if (!value.isZero())
-                    gasCost += feeSchedule.getVT_CALL();
-
-                int opOff = op.callHasValue() ? 4 : 3;
-                BigInteger in = memNeeded(stack.get(stack.size() - opOff),
-                        stack.get(stack.size() - opOff - 1)); // in offset+size
-                BigInteger out = memNeeded(stack.get(stack.size() - opOff - 2),
-                        stack.get(stack.size() - opOff - 3)); // out offset+size
-                gasCost += calcMemGas(feeSchedule, oldMemSize, in.max(out), 0);
-
-                if (gasCost > program.getGasLeft()) {
-                    throw ExceptionFactory.notEnoughOpGas(op, gasCost, program.getGasLeft());
+            } else { // Before EIP-1283 cost calculation
+                if (currentValue.isZero() && !newValue.isZero())
+                    gasCost = feeSchedule.getSET_SSTORE();
+                else if (!currentValue.isZero() && newValue.isZero()) {
+                    // refund step cost policy.
+                    program.futureRefundGas(feeSchedule.getREFUND_SSTORE());
+                    gasCost = feeSchedule.getCLEAR_SSTORE();
+                } else {
+                    gasCost = feeSchedule.getRESET_SSTORE();
                 }
+            }
 
-                long available = program.getGasLeft();
-                adjustedCallGas = spec.getCallGas(op, callGasWord.longValueSafe(), available - gasCost);
-                gasCost += adjustedCallGas;
-                break;
-            case CREATE:
-                gasCost = feeSchedule.getCREATE() + calcMemGas(feeSchedule, oldMemSize,
-                        memNeeded(stack.get(stack.size() - 2), stack.get(stack.size() - 3)), 0);
-                break;
-            case CREATE2:
-                DataWord codeSize = stack.get(stack.size() - 3);
-                gasCost = feeSchedule.getCREATE() +
-                        calcMemGas(feeSchedule, oldMemSize, memNeeded(stack.get(stack.size() - 2), codeSize), 0) +
-                        getSizeInWords(codeSize.longValueSafe()) * feeSchedule.getSHA3_WORD();
-                break;
-            case LOG0:
-            case LOG1:
-            case LOG2:
-            case LOG3:
-            case LOG4:
-                int nTopics = op.val() - OpCode.LOG0.val();
-
-                BigInteger dataSize = stack.get(stack.size() - 2).value();
-                BigInteger dataCost = dataSize.multiply(BigInteger.valueOf(feeSchedule.getLOG_DATA_GAS()));
-                if (BigInteger.valueOf(program.getGasLeft()).compareTo(dataCost) < 0) {
-                    throw ExceptionFactory.notEnoughOpGas(op, dataCost.longValue(), program.getGasLeft());
+            break;
+        case SLOAD:
+            gasCost = feeSchedule.getSLOAD();
+            break;
+        case BALANCE:
+            gasCost = feeSchedule.getBALANCE();
+            break;
+
+        // These all operate on memory and therefore potentially expand it:
+        case MSTORE:
+        case MLOAD:
+            gasCost += calcMemGas(feeSchedule, oldMemSize, memNeeded(stack.peek(), 32), 0);
+            break;
+        case MSTORE8:
+            gasCost += calcMemGas(feeSchedule, oldMemSize, memNeeded(stack.peek(), 1), 0);
+            break;
+        case RETURN:
+        case REVERT:
+            gasCost = feeSchedule.getSTOP() + calcMemGas(feeSchedule, oldMemSize,
+                    memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
+            break;
+        case SHA3:
+            gasCost = feeSchedule.getSHA3() + calcMemGas(feeSchedule, oldMemSize,
+                    memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
+            DataWord size = stack.get(stack.size() - 2);
+            long chunkUsed = getSizeInWords(size.longValueSafe());
+            gasCost += chunkUsed * feeSchedule.getSHA3_WORD();
+            break;
+        case CALLDATACOPY:
+        case RETURNDATACOPY:
+        case CODECOPY:
+            gasCost += calcMemGas(feeSchedule, oldMemSize,
+                    memNeeded(stack.peek(), stack.get(stack.size() - 3)),
+                    stack.get(stack.size() - 3).longValueSafe());
+            break;
+        case EXTCODESIZE:
+            gasCost = feeSchedule.getEXT_CODE_SIZE();
+            break;
+        case EXTCODECOPY:
+            gasCost = feeSchedule.getEXT_CODE_COPY() + calcMemGas(feeSchedule, oldMemSize,
+                    memNeeded(stack.get(stack.size() - 2), stack.get(stack.size() - 4)),
+                    stack.get(stack.size() - 4).longValueSafe());
+            break;
+        case EXTCODEHASH:
+            gasCost = feeSchedule.getEXT_CODE_HASH();
+            break;
+        case CALL:
+        case CALLCODE:
+        case DELEGATECALL:
+        case STATICCALL:
+
+            gasCost = feeSchedule.getCALL();
+            DataWord callGasWord = stack.get(stack.size() - 1);
+
+            DataWord callAddressWord = stack.get(stack.size() - 2);
+
+            DataWord value = op.callHasValue() ? stack.get(stack.size() - 3) : DataWord.ZERO;
+
+            // check to see if account does not exist and is not a precompiled contract
+            if (op == CALL) {
+                if (isDeadAccount(program, callAddressWord.getLast20Bytes()) && !value.isZero()) {
+                    gasCost += feeSchedule.getNEW_ACCT_CALL();
                 }
-
-                gasCost = feeSchedule.getLOG_GAS() +
-                        feeSchedule.getLOG_TOPIC_GAS() * nTopics +
-                        feeSchedule.getLOG_DATA_GAS() * stack.get(stack.size() - 2).longValue() +
-                        calcMemGas(feeSchedule, oldMemSize, memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
-                break;
-            case EXP:
-
-                DataWord exp = stack.get(stack.size() - 2);
-                int bytesOccupied = exp.bytesOccupied();
-                gasCost = feeSchedule.getEXP_GAS() + feeSchedule.getEXP_BYTE_GAS() * bytesOccupied;
-                break;
-            default:
-                break;
             }
 
-            program.spendGas(gasCost, op.name());
+            // TODO: Make sure this is converted to BigInteger (256num support)
+            if (!value.isZero())
+                gasCost += feeSchedule.getVT_CALL();
+
+            int opOff = op.callHasValue() ? 4 : 3;
+            long memNeeded = memNeeded(stack.get(stack.size() - opOff),
+                    stack.get(stack.size() - opOff - 1), // in offset+size
+                    stack.get(stack.size() - opOff - 2),
+                    stack.get(stack.size() - opOff - 3)); // out offset+size
+            gasCost += calcMemGas(feeSchedule, oldMemSize, memNeeded, 0);
+
+            if (gasCost > program.getGasLeft()) {
+                throw ExceptionFactory.notEnoughOpGas(op, gasCost, program.getGasLeft());
+            }
+
+            long available = program.getGasLeft();
+            adjustedCallGas = spec.getCallGas(op, callGasWord.longValueSafe(), available - gasCost);
+            gasCost += adjustedCallGas;
+            break;
+        case CREATE:
+            gasCost = feeSchedule.getCREATE() + calcMemGas(feeSchedule, oldMemSize,
+                    memNeeded(stack.get(stack.size() - 2), stack.get(stack.size() - 3)), 0);
+            break;
+        case CREATE2:
+            DataWord codeSize = stack.get(stack.size() - 3);
+            gasCost = feeSchedule.getCREATE() +
+                    calcMemGas(feeSchedule, oldMemSize, memNeeded(stack.get(stack.size() - 2), codeSize), 0) +
+                    getSizeInWords(codeSize.longValueSafe()) * feeSchedule.getSHA3_WORD();
+            break;
+        case LOG0:
+        case LOG1:
+        case LOG2:
+        case LOG3:
+        case LOG4:
+            int nTopics = op.val() - OpCode.LOG0.val();
+
+            DataWord dataSize = stack.get(stack.size() - 2);
+            long dataGas = feeSchedule.getLOG_DATA_GAS();
+            // dataSize * dataGas > gasLeft, without overflowing
+            if (dataGas > 0 && dataSize.longValueSafe() > program.getGasLeft() / dataGas) {
+                long dataCost = dataSize.value().multiply(BigInteger.valueOf(dataGas)).longValue();
+                throw ExceptionFactory.notEnoughOpGas(op, dataCost, program.getGasLeft());
+            }
+
+            gasCost = feeSchedule.getLOG_GAS() +
+                    feeSchedule.getLOG_TOPIC_GAS() * nTopics +
+                    feeSchedule.getLOG_DATA_GAS() * stack.get(stack.size() - 2).longValue() +
+                    calcMemGas(feeSchedule, oldMemSize, memNeeded(stack.peek(), stack.get(stack.size() - 2)), 0);
+            break;
+        case EXP:
+
+            DataWord exp = stack.get(stack.size() - 2);
+            int bytesOccupied = exp.bytesOccupied();
+            gasCost = feeSchedule.getEXP_GAS() + feeSchedule.getEXP_BYTE_GAS() * bytesOccupied;
+            break;
+        default:
+            break;
+        }
 
-            // Execute operation
-            switch (op) {
+        program.spendGas(gasCost, op.name());
 
-            case STOP: {
-                program.setHReturn(EMPTY_BYTE_ARRAY);
-                program.stop();
-            }
-                break;
-            case ADD: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
-
-                DataWord result = word1.add(word2);
-                program.stackPush(result);
-                program.step();
+        // Execute operation
+        switch (op) {
 
-            }
-                break;
-            case MUL: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+        case STOP: {
+            program.setHReturn(EMPTY_BYTE_ARRAY);
+            program.stop();
+        }
+            break;
+        case ADD: {
+            stack.add();
+            program.step();
+        }
+            break;
+        case MUL: {
+            stack.mul();
+            program.step();
+        }
+            break;
+        case SUB: {
+            stack.sub();
+            program.step();
+        }
+            break;
+        case DIV: {
+            stack.div();
+            program.step();
+        }
+            break;
+        case SDIV: {
+            stack.sdiv();
+            program.step();
+        }
+            break;
+        case MOD: {
+            stack.mod();
+            program.step();
+        }
+            break;
+        case SMOD: {
+            stack.smod();
+            program.step();
+        }
+            break;
+        case EXP: {
+            stack.exp();
+            program.step();
+        }
+            break;
+        case SIGNEXTEND: {
+            stack.signExtend();
+            program.step();
+        }
+            break;
+        case NOT: {
+            stack.not();
+            program.step();
+        }
+            break;
+        case LT: {
+            stack.lt();
+            program.step();
+        }
+            break;
+        case SLT: {
+            stack.slt();
+            program.step();
+        }
+            break;
+        case SGT: {
+            stack.sgt();
+            program.step();
+        }
+            break;
+        case GT: {
+            stack.gt();
+            program.step();
+        }
+            break;
+        case EQ: {
+            stack.eq();
+            program.step();
+        }
+            break;
+        case ISZERO: {
+            stack.isZero();
+            program.step();
+        }
+            break;
 
-                DataWord result = word1.mul(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SUB: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+        case AND: {
+            stack.and();
+            program.step();
+        }
+            break;
+        case OR: {
+            stack.or();
+            program.step();
+        }
+            break;
+        case XOR: {
+            stack.xor();
+            program.step();
+        }
+            break;
+        case BYTE: {
+            stack.byteAt();
+            program.step();
+        }
+            break;
+        case SHL: {
+            stack.shl();
+            program.step();
+        }
+            break;
+        case SHR: {
+            stack.shr();
+            program.step();
+        }
+            break;
+        case SAR: {
+            stack.sar();
+            program.step();
+        }
+            break;
+        case ADDMOD: {
+            stack.addmod();
+            program.step();
+        }
+            break;
+        case MULMOD: {
+            stack.mulmod();
+            program.step();
+        }
+            break;
 
-                DataWord result = word1.sub(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case DIV: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+        case SHA3: {
+            DataWord memOffsetData = program.stackPop();
+            DataWord lengthData = program.stackPop();
+            byte[] buffer = program.memoryChunk(memOffsetData.intValueSafe(), lengthData.intValueSafe());
 
-                DataWord result = word1.div(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SDIV: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            byte[] encoded = HashUtil.keccak256(buffer);
+            DataWord word = DataWord.of(encoded);
 
-                DataWord result = word1.sDiv(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case MOD: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.stackPush(word);
+            program.step();
+        }
+            break;
 
-                DataWord result = word1.mod(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SMOD: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+        case ADDRESS: {
+            DataWord address = program.getOwnerAddress();
 
-                DataWord result = word1.sMod(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case EXP: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.stackPush(address);
+            program.step();
+        }
+            break;
+        case BALANCE: {
+            DataWord address = program.stackPop();
+            DataWord balance = program.getBalance(address);
 
-                DataWord result = word1.exp(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SIGNEXTEND: {
-                DataWord word1 = program.stackPop();
-                BigInteger k = word1.value();
-
-                if (k.compareTo(THIRTY_TWO) < 0) {
-                    DataWord word2 = program.stackPop();
-                    DataWord result = word2.signExtend(k.byteValue());
-                    program.stackPush(result);
-                }
-                program.step();
-            }
-                break;
-            case NOT: {
-                DataWord word1 = program.stackPop();
-                DataWord result = word1.bnot();
+            program.stackPush(balance);
+            program.step();
+        }
+            break;
+        case ORIGIN: {
+            DataWord originAddress = program.getOriginAddress();
 
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case LT: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.stackPush(originAddress);
+            program.step();
+        }
+            break;
+        case CALLER: {
+            DataWord callerAddress = program.getCallerAddress();
 
-                DataWord result = (word1.value().compareTo(word2.value()) < 0) ? DataWord.ONE : DataWord.ZERO;
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SLT: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.stackPush(callerAddress);
+            program.step();
+        }
+            break;
+        case CALLVALUE: {
+            DataWord callValue = program.getCallValue();
 
-                DataWord result = (word1.sValue().compareTo(word2.sValue()) < 0) ? DataWord.ONE : DataWord.ZERO;
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SGT: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.stackPush(callValue);
+            program.step();
+        }
+            break;
+        case CALLDATALOAD: {
+            DataWord dataOffs = program.stackPop();
+            DataWord value = program.getDataValue(dataOffs);
 
-                DataWord result = (word1.sValue().compareTo(word2.sValue()) > 0) ? DataWord.ONE : DataWord.ZERO;
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case GT: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.stackPush(value);
+            program.step();
+        }
+            break;
+        case CALLDATASIZE: {
+            DataWord dataSize = program.getDataSize();
 
-                DataWord result = (word1.value().compareTo(word2.value()) > 0) ? DataWord.ONE : DataWord.ZERO;
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case EQ: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.stackPush(dataSize);
+            program.step();
+        }
+            break;
+        case CALLDATACOPY: {
+            DataWord memOffsetData = program.stackPop();
+            DataWord dataOffsetData = program.stackPop();
+            DataWord lengthData = program.stackPop();
 
-                DataWord result = word1.equals(word2) ? DataWord.ONE : DataWord.ZERO;
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case ISZERO: {
-                DataWord word1 = program.stackPop();
-                DataWord result = word1.isZero() ? DataWord.ONE : DataWord.ZERO;
-                program.stackPush(result);
-                program.step();
-            }
-                break;
+            byte[] msgData = program.getDataCopy(dataOffsetData, lengthData);
 
-            case AND: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.memorySave(memOffsetData.intValueSafe(), lengthData.intValueSafe(), msgData);
+            program.step();
+        }
+            break;
+        case RETURNDATASIZE: {
+            DataWord dataSize = program.getReturnDataBufferSize();
 
-                DataWord result = word1.and(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case OR: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            program.stackPush(dataSize);
+            program.step();
+        }
+            break;
+        case RETURNDATACOPY: {
+            DataWord memOffsetData = program.stackPop();
+            DataWord dataOffsetData = program.stackPop();
+            DataWord lengthData = program.stackPop();
 
-                DataWord result = word1.or(word2);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case XOR: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
+            byte[] msgData = program.getReturnDataBufferData(dataOffsetData, lengthData);
 
-                DataWord result = word1.xor(word2);
-                program.stackPush(result);
-                program.step();
+            if (msgData == null) {
+                throw new ReturnDataCopyIllegalBoundsException(dataOffsetData, lengthData,
+                        program.getReturnDataBufferSize().longValueSafe());
             }
-                break;
-            case BYTE: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
-                final DataWord result;
-                if (word1.value().compareTo(THIRTY_TWO) < 0) {
-                    byte tmp = word2.getByte(word1.intValue());
-                    result = DataWord.of(tmp);
-                } else {
-                    result = DataWord.ZERO;
-                }
 
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SHL: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
-                DataWord result = word2.shiftLeft(word1);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SHR: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
-                DataWord result = word2.shiftRight(word1);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case SAR: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
-                DataWord result = word2.shiftRightSigned(word1);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case ADDMOD: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
-                DataWord word3 = program.stackPop();
-                DataWord result = word1.addmod(word2, word3);
-                program.stackPush(result);
-                program.step();
-            }
-                break;
-            case MULMOD: {
-                DataWord word1 = program.stackPop();
-                DataWord word2 = program.stackPop();
-                DataWord word3 = program.stackPop();
-                DataWord result = word1.mulmod(word2, word3);
-                program.stackPush(result);
-                program.step();
+            program.memorySave(memOffsetData.intValueSafe(), lengthData.intValueSafe(), msgData);
+            program.step();
+        }
+            break;
+        case CODESIZE:
+        case EXTCODESIZE: {
+
+            int length;
+            if (op == OpCode.CODESIZE)
+                length = program.getCode().length;
+            else {
+                DataWord address = program.stackPop();
+                length = program.getCodeSizeAt(address);
             }
-                break;
-
-            case SHA3: {
-                DataWord memOffsetData = program.stackPop();
-                DataWord lengthData = program.stackPop();
-                byte[] buffer = program.memoryChunk(memOffsetData.intValueSafe(), lengthData.intValueSafe());
-
-                byte[] encoded = HashUtil.keccak256(buffer);
-                DataWord word = DataWord.of(encoded);
+            DataWord codeLength = DataWord.of(length);
 
-                program.stackPush(word);
-                program.step();
-            }
-                break;
+            program.stackPush(codeLength);
+            program.step();
+        }
+            break;
+        case CODECOPY:
+        case EXTCODECOPY: {
 
-            case ADDRESS: {
-                DataWord address = program.getOwnerAddress();
+            byte[] fullCode = EMPTY_BYTE_ARRAY;
+            if (op == OpCode.CODECOPY)
+                fullCode = program.getCode();
 
-                program.stackPush(address);
-                program.step();
-            }
-                break;
-            case BALANCE: {
+            if (op == OpCode.EXTCODECOPY) {
                 DataWord address = program.stackPop();
-                DataWord balance = program.getBalance(address);
-
-                program.stackPush(balance);
-                program.step();
+                fullCode = program.getCodeAt(address);
             }
-                break;
-            case ORIGIN: {
-                DataWord originAddress = program.getOriginAddress();
 
-                program.stackPush(originAddress);
-                program.step();
-            }
-                break;
-            case CALLER: {
-                DataWord callerAddress = program.getCallerAddress();
+            int memOffset = program.stackPop().intValueSafe();
+            int codeOffset = program.stackPop().intValueSafe();
+            int lengthData = program.stackPop().intValueSafe();
 
-                program.stackPush(callerAddress);
-                program.step();
-            }
-                break;
-            case CALLVALUE: {
-                DataWord callValue = program.getCallValue();
+            int sizeToBeCopied = (long) codeOffset + lengthData > fullCode.length
+                    ? (fullCode.length < codeOffset ? 0 : fullCode.length - codeOffset)
+                    : lengthData;
 
-                program.stackPush(callValue);
-                program.step();
-            }
-                break;
-            case CALLDATALOAD: {
-                DataWord dataOffs = program.stackPop();
-                DataWord value = program.getDataValue(dataOffs);
+            byte[] codeCopy = new byte[lengthData];
 
-                program.stackPush(value);
-                program.step();
-            }
-                break;
-            case CALLDATASIZE: {
-                DataWord dataSize = program.getDataSize();
+            if (codeOffset < fullCode.length)
+                System.arraycopy(fullCode, codeOffset, codeCopy, 0, sizeToBeCopied);
 
-                program.stackPush(dataSize);
-                program.step();
-            }
-                break;
-            case CALLDATACOPY: {
-                DataWord memOffsetData = program.stackPop();
-                DataWord dataOffsetData = program.stackPop();
-                DataWord lengthData = program.stackPop();
+            program.memorySave(memOffset, lengthData, codeCopy);
+            program.step();
+        }
+            break;
+        case EXTCODEHASH: {
+            DataWord address = program.stackPop();
+
+            // NOTE: The EXTCODEHASH of an precompiled contract is either c5d246... or 0
+            byte[] codeHash = program.getCodeHashAt(address);
+            program.stackPush(codeHash);
+            program.step();
+        }
+            break;
+        case GASPRICE: {
+            DataWord gasPrice = program.getGasPrice();
 
-                byte[] msgData = program.getDataCopy(dataOffsetData, lengthData);
+            program.stackPush(gasPrice);
+            program.step();
+        }
+            break;
 
-                program.memorySave(memOffsetData.intValueSafe(), lengthData.intValueSafe(), msgData);
-                program.step();
-            }
-                break;
-            case RETURNDATASIZE: {
-                DataWord dataSize = program.getReturnDataBufferSize();
+        case BLOCKHASH: {
 
-                program.stackPush(dataSize);
-                program.step();
-            }
-                break;
-            case RETURNDATACOPY: {
-                DataWord memOffsetData = program.stackPop();
-                DataWord dataOffsetData = program.stackPop();
-                DataWord lengthData = program.stackPop();
+            int blockIndex = program.stackPop().intValueSafe();
 
-                byte[] msgData = program.getReturnDataBufferData(dataOffsetData, lengthData);
+            DataWord blockHash = program.getBlockHash(blockIndex);
 
-                if (msgData == null) {
-                    throw new ReturnDataCopyIllegalBoundsException(dataOffsetData, lengthData,
-                            program.getReturnDataBufferSize().longValueSafe());
-                }
+            program.stackPush(blockHash);
+            program.step();
+        }
+            break;
+        case COINBASE: {
+            DataWord coinbase = program.getBlockCoinbase();
 
-                program.memorySave(memOffsetData.intValueSafe(), lengthData.intValueSafe(), msgData);
-                program.step();
-            }
-                break;
-            case CODESIZE:
-            case EXTCODESIZE: {
-
-                int length;
-                if (op == OpCode.CODESIZE)
-                    length = program.getCode().length;
-                else {
-                    DataWord address = program.stackPop();
-                    length = program.getCodeAt(address).length;
-                }
-                DataWord codeLength = DataWord.of(length);
+            program.stackPush(coinbase);
+            program.step();
+        }
+            break;
+        case TIMESTAMP: {
+            DataWord timestamp = program.getBlockTimestamp();
 
-                program.stackPush(codeLength);
-                program.step();
-            }
-                break;
-            case CODECOPY:
-            case EXTCODECOPY: {
+            program.stackPush(timestamp);
+            program.step();
+        }
+            break;
+        case NUMBER: {
+            DataWord number = program.getBlockNumber();
 
-                byte[] fullCode = EMPTY_BYTE_ARRAY;
-                if (op == OpCode.CODECOPY)
-                    fullCode = program.getCode();
+            program.stackPush(number);
+            program.step();
+        }
+            break;
+        case DIFFICULTY: {
+            DataWord difficulty = program.getBlockDifficulty();
 
-                if (op == OpCode.EXTCODECOPY) {
-                    DataWord address = program.stackPop();
-                    fullCode = program.getCodeAt(address);
-                }
+            program.stackPush(difficulty);
+            program.step();
+        }
+            break;
+        case GASLIMIT: {
+            DataWord gaslimit = program.getBlockGasLimit();
 
-                int memOffset = program.stackPop().intValueSafe();
-                int codeOffset = program.stackPop().intValueSafe();
-                int lengthData = program.stackPop().intValueSafe();
+            program.stackPush(gaslimit);
+            program.step();
+        }
+            break;
+        case POP: {
+            stack.drop();
+            program.step();
+        }
+            break;
+        case DUP1:
+        case DUP2:
+        case DUP3:
+        case DUP4:
+        case DUP5:
+        case DUP6:
+        case DUP7:
+        case DUP8:
+        case DUP9:
+        case DUP10:
+        case DUP11:
+        case DUP12:
+        case DUP13:
+        case DUP14:
+        case DUP15:
+        case DUP16: {
+            int n = op.val() - OpCode.DUP1.val() + 1;
+            stack.dup(n);
+            program.step();
+        }
+            break;
+        case SWAP1:
+        case SWAP2:
+        case SWAP3:
+        case SWAP4:
+        case SWAP5:
+        case SWAP6:
+        case SWAP7:
+        case SWAP8:
+        case SWAP9:
+        case SWAP10:
+        case SWAP11:
+        case SWAP12:
+        case SWAP13:
+        case SWAP14:
+        case SWAP15:
+        case SWAP16: {
+
+            int n = op.val() - OpCode.SWAP1.val() + 2;
+            stack.swap(stack.size() - 1, stack.size() - n);
+            program.step();
+        }
+            break;
+        case LOG0:
+        case LOG1:
+        case LOG2:
+        case LOG3:
+        case LOG4: {
 
-                int sizeToBeCopied = (long) codeOffset + lengthData > fullCode.length
-                        ? (fullCode.length < codeOffset ? 0 : fullCode.length - codeOffset)
-                        : lengthData;
+            if (program.isStaticCall())
+                throw new StaticCallModificationException();
+            DataWord address = program.getOwnerAddress();
 
-                byte[] codeCopy = new byte[lengthData];
+            DataWord memStart = stack.pop();
+            DataWord memOffset = stack.pop();
 
-                if (codeOffset < fullCode.length)
-                    System.arraycopy(fullCode, codeOffset, codeCopy, 0, sizeToBeCopied);
+            int nTopics = op.val() - OpCode.LOG0.val();
 
-                program.memorySave(memOffset, lengthData, codeCopy);
-                program.step();
+            List<DataWord> topics = new ArrayList<>();
+            for (int i = 0; i < nTopics; ++i) {
+                DataWord topic = stack.pop();
+                topics.add(topic);
             }
-                break;
-            case EXTCODEHASH: {
-                DataWord address = program.stackPop();
 
-                // NOTE: The EXTCODEHASH of an precompiled contract is either c5d246... or 0
-                byte[] code = program.getCodeAt(address);
-                code = (code == null) ? EMPTY_BYTE_ARRAY : code;
+            byte[] data = program.memoryChunk(memStart.intValueSafe(), memOffset.intValueSafe());
 
-                byte[] codeHash = HashUtil.keccak256(code);
-                program.stackPush(codeHash);
-                program.step();
-            }
-                break;
-            case GASPRICE: {
-                DataWord gasPrice = program.getGasPrice();
+            LogInfo logInfo = new LogInfo(address.getLast20Bytes(), topics, data);
 
-                program.stackPush(gasPrice);
-                program.step();
-            }
-                break;
-
-            case BLOCKHASH: {
+            program.getResult().addLogInfo(logInfo);
+            program.step();
+        }
+            break;
+        case MLOAD: {
+            DataWord addr = program.stackPop();
+            DataWord data = program.memoryLoad(addr);
 
-                int blockIndex = program.stackPop().intValueSafe();
+            program.stackPush(data);
+            program.step();
+        }
+            break;
+        case MSTORE: {
+            DataWord addr = program.stackPop();
+            DataWord value = program.stackPop();
 
-                DataWord blockHash = program.getBlockHash(blockIndex);
+            program.memorySave(addr, value);
+            program.step();
+        }
+            break;
+        case MSTORE8: {
+            DataWord addr = program.stackPop();
+            DataWord value = program.stackPop();
+            byte[] byteVal = { value.getByte(31) };
+            program.memorySave(addr.intValueSafe(), byteVal);
+            program.step();
+        }
+            break;
+        case SLOAD: {
+            DataWord key = program.stackPop();
+            DataWord val = program.getCurrentStorageValue(key);
 
-                program.stackPush(blockHash);
-                program.step();
+            if (val == null) {
+                val = DataWord.ZERO;
             }
-                break;
-            case COINBASE: {
-                DataWord coinbase = program.getBlockCoinbase();
 
-                program.stackPush(coinbase);
-                program.step();
-            }
-                break;
-            case TIMESTAMP: {
-                DataWord timestamp = program.getBlockTimestamp();
+            program.stackPush(val);
+            program.step();
+        }
+            break;
+        case SSTORE: {
+            if (program.isStaticCall())
+                throw new StaticCallModificationException();
 
-                program.stackPush(timestamp);
-                program.step();
-            }
-                break;
-            case NUMBER: {
-                DataWord number = program.getBlockNumber();
+            DataWord addr = program.stackPop();
+            DataWord value = program.stackPop();
 
-                program.stackPush(number);
-                program.step();
-            }
-                break;
-            case DIFFICULTY: {
-                DataWord difficulty = program.getBlockDifficulty();
+            program.storageSave(addr, value);
+            program.step();
+        }
+            break;
+        case JUMP: {
+            DataWord pos = program.stackPop();
+            int nextPC = program.verifyJumpDest(pos);
 
-                program.stackPush(difficulty);
-                program.step();
-            }
-                break;
-            case GASLIMIT: {
-                DataWord gaslimit = program.getBlockGasLimit();
+            program.setPC(nextPC);
+        }
+            break;
+        case JUMPI: {
+            DataWord pos = program.stackPop();
+            DataWord cond = program.stackPop();
 
-                program.stackPush(gaslimit);
-                program.step();
-            }
-                break;
-            case POP: {
-                program.stackPop();
-                program.step();
-            }
-                break;
-            case DUP1:
-            case DUP2:
-            case DUP3:
-            case DUP4:
-            case DUP5:
-            case DUP6:
-            case DUP7:
-            case DUP8:
-            case DUP9:
-            case DUP10:
-            case DUP11:
-            case DUP12:
-            case DUP13:
-            case DUP14:
-            case DUP15:
-            case DUP16: {
-                int n = op.val() - OpCode.DUP1.val() + 1;
-                program.stackPush(stack.get(stack.size() - n)); // same object ref
-                program.step();
+            if (!cond.isZero()) {
+                int nextPC = program.verifyJumpDest(pos);
 
-            }
-                break;
-            case SWAP1:
-            case SWAP2:
-            case SWAP3:
-            case SWAP4:
-            case SWAP5:
-            case SWAP6:
-            case SWAP7:
-            case SWAP8:
-            case SWAP9:
-            case SWAP10:
-            case SWAP11:
-            case SWAP12:
-            case SWAP13:
-            case SWAP14:
-            case SWAP15:
-            case SWAP16: {
-
-                int n = op.val() - OpCode.SWAP1.val() + 2;
-                stack.swap(stack.size() - 1, stack.size() - n);
+                program.setPC(nextPC);
+            } else {
                 program.step();
             }
-                break;
-            case LOG0:
-            case LOG1:
-            case LOG2:
-            case LOG3:
-            case LOG4: {
 
-                if (program.isStaticCall())
-                    throw new StaticCallModificationException();
-                DataWord address = program.getOwnerAddress();
-
-                DataWord memStart = stack.pop();
-                DataWord memOffset = stack.pop();
-
-                int nTopics = op.val() - OpCode.LOG0.val();
+        }
+            break;
+        case PC: {
+            int pc = program.getPC();
+            DataWord pcWord = DataWord.of(pc);
 
-                List<DataWord> topics = new ArrayList<>();
-                for (int i = 0; i < nTopics; ++i) {
-                    DataWord topic = stack.pop();
-                    topics.add(topic);
-                }
+            program.stackPush(pcWord);
+            program.step();
+        }
+            break;
+        case MSIZE: {
+            int memSize = program.getMemSize();
+            DataWord wordMemSize = DataWord.of(memSize);
 
-                byte[] data = program.memoryChunk(memStart.intValueSafe(), memOffset.intValueSafe());
+            program.stackPush(wordMemSize);
+            program.step();
+        }
+            break;
+        case GAS: {
+            long gasLeft = program.getGasLeft();
 
-                LogInfo logInfo = new LogInfo(address.getLast20Bytes(), topics, data);
+            program.stackPush(DataWord.of(gasLeft));
+            program.step();
+        }
+            break;
+
+        case PUSH1:
+        case PUSH2:
+        case PUSH3:
+        case PUSH4:
+        case PUSH5:
+        case PUSH6:
+        case PUSH7:
+        case PUSH8:
+        case PUSH9:
+        case PUSH10:
+        case PUSH11:
+        case PUSH12:
+        case PUSH13:
+        case PUSH14:
+        case PUSH15:
+        case PUSH16:
+        case PUSH17:
+        case PUSH18:
+        case PUSH19:
+        case PUSH20:
+        case PUSH21:
+        case PUSH22:
+        case PUSH23:
+        case PUSH24:
+        case PUSH25:
+        case PUSH26:
+        case PUSH27:
+        case PUSH28:
+        case PUSH29:
+        case PUSH30:
+        case PUSH31:
+        case PUSH32: {
+            program.step();
+            int nPush = op.val() - PUSH1.val() + 1;
+
+            program.sweepAndPush(nPush);
+        }
+            break;
+        case JUMPDEST: {
+            program.step();
+        }
+            break;
+        case CREATE: {
+            if (program.isStaticCall())
+                throw new StaticCallModificationException();
 
-                program.getResult().addLogInfo(logInfo);
-                program.step();
-            }
-                break;
-            case MLOAD: {
-                DataWord addr = program.stackPop();
-                DataWord data = program.memoryLoad(addr);
+            DataWord value = program.stackPop();
+            DataWord inOffset = program.stackPop();
+            DataWord inSize = program.stackPop();
+            long gas = spec.getCreateGas(program.getGasLeft());
 
-                program.stackPush(data);
-                program.step();
-            }
-                break;
-            case MSTORE: {
-                DataWord addr = program.stackPop();
-                DataWord value = program.stackPop();
+            program.createContract(value, inOffset, inSize, gas);
 
-                program.memorySave(addr, value);
-                program.step();
-            }
-                break;
-            case MSTORE8: {
-                DataWord addr = program.stackPop();
-                DataWord value = program.stackPop();
-                byte[] byteVal = { value.getByte(31) };
-                program.memorySave(addr.intValueSafe(), byteVal);
-                program.step();
-            }
-                break;
-            case SLOAD: {
-                DataWord key = program.stackPop();
-                DataWord val = program.getCurrentStorageValue(key);
+            program.step();
+        }
+            break;
+        case CREATE2: {
+            if (program.isStaticCall())
+                throw new StaticCallModificationException();
 
-                if (val == null) {
-                    val = DataWord.ZERO;
-                }
+            DataWord value = program.stackPop();
+            DataWord inOffset = program.stackPop();
+            DataWord inSize = program.stackPop();
+            DataWord salt = program.stackPop();
+            long gas = spec.getCreateGas(program.getGasLeft());
 
-                program.stackPush(val);
-                program.step();
-            }
-                break;
-            case SSTORE: {
-                if (program.isStaticCall())
-                    throw new StaticCallModificationException();
+            program.createContract2(value, inOffset, inSize, salt, gas);
 
-                DataWord addr = program.stackPop();
-                DataWord value = program.stackPop();
+            program.step();
+        }
+            break;
+        case CALL:
+        case CALLCODE:
+        case DELEGATECALL:
+        case STATICCALL: {
+            program.stackPop(); // use adjustedCallGas instead of requested
+            DataWord codeAddress = program.stackPop();
+            DataWord value = op.callHasValue() ? program.stackPop() : DataWord.ZERO;
 
-                program.storageSave(addr, value);
-                program.step();
-            }
-                break;
-            case JUMP: {
-                DataWord pos = program.stackPop();
-                int nextPC = program.verifyJumpDest(pos);
+            if (program.isStaticCall() && op == CALL && !value.isZero())
+                throw new StaticCallModificationException();
 
-                program.setPC(nextPC);
+            if (!value.isZero()) {
+                adjustedCallGas += feeSchedule.getSTIPEND_CALL();
             }
-                break;
-            case JUMPI: {
-                DataWord pos = program.stackPop();
-                DataWord cond = program.stackPop();
 
-                if (!cond.isZero()) {
-                    int nextPC = program.verifyJumpDest(pos);
+            DataWord inDataOffs = program.stackPop();
+            DataWord inDataSize = program.stackPop();
 
-                    program.setPC(nextPC);
-                } else {
-                    program.step();
-                }
+            DataWord outDataOffs = program.stackPop();
+            DataWord outDataSize = program.stackPop();
 
-            }
-                break;
-            case PC: {
-                int pc = program.getPC();
-                DataWord pcWord = DataWord.of(pc);
+            program.memoryExpand(outDataOffs, outDataSize);
 
-                program.stackPush(pcWord);
-                program.step();
-            }
-                break;
-            case MSIZE: {
-                int memSize = program.getMemSize();
-                DataWord wordMemSize = DataWord.of(memSize);
+            program.callContract(op, adjustedCallGas, codeAddress, value, inDataOffs, inDataSize, outDataOffs,
+                    outDataSize);
 
-                program.stackPush(wordMemSize);
-                program.step();
-            }
-                break;
-            case GAS: {
-                long gasLeft = program.getGasLeft();
-
-                program.stackPush(DataWord.of(gasLeft));
-                program.step();
-            }
-                break;
+            program.step();
+        }
+            break;
+        case RETURN:
+        case REVERT: {
+            DataWord offset = program.stackPop();
+            DataWord size = program.stackPop();
 
-            case PUSH1:
-            case PUSH2:
-            case PUSH3:
-            case PUSH4:
-            case PUSH5:
-            case PUSH6:
-            case PUSH7:
-            case PUSH8:
-            case PUSH9:
-            case PUSH10:
-            case PUSH11:
-            case PUSH12:
-            case PUSH13:
-            case PUSH14:
-            case PUSH15:
-            case PUSH16:
-            case PUSH17:
-            case PUSH18:
-            case PUSH19:
-            case PUSH20:
-            case PUSH21:
-            case PUSH22:
-            case PUSH23:
-            case PUSH24:
-            case PUSH25:
-            case PUSH26:
-            case PUSH27:
-            case PUSH28:
-            case PUSH29:
-            case PUSH30:
-            case PUSH31:
-            case PUSH32: {
-                program.step();
-                int nPush = op.val() - PUSH1.val() + 1;
+            byte[] hReturn = program.memoryChunk(offset.intValueSafe(), size.intValueSafe());
+            program.setHReturn(hReturn);
 
-                byte[] data = program.sweep(nPush);
+            program.step();
+            program.stop();
 
-                program.stackPush(data);
+            if (op == REVERT) {
+                program.setRevert(true);
             }
-                break;
-            case JUMPDEST: {
-                program.step();
-            }
-                break;
-            case CREATE: {
-                if (program.isStaticCall())
-                    throw new StaticCallModificationException();
-
-                DataWord value = program.stackPop();
-                DataWord inOffset = program.stackPop();
-                DataWord inSize = program.stackPop();
-                long gas = spec.getCreateGas(program.getGasLeft());
+        }
+            break;
+        case SUICIDE: {
+            if (program.isStaticCall())
+                throw new StaticCallModificationException();
 
-                program.createContract(value, inOffset, inSize, gas);
+            DataWord address = program.stackPop();
+            program.suicide(address);
 
-                program.step();
-            }
-                break;
-            case CREATE2: {
-                if (program.isStaticCall())
-                    throw new StaticCallModificationException();
-
-                DataWord value = program.stackPop();
-                DataWord inOffset = program.stackPop();
-                DataWord inSize = program.stackPop();
-                DataWord salt = program.stackPop();
-                long gas = spec.getCreateGas(program.getGasLeft());
+            program.stop();
+        }
+            break;
+        default:
+            break;
+        }
+    }
 
-                program.createContract2(value, inOffset, inSize, salt, gas);
+    /**
+     * Executes a transaction on this VM, reusing the call frames of the given
+     * context.
+     *
+     * @param context
+     *            the execution context, e.g.
+     *            {@link ExecutionContext#forCurrentThread()}
+     * @param tx
+     *            the transaction
+     * @param block
+     *            the block the transaction is included in
+     * @param repository
+     *            the state to execute against
+     * @param blockStore
+     *            the block store
+     * @param gasUsedInTheBlock
+     *            the gas used by the previous transactions of the block
+     * @return a transaction receipt, or NULL if the transaction is rejected
+     */
+    public TransactionReceipt execute(ExecutionContext context, Transaction tx, Block block, Repository repository,
+            BlockStore blockStore, long gasUsedInTheBlock) {
+        return new TransactionExecutor(tx, block, repository, blockStore, spec, new ProgramInvokeFactoryImpl(),
+                gasUsedInTheBlock, this, context).run();
+    }
 
-                program.step();
-            }
-                break;
-            case CALL:
-            case CALLCODE:
-            case DELEGATECALL:
-            case STATICCALL: {
-                program.stackPop(); // use adjustedCallGas instead of requested
-                DataWord codeAddress = program.stackPop();
-                DataWord value = op.callHasValue() ? program.stackPop() : DataWord.ZERO;
-
-                if (program.isStaticCall() && op == CALL && !value.isZero())
-                    throw new StaticCallModificationException();
-
-                if (!value.isZero()) {
-                    adjustedCallGas += feeSchedule.getSTIPEND_CALL();
+    /**
+     * Executes the program until it stops, including the nested calls and creations
+     * it makes.
+     *
+     * Call frames are kept on a heap-allocated stack and driven by this loop,
+     * rather than by recursion, so the max call depth doesn't depend on the thread
+     * stack size.
+     */
+    public void play(Program program) {
+        // nested calls are executed by the same VM, as they inherit it from the caller
+        program.setVM(this);
+
+        Deque<Program> frames = new ArrayDeque<>();
+        program.setDeferNestedCalls(true);
+        frames.push(program);
+
+        while (!frames.isEmpty()) {
+            Program frame = frames.peek();
+
+            if (!frame.isStopped()) {
+                try {
+                    step(frame);
+                } catch (RuntimeException e) {
+                    frame.takePendingProgram();
+                    frame.setException(e);
+                    continue;
                 }
 
-                DataWord inDataOffs = program.stackPop();
-                DataWord inDataSize = program.stackPop();
-
-                DataWord outDataOffs = program.stackPop();
-                DataWord outDataSize = program.stackPop();
-
-                program.memoryExpand(outDataOffs, outDataSize);
-
-                program.callContract(op, adjustedCallGas, codeAddress, value, inDataOffs, inDataSize, outDataOffs,
-                        outDataSize);
-
-                program.step();
-            }
-                break;
-            case RETURN:
-            case REVERT: {
-                DataWord offset = program.stackPop();
-                DataWord size = program.stackPop();
-
-                byte[] hReturn = program.memoryChunk(offset.intValueSafe(), size.intValueSafe());
-                program.setHReturn(hReturn);
-
-                program.step();
-                program.stop();
-
-                if (op == REVERT) {
-                    program.setRevert(true);
+                Program nested = frame.takePendingProgram();
+                if (nested != null) {
+                    nested.setDeferNestedCalls(true);
+                    frames.push(nested);
                 }
+                continue;
             }
-                break;
-            case SUICIDE: {
-                if (program.isStaticCall())
-                    throw new StaticCallModificationException();
 
-                DataWord address = program.stackPop();
-                program.suicide(address);
-
-                program.stop();
-            }
-                break;
-            default:
-                break;
-            }
-
-        } catch (RuntimeException e) {
-            program.spendAllGas();
-            program.resetFutureRefund();
-            program.stop();
-            throw e;
-        }
-    }
+            frames.pop();
+            frame.setDeferNestedCalls(false);
 
-    public void play(Program program) {
-        try {
-            while (!program.isStopped()) {
-                this.step(program);
+            Program caller = frames.peek();
+            if (caller != null) {
+                try {
+                    caller.resume(frame.getResult());
+                } catch (RuntimeException e) {
+                    caller.spendAllGas();
+                    caller.resetFutureRefund();
+                    caller.stop();
+                    caller.setException(e);
+                }
             }
-
-        } catch (RuntimeException e) {
-            program.setException(e);
-        } catch (StackOverflowError soe) {
-            logger.error("\n !!! StackOverflowError: update your java run command with -Xss2M !!!\n", soe);
-            System.exit(-1);
         }
     }
 
@@ -1131,8 +1183,60 @@ public class VM {
      * @param size
      *            number of bytes needed
      * @return offset + size, unless size is 0. In that case memNeeded is also 0.
+     * @throws org.ethereum.vm.program.exception.OutOfGasException
+     *             if the result exceeds {@link #MAX_MEM_SIZE}
+     */
+    private static long memNeeded(DataWord offset, DataWord size) {
+        long memNeeded = memNeededSaturated(offset, size);
+        if (memNeeded > MAX_MEM_SIZE) {
+            throw ExceptionFactory.gasOverflow(memNeededExact(offset, size), BigInteger.valueOf(MAX_MEM_SIZE));
+        }
+        return memNeeded;
+    }
+
+    /**
+     * Same as {@link #memNeeded(DataWord, DataWord)}, with a small non-zero size.
+     */
+    private static long memNeeded(DataWord offset, int size) {
+        long memNeeded = Math.min(offset.longValueSafe(), Long.MAX_VALUE - size) + size;
+        if (memNeeded > MAX_MEM_SIZE) {
+            BigInteger exact = offset.value().add(BigInteger.valueOf(size));
+            throw ExceptionFactory.gasOverflow(exact, BigInteger.valueOf(MAX_MEM_SIZE));
+        }
+        return memNeeded;
+    }
+
+    /**
+     * Returns the larger memory size needed by the input and output of a call.
+     *
+     * @see #memNeeded(DataWord, DataWord)
+     */
+    private static long memNeeded(DataWord inOffset, DataWord inSize, DataWord outOffset, DataWord outSize) {
+        long memNeeded = Math.max(memNeededSaturated(inOffset, inSize), memNeededSaturated(outOffset, outSize));
+        if (memNeeded > MAX_MEM_SIZE) {
+            BigInteger exact = memNeededExact(inOffset, inSize).max(memNeededExact(outOffset, outSize));
+            throw ExceptionFactory.gasOverflow(exact, BigInteger.valueOf(MAX_MEM_SIZE));
+        }
+        return memNeeded;
+    }
+
+    /**
+     * Returns offset + size, or {@link Long#MAX_VALUE} if either operand exceeds
+     * {@link #MAX_MEM_SIZE}, in which case the sum can't be allowed anyway.
+     */
+    private static long memNeededSaturated(DataWord offset, DataWord size) {
+        if (size.isZero()) {
+            return 0;
+        }
+        long o = offset.longValueSafe();
+        long s = size.longValueSafe();
+        return (o > MAX_MEM_SIZE || s > MAX_MEM_SIZE) ? Long.MAX_VALUE : o + s;
+    }
+
+    /**
+     * Returns the exact offset + size, only used to report an overflow.
      */
-    private static BigInteger memNeeded(DataWord offset, DataWord size) {
+    private static BigInteger memNeededExact(DataWord offset, DataWord size) {
         return size.isZero() ? BigInteger.ZERO : offset.value().add(size.value());
     }
 }
\ No newline at end of file
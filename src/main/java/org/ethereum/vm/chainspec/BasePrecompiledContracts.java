@@ -28,10 +28,13 @@ import static org.ethereum.vm.util.ByteArrayUtil.stripLeadingZeroes;
 import static org.ethereum.vm.util.VMUtil.getSizeInWords;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.crypto.ECKey;
+import org.ethereum.vm.util.ByteArrayWrapper;
 import org.ethereum.vm.util.HashUtil;
+import org.ethereum.vm.util.LruCache;
 import org.ethereum.vm.util.Pair;
 
 public class BasePrecompiledContracts implements PrecompiledContracts {
@@ -143,8 +146,31 @@ public class BasePrecompiledContracts implements PrecompiledContracts {
         }
     }
 
+    /**
+     * Recovers the signer address of a signature.
+     *
+     * The results are kept in a thread-safe, size-bounded cache with
+     * least-recently-used eviction, keyed by the 128-byte input, as relayers and
+     * multisig wallets often check the same signature repeatedly.
+     */
     public static class ECRecover implements PrecompiledContract {
 
+        public static final int DEFAULT_CACHE_CAPACITY = 4096;
+
+        private final LruCache<ByteArrayWrapper, byte[]> cache;
+
+        public ECRecover() {
+            this(DEFAULT_CACHE_CAPACITY);
+        }
+
+        /**
+         * @param cacheCapacity
+         *            the max number of cached results; zero disables caching
+         */
+        public ECRecover(int cacheCapacity) {
+            this.cache = new LruCache<>(cacheCapacity);
+        }
+
         @Override
         public long getGasForData(byte[] data) {
             return 3000;
@@ -154,29 +180,50 @@ public class BasePrecompiledContracts implements PrecompiledContracts {
         public Pair<Boolean, byte[]> execute(PrecompiledContractContext context) {
             byte[] data = context.getInternalTransaction().getData();
 
-            byte[] h = new byte[32];
-            byte[] v = new byte[32];
-            byte[] r = new byte[32];
-            byte[] s = new byte[32];
+            byte[] input = new byte[128];
 
-            DataWord out = null;
+            byte[] out = EMPTY_BYTE_ARRAY;
 
             try {
-                System.arraycopy(data, 0, h, 0, 32);
-                System.arraycopy(data, 32, v, 0, 32);
-                System.arraycopy(data, 64, r, 0, 32);
+                System.arraycopy(data, 0, input, 0, 96);
 
                 int sLength = data.length < 128 ? data.length - 96 : 32;
-                System.arraycopy(data, 96, s, 0, sLength);
+                System.arraycopy(data, 96, input, 96, sLength);
+
+                out = recover(input);
+            } catch (Throwable any) {
+            }
+
+            return Pair.of(true, out);
+        }
+
+        private byte[] recover(byte[] input) {
+            // the cached arrays are shared, hand out copies
+            return cache.get(new ByteArrayWrapper(input), k -> recoverUncached(input)).clone();
+        }
+
+        private static byte[] recoverUncached(byte[] input) {
+            byte[] h = Arrays.copyOfRange(input, 0, 32);
+            byte[] v = Arrays.copyOfRange(input, 32, 64);
+            byte[] r = Arrays.copyOfRange(input, 64, 96);
+            byte[] s = Arrays.copyOfRange(input, 96, 128);
 
+            try {
                 ECKey.ECDSASignature signature = ECKey.ECDSASignature.fromComponents(r, s, v[31]);
                 if (validateV(v) && signature.validateComponents()) {
-                    out = DataWord.of(ECKey.signatureToAddress(h, signature));
+                    return DataWord.of(ECKey.signatureToAddress(h, signature)).getData();
                 }
             } catch (Throwable any) {
             }
 
-            return Pair.of(true, out == null ? EMPTY_BYTE_ARRAY : out.getData());
+            return EMPTY_BYTE_ARRAY;
+        }
+
+        /**
+         * Returns the cache of the recovered addresses, keyed by the input.
+         */
+        public LruCache<ByteArrayWrapper, byte[]> getCache() {
+            return cache;
         }
 
         private static boolean validateV(byte[] v) {
@@ -18,8 +18,10 @@
 package org.ethereum.vm.chainspec;
 
 import org.ethereum.vm.FeeSchedule;
+import org.ethereum.vm.InstructionTable;
 import org.ethereum.vm.OpCode;
 import org.ethereum.vm.client.Transaction;
+import org.ethereum.vm.program.ProgramPreprocessCache;
 import org.ethereum.vm.program.exception.OutOfGasException;
 
 /**
@@ -46,6 +48,12 @@ public class BaseSpec implements Spec {
     private static final FeeSchedule feeSchedule = new FeeSchedule();
     private static final PrecompiledContracts precompiledContracts = new BasePrecompiledContracts();
 
+    // built on first use, so that subclasses can size it
+    private volatile ProgramPreprocessCache programPreprocessCache;
+
+    // built on first use, as it depends on the overridable fork switches
+    private volatile InstructionTable instructionTable;
+
     @Override
     public FeeSchedule getFeeSchedule() {
         return feeSchedule;
@@ -56,6 +64,33 @@ public class BaseSpec implements Spec {
         return precompiledContracts;
     }
 
+    @Override
+    public ProgramPreprocessCache getProgramPreprocessCache() {
+        if (programPreprocessCache == null) {
+            synchronized (this) {
+                if (programPreprocessCache == null) {
+                    programPreprocessCache = createProgramPreprocessCache();
+                }
+            }
+        }
+        return programPreprocessCache;
+    }
+
+    /**
+     * Creates the cache of the bytecode analysis; override to change its capacity.
+     */
+    protected ProgramPreprocessCache createProgramPreprocessCache() {
+        return new ProgramPreprocessCache(this, ProgramPreprocessCache.DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public InstructionTable getInstructionTable() {
+        if (instructionTable == null) {
+            instructionTable = new InstructionTable(this);
+        }
+        return instructionTable;
+    }
+
     @Override
     public long getCallGas(OpCode op, long requestedGas, long availableGas) throws OutOfGasException {
         return availableGas;
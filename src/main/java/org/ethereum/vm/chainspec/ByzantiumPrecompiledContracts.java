@@ -21,6 +21,11 @@ import static org.ethereum.vm.util.BigIntegerUtil.toBI;
 import static org.ethereum.vm.util.ByteArrayUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.vm.util.ByteArrayUtil.parseWord;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.crypto.zksnark.BN128;
 import org.ethereum.vm.crypto.zksnark.BN128Fp;
@@ -28,6 +33,7 @@ import org.ethereum.vm.crypto.zksnark.BN128G1;
 import org.ethereum.vm.crypto.zksnark.BN128G2;
 import org.ethereum.vm.crypto.zksnark.Fp;
 import org.ethereum.vm.crypto.zksnark.Fp2;
+import org.ethereum.vm.crypto.zksnark.G2LineCache;
 import org.ethereum.vm.crypto.zksnark.PairingCheck;
 import org.ethereum.vm.util.Pair;
 
@@ -35,12 +41,27 @@ public class ByzantiumPrecompiledContracts extends BasePrecompiledContracts {
 
     private static final BN128Addition altBN128Add = new BN128Addition();
     private static final BN128Multiplication altBN128Mul = new BN128Multiplication();
-    private static final BN128Pairing altBN128Pairing = new BN128Pairing();
+    private static final BN128Pairing defaultBN128Pairing = new BN128Pairing();
 
     private static final DataWord altBN128AddAddr = DataWord.of(6);
     private static final DataWord altBN128MulAddr = DataWord.of(7);
     private static final DataWord altBN128PairingAddr = DataWord.of(8);
 
+    private final BN128Pairing altBN128Pairing;
+
+    public ByzantiumPrecompiledContracts() {
+        this(defaultBN128Pairing);
+    }
+
+    /**
+     * @param altBN128Pairing
+     *            the pairing contract to use, e.g. one which evaluates large inputs
+     *            in parallel
+     */
+    public ByzantiumPrecompiledContracts(BN128Pairing altBN128Pairing) {
+        this.altBN128Pairing = altBN128Pairing;
+    }
+
     @Override
     public PrecompiledContract getContractForAddress(DataWord address) {
 
@@ -177,6 +198,42 @@ public class ByzantiumPrecompiledContracts extends BasePrecompiledContracts {
 
         private static final int PAIR_SIZE = 192;
 
+        private final G2LineCache cache;
+        private final ForkJoinPool pool;
+        private final int parallelThreshold;
+
+        public BN128Pairing() {
+            this(new G2LineCache());
+        }
+
+        /**
+         * @param cache
+         *            the cache of line coefficients of G2 points, which is shared by
+         *            all the executions
+         */
+        public BN128Pairing(G2LineCache cache) {
+            this(cache, null, 0);
+        }
+
+        /**
+         * Creates a pairing contract which decodes the points and runs the Miller loops
+         * of large inputs on a pool, see {@link PairingCheck#run(ForkJoinPool)}.
+         *
+         * @param cache
+         *            the cache of line coefficients of G2 points, which is shared by
+         *            all the executions
+         * @param pool
+         *            the pool to evaluate the pairs on, or null to always evaluate them
+         *            on the calling thread
+         * @param parallelThreshold
+         *            the number of pairs above which the pool is used
+         */
+        public BN128Pairing(G2LineCache cache, ForkJoinPool pool, int parallelThreshold) {
+            this.cache = cache;
+            this.pool = pool;
+            this.parallelThreshold = parallelThreshold;
+        }
+
         @Override
         public long getGasForData(byte[] data) {
             if (data == null) {
@@ -197,7 +254,11 @@ public class ByzantiumPrecompiledContracts extends BasePrecompiledContracts {
             if (data.length % PAIR_SIZE > 0)
                 return Pair.of(false, EMPTY_BYTE_ARRAY);
 
-            PairingCheck check = PairingCheck.create();
+            PairingCheck check = PairingCheck.create(cache);
+
+            if (pool != null && data.length / PAIR_SIZE > parallelThreshold) {
+                return executeParallel(data, check);
+            }
 
             // iterating over all pairs
             for (int offset = 0; offset < data.length; offset += PAIR_SIZE) {
@@ -217,6 +278,34 @@ public class ByzantiumPrecompiledContracts extends BasePrecompiledContracts {
             return Pair.of(true, DataWord.of(result).getData());
         }
 
+        private Pair<Boolean, byte[]> executeParallel(byte[] data, PairingCheck check) {
+
+            List<ForkJoinTask<Pair<BN128G1, BN128G2>>> tasks = new ArrayList<>();
+            for (int offset = 0; offset < data.length; offset += PAIR_SIZE) {
+                int pairOffset = offset;
+                tasks.add(pool.submit(() -> decodePair(data, pairOffset)));
+            }
+
+            // adding the pairs in input order
+            for (int i = 0; i < tasks.size(); i++) {
+
+                Pair<BN128G1, BN128G2> pair = tasks.get(i).join();
+
+                // fail if decoding has failed
+                if (pair == null) {
+                    tasks.subList(i + 1, tasks.size()).forEach(task -> task.cancel(false));
+                    return Pair.of(false, EMPTY_BYTE_ARRAY);
+                }
+
+                check.addPair(pair.getLeft(), pair.getRight());
+            }
+
+            check.run(pool);
+            int result = check.result();
+
+            return Pair.of(true, DataWord.of(result).getData());
+        }
+
         private Pair<BN128G1, BN128G2> decodePair(byte[] in, int offset) {
             byte[] x = parseWord(in, offset, 0);
             byte[] y = parseWord(in, offset, 1);
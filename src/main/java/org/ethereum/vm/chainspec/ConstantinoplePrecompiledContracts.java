@@ -19,4 +19,12 @@ package org.ethereum.vm.chainspec;
 
 public class ConstantinoplePrecompiledContracts extends ByzantiumPrecompiledContracts {
     // no new precompiled contracts were introduced
+
+    public ConstantinoplePrecompiledContracts() {
+        super();
+    }
+
+    public ConstantinoplePrecompiledContracts(BN128Pairing altBN128Pairing) {
+        super(altBN128Pairing);
+    }
 }
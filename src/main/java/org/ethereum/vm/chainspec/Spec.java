@@ -18,8 +18,10 @@
 package org.ethereum.vm.chainspec;
 
 import org.ethereum.vm.FeeSchedule;
+import org.ethereum.vm.InstructionTable;
 import org.ethereum.vm.OpCode;
 import org.ethereum.vm.client.Transaction;
+import org.ethereum.vm.program.ProgramPreprocessCache;
 import org.ethereum.vm.program.exception.OutOfGasException;
 
 /**
@@ -46,6 +48,21 @@ public interface Spec {
      */
     PrecompiledContracts getPrecompiledContracts();
 
+    /**
+     * Returns the cache of code analysis results shared by programs running under
+     * this spec.
+     *
+     * @return
+     */
+    ProgramPreprocessCache getProgramPreprocessCache();
+
+    /**
+     * Returns the instruction dispatch table resolved against this spec.
+     *
+     * @return
+     */
+    InstructionTable getInstructionTable();
+
     /**
      * Returns the gas limit for an internal CALL.
      *
@@ -0,0 +1,100 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.util.ByteArrayWrapper;
+
+/**
+ * A set of accounts and storage rows, e.g. those a transaction is expected to
+ * access, see {@link Repository#prefetch(AccessSet)}.
+ */
+public class AccessSet {
+
+    private final Set<ByteArrayWrapper> accounts = new LinkedHashSet<>();
+    private final Map<ByteArrayWrapper, Set<DataWord>> storage = new LinkedHashMap<>();
+
+    /**
+     * Adds an account, including its code.
+     *
+     * @param address
+     *            the account address
+     * @return this set
+     */
+    public AccessSet addAccount(byte[] address) {
+        accounts.add(new ByteArrayWrapper(address));
+        return this;
+    }
+
+    /**
+     * Adds a storage row, along with its account.
+     *
+     * @param address
+     *            the account address
+     * @param key
+     *            the storage key
+     * @return this set
+     */
+    public AccessSet addStorageRow(byte[] address, DataWord key) {
+        ByteArrayWrapper account = new ByteArrayWrapper(address);
+        accounts.add(account);
+        storage.computeIfAbsent(account, k -> new LinkedHashSet<>()).add(key);
+        return this;
+    }
+
+    /**
+     * Adds all the accounts and storage rows of another set.
+     *
+     * @param other
+     *            the other set
+     * @return this set
+     */
+    public AccessSet addAll(AccessSet other) {
+        accounts.addAll(other.accounts);
+        for (Map.Entry<ByteArrayWrapper, Set<DataWord>> entry : other.storage.entrySet()) {
+            storage.computeIfAbsent(entry.getKey(), k -> new LinkedHashSet<>()).addAll(entry.getValue());
+        }
+        return this;
+    }
+
+    public Set<ByteArrayWrapper> getAccounts() {
+        return Collections.unmodifiableSet(accounts);
+    }
+
+    /**
+     * Returns the storage keys of an account.
+     *
+     * @param address
+     *            the account address
+     * @return the storage keys, possibly empty
+     */
+    public Set<DataWord> getStorageKeys(ByteArrayWrapper address) {
+        Set<DataWord> keys = storage.get(address);
+        return keys == null ? Collections.emptySet() : Collections.unmodifiableSet(keys);
+    }
+
+    public boolean isEmpty() {
+        return accounts.isEmpty();
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.client.parallel.MultiVersionState;
+import org.ethereum.vm.program.ExecutionContext;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
+
+/**
+ * Executes the transactions of a block, tracking the gas used in the block.
+ *
+ * Without an executor service, the transactions run one by one, and the
+ * accounts of the next transaction are prefetched while one executes.
+ *
+ * Given an executor service, the transactions are executed speculatively in
+ * parallel on a {@link MultiVersionState}, and those which have observed the
+ * changes of a preceding transaction are executed again, so that the receipts
+ * and the state are the same as if executed one by one. The state is written
+ * into the repository, in block order, once all the transactions are done.
+ */
+public class BlockExecutor {
+
+    private final Repository repo;
+    private final BlockStore blockStore;
+
+    private final Spec spec;
+    private final ProgramInvokeFactory invokeFactory;
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates a block executor which runs the transactions one by one.
+     */
+    public BlockExecutor(Repository repo, BlockStore blockStore) {
+        this(repo, blockStore, Spec.DEFAULT, new ProgramInvokeFactoryImpl(), null);
+    }
+
+    /**
+     * Creates a block executor.
+     *
+     * @param executor
+     *            the executor service to run the transactions on, or NULL to run
+     *            them one by one on the calling thread
+     */
+    public BlockExecutor(Repository repo, BlockStore blockStore, Spec spec, ProgramInvokeFactory invokeFactory,
+            ExecutorService executor) {
+        this.repo = repo;
+        this.blockStore = blockStore;
+        this.spec = spec;
+        this.invokeFactory = invokeFactory;
+        this.executor = executor;
+    }
+
+    /**
+     * Executes the transactions of a block. The changes are written into the
+     * repository, without committing it.
+     *
+     * @param block
+     *            the block
+     * @param txs
+     *            the transactions, in block order
+     * @return the receipts, in block order, with NULL for the rejected transactions
+     */
+    public List<TransactionReceipt> execute(Block block, List<Transaction> txs) {
+        if (executor == null) {
+            List<TransactionReceipt> receipts = new ArrayList<>(txs.size());
+            long gasUsed = 0;
+            for (int i = 0; i < txs.size(); i++) {
+                TransactionExecutor executor = newExecutor(txs.get(i), block, repo, gasUsed);
+                executor.setNextTransaction(i + 1 < txs.size() ? txs.get(i + 1) : null);
+
+                TransactionReceipt receipt = executor.run();
+                gasUsed += receipt == null ? 0 : receipt.getGasUsed();
+                receipts.add(receipt);
+            }
+            return receipts;
+        }
+
+        MultiVersionState state = new MultiVersionState(repo);
+        List<Result> results = state.execute(txs.size(), new MultiVersionState.Task<Result>() {
+            // the gas used by the committed transactions
+            private volatile long gasUsed;
+
+            @Override
+            public Result run(int index, Repository repository) {
+                // final when all the preceding transactions are committed
+                long gasUsedInTheBlock = gasUsed;
+                TransactionReceipt receipt = newExecutor(txs.get(index), block, repository, gasUsedInTheBlock).run();
+                return new Result(receipt, gasUsedInTheBlock);
+            }
+
+            @Override
+            public boolean isValid(int index, Result result) {
+                // only the block gas limit check depends on the gas used
+                long txGas = txs.get(index).getGas();
+                return exceedsGasLimit(block, txGas, result.gasUsedInTheBlock) == exceedsGasLimit(block, txGas,
+                        gasUsed);
+            }
+
+            @Override
+            public void onCommit(int index, Result result) {
+                gasUsed += result.receipt == null ? 0 : result.receipt.getGasUsed();
+            }
+        }, executor);
+        state.commit();
+
+        List<TransactionReceipt> receipts = new ArrayList<>(results.size());
+        for (Result result : results) {
+            receipts.add(result.receipt);
+        }
+        return receipts;
+    }
+
+    private TransactionExecutor newExecutor(Transaction tx, Block block, Repository repository,
+            long gasUsedInTheBlock) {
+        return new TransactionExecutor(tx, block, repository, blockStore, spec, invokeFactory, gasUsedInTheBlock,
+                null, ExecutionContext.forCurrentThread());
+    }
+
+    private static boolean exceedsGasLimit(Block block, long txGas, long gasUsedInTheBlock) {
+        return txGas + gasUsedInTheBlock > block.getGasLimit();
+    }
+
+    private static class Result {
+        private final TransactionReceipt receipt;
+        private final long gasUsedInTheBlock;
+
+        private Result(TransactionReceipt receipt, long gasUsedInTheBlock) {
+            this.receipt = receipt;
+            this.gasUsedInTheBlock = gasUsedInTheBlock;
+        }
+    }
+}
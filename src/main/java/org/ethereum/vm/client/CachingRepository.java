@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import java.math.BigInteger;
+import java.util.concurrent.Executor;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.util.ByteArrayWrapper;
+import org.ethereum.vm.util.HashUtil;
+import org.ethereum.vm.util.LruCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A repository decorator which caches accounts, code and storage rows in front
+ * of a slow, e.g. disk-based, repository.
+ *
+ * Reads are served from bounded LRU caches, each limited to an approximate
+ * number of bytes, and writes go through to the underlying repository while
+ * updating the caches. As the cached entries always match the underlying
+ * repository, committing keeps them; rolling back clears them.
+ *
+ * Trackers are {@link JournaledRepository} instances on top of this repository,
+ * so that reads from nested calls hit the caches as well.
+ *
+ * The caches can be warmed ahead of execution with
+ * {@link #prefetch(AccessSet)}, which loads on the calling thread unless an
+ * executor is given to load in the background.
+ *
+ * @ImplNote The caches are safe for concurrent use, while the decorator itself
+ *           is as thread-safe as the underlying repository.
+ */
+public class CachingRepository implements Repository {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingRepository.class);
+
+    // rough per-entry overhead of the keys, values and map nodes
+    private static final long ACCOUNT_ENTRY_SIZE = 160;
+    private static final long CODE_ENTRY_SIZE = 96;
+    private static final long STORAGE_ENTRY_SIZE = 200;
+
+    // the caches are split into independently locked segments
+    private static final int SEGMENTS = 16;
+
+    private final Repository repository;
+    private final Executor prefetcher;
+
+    private final LruCache<ByteArrayWrapper, AccountState> accounts;
+    private final LruCache<ByteArrayWrapper, Code> codes;
+    private final LruCache<ByteArrayWrapper, DataWord> storage;
+
+    /**
+     * Creates a caching repository, splitting the given budget between the caches.
+     *
+     * @param repository
+     *            the underlying repository
+     * @param maxBytes
+     *            the approximate memory budget of all the caches
+     */
+    public CachingRepository(Repository repository, long maxBytes) {
+        this(repository, maxBytes / 8, maxBytes / 4, maxBytes - maxBytes / 8 - maxBytes / 4);
+    }
+
+    /**
+     * Creates a caching repository.
+     *
+     * @param repository
+     *            the underlying repository
+     * @param accountBytes
+     *            the approximate memory budget of the account cache
+     * @param codeBytes
+     *            the approximate memory budget of the code cache
+     * @param storageBytes
+     *            the approximate memory budget of the storage cache
+     */
+    public CachingRepository(Repository repository, long accountBytes, long codeBytes, long storageBytes) {
+        this(repository, accountBytes, codeBytes, storageBytes, Runnable::run);
+    }
+
+    /**
+     * Creates a caching repository.
+     *
+     * @param repository
+     *            the underlying repository
+     * @param accountBytes
+     *            the approximate memory budget of the account cache
+     * @param codeBytes
+     *            the approximate memory budget of the code cache
+     * @param storageBytes
+     *            the approximate memory budget of the storage cache
+     * @param prefetcher
+     *            the executor to prefetch on, see {@link #prefetch(AccessSet)}; an
+     *            asynchronous one requires the underlying repository to be
+     *            thread-safe
+     */
+    public CachingRepository(Repository repository, long accountBytes, long codeBytes, long storageBytes,
+            Executor prefetcher) {
+        this.repository = repository;
+        this.prefetcher = prefetcher;
+        this.accounts = new LruCache<>(accountBytes, v -> ACCOUNT_ENTRY_SIZE, SEGMENTS);
+        this.codes = new LruCache<>(codeBytes, v -> CODE_ENTRY_SIZE + (v == null ? 0 : v.getSize()), SEGMENTS);
+        this.storage = new LruCache<>(storageBytes, v -> STORAGE_ENTRY_SIZE, SEGMENTS);
+    }
+
+    public LruCache<ByteArrayWrapper, AccountState> getAccountCache() {
+        return accounts;
+    }
+
+    public LruCache<ByteArrayWrapper, Code> getCodeCache() {
+        return codes;
+    }
+
+    public LruCache<ByteArrayWrapper, DataWord> getStorageCache() {
+        return storage;
+    }
+
+    @Override
+    public boolean exists(byte[] address) {
+        return getAccount(address).exists;
+    }
+
+    @Override
+    public void createAccount(byte[] address) {
+        repository.createAccount(address);
+        accounts.remove(new ByteArrayWrapper(address));
+    }
+
+    /**
+     * Deletes an account. As the storage rows aren't indexed by account, the whole
+     * storage cache is cleared.
+     */
+    @Override
+    public void delete(byte[] address) {
+        repository.delete(address);
+
+        ByteArrayWrapper key = new ByteArrayWrapper(address);
+        accounts.remove(key);
+        codes.remove(key);
+        storage.clear();
+    }
+
+    @Override
+    public long increaseNonce(byte[] address) {
+        long nonce = repository.increaseNonce(address);
+        accounts.remove(new ByteArrayWrapper(address));
+        return nonce;
+    }
+
+    @Override
+    public long setNonce(byte[] address, long nonce) {
+        long result = repository.setNonce(address, nonce);
+        accounts.remove(new ByteArrayWrapper(address));
+        return result;
+    }
+
+    @Override
+    public long getNonce(byte[] address) {
+        return getAccount(address).nonce;
+    }
+
+    @Override
+    public void saveCode(byte[] address, byte[] code) {
+        repository.saveCode(address, code);
+
+        ByteArrayWrapper key = new ByteArrayWrapper(address);
+        accounts.remove(key);
+        codes.remove(key);
+    }
+
+    @Override
+    public byte[] getCode(byte[] address) {
+        Code code = getCodeEntry(address);
+        return code == null ? null : code.getBytes();
+    }
+
+    @Override
+    public Code getInternedCode(byte[] address) {
+        return getCodeEntry(address);
+    }
+
+    @Override
+    public int getCodeSize(byte[] address) {
+        Code code = getCodeEntry(address);
+        return code == null ? 0 : code.getSize();
+    }
+
+    @Override
+    public byte[] getCodeHash(byte[] address) {
+        Code code = getCodeEntry(address);
+        return code == null ? HashUtil.getEmptyDataHash() : code.getHash();
+    }
+
+    @Override
+    public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+        repository.putStorageRow(address, key, value);
+
+        accounts.remove(new ByteArrayWrapper(address));
+        storage.put(storageKey(address, key), value);
+    }
+
+    @Override
+    public DataWord getStorageRow(byte[] address, DataWord key) {
+        return storage.get(storageKey(address, key), k -> repository.getStorageRow(address, key));
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] address) {
+        return getAccount(address).balance;
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] address, BigInteger value) {
+        BigInteger balance = repository.addBalance(address, value);
+        accounts.remove(new ByteArrayWrapper(address));
+        return balance;
+    }
+
+    /**
+     * Loads the given accounts, their code and the storage rows into the caches on
+     * the prefetch executor. Values written meanwhile are never overwritten.
+     *
+     * With an asynchronous executor, this reads the underlying repository
+     * concurrently with the caller, which it must be safe for.
+     */
+    @Override
+    public void prefetch(AccessSet accessSet) {
+        if (accessSet.isEmpty()) {
+            return;
+        }
+        prefetcher.execute(() -> {
+            try {
+                for (ByteArrayWrapper account : accessSet.getAccounts()) {
+                    byte[] address = account.getData();
+                    accounts.load(account, k -> loadAccount(address));
+                    codes.load(account, k -> loadCode(address));
+                    for (DataWord key : accessSet.getStorageKeys(account)) {
+                        storage.load(storageKey(address, key), k -> repository.getStorageRow(address, key));
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Failed to prefetch", e);
+            }
+        });
+    }
+
+    /**
+     * Starts a journaled tracker, which writes into this repository when committed.
+     */
+    @Override
+    public Repository startTracking() {
+        return new JournaledRepository(this);
+    }
+
+    @Override
+    public Repository clone() {
+        return new CachingRepository(repository.clone(), accounts.getMaxWeight(), codes.getMaxWeight(),
+                storage.getMaxWeight(),
+                prefetcher);
+    }
+
+    @Override
+    public void commit() {
+        repository.commit();
+    }
+
+    @Override
+    public void rollback() {
+        repository.rollback();
+
+        accounts.clear();
+        codes.clear();
+        storage.clear();
+    }
+
+    private AccountState getAccount(byte[] address) {
+        return accounts.get(new ByteArrayWrapper(address), k -> loadAccount(address));
+    }
+
+    private Code getCodeEntry(byte[] address) {
+        return codes.get(new ByteArrayWrapper(address), k -> loadCode(address));
+    }
+
+    private AccountState loadAccount(byte[] address) {
+        return new AccountState(repository.exists(address), repository.getNonce(address),
+                repository.getBalance(address));
+    }
+
+    private Code loadCode(byte[] address) {
+        byte[] code = repository.getCode(address);
+        return code == null ? null : CodeStore.getDefault().intern(repository.getCodeHash(address), code);
+    }
+
+    private static ByteArrayWrapper storageKey(byte[] address, DataWord key) {
+        byte[] k = new byte[address.length + DataWord.SIZE];
+        System.arraycopy(address, 0, k, 0, address.length);
+        key.copyTo(k, address.length);
+        return new ByteArrayWrapper(k);
+    }
+
+    /**
+     * The cached basic state of an account.
+     */
+    public static class AccountState {
+        private final boolean exists;
+        private final long nonce;
+        private final BigInteger balance;
+
+        private AccountState(boolean exists, long nonce, BigInteger balance) {
+            this.exists = exists;
+            this.nonce = nonce;
+            this.balance = balance;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import org.ethereum.vm.util.ByteArrayUtil;
+import org.ethereum.vm.util.HashUtil;
+
+/**
+ * A contract code along with its hash, as handed out by {@link CodeStore}.
+ *
+ * @ImplNote The code array is shared and must not be modified; the hash is
+ *           handed out as a copy.
+ */
+public final class Code {
+
+    public static final Code EMPTY = new Code(HashUtil.getEmptyDataHash(), ByteArrayUtil.EMPTY_BYTE_ARRAY);
+
+    private final byte[] hash;
+    private final byte[] bytes;
+
+    Code(byte[] hash, byte[] bytes) {
+        this.hash = hash;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns a copy of the keccak256 hash of the code.
+     */
+    public byte[] getHash() {
+        return hash.clone();
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public int getSize() {
+        return bytes.length;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ethereum.vm.util.ByteArrayWrapper;
+import org.ethereum.vm.util.HashUtil;
+
+/**
+ * A content-addressed store of contract code, which keeps a single copy of
+ * every distinct code in memory, e.g. for the many clones of a proxy contract.
+ *
+ * Codes are held weakly, so a code is released once no repository references it
+ * anymore.
+ *
+ * @ImplNote This class is thread-safe.
+ */
+public class CodeStore {
+
+    private static final CodeStore DEFAULT = new CodeStore();
+
+    private final Map<ByteArrayWrapper, CodeReference> codes = new HashMap<>();
+    private final ReferenceQueue<Code> queue = new ReferenceQueue<>();
+
+    /**
+     * Returns the store shared by the repositories by default.
+     */
+    public static CodeStore getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns the stored instance of the given code, hashing it.
+     *
+     * @param code
+     *            the code, or NULL
+     * @return the code instance, or NULL if the code is NULL
+     */
+    public Code intern(byte[] code) {
+        if (code == null) {
+            return null;
+        }
+        return code.length == 0 ? Code.EMPTY : intern(HashUtil.keccak256(code), code);
+    }
+
+    /**
+     * Returns the stored instance of the given code, whose hash is already known.
+     * The arrays are copied when first stored, so the caller may reuse them.
+     *
+     * @param hash
+     *            the keccak256 hash of the code
+     * @param code
+     *            the code
+     * @return the code instance
+     */
+    public synchronized Code intern(byte[] hash, byte[] code) {
+        if (code.length == 0) {
+            return Code.EMPTY;
+        }
+        purge();
+
+        CodeReference ref = codes.get(new ByteArrayWrapper(hash));
+        Code c = ref == null ? null : ref.get();
+        if (c == null) {
+            byte[] h = hash.clone();
+            c = new Code(h, code.clone());
+            ByteArrayWrapper key = new ByteArrayWrapper(h);
+            codes.put(key, new CodeReference(key, c, queue));
+        }
+        return c;
+    }
+
+    /**
+     * Returns the number of the distinct codes held.
+     */
+    public synchronized int size() {
+        purge();
+        return codes.size();
+    }
+
+    private void purge() {
+        Reference<? extends Code> ref;
+        while ((ref = queue.poll()) != null) {
+            CodeReference cr = (CodeReference) ref;
+            if (codes.get(cr.key) == cr) {
+                codes.remove(cr.key);
+            }
+        }
+    }
+
+    private static class CodeReference extends WeakReference<Code> {
+        private final ByteArrayWrapper key;
+
+        private CodeReference(ByteArrayWrapper key, Code code, ReferenceQueue<Code> queue) {
+            super(code, queue);
+            this.key = key;
+        }
+    }
+}
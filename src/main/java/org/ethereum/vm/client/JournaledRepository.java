@@ -0,0 +1,493 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.util.ByteArrayUtil;
+import org.ethereum.vm.util.ByteArrayWrapper;
+import org.ethereum.vm.util.HashUtil;
+
+/**
+ * An in-memory repository which keeps a single mutable state and an undo
+ * journal.
+ *
+ * A tracking repository, see {@link #startTracking()}, writes into the shared
+ * state directly and remembers the journal position it started at as its
+ * checkpoint. Rolling it back undoes the journal entries after its checkpoint,
+ * while committing it just closes it, so that its changes are undone along with
+ * its parent. Both operations cost O(changes) rather than O(state).
+ *
+ * Trackers are expected to be closed in the reverse order they are opened, as
+ * done for nested calls. A tracker which is left open is rolled back when its
+ * parent is written to, committed or rolled back. Reading through a parent
+ * while a child is open observes the changes of the child.
+ *
+ * Optionally, the state can be layered on top of a backing repository, which is
+ * read through on first access. Committing the root repository then writes the
+ * changes into the backing repository, without committing it, and releases the
+ * cached state.
+ *
+ * Code is interned in the default {@link CodeStore}, so accounts sharing the
+ * same code share a single copy, and its hash is computed once.
+ *
+ * @ImplNote This class is not thread-safe. The journal of the root repository
+ *           is only released when the root is committed.
+ */
+public class JournaledRepository implements Repository {
+
+    // marks a storage row which is not cached, compared by identity
+    private static final DataWord ABSENT = DataWord.of(0);
+
+    private final State state;
+    private final int depth;
+    private final int checkpoint;
+    private boolean closed;
+
+    public JournaledRepository() {
+        this(null);
+    }
+
+    /**
+     * Creates a journaled repository on top of the given repository.
+     *
+     * @param backing
+     *            the repository to read through and commit into, or NULL
+     */
+    public JournaledRepository(Repository backing) {
+        this(new State(backing), 0, 0);
+    }
+
+    private JournaledRepository(State state, int depth, int checkpoint) {
+        this.state = state;
+        this.depth = depth;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Returns an account if exists.
+     *
+     * @param address
+     *            the account address
+     * @return an account if exists, NULL otherwise
+     */
+    protected Account getAccount(byte[] address) {
+        ByteArrayWrapper key = new ByteArrayWrapper(address);
+        Account account = state.accounts.get(key);
+        if (account == null && state.backing != null && !state.accounts.containsKey(key)) {
+            // cache as is, this is not a change
+            account = state.backing.exists(address) ? new Account(state.backing, address) : null;
+            state.accounts.put(key, account);
+        }
+        return account;
+    }
+
+    /**
+     * Returns an account for writing, creating it if not exist.
+     */
+    protected Account getOrCreateAccount(byte[] address) {
+        prepareWrite();
+
+        Account account = getAccount(address);
+        if (account == null) {
+            account = new Account();
+            setAccount(address, account);
+        } else {
+            markDirty(address);
+        }
+        return account;
+    }
+
+    @Override
+    public boolean exists(byte[] address) {
+        return getAccount(address) != null;
+    }
+
+    @Override
+    public void createAccount(byte[] address) {
+        getOrCreateAccount(address);
+    }
+
+    @Override
+    public void delete(byte[] address) {
+        prepareWrite();
+        setAccount(address, null);
+    }
+
+    @Override
+    public long increaseNonce(byte[] address) {
+        Account account = getOrCreateAccount(address);
+        return setNonce(account, account.nonce + 1);
+    }
+
+    @Override
+    public long setNonce(byte[] address, long nonce) {
+        return setNonce(getOrCreateAccount(address), nonce);
+    }
+
+    @Override
+    public long getNonce(byte[] address) {
+        Account account = getAccount(address);
+        return account == null ? 0 : account.nonce;
+    }
+
+    @Override
+    public void saveCode(byte[] address, byte[] code) {
+        Account account = getOrCreateAccount(address);
+        Code previous = account.code;
+        boolean wasDirty = account.codeDirty;
+        account.code = CodeStore.getDefault().intern(ByteArrayUtil.nullToEmpty(code));
+        account.codeDirty = true;
+        state.journal.add(() -> {
+            account.code = previous;
+            account.codeDirty = wasDirty;
+        });
+    }
+
+    @Override
+    public byte[] getCode(byte[] address) {
+        Code code = getAccountCode(address);
+        return code == null ? null : code.getBytes();
+    }
+
+    @Override
+    public Code getInternedCode(byte[] address) {
+        return getAccountCode(address);
+    }
+
+    @Override
+    public int getCodeSize(byte[] address) {
+        Account account = getAccount(address);
+        if (account == null) {
+            return 0;
+        }
+        return account.code == null ? state.backing.getCodeSize(address) : account.code.getSize();
+    }
+
+    @Override
+    public byte[] getCodeHash(byte[] address) {
+        Account account = getAccount(address);
+        if (account == null) {
+            return HashUtil.getEmptyDataHash();
+        }
+        return account.code == null ? state.backing.getCodeHash(address) : account.code.getHash();
+    }
+
+    @Override
+    public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+        Account account = getOrCreateAccount(address);
+        DataWord previous = account.storage.put(key, value, ABSENT);
+        boolean newlyDirty = state.backing != null && account.dirtyStorage.add(key);
+        state.journal.add(() -> {
+            if (previous == ABSENT) {
+                account.storage.remove(key);
+            } else {
+                account.storage.put(key, previous);
+            }
+            if (newlyDirty) {
+                account.dirtyStorage.remove(key);
+            }
+        });
+    }
+
+    @Override
+    public DataWord getStorageRow(byte[] address, DataWord key) {
+        Account account = getAccount(address);
+        if (account == null) {
+            return null;
+        }
+        DataWord value = account.storage.getOrDefault(key, ABSENT);
+        if (value != ABSENT) {
+            return value;
+        }
+        if (!account.loaded) {
+            return null;
+        }
+        value = state.backing.getStorageRow(address, key);
+        account.storage.put(key, value);
+        return value;
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] address) {
+        Account account = getAccount(address);
+        return account == null ? BigInteger.ZERO : account.balance;
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] address, BigInteger value) {
+        Account account = getOrCreateAccount(address);
+        BigInteger previous = account.balance;
+        account.balance = previous.add(value);
+        state.journal.add(() -> account.balance = previous);
+        return account.balance;
+    }
+
+    /**
+     * Passes the hint on to the backing repository, if any.
+     */
+    @Override
+    public void prefetch(AccessSet accessSet) {
+        if (state.backing != null) {
+            state.backing.prefetch(accessSet);
+        }
+    }
+
+    @Override
+    public JournaledRepository startTracking() {
+        prepareWrite();
+
+        JournaledRepository tracker = new JournaledRepository(state, depth + 1, state.journal.size());
+        state.trackers.add(tracker);
+        return tracker;
+    }
+
+    /**
+     * Clones this repository, including all the uncommitted changes, into a new
+     * root repository on the same backing repository. This copies the whole
+     * in-memory state.
+     */
+    @Override
+    public JournaledRepository clone() {
+        JournaledRepository copy = new JournaledRepository(state.backing);
+        for (Map.Entry<ByteArrayWrapper, Account> entry : state.accounts.entrySet()) {
+            Account account = entry.getValue();
+            copy.state.accounts.put(entry.getKey(), account == null ? null : new Account(account));
+        }
+        copy.state.dirty.addAll(state.dirty);
+        return copy;
+    }
+
+    /**
+     * Commits the changes of this tracker into its parent. Committing the root
+     * repository makes all the changes so far permanent, releasing the journal, and
+     * writes them into the backing repository if any.
+     */
+    @Override
+    public void commit() {
+        if (closed) {
+            return;
+        }
+        rollbackTrackers();
+
+        if (depth == 0) {
+            if (state.backing != null) {
+                flush();
+                state.accounts.clear();
+                state.dirty.clear();
+            }
+            state.journal.clear();
+        } else {
+            close();
+        }
+    }
+
+    /**
+     * Undoes the changes of this tracker. Rolling back the root repository undoes
+     * all the changes since it was last committed.
+     */
+    @Override
+    public void rollback() {
+        if (closed) {
+            return;
+        }
+        rollbackTrackers();
+
+        List<Runnable> journal = state.journal;
+        for (int i = journal.size() - 1; i >= checkpoint; i--) {
+            journal.remove(i).run();
+        }
+        if (depth != 0) {
+            close();
+        } else {
+            state.dirty.clear();
+        }
+    }
+
+    private Code getAccountCode(byte[] address) {
+        Account account = getAccount(address);
+        if (account == null) {
+            return null;
+        }
+        if (account.code == null) {
+            account.code = state.backing.getInternedCode(address);
+        }
+        if (account.code == null) {
+            byte[] code = state.backing.getCode(address);
+            account.code = code == null ? null
+                    : CodeStore.getDefault().intern(state.backing.getCodeHash(address), code);
+        }
+        return account.code;
+    }
+
+    private void setAccount(byte[] address, Account account) {
+        ByteArrayWrapper key = new ByteArrayWrapper(address);
+        boolean existed = state.accounts.containsKey(key);
+        Account previous = state.accounts.put(key, account);
+        state.journal.add(() -> {
+            if (existed) {
+                state.accounts.put(key, previous);
+            } else {
+                state.accounts.remove(key);
+            }
+        });
+        markDirty(address);
+    }
+
+    private long setNonce(Account account, long nonce) {
+        long previous = account.nonce;
+        account.nonce = nonce;
+        state.journal.add(() -> account.nonce = previous);
+        return nonce;
+    }
+
+    private void markDirty(byte[] address) {
+        if (state.backing != null) {
+            state.dirty.add(new ByteArrayWrapper(address));
+        }
+    }
+
+    /**
+     * Writes the accounts changed since the last commit into the backing
+     * repository.
+     */
+    private void flush() {
+        Repository backing = state.backing;
+        for (ByteArrayWrapper key : state.dirty) {
+            if (!state.accounts.containsKey(key)) {
+                continue; // the creation has been rolled back
+            }
+            byte[] address = key.getData();
+            Account account = state.accounts.get(key);
+
+            if (account == null || !account.loaded) {
+                // deleted, or replaced by a new account
+                if (backing.exists(address)) {
+                    backing.delete(address);
+                }
+                if (account == null) {
+                    continue;
+                }
+                backing.createAccount(address);
+                backing.setNonce(address, account.nonce);
+                backing.addBalance(address, account.balance);
+                backing.saveCode(address, account.code.getBytes());
+                for (Map.Entry<DataWord, DataWord> row : account.storage.entrySet()) {
+                    if (row.getValue() != null) {
+                        backing.putStorageRow(address, row.getKey(), row.getValue());
+                    }
+                }
+            } else {
+                if (account.nonce != backing.getNonce(address)) {
+                    backing.setNonce(address, account.nonce);
+                }
+                BigInteger delta = account.balance.subtract(backing.getBalance(address));
+                if (delta.signum() != 0) {
+                    backing.addBalance(address, delta);
+                }
+                if (account.codeDirty && account.code != null) {
+                    backing.saveCode(address, account.code.getBytes());
+                }
+                for (DataWord row : account.dirtyStorage) {
+                    DataWord value = account.storage.get(row);
+                    if (value != null) {
+                        backing.putStorageRow(address, row, value);
+                    }
+                }
+            }
+        }
+    }
+
+    private void prepareWrite() {
+        if (closed) {
+            throw new IllegalStateException("The tracker has been committed or rolled back");
+        }
+        rollbackTrackers();
+    }
+
+    /**
+     * Rolls back the trackers which have been left open above this repository.
+     */
+    private void rollbackTrackers() {
+        while (state.trackers.size() > depth) {
+            state.trackers.get(state.trackers.size() - 1).rollback();
+        }
+    }
+
+    private void close() {
+        state.trackers.remove(state.trackers.size() - 1);
+        closed = true;
+    }
+
+    /**
+     * The state shared by a root repository and its trackers.
+     */
+    private static class State {
+        // NULL values stand for accounts known not to exist
+        private final Map<ByteArrayWrapper, Account> accounts = new HashMap<>();
+        private final List<Runnable> journal = new ArrayList<>();
+        private final List<JournaledRepository> trackers = new ArrayList<>();
+
+        private final Repository backing;
+        private final Set<ByteArrayWrapper> dirty = new LinkedHashSet<>();
+
+        private State(Repository backing) {
+            this.backing = backing;
+        }
+    }
+
+    protected static class Account {
+        protected long nonce = 0;
+        protected BigInteger balance = BigInteger.ZERO;
+        protected Code code = Code.EMPTY; // NULL if not loaded yet
+        protected StorageMap storage = new StorageMap();
+
+        // whether the account is read through from the backing repository
+        protected boolean loaded;
+        protected boolean codeDirty;
+        protected Set<DataWord> dirtyStorage = new HashSet<>();
+
+        protected Account() {
+        }
+
+        protected Account(Repository backing, byte[] address) {
+            this.nonce = backing.getNonce(address);
+            this.balance = backing.getBalance(address);
+            this.code = null;
+            this.loaded = true;
+        }
+
+        protected Account(Account other) {
+            this.nonce = other.nonce;
+            this.balance = other.balance;
+            this.code = other.code;
+            this.storage = new StorageMap(other.storage);
+            this.loaded = other.loaded;
+            this.codeDirty = other.codeDirty;
+            this.dirtyStorage = new HashSet<>(other.dirtyStorage);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.ethereum.vm.client;
 import java.math.BigInteger;
 
 import org.ethereum.vm.DataWord;
+import org.ethereum.vm.util.HashUtil;
 
 public interface Repository {
 
@@ -100,6 +101,47 @@ public interface Repository {
      */
     byte[] getCode(byte[] address);
 
+    /**
+     * Returns the code associated with an account as an interned {@link Code},
+     * which carries its hash.
+     *
+     * @param address
+     *            the account address
+     * @return the code, or NULL if not exist or if this repository doesn't intern
+     *         code
+     * @ImplNote the default implementation returns NULL, so that callers fall back
+     *           to {@link #getCode(byte[])} instead of hashing the code
+     */
+    default Code getInternedCode(byte[] address) {
+        return null;
+    }
+
+    /**
+     * Returns the size of the code associated with an account.
+     *
+     * @param address
+     *            the account address
+     * @return the code size, or 0 if not exist
+     * @ImplNote the default implementation loads the code
+     */
+    default int getCodeSize(byte[] address) {
+        byte[] code = getCode(address);
+        return code == null ? 0 : code.length;
+    }
+
+    /**
+     * Returns the keccak256 hash of the code associated with an account.
+     *
+     * @param address
+     *            the account address
+     * @return the code hash, or the hash of empty data if not exist
+     * @ImplNote the default implementation loads and hashes the code
+     */
+    default byte[] getCodeHash(byte[] address) {
+        byte[] code = getCode(address);
+        return code == null || code.length == 0 ? HashUtil.getEmptyDataHash() : HashUtil.keccak256(code);
+    }
+
     /**
      * Puts a value in storage of an account at a given key
      *
@@ -145,6 +187,18 @@ public interface Repository {
      */
     BigInteger addBalance(byte[] address, BigInteger value);
 
+    /**
+     * Hints that the given accounts and storage rows are about to be read, so that
+     * a repository on slow storage can load them ahead, e.g. in the background.
+     * This never blocks and doesn't change the state.
+     *
+     * @param accessSet
+     *            the accounts and storage rows
+     * @ImplNote the default implementation does nothing
+     */
+    default void prefetch(AccessSet accessSet) {
+    }
+
     /**
      * Save a snapshot and start tracking future changes
      *
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import java.math.BigInteger;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.client.StateSnapshot.AccountState;
+import org.ethereum.vm.util.ByteArrayUtil;
+import org.ethereum.vm.util.ByteArrayWrapper;
+import org.ethereum.vm.util.HashUtil;
+import org.ethereum.vm.util.PersistentMap;
+
+/**
+ * A mutable overlay of a {@link StateSnapshot}.
+ *
+ * The overlay only holds a reference to the current, immutable state, so
+ * forking, tracking, cloning and taking a snapshot all cost O(1), and never
+ * affect the snapshot it started from. A tracker commits by handing its state
+ * to its parent, and rolls back by dropping it.
+ *
+ * @ImplNote This class is not thread-safe, but overlays forked from the same
+ *           snapshot can be used concurrently.
+ */
+public class SnapshotRepository implements Repository {
+
+    private final SnapshotRepository parent;
+
+    // the state to roll back to
+    private PersistentMap<ByteArrayWrapper, AccountState> start;
+    private PersistentMap<ByteArrayWrapper, AccountState> accounts;
+
+    /**
+     * Creates an empty repository.
+     */
+    public SnapshotRepository() {
+        this(StateSnapshot.EMPTY);
+    }
+
+    SnapshotRepository(StateSnapshot snapshot) {
+        this(null, snapshot.accounts);
+    }
+
+    private SnapshotRepository(SnapshotRepository parent, PersistentMap<ByteArrayWrapper, AccountState> accounts) {
+        this.parent = parent;
+        this.start = accounts;
+        this.accounts = accounts;
+    }
+
+    /**
+     * Returns an immutable snapshot of the current state, including the uncommitted
+     * changes, in O(1).
+     */
+    public StateSnapshot snapshot() {
+        return new StateSnapshot(accounts);
+    }
+
+    private AccountState getAccount(byte[] address) {
+        return accounts.get(new ByteArrayWrapper(address));
+    }
+
+    private AccountState getOrCreateAccount(byte[] address) {
+        AccountState account = getAccount(address);
+        return account == null ? AccountState.EMPTY : account;
+    }
+
+    private void putAccount(byte[] address, AccountState account) {
+        accounts = accounts.put(new ByteArrayWrapper(address), account);
+    }
+
+    @Override
+    public boolean exists(byte[] address) {
+        return getAccount(address) != null;
+    }
+
+    @Override
+    public void createAccount(byte[] address) {
+        if (!exists(address)) {
+            putAccount(address, AccountState.EMPTY);
+        }
+    }
+
+    @Override
+    public void delete(byte[] address) {
+        accounts = accounts.remove(new ByteArrayWrapper(address));
+    }
+
+    @Override
+    public long increaseNonce(byte[] address) {
+        return setNonce(address, getNonce(address) + 1);
+    }
+
+    @Override
+    public long setNonce(byte[] address, long nonce) {
+        putAccount(address, getOrCreateAccount(address).withNonce(nonce));
+        return nonce;
+    }
+
+    @Override
+    public long getNonce(byte[] address) {
+        AccountState account = getAccount(address);
+        return account == null ? 0 : account.nonce;
+    }
+
+    @Override
+    public void saveCode(byte[] address, byte[] code) {
+        Code c = CodeStore.getDefault().intern(ByteArrayUtil.nullToEmpty(code));
+        putAccount(address, getOrCreateAccount(address).withCode(c));
+    }
+
+    @Override
+    public byte[] getCode(byte[] address) {
+        AccountState account = getAccount(address);
+        return account == null ? null : account.code.getBytes();
+    }
+
+    @Override
+    public Code getInternedCode(byte[] address) {
+        AccountState account = getAccount(address);
+        return account == null ? null : account.code;
+    }
+
+    @Override
+    public int getCodeSize(byte[] address) {
+        AccountState account = getAccount(address);
+        return account == null ? 0 : account.code.getSize();
+    }
+
+    @Override
+    public byte[] getCodeHash(byte[] address) {
+        AccountState account = getAccount(address);
+        return account == null ? HashUtil.getEmptyDataHash() : account.code.getHash();
+    }
+
+    @Override
+    public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+        AccountState account = getOrCreateAccount(address);
+        putAccount(address, account.withStorage(account.storage.put(key, value)));
+    }
+
+    @Override
+    public DataWord getStorageRow(byte[] address, DataWord key) {
+        AccountState account = getAccount(address);
+        return account == null ? null : account.storage.get(key);
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] address) {
+        AccountState account = getAccount(address);
+        return account == null ? BigInteger.ZERO : account.balance;
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] address, BigInteger value) {
+        AccountState account = getOrCreateAccount(address);
+        BigInteger balance = account.balance.add(value);
+        putAccount(address, account.withBalance(balance));
+        return balance;
+    }
+
+    @Override
+    public SnapshotRepository startTracking() {
+        return new SnapshotRepository(this, accounts);
+    }
+
+    /**
+     * Clones this repository, including all the uncommitted changes, in O(1).
+     */
+    @Override
+    public SnapshotRepository clone() {
+        SnapshotRepository copy = new SnapshotRepository(parent, accounts);
+        copy.start = start;
+        return copy;
+    }
+
+    /**
+     * Commits the changes of this tracker into its parent, replacing the state of
+     * the parent. Committing the root repository only moves the rollback point, as
+     * the snapshot it was forked from is immutable.
+     */
+    @Override
+    public void commit() {
+        if (parent != null) {
+            parent.accounts = accounts;
+        }
+        start = accounts;
+    }
+
+    /**
+     * Undoes the changes since this tracker was started, or since the root
+     * repository was forked or last committed.
+     */
+    @Override
+    public void rollback() {
+        accounts = start;
+    }
+}
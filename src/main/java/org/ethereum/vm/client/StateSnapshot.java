@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import java.math.BigInteger;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.util.ByteArrayWrapper;
+import org.ethereum.vm.util.PersistentMap;
+
+/**
+ * An immutable snapshot of the state, from which any number of
+ * {@link SnapshotRepository} overlays can be forked, e.g. to run simulations
+ * concurrently without copying the state.
+ *
+ * Snapshots share their structure with each other, so taking a snapshot of an
+ * overlay costs O(1), and each change to an overlay copies O(log(n)) nodes.
+ *
+ * @ImplNote Instances are thread-safe.
+ */
+public final class StateSnapshot {
+
+    public static final StateSnapshot EMPTY = new StateSnapshot(PersistentMap.empty());
+
+    final PersistentMap<ByteArrayWrapper, AccountState> accounts;
+
+    StateSnapshot(PersistentMap<ByteArrayWrapper, AccountState> accounts) {
+        this.accounts = accounts;
+    }
+
+    /**
+     * Forks a private, mutable overlay of this snapshot, in O(1).
+     *
+     * @return a repository starting from this snapshot
+     */
+    public SnapshotRepository fork() {
+        return new SnapshotRepository(this);
+    }
+
+    /**
+     * Returns the number of accounts.
+     */
+    public int size() {
+        return accounts.size();
+    }
+
+    /**
+     * The immutable state of an account.
+     */
+    static final class AccountState {
+        static final AccountState EMPTY = new AccountState(0, BigInteger.ZERO, Code.EMPTY,
+                PersistentMap.empty());
+
+        final long nonce;
+        final BigInteger balance;
+        final Code code;
+        final PersistentMap<DataWord, DataWord> storage;
+
+        AccountState(long nonce, BigInteger balance, Code code, PersistentMap<DataWord, DataWord> storage) {
+            this.nonce = nonce;
+            this.balance = balance;
+            this.code = code;
+            this.storage = storage;
+        }
+
+        AccountState withNonce(long nonce) {
+            return new AccountState(nonce, balance, code, storage);
+        }
+
+        AccountState withBalance(BigInteger balance) {
+            return new AccountState(nonce, balance, code, storage);
+        }
+
+        AccountState withCode(Code code) {
+            return new AccountState(nonce, balance, code, storage);
+        }
+
+        AccountState withStorage(PersistentMap<DataWord, DataWord> storage) {
+            return new AccountState(nonce, balance, code, storage);
+        }
+    }
+}
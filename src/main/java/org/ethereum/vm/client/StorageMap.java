@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import static org.ethereum.vm.util.UInt256.LIMBS;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.util.UInt256;
+
+/**
+ * A map of storage rows, with open addressing and the keys and values stored
+ * inline as 4-limb slots in flat {@code long[]} arrays (see {@link UInt256}).
+ *
+ * Compared to a {@code HashMap<DataWord, DataWord>}, an entry takes roughly 65
+ * bytes of payload plus the free slots, instead of the two DataWord objects,
+ * their limb arrays and the map node, and there's nothing for the GC to trace.
+ * The slot-based {@link #get(long[], int, long[], int)} looks up a row without
+ * allocating at all.
+ *
+ * NULL values are allowed, e.g. to cache the absence of a row; use
+ * {@link #getOrDefault(Object, DataWord)} and
+ * {@link #put(DataWord, DataWord, DataWord)} to tell them from absent keys with
+ * a single probe.
+ *
+ * @ImplNote This class is not thread-safe. Lookups don't write any state, so
+ *           concurrent readers are safe as long as there's no writer. The
+ *           iterators don't support removal.
+ */
+public class StorageMap extends AbstractMap<DataWord, DataWord> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private static final byte FREE = 0;
+    private static final byte VALUE = 1;
+    private static final byte NULL = 2;
+
+    private long[] keys;
+    private long[] values;
+    private byte[] states;
+    private int size;
+
+    public StorageMap() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    public StorageMap(StorageMap other) {
+        this.keys = other.keys.clone();
+        this.values = other.values.clone();
+        this.states = other.states.clone();
+        this.size = other.size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof DataWord && find((DataWord) key) >= 0;
+    }
+
+    @Override
+    public DataWord get(Object key) {
+        if (!(key instanceof DataWord)) {
+            return null;
+        }
+        int i = find((DataWord) key);
+        return i < 0 || states[i] == NULL ? null : DataWord.of(values, i * LIMBS);
+    }
+
+    /**
+     * Looks up a row with a single probe.
+     *
+     * @return the value, which may be NULL, or the default value if the key is not
+     *         in the map
+     */
+    @Override
+    public DataWord getOrDefault(Object key, DataWord defaultValue) {
+        if (!(key instanceof DataWord)) {
+            return defaultValue;
+        }
+        int i = find((DataWord) key);
+        if (i < 0) {
+            return defaultValue;
+        }
+        return states[i] == NULL ? null : DataWord.of(values, i * LIMBS);
+    }
+
+    /**
+     * Looks up a row by the key in the given slot, copying the value into the
+     * destination slot.
+     *
+     * @return whether a non-NULL value has been found
+     */
+    public boolean get(long[] key, int keyOffset, long[] dst, int dstOffset) {
+        int i = find(key, keyOffset);
+        if (i < 0 || states[i] == NULL) {
+            return false;
+        }
+        UInt256.copy(dst, dstOffset, values, i * LIMBS);
+        return true;
+    }
+
+    @Override
+    public DataWord put(DataWord key, DataWord value) {
+        return put(key, value, null);
+    }
+
+    /**
+     * Associates the value with the key, like {@link #put(DataWord, DataWord)}.
+     *
+     * @return the previous value, which may be NULL, or the given marker if the key
+     *         was not in the map
+     */
+    public DataWord put(DataWord key, DataWord value, DataWord absent) {
+        int mask = states.length - 1;
+        int i = hash(key) & mask;
+        while (states[i] != FREE) {
+            if (matches(i, key)) {
+                DataWord previous = states[i] == NULL ? null : DataWord.of(values, i * LIMBS);
+                setValue(i, value);
+                return previous;
+            }
+            i = (i + 1) & mask;
+        }
+
+        key.copyTo(keys, i * LIMBS);
+        setValue(i, value);
+        if (++size > states.length * 3 / 4) {
+            resize(states.length * 2);
+        }
+        return absent;
+    }
+
+    @Override
+    public DataWord remove(Object key) {
+        if (!(key instanceof DataWord)) {
+            return null;
+        }
+        int i = find((DataWord) key);
+        if (i < 0) {
+            return null;
+        }
+        DataWord previous = states[i] == NULL ? null : DataWord.of(values, i * LIMBS);
+        delete(i);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(states, FREE);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<DataWord, DataWord>> entrySet() {
+        return new AbstractSet<Entry<DataWord, DataWord>>() {
+            @Override
+            public Iterator<Entry<DataWord, DataWord>> iterator() {
+                return new Iterator<Entry<DataWord, DataWord>>() {
+                    private int next = advance(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < states.length;
+                    }
+
+                    @Override
+                    public Entry<DataWord, DataWord> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        int i = next;
+                        next = advance(i + 1);
+                        DataWord value = states[i] == NULL ? null : DataWord.of(values, i * LIMBS);
+                        return new SimpleImmutableEntry<>(DataWord.of(keys, i * LIMBS), value);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int advance(int i) {
+        while (i < states.length && states[i] == FREE) {
+            i++;
+        }
+        return i;
+    }
+
+    private int find(DataWord key) {
+        int mask = states.length - 1;
+        for (int i = hash(key) & mask; states[i] != FREE; i = (i + 1) & mask) {
+            if (matches(i, key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int i, DataWord key) {
+        int k = i * LIMBS;
+        return keys[k] == key.getLimb(0) && keys[k + 1] == key.getLimb(1) && keys[k + 2] == key.getLimb(2)
+                && keys[k + 3] == key.getLimb(3);
+    }
+
+    /**
+     * Returns the index of the entry with the given key, or -1 if not exist.
+     */
+    private int find(long[] key, int offset) {
+        int mask = states.length - 1;
+        for (int i = hash(key, offset) & mask; states[i] != FREE; i = (i + 1) & mask) {
+            if (UInt256.equals(keys, i * LIMBS, key, offset)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void setValue(int i, DataWord value) {
+        if (value == null) {
+            states[i] = NULL;
+        } else {
+            value.copyTo(values, i * LIMBS);
+            states[i] = VALUE;
+        }
+    }
+
+    /**
+     * Removes the entry at the given index, shifting back the entries of the same
+     * probe sequence so that no tombstone is needed.
+     */
+    private void delete(int i) {
+        int mask = states.length - 1;
+        for (int j = (i + 1) & mask; states[j] != FREE; j = (j + 1) & mask) {
+            int home = hash(keys, j * LIMBS) & mask;
+            // move j into the hole at i, unless its home lies cyclically in (i, j]
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                UInt256.copy(keys, i * LIMBS, keys, j * LIMBS);
+                UInt256.copy(values, i * LIMBS, values, j * LIMBS);
+                states[i] = states[j];
+                i = j;
+            }
+        }
+        states[i] = FREE;
+        size--;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        byte[] oldStates = states;
+
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldStates.length; j++) {
+            if (oldStates[j] != FREE) {
+                int i = hash(oldKeys, j * LIMBS) & mask;
+                while (states[i] != FREE) {
+                    i = (i + 1) & mask;
+                }
+                UInt256.copy(keys, i * LIMBS, oldKeys, j * LIMBS);
+                UInt256.copy(values, i * LIMBS, oldValues, j * LIMBS);
+                states[i] = oldStates[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * LIMBS];
+        values = new long[capacity * LIMBS];
+        states = new byte[capacity];
+    }
+
+    private static int hash(DataWord key) {
+        return hash(key.getLimb(0), key.getLimb(1), key.getLimb(2), key.getLimb(3));
+    }
+
+    private static int hash(long[] key, int offset) {
+        return hash(key[offset], key[offset + 1], key[offset + 2], key[offset + 3]);
+    }
+
+    private static int hash(long l0, long l1, long l2, long l3) {
+        long h = l0 ^ Long.rotateLeft(l1, 16) ^ Long.rotateLeft(l2, 32) ^ Long.rotateLeft(l3, 48);
+        // the finalizer of MurmurHash3, which spreads sequential keys
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb34a11e7e8f5L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -82,4 +82,14 @@ public interface Transaction {
      * @return the specified gas price with a decimal of <em>18</em>, not NULL.
      */
     BigInteger getGasPrice();
+
+    /**
+     * Returns the accounts and storage rows this transaction is expected to access,
+     * e.g. as recorded from a previous execution, used for prefetching only.
+     *
+     * @return the access hints, or NULL if none
+     */
+    default AccessSet getAccessHints() {
+        return null;
+    }
 }
@@ -25,7 +25,9 @@ import java.util.ArrayList;
 
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.OpCode;
+import org.ethereum.vm.VM;
 import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.ExecutionContext;
 import org.ethereum.vm.program.Program;
 import org.ethereum.vm.program.ProgramResult;
 import org.ethereum.vm.program.invoke.ProgramInvoke;
@@ -50,6 +52,11 @@ public class TransactionExecutor {
     private final ProgramInvokeFactory invokeFactory;
     private final long gasUsedInTheBlock;
 
+    private final VM vm;
+    private final ExecutionContext context;
+
+    private Transaction next;
+
     private TransactionReceipt receipt;
 
     public TransactionExecutor(Transaction tx, Block block, Repository repo, BlockStore blockStore) {
@@ -58,6 +65,21 @@ public class TransactionExecutor {
 
     public TransactionExecutor(Transaction tx, Block block, Repository repo, BlockStore blockStore,
             Spec spec, ProgramInvokeFactory invokeFactory, long gasUsedInTheBlock) {
+        this(tx, block, repo, blockStore, spec, invokeFactory, gasUsedInTheBlock, null, null);
+    }
+
+    /**
+     * Creates a transaction executor which runs on the given VM and reuses the call
+     * frames of the given context.
+     *
+     * @param vm
+     *            the VM, or null to use the default one of the spec
+     * @param context
+     *            the execution context, or null to allocate new frames
+     */
+    public TransactionExecutor(Transaction tx, Block block, Repository repo, BlockStore blockStore,
+            Spec spec, ProgramInvokeFactory invokeFactory, long gasUsedInTheBlock, VM vm,
+            ExecutionContext context) {
         this.tx = tx;
         this.block = block;
         this.basicTxCost = spec.getTransactionCost(tx);
@@ -68,6 +90,38 @@ public class TransactionExecutor {
         this.spec = spec;
         this.invokeFactory = invokeFactory;
         this.gasUsedInTheBlock = gasUsedInTheBlock;
+
+        this.vm = vm;
+        this.context = context;
+    }
+
+    /**
+     * Sets the transaction to be executed after this one, whose accounts are
+     * prefetched from the repository while this one executes.
+     *
+     * @param next
+     *            the next transaction, or NULL
+     */
+    public void setNextTransaction(Transaction next) {
+        this.next = next;
+    }
+
+    /**
+     * Returns the accounts and storage rows a transaction is known to access.
+     *
+     * @param tx
+     *            the transaction
+     * @return the sender, the recipient if any, and the access hints
+     */
+    public static AccessSet getAccessSet(Transaction tx) {
+        AccessSet accessSet = new AccessSet().addAccount(tx.getFrom());
+        if (!tx.isCreate()) {
+            accessSet.addAccount(tx.getTo());
+        }
+        if (tx.getAccessHints() != null) {
+            accessSet.addAll(tx.getAccessHints());
+        }
+        return accessSet;
     }
 
     /**
@@ -118,7 +172,10 @@ public class TransactionExecutor {
         // phantom invoke
         byte[] ops = EMPTY_BYTE_ARRAY;
         ProgramInvoke invoke = invokeFactory.createProgramInvoke(tx, block, repo, blockStore);
-        Program program = new Program(ops, invoke, spec);
+        Program program = (context == null) ? new Program(ops, invoke, spec) : context.acquire(ops, invoke, spec);
+        if (vm != null) {
+            program.setVM(vm);
+        }
 
         // [1] spend basic transaction cost
         program.spendGas(basicTxCost, "Basic transaction cost");
@@ -192,21 +249,32 @@ public class TransactionExecutor {
             return receipt;
         }
 
+        // warm up the next transaction
+        if (next != null) {
+            repo.prefetch(getAccessSet(next));
+        }
+
         // prepare
         if (!prepare()) {
             return null;
         }
 
         // execute
-        ProgramResult result = execute();
-
-        receipt = new TransactionReceipt(tx,
-                result.getException() == null && !result.isRevert(),
-                result.getGasUsed(),
-                result.getReturnData(),
-                result.getLogs(),
-                new ArrayList<>(result.getDeleteAccounts()),
-                result.getInternalTransactions());
-        return receipt;
+        try {
+            ProgramResult result = execute();
+
+            receipt = new TransactionReceipt(tx,
+                    result.getException() == null && !result.isRevert(),
+                    result.getGasUsed(),
+                    result.getReturnData(),
+                    result.getLogs(),
+                    new ArrayList<>(result.getDeleteAccounts()),
+                    result.getInternalTransactions());
+            return receipt;
+        } finally {
+            if (context != null) {
+                context.release();
+            }
+        }
     }
 }
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.parallel;
+
+import java.util.Objects;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.util.ByteArrayWrapper;
+
+/**
+ * A versioned item of the state: the basic state of an account, its code, or
+ * one of its storage rows.
+ */
+final class Location {
+
+    static final byte ACCOUNT = 0;
+    static final byte CODE = 1;
+    static final byte STORAGE = 2;
+
+    final byte type;
+    final ByteArrayWrapper address;
+    final DataWord key; // NULL unless a storage row
+
+    private Location(byte type, ByteArrayWrapper address, DataWord key) {
+        this.type = type;
+        this.address = address;
+        this.key = key;
+    }
+
+    static Location account(byte[] address) {
+        return new Location(ACCOUNT, new ByteArrayWrapper(address), null);
+    }
+
+    static Location code(byte[] address) {
+        return new Location(CODE, new ByteArrayWrapper(address), null);
+    }
+
+    static Location storage(byte[] address, DataWord key) {
+        return new Location(STORAGE, new ByteArrayWrapper(address), key);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Location)) {
+            return false;
+        }
+        Location other = (Location) o;
+        return type == other.type && address.equals(other.address) && Objects.equals(key, other.key);
+    }
+
+    @Override
+    public int hashCode() {
+        return (address.hashCode() * 31 + Objects.hashCode(key)) * 31 + type;
+    }
+}
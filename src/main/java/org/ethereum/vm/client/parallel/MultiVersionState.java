@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.parallel;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.client.JournaledRepository;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.client.parallel.Version.AccountValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A multi-version, in-memory state on top of a base repository, which allows
+ * the transactions of a block to be executed speculatively in parallel while
+ * producing the same state as the sequential execution.
+ *
+ * Every location of the state has a chain of versions, tagged with the index of
+ * the writing transaction. A transaction reads the latest versions written by
+ * the preceding transactions, falling back to the base repository, and records
+ * the versions it has observed. Once all the preceding transactions are final,
+ * a transaction is valid if it would still observe the same versions; otherwise
+ * it is executed again, see {@link #execute(int, Task, ExecutorService)}.
+ *
+ * @ImplNote Reads from the base repository are serialized on it. The state is
+ *           meant to execute a single batch of transactions and be committed,
+ *           or discarded, afterwards.
+ */
+public class MultiVersionState {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiVersionState.class);
+
+    private final Repository base;
+
+    private final Map<Location, ConcurrentSkipListMap<Integer, Version>> chains = new ConcurrentHashMap<>();
+    private final Map<Location, Version> baseVersions = new ConcurrentHashMap<>();
+
+    // the locations written by the last published incarnation of every transaction
+    private final Map<Integer, Set<Location>> published = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> incarnations = new ConcurrentHashMap<>();
+
+    public MultiVersionState(Repository base) {
+        this.base = base;
+    }
+
+    /**
+     * A unit of work executed against the state, typically a transaction.
+     */
+    public interface Task<R> {
+
+        /**
+         * Executes the task. This may be called several times, concurrently with other
+         * tasks, and only the last result is kept.
+         *
+         * @param index
+         *            the task index
+         * @param repository
+         *            the repository to run against
+         * @return the result
+         */
+        R run(int index, Repository repository);
+
+        /**
+         * Checks whether a result is still valid, apart from the state. This is called
+         * in order, once all the preceding tasks are committed; an invalid result is
+         * discarded and the task is run again.
+         *
+         * @param index
+         *            the task index
+         * @param result
+         *            the speculative result
+         * @return true if valid
+         */
+        default boolean isValid(int index, R result) {
+            return true;
+        }
+
+        /**
+         * Called in order with the final result of every task.
+         *
+         * @param index
+         *            the task index
+         * @param result
+         *            the final result
+         */
+        default void onCommit(int index, R result) {
+        }
+    }
+
+    /**
+     * Executes the given number of tasks speculatively on the executor, then
+     * validates them in order, executing again those which have observed stale
+     * state.
+     *
+     * @param count
+     *            the number of tasks
+     * @param task
+     *            the task
+     * @param executor
+     *            the executor to run the speculative executions on
+     * @return the final results, in order
+     */
+    public <R> List<R> execute(int count, Task<R> task, ExecutorService executor) {
+        List<Future<Attempt<R>>> futures = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int index = i;
+            futures.add(executor.submit(() -> attempt(index, task)));
+        }
+
+        List<R> results = new ArrayList<>(count);
+        int reruns = 0;
+        for (int i = 0; i < count; i++) {
+            Attempt<R> attempt = await(futures.get(i));
+            if (attempt == null || !validate(attempt.view) || !task.isValid(i, attempt.result)) {
+                // all the preceding tasks are final now, so this one will be too
+                attempt = attempt(i, task);
+                reruns++;
+            }
+            task.onCommit(i, attempt.result);
+            results.add(attempt.result);
+        }
+
+        logger.debug("Executed {} tasks, {} executed again", count, reruns);
+        return results;
+    }
+
+    /**
+     * Writes the final state into the base repository, without committing it.
+     */
+    public void commit() {
+        // accounts first, as re-creating an account clears its storage
+        for (Map.Entry<Location, ConcurrentSkipListMap<Integer, Version>> entry : chains.entrySet()) {
+            Location location = entry.getKey();
+            if (location.type == Location.ACCOUNT && !entry.getValue().isEmpty()) {
+                commitAccount(location, entry.getValue().lastEntry().getValue());
+            }
+        }
+
+        for (Map.Entry<Location, ConcurrentSkipListMap<Integer, Version>> entry : chains.entrySet()) {
+            Location location = entry.getKey();
+            if (location.type == Location.ACCOUNT || entry.getValue().isEmpty()) {
+                continue;
+            }
+            Version version = entry.getValue().lastEntry().getValue();
+            Version account = read(Location.account(location.address.getData()), Integer.MAX_VALUE);
+            if (!account.account().exists || version.generation != account.generation) {
+                continue;
+            }
+
+            byte[] address = location.address.getData();
+            if (location.type == Location.CODE) {
+                base.saveCode(address, (byte[]) version.value);
+            } else {
+                base.putStorageRow(address, location.key, (DataWord) version.value);
+            }
+        }
+    }
+
+    private void commitAccount(Location location, Version version) {
+        byte[] address = location.address.getData();
+        AccountValue account = version.account();
+
+        if (!account.exists || version.generation != 0) {
+            if (base.exists(address)) {
+                base.delete(address);
+            }
+            if (!account.exists) {
+                return;
+            }
+        }
+        base.createAccount(address);
+
+        if (account.nonce != base.getNonce(address)) {
+            base.setNonce(address, account.nonce);
+        }
+        BigInteger delta = account.balance.subtract(base.getBalance(address));
+        if (delta.signum() != 0) {
+            base.addBalance(address, delta);
+        }
+    }
+
+    /**
+     * Returns the latest version of a location written before the given
+     * transaction.
+     */
+    Version read(Location location, int txIndex) {
+        ConcurrentSkipListMap<Integer, Version> chain = chains.get(location);
+        if (chain != null) {
+            Map.Entry<Integer, Version> entry = chain.lowerEntry(txIndex);
+            if (entry != null) {
+                return entry.getValue();
+            }
+        }
+        return baseVersions.computeIfAbsent(location, this::readBase);
+    }
+
+    /**
+     * Checks whether a transaction would still observe the same versions.
+     */
+    boolean validate(TransactionView view) {
+        for (Map.Entry<Location, Version> entry : view.reads.entrySet()) {
+            if (read(entry.getKey(), view.getTxIndex()) != entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Publishes the writes of a transaction, replacing those of its previous
+     * incarnation.
+     */
+    void publish(TransactionView view) {
+        int txIndex = view.getTxIndex();
+        for (Map.Entry<Location, Version> entry : view.writes.entrySet()) {
+            chains.computeIfAbsent(entry.getKey(), k -> new ConcurrentSkipListMap<>()).put(txIndex,
+                    entry.getValue());
+        }
+
+        Set<Location> previous = published.put(txIndex, new HashSet<>(view.writes.keySet()));
+        if (previous != null) {
+            for (Location location : previous) {
+                if (!view.writes.containsKey(location)) {
+                    chains.get(location).remove(txIndex);
+                }
+            }
+        }
+    }
+
+    private <R> Attempt<R> attempt(int txIndex, Task<R> task) {
+        int incarnation = incarnations.merge(txIndex, 1, Integer::sum);
+        TransactionView view = new TransactionView(this, txIndex, incarnation);
+
+        JournaledRepository repository = new JournaledRepository(view);
+        R result = task.run(txIndex, repository);
+        repository.commit();
+
+        publish(view);
+        return new Attempt<>(view, result);
+    }
+
+    private <R> Attempt<R> await(Future<Attempt<R>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // most likely due to inconsistent speculative state
+            logger.debug("Speculative execution failed", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while executing", e);
+        }
+    }
+
+    private Version readBase(Location location) {
+        byte[] address = location.address.getData();
+        synchronized (base) {
+            switch (location.type) {
+            case Location.ACCOUNT:
+                AccountValue account = base.exists(address)
+                        ? new AccountValue(true, base.getNonce(address), base.getBalance(address))
+                        : AccountValue.ABSENT;
+                return new Version(Version.BASE, 0, 0, account);
+            case Location.CODE:
+                return new Version(Version.BASE, 0, 0, base.getCode(address));
+            default:
+                return new Version(Version.BASE, 0, 0, base.getStorageRow(address, location.key));
+            }
+        }
+    }
+
+    private static class Attempt<R> {
+        private final TransactionView view;
+        private final R result;
+
+        private Attempt(TransactionView view, R result) {
+            this.view = view;
+            this.result = result;
+        }
+    }
+}
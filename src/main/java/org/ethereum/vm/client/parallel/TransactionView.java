@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.parallel;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.client.JournaledRepository;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.client.parallel.Version.AccountValue;
+import org.ethereum.vm.util.ByteArrayUtil;
+
+/**
+ * The view of a {@link MultiVersionState} by one incarnation of a transaction.
+ *
+ * Reads observe the latest values written by the preceding transactions, and
+ * record the versions observed; writes are buffered until published.
+ *
+ * @ImplNote This class is not thread-safe.
+ */
+class TransactionView implements Repository {
+
+    private final MultiVersionState state;
+    private final int txIndex;
+    private final int incarnation;
+
+    final Map<Location, Version> reads = new HashMap<>();
+    final Map<Location, Version> writes = new LinkedHashMap<>();
+
+    private int generations;
+
+    TransactionView(MultiVersionState state, int txIndex, int incarnation) {
+        this.state = state;
+        this.txIndex = txIndex;
+        this.incarnation = incarnation;
+    }
+
+    int getTxIndex() {
+        return txIndex;
+    }
+
+    private Version read(Location location) {
+        Version version = writes.get(location);
+        if (version == null) {
+            version = state.read(location, txIndex);
+            reads.putIfAbsent(location, version);
+        }
+        return version;
+    }
+
+    private void write(Location location, long generation, Object value) {
+        writes.put(location, new Version(txIndex, incarnation, generation, value));
+    }
+
+    private Version getAccount(byte[] address) {
+        return read(Location.account(address));
+    }
+
+    private Version getOrCreateAccount(byte[] address) {
+        Version account = getAccount(address);
+        if (!account.account().exists) {
+            write(Location.account(address), account.generation, new AccountValue(true, 0, BigInteger.ZERO));
+            account = getAccount(address);
+        }
+        return account;
+    }
+
+    /**
+     * Returns the value of a code or storage location, if it belongs to the current
+     * generation of the account.
+     */
+    private Object getAccountItem(byte[] address, Location location) {
+        Version account = getAccount(address);
+        if (!account.account().exists) {
+            return null;
+        }
+        Version item = read(location);
+        return item.generation == account.generation ? item.value : null;
+    }
+
+    @Override
+    public boolean exists(byte[] address) {
+        return getAccount(address).account().exists;
+    }
+
+    @Override
+    public void createAccount(byte[] address) {
+        getOrCreateAccount(address);
+    }
+
+    @Override
+    public void delete(byte[] address) {
+        if (exists(address)) {
+            // greater than the generations of all the preceding transactions
+            long generation = ((long) (txIndex + 1) << 32) | ++generations;
+            write(Location.account(address), generation, AccountValue.ABSENT);
+        }
+    }
+
+    @Override
+    public long increaseNonce(byte[] address) {
+        return setNonce(address, getNonce(address) + 1);
+    }
+
+    @Override
+    public long setNonce(byte[] address, long nonce) {
+        Version account = getOrCreateAccount(address);
+        write(Location.account(address), account.generation,
+                new AccountValue(true, nonce, account.account().balance));
+        return nonce;
+    }
+
+    @Override
+    public long getNonce(byte[] address) {
+        return getAccount(address).account().nonce;
+    }
+
+    @Override
+    public void saveCode(byte[] address, byte[] code) {
+        Version account = getOrCreateAccount(address);
+        write(Location.code(address), account.generation, code);
+    }
+
+    @Override
+    public byte[] getCode(byte[] address) {
+        if (!exists(address)) {
+            return null;
+        }
+        return ByteArrayUtil.nullToEmpty((byte[]) getAccountItem(address, Location.code(address)));
+    }
+
+    @Override
+    public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+        Version account = getOrCreateAccount(address);
+        write(Location.storage(address, key), account.generation, value);
+    }
+
+    @Override
+    public DataWord getStorageRow(byte[] address, DataWord key) {
+        return (DataWord) getAccountItem(address, Location.storage(address, key));
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] address) {
+        return getAccount(address).account().balance;
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] address, BigInteger value) {
+        Version account = getOrCreateAccount(address);
+        BigInteger balance = account.account().balance.add(value);
+        write(Location.account(address), account.generation,
+                new AccountValue(true, account.account().nonce, balance));
+        return balance;
+    }
+
+    @Override
+    public Repository startTracking() {
+        return new JournaledRepository(this);
+    }
+
+    /**
+     * Not supported, as the view is bound to a transaction.
+     *
+     * @throws UnsupportedOperationException
+     */
+    @Override
+    public Repository clone() {
+        throw new UnsupportedOperationException("A transaction view can't be cloned");
+    }
+
+    /**
+     * Does nothing, as the writes are published by the multi-version state.
+     */
+    @Override
+    public void commit() {
+    }
+
+    /**
+     * Discards the buffered writes.
+     */
+    @Override
+    public void rollback() {
+        writes.clear();
+    }
+}
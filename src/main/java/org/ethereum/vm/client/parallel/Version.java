@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.parallel;
+
+import java.math.BigInteger;
+
+/**
+ * A value of a {@link Location}, as written by an incarnation of a transaction.
+ *
+ * Deleting an account assigns it a new generation, greater than any generation
+ * of the preceding transactions, and the code and storage rows are only visible
+ * while their generation matches the one of the account. This way, deleting an
+ * account hides its storage without enumerating it.
+ */
+final class Version {
+
+    // the transaction index of the values read from the base repository
+    static final int BASE = -1;
+
+    final int txIndex;
+    final int incarnation;
+    final long generation;
+    final Object value;
+
+    Version(int txIndex, int incarnation, long generation, Object value) {
+        this.txIndex = txIndex;
+        this.incarnation = incarnation;
+        this.generation = generation;
+        this.value = value;
+    }
+
+    AccountValue account() {
+        return (AccountValue) value;
+    }
+
+    /**
+     * The basic state of an account.
+     */
+    static final class AccountValue {
+        static final AccountValue ABSENT = new AccountValue(false, 0, BigInteger.ZERO);
+
+        final boolean exists;
+        final long nonce;
+        final BigInteger balance;
+
+        AccountValue(boolean exists, long nonce, BigInteger balance) {
+            this.exists = exists;
+            this.nonce = nonce;
+            this.balance = balance;
+        }
+    }
+}
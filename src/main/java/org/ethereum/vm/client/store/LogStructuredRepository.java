@@ -0,0 +1,370 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.client.JournaledRepository;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.util.ByteArrayUtil;
+import org.ethereum.vm.util.HashUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent repository backed by a {@link SegmentLog}.
+ *
+ * Accounts, code and storage rows are stored as separate log entries. The
+ * storage keys include the incarnation of the account, which is bumped whenever
+ * a deleted account is re-created, so that deleting an account doesn't need to
+ * enumerate its storage; the stale entries are dropped by compaction.
+ *
+ * Code is stored by its hash, once for all the accounts sharing it, and the
+ * account entry keeps the code hash and size, so that neither needs the code to
+ * be read. Code entries are never dropped by compaction.
+ *
+ * Writes go straight to the log and become durable on {@link #commit()}, which
+ * syncs them to disk as a batch. Trackers are {@link JournaledRepository}
+ * instances on top of this repository, which write into it when committed.
+ *
+ * @ImplNote This class is not thread-safe, apart from the background
+ *           compaction.
+ */
+public class LogStructuredRepository implements Repository, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LogStructuredRepository.class);
+
+    private static final byte ACCOUNT = 0;
+    private static final byte CODE = 1;
+    private static final byte STORAGE = 2;
+
+    private static final int ADDRESS_SIZE = 20;
+
+    private final SegmentLog log;
+    private final ScheduledExecutorService compactor;
+
+    /**
+     * Opens a repository in the given directory, without background compaction.
+     *
+     * @param directory
+     *            the directory of the data files
+     * @throws IOException
+     */
+    public LogStructuredRepository(Path directory) throws IOException {
+        this(directory, SegmentLog.DEFAULT_SEGMENT_SIZE, 0);
+    }
+
+    /**
+     * Opens a repository in the given directory.
+     *
+     * @param directory
+     *            the directory of the data files
+     * @param segmentSize
+     *            the size of a segment file, in bytes
+     * @param compactionPeriod
+     *            the period of the background compaction, in milliseconds, or 0 to
+     *            compact on demand only
+     * @throws IOException
+     */
+    public LogStructuredRepository(Path directory, int segmentSize, long compactionPeriod) throws IOException {
+        this.log = new SegmentLog(directory, segmentSize);
+
+        if (compactionPeriod > 0) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "repository-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            this.compactor.scheduleWithFixedDelay(this::compactQuietly, compactionPeriod, compactionPeriod,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.compactor = null;
+        }
+    }
+
+    @Override
+    public boolean exists(byte[] address) {
+        AccountRecord account = getAccount(address);
+        return account != null && account.exists;
+    }
+
+    @Override
+    public void createAccount(byte[] address) {
+        getOrCreateAccount(address);
+    }
+
+    @Override
+    public void delete(byte[] address) {
+        AccountRecord account = getAccount(address);
+        if (account != null && account.exists) {
+            putAccount(address, new AccountRecord(false, 0, account.incarnation, BigInteger.ZERO));
+        }
+    }
+
+    @Override
+    public long increaseNonce(byte[] address) {
+        return setNonce(address, getNonce(address) + 1);
+    }
+
+    @Override
+    public long setNonce(byte[] address, long nonce) {
+        AccountRecord account = getOrCreateAccount(address);
+        account.nonce = nonce;
+        putAccount(address, account);
+        return nonce;
+    }
+
+    @Override
+    public long getNonce(byte[] address) {
+        AccountRecord account = getAccount(address);
+        return account == null || !account.exists ? 0 : account.nonce;
+    }
+
+    @Override
+    public void saveCode(byte[] address, byte[] code) {
+        AccountRecord account = getOrCreateAccount(address);
+        code = ByteArrayUtil.nullToEmpty(code);
+        account.codeHash = code.length == 0 ? HashUtil.getEmptyDataHash() : HashUtil.keccak256(code);
+        account.codeSize = code.length;
+        putAccount(address, account);
+
+        byte[] key = codeKey(account.codeHash);
+        if (code.length != 0 && log.get(key) == null) {
+            log.put(key, code);
+        }
+    }
+
+    @Override
+    public byte[] getCode(byte[] address) {
+        AccountRecord account = getAccount(address);
+        if (account == null || !account.exists) {
+            return null;
+        }
+        return account.codeSize == 0 ? new byte[0] : log.get(codeKey(account.codeHash));
+    }
+
+    @Override
+    public int getCodeSize(byte[] address) {
+        AccountRecord account = getAccount(address);
+        return account == null || !account.exists ? 0 : account.codeSize;
+    }
+
+    @Override
+    public byte[] getCodeHash(byte[] address) {
+        AccountRecord account = getAccount(address);
+        return account == null || !account.exists ? HashUtil.getEmptyDataHash() : account.codeHash;
+    }
+
+    @Override
+    public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+        AccountRecord account = getOrCreateAccount(address);
+        log.put(storageKey(address, account.incarnation, key), value.getData());
+    }
+
+    @Override
+    public DataWord getStorageRow(byte[] address, DataWord key) {
+        AccountRecord account = getAccount(address);
+        if (account == null || !account.exists) {
+            return null;
+        }
+        byte[] value = log.get(storageKey(address, account.incarnation, key));
+        return value == null ? null : DataWord.of(value);
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] address) {
+        AccountRecord account = getAccount(address);
+        return account == null || !account.exists ? BigInteger.ZERO : account.balance;
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] address, BigInteger value) {
+        AccountRecord account = getOrCreateAccount(address);
+        account.balance = account.balance.add(value);
+        putAccount(address, account);
+        return account.balance;
+    }
+
+    /**
+     * Starts a journaled tracker, which writes into this repository when committed.
+     */
+    @Override
+    public Repository startTracking() {
+        return new JournaledRepository(this);
+    }
+
+    /**
+     * Not supported, as it would copy the whole persistent state.
+     *
+     * @throws UnsupportedOperationException
+     */
+    @Override
+    public Repository clone() {
+        throw new UnsupportedOperationException("A persistent repository can't be cloned");
+    }
+
+    /**
+     * Syncs the writes since the last commit to disk.
+     */
+    @Override
+    public void commit() {
+        log.commit();
+    }
+
+    /**
+     * Discards the writes since the last commit.
+     */
+    @Override
+    public void rollback() {
+        log.rollback();
+    }
+
+    /**
+     * Reclaims the space of the superseded entries, including the code and storage
+     * of deleted accounts.
+     *
+     * @return the number of segment files reclaimed
+     */
+    public int compact() {
+        return log.compact(this::isLive);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.close();
+    }
+
+    private void compactQuietly() {
+        try {
+            int n = compact();
+            if (n > 0) {
+                logger.debug("Compacted {} segments", n);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Failed to compact the repository", e);
+        }
+    }
+
+    /**
+     * Returns whether an entry belongs to the current incarnation of its account.
+     */
+    private boolean isLive(byte[] key) {
+        if (key[0] != STORAGE) {
+            return true;
+        }
+        byte[] address = Arrays.copyOfRange(key, 1, 1 + ADDRESS_SIZE);
+        long incarnation = ByteBuffer.wrap(key, 1 + ADDRESS_SIZE, 8).getLong();
+
+        AccountRecord account = getAccount(address);
+        return account != null && account.exists && account.incarnation == incarnation;
+    }
+
+    private AccountRecord getAccount(byte[] address) {
+        byte[] value = log.get(accountKey(address));
+        return value == null ? null : AccountRecord.decode(value);
+    }
+
+    private AccountRecord getOrCreateAccount(byte[] address) {
+        AccountRecord account = getAccount(address);
+        if (account == null || !account.exists) {
+            long incarnation = account == null ? 0 : account.incarnation + 1;
+            account = new AccountRecord(true, 0, incarnation, BigInteger.ZERO);
+            putAccount(address, account);
+        }
+        return account;
+    }
+
+    private void putAccount(byte[] address, AccountRecord account) {
+        log.put(accountKey(address), account.encode());
+    }
+
+    private static byte[] accountKey(byte[] address) {
+        return ByteBuffer.allocate(1 + address.length).put(ACCOUNT).put(address).array();
+    }
+
+    private static byte[] codeKey(byte[] hash) {
+        return ByteBuffer.allocate(1 + hash.length).put(CODE).put(hash).array();
+    }
+
+    private static byte[] storageKey(byte[] address, long incarnation, DataWord key) {
+        return ByteBuffer.allocate(1 + address.length + 8 + DataWord.SIZE).put(STORAGE).put(address)
+                .putLong(incarnation).put(key.getData()).array();
+    }
+
+    /**
+     * An account entry; deleted accounts keep their entry to remember the
+     * incarnation.
+     */
+    private static class AccountRecord {
+        private static final int HASH_SIZE = 32;
+
+        private final boolean exists;
+        private long nonce;
+        private final long incarnation;
+        private BigInteger balance;
+        private byte[] codeHash = HashUtil.getEmptyDataHash();
+        private int codeSize;
+
+        private AccountRecord(boolean exists, long nonce, long incarnation, BigInteger balance) {
+            this.exists = exists;
+            this.nonce = nonce;
+            this.incarnation = incarnation;
+            this.balance = balance;
+        }
+
+        private byte[] encode() {
+            byte[] b = balance.toByteArray();
+            return ByteBuffer.allocate(1 + 8 + 8 + HASH_SIZE + 4 + b.length).put((byte) (exists ? 1 : 0))
+                    .putLong(nonce).putLong(incarnation).put(codeHash).putInt(codeSize).put(b).array();
+        }
+
+        private static AccountRecord decode(byte[] value) {
+            ByteBuffer buffer = ByteBuffer.wrap(value);
+            boolean exists = buffer.get() != 0;
+            long nonce = buffer.getLong();
+            long incarnation = buffer.getLong();
+            byte[] codeHash = new byte[HASH_SIZE];
+            buffer.get(codeHash);
+            int codeSize = buffer.getInt();
+            byte[] b = new byte[buffer.remaining()];
+            buffer.get(b);
+
+            AccountRecord account = new AccountRecord(exists, nonce, incarnation, new BigInteger(b));
+            account.codeHash = codeHash;
+            account.codeSize = codeSize;
+            return account;
+        }
+    }
+}
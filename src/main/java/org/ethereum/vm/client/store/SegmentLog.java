@@ -0,0 +1,474 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.ethereum.vm.util.ByteArrayWrapper;
+
+/**
+ * An append-only key-value log over memory-mapped segment files, with an
+ * in-memory hash index from the keys to their latest records.
+ *
+ * Writes are appended to the head segment and become durable as a batch on
+ * {@link #commit()}, which appends a commit marker and forces the touched
+ * segments to disk. On startup, the segments are replayed up to the last commit
+ * marker; a torn or uncommitted tail is discarded. Superseded records are
+ * reclaimed by {@link #compact(Predicate)}, which copies the live records of
+ * sparse segments to the head and deletes them.
+ *
+ * Each record is laid out as the key length, the value length (-1 for a commit
+ * marker), the key, the value and a CRC32 of all the preceding fields. A zero
+ * header marks the end of the data in a segment.
+ *
+ * @ImplNote All the methods are synchronized, so that compaction can run from a
+ *           background thread.
+ */
+public class SegmentLog implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final Pattern FILE_NAME = Pattern.compile("segment-(\\d+)\\.log");
+
+    private static final int HEADER_SIZE = 8;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int COMMIT = -1;
+
+    // compact the segments less than half live
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    private final Path directory;
+    private final int segmentSize;
+
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private final Map<ByteArrayWrapper, Long> index = new HashMap<>();
+    private final Map<ByteArrayWrapper, Long> pending = new HashMap<>();
+
+    private Segment head;
+    // the position right after the last commit marker
+    private int committedSegment;
+    private int committedOffset;
+
+    /**
+     * Opens the log in the given directory, recovering the committed records.
+     *
+     * @param directory
+     *            the directory of the segment files, created if not exist
+     * @param segmentSize
+     *            the size of a segment file, in bytes
+     * @throws IOException
+     */
+    public SegmentLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    int id = Integer.parseInt(matcher.group(1));
+                    segments.put(id, new Segment(id, file, 0));
+                }
+            }
+        }
+        recover();
+    }
+
+    /**
+     * Returns the value of a key, including the uncommitted writes.
+     *
+     * @param key
+     *            the key
+     * @return the value, or NULL if not exist
+     */
+    public synchronized byte[] get(byte[] key) {
+        ByteArrayWrapper k = new ByteArrayWrapper(key);
+        Long position = pending.get(k);
+        if (position == null) {
+            position = index.get(k);
+        }
+        if (position == null) {
+            return null;
+        }
+
+        Segment segment = segments.get(segmentOf(position));
+        int offset = offsetOf(position);
+        int keyLength = segment.buffer.getInt(offset);
+        byte[] value = new byte[segment.buffer.getInt(offset + 4)];
+        read(segment.buffer, offset + HEADER_SIZE + keyLength, value);
+        return value;
+    }
+
+    /**
+     * Appends a value for a key, which becomes durable on the next commit.
+     *
+     * @param key
+     *            the key
+     * @param value
+     *            the value
+     * @throws StoreException
+     *             if the log fails to grow
+     */
+    public synchronized void put(byte[] key, byte[] value) {
+        pending.put(new ByteArrayWrapper(key), append(key, value));
+    }
+
+    /**
+     * Makes the writes since the last commit durable.
+     *
+     * @throws StoreException
+     *             if the segments fail to be written to disk
+     */
+    public synchronized void commit() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        append(new byte[0], null);
+        for (Map.Entry<ByteArrayWrapper, Long> entry : pending.entrySet()) {
+            index(entry.getKey(), entry.getValue());
+        }
+        pending.clear();
+
+        for (Segment segment : segments.tailMap(committedSegment).values()) {
+            segment.buffer.force();
+        }
+        committedSegment = head.id;
+        committedOffset = head.size;
+    }
+
+    /**
+     * Discards the writes since the last commit.
+     */
+    public synchronized void rollback() {
+        pending.clear();
+        truncate(committedSegment, committedOffset);
+    }
+
+    /**
+     * Compacts the segments which are mostly superseded, if there are no
+     * uncommitted writes.
+     *
+     * @param retain
+     *            decides whether the latest record of a key is kept; the keys
+     *            rejected are removed from the log
+     * @return the number of segments reclaimed
+     * @throws StoreException
+     *             if the segments fail to be written or deleted
+     */
+    public synchronized int compact(Predicate<byte[]> retain) {
+        if (!pending.isEmpty()) {
+            return 0;
+        }
+
+        List<Segment> sparse = new ArrayList<>();
+        for (Segment segment : segments.headMap(head.id).values()) {
+            if (segment.live < segment.size * COMPACTION_THRESHOLD) {
+                sparse.add(segment);
+            }
+        }
+
+        for (Segment segment : sparse) {
+            for (int offset = 0, length; (length = recordLength(segment, offset)) > 0; offset += length) {
+                int keyLength = segment.buffer.getInt(offset);
+                int valueLength = segment.buffer.getInt(offset + 4);
+                if (valueLength == COMMIT) {
+                    continue;
+                }
+
+                byte[] key = new byte[keyLength];
+                read(segment.buffer, offset + HEADER_SIZE, key);
+                ByteArrayWrapper k = new ByteArrayWrapper(key);
+                Long position = index.get(k);
+                if (position == null || position != positionOf(segment.id, offset)) {
+                    continue; // superseded
+                }
+
+                if (retain.test(key)) {
+                    byte[] value = new byte[valueLength];
+                    read(segment.buffer, offset + HEADER_SIZE + keyLength, value);
+                    pending.put(k, append(key, value));
+                } else {
+                    index.remove(k);
+                    segment.live -= length;
+                }
+            }
+        }
+        commit();
+
+        for (Segment segment : sparse) {
+            segments.remove(segment.id);
+            segment.delete();
+        }
+        return sparse.size();
+    }
+
+    /**
+     * Returns the number of keys.
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Returns the number of segment files.
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        rollback();
+        for (Segment segment : segments.values()) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    /**
+     * Replays the committed records into the index and discards the rest.
+     */
+    private void recover() throws IOException {
+        Map<ByteArrayWrapper, Long> batch = new HashMap<>();
+
+        if (segments.isEmpty()) {
+            head = createSegment(0, segmentSize);
+        }
+        committedSegment = segments.firstKey();
+        committedOffset = 0;
+
+        scan: for (Segment segment : segments.values()) {
+            int offset = 0;
+            for (int length; (length = recordLength(segment, offset)) > 0; offset += length) {
+                int keyLength = segment.buffer.getInt(offset);
+                if (segment.buffer.getInt(offset + 4) == COMMIT) {
+                    for (Map.Entry<ByteArrayWrapper, Long> entry : batch.entrySet()) {
+                        index(entry.getKey(), entry.getValue());
+                    }
+                    batch.clear();
+                    committedSegment = segment.id;
+                    committedOffset = offset + length;
+                } else {
+                    byte[] key = new byte[keyLength];
+                    read(segment.buffer, offset + HEADER_SIZE, key);
+                    batch.put(new ByteArrayWrapper(key), positionOf(segment.id, offset));
+                }
+            }
+            segment.size = offset;
+
+            if (length(segment, offset) != 0) {
+                // torn write, the rest can't be trusted and has to be cleared
+                segment.size = segment.buffer.capacity();
+                break scan;
+            }
+        }
+
+        truncate(committedSegment, committedOffset);
+    }
+
+    /**
+     * Discards everything after the given position.
+     */
+    private void truncate(int segmentId, int offset) {
+        for (Segment segment : new ArrayList<>(segments.tailMap(segmentId, false).values())) {
+            segments.remove(segment.id);
+            segment.delete();
+        }
+
+        head = segments.get(segmentId);
+        for (int i = offset; i < head.size; i++) {
+            head.buffer.put(i, (byte) 0);
+        }
+        head.size = offset;
+    }
+
+    /**
+     * Appends a record to the head segment, rolling over to a new segment if full.
+     */
+    private long append(byte[] key, byte[] value) {
+        int valueLength = value == null ? COMMIT : value.length;
+        int length = HEADER_SIZE + key.length + Math.max(valueLength, 0) + CHECKSUM_SIZE;
+
+        // keep room for a zero header at the end of the data
+        if (head.size + length + HEADER_SIZE > head.buffer.capacity()) {
+            head = createSegment(head.id + 1, Math.max(segmentSize, length + HEADER_SIZE));
+        }
+
+        MappedByteBuffer buffer = head.buffer;
+        int offset = head.size;
+        buffer.putInt(offset, key.length);
+        buffer.putInt(offset + 4, valueLength);
+        write(buffer, offset + HEADER_SIZE, key);
+        if (value != null) {
+            write(buffer, offset + HEADER_SIZE + key.length, value);
+        }
+        buffer.putInt(offset + length - CHECKSUM_SIZE, (int) checksum(buffer, offset, length - CHECKSUM_SIZE));
+        head.size += length;
+
+        return positionOf(head.id, offset);
+    }
+
+    /**
+     * Points a key to a committed record, maintaining the live size of the
+     * segments.
+     */
+    private void index(ByteArrayWrapper key, long position) {
+        Long previous = index.put(key, position);
+        if (previous != null) {
+            Segment segment = segments.get(segmentOf(previous));
+            if (segment != null) {
+                segment.live -= length(segment, offsetOf(previous));
+            }
+        }
+        Segment segment = segments.get(segmentOf(position));
+        segment.live += length(segment, offsetOf(position));
+    }
+
+    /**
+     * Returns the length of the valid record at the given offset, or 0 at the end
+     * of the data or at a corrupted record.
+     */
+    private static int recordLength(Segment segment, int offset) {
+        int length = length(segment, offset);
+        if (length <= 0) {
+            return 0;
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        long expected = buffer.getInt(offset + length - CHECKSUM_SIZE) & 0xffffffffL;
+        return checksum(buffer, offset, length - CHECKSUM_SIZE) == expected ? length : 0;
+    }
+
+    /**
+     * Returns the length of the record at the given offset as per its header, 0 at
+     * the end of the data, or -1 if the header is invalid.
+     */
+    private static int length(Segment segment, int offset) {
+        MappedByteBuffer buffer = segment.buffer;
+        if (offset + HEADER_SIZE > buffer.capacity()) {
+            return 0;
+        }
+        int keyLength = buffer.getInt(offset);
+        int valueLength = buffer.getInt(offset + 4);
+        if (keyLength == 0 && valueLength == 0) {
+            return 0;
+        }
+        long length = (long) HEADER_SIZE + keyLength + Math.max(valueLength, 0) + CHECKSUM_SIZE;
+        if (keyLength < 0 || valueLength < COMMIT || offset + length > buffer.capacity()) {
+            return -1;
+        }
+        return (int) length;
+    }
+
+    private static long checksum(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        CRC32 crc = new CRC32();
+        crc.update(slice);
+        return crc.getValue();
+    }
+
+    private static void read(ByteBuffer buffer, int offset, byte[] dst) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.get(dst);
+    }
+
+    private static void write(ByteBuffer buffer, int offset, byte[] src) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(offset);
+        slice.put(src);
+    }
+
+    private Segment createSegment(int id, int capacity) {
+        try {
+            Segment segment = new Segment(id, directory.resolve(String.format("segment-%010d.log", id)), capacity);
+            segments.put(id, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new StoreException("Failed to create segment " + id, e);
+        }
+    }
+
+    private static long positionOf(int segmentId, int offset) {
+        return ((long) segmentId << 32) | offset;
+    }
+
+    private static int segmentOf(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    private static class Segment {
+        private final int id;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+
+        // the size of the data, and of the records still indexed
+        private int size;
+        private long live;
+
+        /**
+         * Opens a segment file, extending it to the given capacity if larger.
+         */
+        private Segment(int id, Path file, int capacity) throws IOException {
+            this.id = id;
+            this.file = file;
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                if (raf.length() < capacity) {
+                    raf.setLength(capacity);
+                }
+                // the mapping stays valid once the file is closed
+                this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+            }
+        }
+
+        private void close() {
+            buffer.force();
+        }
+
+        private void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new StoreException("Failed to delete segment " + id, e);
+            }
+        }
+    }
+}
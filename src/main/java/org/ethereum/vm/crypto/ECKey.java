@@ -41,6 +41,7 @@ import java.util.Arrays;
 import org.bouncycastle.asn1.sec.SECNamedCurves;
 import org.bouncycastle.asn1.x9.X9ECParameters;
 import org.bouncycastle.asn1.x9.X9IntegerConverter;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
 import org.bouncycastle.crypto.params.ECDomainParameters;
 import org.bouncycastle.math.ec.ECAlgorithms;
 import org.bouncycastle.math.ec.ECCurve;
@@ -59,9 +60,131 @@ public class ECKey {
         CURVE = new ECDomainParameters(params.getCurve(), params.getG(), params.getN(), params.getH());
     }
 
+    /**
+     * The same curve on the specialized field arithmetic of Bouncy Castle, which
+     * the key recovery runs on. The multiples of its generator are precomputed on
+     * first use and kept with the point.
+     */
+    private static final X9ECParameters RECOVERY_CURVE = CustomNamedCurves.getByName("secp256k1");
+
     public static byte[] signatureToAddress(byte[] messageHash, ECDSASignature sig) throws SignatureException {
         check(messageHash.length == 32, "messageHash argument has length " + messageHash.length);
 
+        byte[] pubBytes = ECKey.recoverPubBytesFromSignature(recoveryId(sig), sig, messageHash);
+        if (pubBytes == null) {
+            throw new SignatureException("Could not recover public key from signature");
+        }
+
+        return HashUtil.sha3omit12(Arrays.copyOfRange(pubBytes, 1, pubBytes.length));
+    }
+
+    /**
+     * Recovers the addresses of many signatures at once.
+     *
+     * The result is the same as calling
+     * {@link #signatureToAddress(byte[], ECDSASignature)} for every signature,
+     * except that a signature which can't be recovered yields null instead of an
+     * exception. The inversions of r and the conversions of the keys to affine
+     * coordinates are shared by the whole batch, each costs a single modular
+     * inversion plus three multiplications per signature (Montgomery's trick).
+     *
+     * @param messageHashes
+     *            the hashes of the signed data
+     * @param sigs
+     *            the signatures, in the same order
+     * @return the 20-byte addresses, or nulls for the failed recoveries
+     */
+    public static byte[][] signaturesToAddresses(byte[][] messageHashes, ECDSASignature[] sigs) {
+        check(messageHashes.length == sigs.length, "messageHashes and sigs have different lengths");
+
+        int count = sigs.length;
+        BigInteger n = RECOVERY_CURVE.getN();
+
+        // the signatures which can be recovered, and their r
+        int[] recIds = new int[count];
+        BigInteger[] rs = new BigInteger[count];
+        for (int i = 0; i < count; i++) {
+            ECDSASignature sig = sigs[i];
+            recIds[i] = -1;
+            if (messageHashes[i] == null || messageHashes[i].length != 32 || sig == null
+                    || sig.r.signum() <= 0 || sig.s.signum() < 0 || sig.r.mod(n).signum() == 0) {
+                continue;
+            }
+            try {
+                recIds[i] = recoveryId(sig);
+                rs[i] = sig.r;
+            } catch (SignatureException e) {
+                // can't be recovered
+            }
+        }
+
+        BigInteger[] rInvs = batchInverse(rs, n);
+
+        ECPoint[] points = new ECPoint[count];
+        int recovered = 0;
+        for (int i = 0; i < count; i++) {
+            if (recIds[i] >= 0) {
+                try {
+                    points[i] = recoverPubKey(recIds[i], sigs[i], messageHashes[i], rInvs[i]);
+                } catch (IllegalArgumentException e) {
+                    // r is not the x-coordinate of a curve point
+                }
+                if (points[i] != null) {
+                    recovered++;
+                }
+            }
+        }
+
+        ECPoint[] toNormalize = new ECPoint[recovered];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (points[i] != null) {
+                toNormalize[j++] = points[i];
+            }
+        }
+        RECOVERY_CURVE.getCurve().normalizeAll(toNormalize);
+
+        byte[][] addresses = new byte[count][];
+        for (int i = 0, j = 0; i < count; i++) {
+            if (points[i] != null) {
+                byte[] pubBytes = toNormalize[j++].getEncoded(/* compressed */ false);
+                addresses[i] = HashUtil.sha3omit12(Arrays.copyOfRange(pubBytes, 1, pubBytes.length));
+            }
+        }
+
+        return addresses;
+    }
+
+    /**
+     * Returns the inverses of the given numbers modulo m, computed with a single
+     * modular inversion; null elements are skipped.
+     */
+    static BigInteger[] batchInverse(BigInteger[] values, BigInteger m) {
+        // prefix[i] = product of the values before i
+        BigInteger[] prefix = new BigInteger[values.length];
+        BigInteger acc = BigInteger.ONE;
+        for (int i = 0; i < values.length; i++) {
+            prefix[i] = acc;
+            if (values[i] != null) {
+                acc = acc.multiply(values[i]).mod(m);
+            }
+        }
+
+        BigInteger[] inverses = new BigInteger[values.length];
+        BigInteger inv = acc.modInverse(m);
+        for (int i = values.length - 1; i >= 0; i--) {
+            if (values[i] != null) {
+                inverses[i] = inv.multiply(prefix[i]).mod(m);
+                inv = inv.multiply(values[i]).mod(m);
+            }
+        }
+
+        return inverses;
+    }
+
+    /**
+     * Returns the recovery id encoded in the header byte of the signature.
+     */
+    private static int recoveryId(ECDSASignature sig) throws SignatureException {
         int header = sig.v;
         // The header byte: 0x1B = first key with even y, 0x1C = first key with odd y,
         // 0x1D = second key with even y, 0x1E = second key with odd y
@@ -71,14 +194,7 @@ public class ECKey {
         if (header >= 31) {
             header -= 4;
         }
-        int recId = header - 27;
-
-        byte[] pubBytes = ECKey.recoverPubBytesFromSignature(recId, sig, messageHash);
-        if (pubBytes == null) {
-            throw new SignatureException("Could not recover public key from signature");
-        }
-
-        return HashUtil.sha3omit12(Arrays.copyOfRange(pubBytes, 1, pubBytes.length));
+        return header - 27;
     }
 
     /**
@@ -120,9 +236,20 @@ public class ECKey {
         check(sig.r.signum() >= 0, "r must be positive");
         check(sig.s.signum() >= 0, "s must be positive");
         check(messageHash != null, "messageHash must not be null");
+
+        ECPoint q = recoverPubKey(recId, sig, messageHash, sig.r.modInverse(RECOVERY_CURVE.getN()));
+        return q == null ? null : q.getEncoded(/* compressed */ false);
+    }
+
+    /**
+     * Recovers the public key, see
+     * {@link #recoverPubBytesFromSignature(int, ECDSASignature, byte[])}; the
+     * inverse of r is passed in.
+     */
+    private static ECPoint recoverPubKey(int recId, ECDSASignature sig, byte[] messageHash, BigInteger rInv) {
         // 1.0 For j from 0 to h (h == recId here and the loop is outside this function)
         // 1.1 Let x = r + jn
-        BigInteger n = CURVE.getN(); // Curve order.
+        BigInteger n = RECOVERY_CURVE.getN(); // Curve order.
         BigInteger i = BigInteger.valueOf((long) recId / 2);
         BigInteger x = sig.r.add(i.multiply(n));
         // 1.2. Convert the integer x to an octet string X of length mlen using the
@@ -136,8 +263,8 @@ public class ECKey {
         //
         // More concisely, what these points mean is to use X as a compressed public
         // key.
-        ECCurve.Fp curve = (ECCurve.Fp) CURVE.getCurve();
-        BigInteger prime = curve.getQ(); // Bouncy Castle is not consistent about the letter it uses for the prime.
+        ECCurve curve = RECOVERY_CURVE.getCurve();
+        BigInteger prime = curve.getField().getCharacteristic();
         if (x.compareTo(prime) >= 0) {
             // Cannot have point co-ordinates larger than this as everything takes place
             // modulo Q.
@@ -169,14 +296,13 @@ public class ECKey {
         // mod. For example the additive
         // inverse of 3 modulo 11 is 8 because 3 + 8 mod 11 = 0, and -3 mod 11 = 8.
         BigInteger eInv = BigInteger.ZERO.subtract(e).mod(n);
-        BigInteger rInv = sig.r.modInverse(n);
         BigInteger srInv = rInv.multiply(sig.s).mod(n);
         BigInteger eInvrInv = rInv.multiply(eInv).mod(n);
-        ECPoint.Fp q = (ECPoint.Fp) ECAlgorithms.sumOfTwoMultiplies(CURVE.getG(), eInvrInv, R, srInv);
+        ECPoint q = ECAlgorithms.sumOfTwoMultiplies(RECOVERY_CURVE.getG(), eInvrInv, R, srInv);
         // result sanity check: point must not be at infinity
         if (q.isInfinity())
             return null;
-        return q.getEncoded(/* compressed */ false);
+        return q;
     }
 
     /**
@@ -184,9 +310,9 @@ public class ECKey {
      */
     private static ECPoint decompressKey(BigInteger xBN, boolean yBit) {
         X9IntegerConverter x9 = new X9IntegerConverter();
-        byte[] compEnc = x9.integerToBytes(xBN, 1 + x9.getByteLength(CURVE.getCurve()));
+        byte[] compEnc = x9.integerToBytes(xBN, 1 + x9.getByteLength(RECOVERY_CURVE.getCurve()));
         compEnc[0] = (byte) (yBit ? 0x03 : 0x02);
-        return CURVE.getCurve().decodePoint(compEnc);
+        return RECOVERY_CURVE.getCurve().decodePoint(compEnc);
     }
 
     private static void check(boolean test, String message) {
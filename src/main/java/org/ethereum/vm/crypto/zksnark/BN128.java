@@ -18,6 +18,7 @@
 package org.ethereum.vm.crypto.zksnark;
 
 import java.math.BigInteger;
+import java.util.Objects;
 
 /**
  * Implementation of Barreto–Naehrig curve defined over abstract finite field.
@@ -56,6 +57,12 @@ import java.math.BigInteger;
  */
 public abstract class BN128<T extends Field<T>> {
 
+    /**
+     * Width of the NAF windows, the multiples of up to 2^(w - 2) points are
+     * precomputed for each scalar
+     */
+    static final int WINDOW = 4;
+
     protected T x;
     protected T y;
     protected T z;
@@ -168,6 +175,10 @@ public abstract class BN128<T extends Field<T>> {
         return instance(x3, y3, z3);
     }
 
+    /**
+     * Multiplies the point by a scalar, using the width-{@value #WINDOW} NAF form
+     * of the scalar.
+     */
     public BN128<T> mul(BigInteger s) {
 
         if (s.compareTo(BigInteger.ZERO) == 0) // P * 0 = 0
@@ -176,21 +187,115 @@ public abstract class BN128<T extends Field<T>> {
         if (isZero())
             return this; // 0 * s = 0
 
+        return mul(s, null, BigInteger.ZERO);
+    }
+
+    /**
+     * Returns {@code k1 * this + k2 * o}, interleaving the NAF digits of both
+     * scalars so that the doublings are shared. The scalars may be negative.
+     */
+    protected BN128<T> mul(BigInteger k1, BN128<T> o, BigInteger k2) {
+
+        int[] naf1 = wnaf(k1.abs(), WINDOW);
+        BN128<T>[] table1 = (k1.signum() < 0 ? negate() : this).oddMultiples();
+
+        int[] naf2 = k2.signum() == 0 ? new int[0] : wnaf(k2.abs(), WINDOW);
+        BN128<T>[] table2 = k2.signum() == 0 ? null : (k2.signum() < 0 ? o.negate() : o).oddMultiples();
+
         BN128<T> res = zero();
 
-        for (int i = s.bitLength() - 1; i >= 0; i--) {
+        for (int i = Math.max(naf1.length, naf2.length) - 1; i >= 0; i--) {
 
             res = res.dbl();
 
-            if (s.testBit(i)) {
-                res = res.add(this);
+            if (i < naf1.length)
+                res = res.add(table1, naf1[i]);
+            if (i < naf2.length)
+                res = res.add(table2, naf2[i]);
+        }
+
+        return res;
+    }
+
+    public BN128<T> negate() {
+        return instance(x, y.negate(), z);
+    }
+
+    /**
+     * Returns P, 3P, ..., (2^(w - 1) - 1)P, the multiples NAF digits refer to
+     */
+    @SuppressWarnings("unchecked")
+    private BN128<T>[] oddMultiples() {
+
+        BN128<T>[] table = new BN128[1 << (WINDOW - 2)];
+        BN128<T> twice = dbl();
+
+        table[0] = this;
+        for (int i = 1; i < table.length; i++) {
+            table[i] = table[i - 1].add(twice);
+        }
+
+        return table;
+    }
+
+    private BN128<T> add(BN128<T>[] oddMultiples, int digit) {
+
+        if (digit > 0)
+            return add(oddMultiples[digit >> 1]);
+        if (digit < 0)
+            return add(oddMultiples[-digit >> 1].negate());
+
+        return this;
+    }
+
+    /**
+     * Returns the width-w non-adjacent form of a non-negative number, least
+     * significant digit first: every non-zero digit is odd, less than 2^(w - 1) in
+     * absolute value and followed by at least w - 1 zeros.
+     */
+    static int[] wnaf(BigInteger k, int w) {
+
+        int width = 1 << w;
+        int[] naf = new int[k.bitLength() + 1];
+
+        int carry = 0;
+        for (int pos = 0; pos < naf.length;) {
+
+            // even window, carry is left unchanged
+            if ((k.testBit(pos) ? 1 : 0) == carry) {
+                pos++;
+                continue;
+            }
+
+            int window = carry + bits(k, pos, w);
+            if (window < width / 2) {
+                carry = 0;
+                naf[pos] = window;
+            } else {
+                carry = 1;
+                naf[pos] = window - width;
             }
+
+            pos += w;
+        }
+
+        return naf;
+    }
+
+    /**
+     * Returns {@code count} bits of the number, starting from {@code pos}
+     */
+    static int bits(BigInteger k, int pos, int count) {
+
+        int res = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            res = (res << 1) | (k.testBit(pos + i) ? 1 : 0);
         }
 
         return res;
     }
 
-    private BN128<T> dbl() {
+    BN128<T> dbl() {
 
         if (isZero())
             return this;
@@ -261,4 +366,9 @@ public abstract class BN128<T extends Field<T>> {
             return false;
         return !(z != null ? !z.equals(bn128.z) : bn128.z != null);
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, y, z);
+    }
 }
@@ -18,12 +18,21 @@
 package org.ethereum.vm.crypto.zksnark;
 
 import static org.ethereum.vm.crypto.zksnark.Params.B_Fp;
+import static org.ethereum.vm.crypto.zksnark.Params.R;
+
+import java.math.BigInteger;
 
 /**
  * Definition of {@link BN128} over F_p, where "p" equals {@link Params#P} <br/>
  *
  * Curve equation: <br/>
  * Y^2 = X^3 + b, where "b" equals {@link Params#B_Fp} <br/>
+ * <br/>
+ *
+ * The curve has prime order {@link Params#R}, scalar multiplication makes use
+ * of the endomorphism {@code (x, y) -> (beta * x, y)}, which multiplies points
+ * by {@code lambda}, to halve the number of doublings (GLV method), and of a
+ * {@link FixedBaseTable} for the generator {@code (1; 2)} <br/>
  *
  * @author Mikhail Kalinin
  * @since 21.08.2017
@@ -33,6 +42,35 @@ public class BN128Fp extends BN128<Fp> {
     // the point at infinity
     static final BN128<Fp> ZERO = new BN128Fp(Fp.ZERO, Fp.ZERO, Fp.ZERO);
 
+    static final BN128<Fp> GENERATOR = new BN128Fp(Fp._1, Fp.create(BigInteger.valueOf(2)), Fp._1);
+
+    /**
+     * A cube root of unity in F_p
+     */
+    static final Fp BETA = Fp.create(
+            new BigInteger("2203960485148121921418603742825762020974279258880205651966"));
+
+    /**
+     * A cube root of unity in F_r, {@code (beta * x, y) = lambda * (x, y)}
+     */
+    static final BigInteger LAMBDA = new BigInteger("4407920970296243842393367215006156084916469457145843978461");
+
+    /**
+     * Short basis {@code (a1, b1), (a2, b2)} of the lattice of {@code (k1, k2)}
+     * such that {@code k1 + k2 * lambda = 0 (mod r)}, obtained by the extended
+     * Euclidean algorithm on r and lambda
+     */
+    static final BigInteger A1 = new BigInteger("9931322734385697763");
+    static final BigInteger B1 = new BigInteger("-147946756881789319000765030803803410728");
+    static final BigInteger A2 = new BigInteger("147946756881789319010696353538189108491");
+    static final BigInteger B2 = new BigInteger("9931322734385697763");
+
+    private static final BigInteger HALF_R = R.shiftRight(1);
+
+    private static class GeneratorTable {
+        static final FixedBaseTable<Fp> INSTANCE = new FixedBaseTable<>(GENERATOR, R.bitLength());
+    }
+
     protected BN128Fp(Fp x, Fp y, Fp z) {
         super(x, y, z);
     }
@@ -57,6 +95,47 @@ public class BN128Fp extends BN128<Fp> {
         return Fp._1;
     }
 
+    @Override
+    public BN128<Fp> mul(BigInteger s) {
+
+        // every point is of order r
+        s = s.mod(R);
+
+        if (s.signum() == 0) // P * 0 = 0
+            return zero();
+
+        if (isZero())
+            return this; // 0 * s = 0
+
+        if (equals(GENERATOR))
+            return GeneratorTable.INSTANCE.mul(s);
+
+        BigInteger[] k = decompose(s);
+        return mul(k[0], endomorphism(), k[1]);
+    }
+
+    /**
+     * Returns (beta * x, y), which equals lambda * (x, y)
+     */
+    BN128<Fp> endomorphism() {
+        return instance(x.mul(BETA), y, z);
+    }
+
+    /**
+     * Splits the scalar into {@code k1 + k2 * lambda}, where k1 and k2 are about
+     * half the size of r, by rounding it to the closest lattice vector
+     */
+    static BigInteger[] decompose(BigInteger s) {
+
+        BigInteger c1 = B2.multiply(s).add(HALF_R).divide(R);
+        BigInteger c2 = B1.negate().multiply(s).add(HALF_R).divide(R);
+
+        BigInteger k1 = s.subtract(c1.multiply(A1)).subtract(c2.multiply(A2));
+        BigInteger k2 = c1.multiply(B1).add(c2.multiply(B2)).negate();
+
+        return new BigInteger[] { k1, k2 };
+    }
+
     /**
      * Checks whether x and y belong to Fp, then checks whether point with (x; y)
      * coordinates lays on the curve.
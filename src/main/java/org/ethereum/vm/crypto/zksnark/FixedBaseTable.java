@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.crypto.zksnark;
+
+import java.math.BigInteger;
+
+/**
+ * Precomputed multiples of a fixed point, for multiplications of that point by
+ * arbitrary scalars without doubling. <br/>
+ * <br/>
+ *
+ * The scalar is split into windows of {@value #WINDOW} bits, the table holds
+ * {@code d * 2^(WINDOW * i) * base} for every window {@code i} and digit
+ * {@code d}, thus a multiplication costs one addition per non-zero window.
+ */
+public class FixedBaseTable<T extends Field<T>> {
+
+    static final int WINDOW = 4;
+
+    private final BN128<T> base;
+    private final int bits;
+    private final BN128<T>[][] table;
+
+    /**
+     * Creates a table.
+     *
+     * @param base
+     *            the point to multiply
+     * @param bits
+     *            the max bit length of the scalars which are served by the table,
+     *            larger ones fall back to {@link BN128#mul(BigInteger)}
+     */
+    @SuppressWarnings("unchecked")
+    public FixedBaseTable(BN128<T> base, int bits) {
+        this.base = base;
+        this.bits = bits;
+        this.table = new BN128[(bits + WINDOW - 1) / WINDOW][(1 << WINDOW) - 1];
+
+        BN128<T> b = base;
+        for (BN128<T>[] row : table) {
+            row[0] = b;
+            for (int d = 1; d < row.length; d++) {
+                row[d] = row[d - 1].add(b);
+            }
+            b = row[row.length - 1].add(b); // b = 2^WINDOW * b
+        }
+    }
+
+    public BN128<T> mul(BigInteger s) {
+
+        if (s.signum() < 0 || s.bitLength() > bits)
+            return base.mul(s);
+
+        BN128<T> res = base.zero();
+
+        for (int i = 0; i < table.length; i++) {
+            int d = BN128.bits(s, i * WINDOW, WINDOW);
+            if (d != 0)
+                res = res.add(table[i][d - 1]);
+        }
+
+        return res;
+    }
+
+    public BN128<T> getBase() {
+        return base;
+    }
+}
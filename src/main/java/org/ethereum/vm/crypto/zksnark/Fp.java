@@ -17,71 +17,147 @@
  */
 package org.ethereum.vm.crypto.zksnark;
 
-import static org.ethereum.vm.crypto.zksnark.Params.P;
+import static org.ethereum.vm.util.UInt256.mulHigh;
 
 import java.math.BigInteger;
-import java.util.Objects;
 
 /**
  * Arithmetic in F_p, p =
  * 21888242871839275222246405745257275088696311157297823662689037894645226208583
  *
+ * Elements are kept in Montgomery form {@code a * R mod p}, R = 2^256, as four
+ * little-endian 64-bit limbs, so that multiplication needs no division and none
+ * of the operations allocates anything but the result. Values are converted
+ * from and to the canonical form only when they are created and encoded.
+ *
  * @author Mikhail Kalinin
  * @since 01.09.2017
  */
 public class Fp implements Field<Fp> {
 
-    static final Fp ZERO = new Fp(BigInteger.ZERO);
-    static final Fp _1 = new Fp(BigInteger.ONE);
-    static final Fp NON_RESIDUE = new Fp(
+    // a copy of Params.P: referring to Params here would initialize it before
+    // the constants below, and it creates Fp instances itself
+    private static final BigInteger P = new BigInteger(
+            "21888242871839275222246405745257275088696311157297823662689037894645226208583");
+
+    private static final long P0 = P.longValue();
+    private static final long P1 = P.shiftRight(64).longValue();
+    private static final long P2 = P.shiftRight(128).longValue();
+    private static final long P3 = P.shiftRight(192).longValue();
+
+    /**
+     * -p^-1 mod 2^64
+     */
+    private static final long INV = P.negate().modInverse(BigInteger.ONE.shiftLeft(64)).longValue();
+
+    /**
+     * R^2 mod p, multiplying by it converts a value into Montgomery form
+     */
+    private static final Fp R2 = limbs(BigInteger.ONE.shiftLeft(512).mod(P));
+
+    /**
+     * 1 in the canonical form, multiplying by it converts a value back
+     */
+    private static final Fp R_INV = new Fp(1, 0, 0, 0);
+
+    static final Fp ZERO = create(BigInteger.ZERO);
+    static final Fp _1 = create(BigInteger.ONE);
+    static final Fp NON_RESIDUE = create(
             new BigInteger("21888242871839275222246405745257275088696311157297823662689037894645226208582"));
 
-    static final Fp _2_INV = new Fp(BigInteger.valueOf(2).modInverse(P));
+    static final Fp _2_INV = create(BigInteger.valueOf(2).modInverse(P));
+
+    final long l0, l1, l2, l3;
+
+    /**
+     * Whether the value this element was created from is less than p, see
+     * {@link #isValid()}. The limbs always hold the reduced value.
+     */
+    final boolean valid;
 
-    BigInteger v;
+    private Fp(long l0, long l1, long l2, long l3, boolean valid) {
+        this.l0 = l0;
+        this.l1 = l1;
+        this.l2 = l2;
+        this.l3 = l3;
+        this.valid = valid;
+    }
 
-    Fp(BigInteger v) {
-        this.v = v;
+    private Fp(long l0, long l1, long l2, long l3) {
+        this(l0, l1, l2, l3, true);
     }
 
     @Override
     public Fp add(Fp o) {
-        return new Fp(this.v.add(o.v).mod(P));
+        long r0 = l0 + o.l0;
+        long c = carry(r0, l0);
+        long r1 = l1 + o.l1 + c;
+        c = carry(r1, l1, c);
+        long r2 = l2 + o.l2 + c;
+        c = carry(r2, l2, c);
+        long r3 = l3 + o.l3 + c; // no overflow since p < 2^254
+
+        return reduce(r0, r1, r2, r3);
     }
 
     @Override
     public Fp mul(Fp o) {
-        return new Fp(this.v.multiply(o.v).mod(P));
+        return montMul(this, o);
     }
 
     @Override
     public Fp sub(Fp o) {
-        return new Fp(this.v.subtract(o.v).mod(P));
+        long r0 = l0 - o.l0;
+        long b = borrow(l0, o.l0, 0);
+        long r1 = l1 - o.l1 - b;
+        b = borrow(l1, o.l1, b);
+        long r2 = l2 - o.l2 - b;
+        b = borrow(l2, o.l2, b);
+        long r3 = l3 - o.l3 - b;
+        b = borrow(l3, o.l3, b);
+
+        if (b == 0) {
+            return new Fp(r0, r1, r2, r3);
+        }
+
+        // went below zero, add p back
+        long s0 = r0 + P0;
+        long c = carry(s0, r0);
+        long s1 = r1 + P1 + c;
+        c = carry(s1, r1, c);
+        long s2 = r2 + P2 + c;
+        c = carry(s2, r2, c);
+        long s3 = r3 + P3 + c;
+
+        return new Fp(s0, s1, s2, s3);
     }
 
     @Override
     public Fp squared() {
-        return new Fp(v.multiply(v).mod(P));
+        return montMul(this, this);
     }
 
     @Override
     public Fp dbl() {
-        return new Fp(v.add(v).mod(P));
+        return add(this);
     }
 
     @Override
     public Fp inverse() {
-        return new Fp(v.modInverse(P));
+        return create(toBigInteger().modInverse(P));
     }
 
     @Override
     public Fp negate() {
-        return new Fp(v.negate().mod(P));
+        if (isZero()) {
+            return this;
+        }
+        return ZERO.sub(this);
     }
 
     @Override
     public boolean isZero() {
-        return v.compareTo(BigInteger.ZERO) == 0;
+        return valid && (l0 | l1 | l2 | l3) == 0;
     }
 
     /**
@@ -89,7 +165,7 @@ public class Fp implements Field<Fp> {
      */
     @Override
     public boolean isValid() {
-        return v.compareTo(P) < 0;
+        return valid;
     }
 
     Fp2 mul(Fp2 o) {
@@ -97,15 +173,151 @@ public class Fp implements Field<Fp> {
     }
 
     static Fp create(byte[] v) {
-        return new Fp(new BigInteger(1, v));
+        return create(new BigInteger(1, v));
     }
 
     static Fp create(BigInteger v) {
-        return new Fp(v);
+        if (v.signum() >= 0 && v.compareTo(P) < 0) {
+            return montMul(limbs(v), R2);
+        }
+
+        Fp r = montMul(limbs(v.mod(P)), R2);
+        return new Fp(r.l0, r.l1, r.l2, r.l3, false);
     }
 
     public byte[] bytes() {
-        return v.toByteArray();
+        return toBigInteger().toByteArray();
+    }
+
+    /**
+     * Returns the canonical value of this element.
+     */
+    BigInteger toBigInteger() {
+        Fp r = montMul(this, R_INV);
+
+        byte[] bytes = new byte[32];
+        long[] limbs = { r.l3, r.l2, r.l1, r.l0 };
+        for (int i = 0; i < 32; i++) {
+            bytes[i] = (byte) (limbs[i >>> 3] >>> ((7 - (i & 7)) << 3));
+        }
+        return new BigInteger(1, bytes);
+    }
+
+    /**
+     * Montgomery multiplication, {@code a * b / R mod p}.
+     *
+     * This is the CIOS method without the final carry word, which is safe as the
+     * highest limb of p is below 2^62, see
+     * <a href= "https://hackmd.io/@gnark/modular_multiplication">gnark</a>.
+     */
+    private static Fp montMul(Fp a, Fp b) {
+        long t0 = 0, t1 = 0, t2 = 0, t3 = 0;
+
+        for (int i = 0; i < 4; i++) {
+            long bi = i == 0 ? b.l0 : i == 1 ? b.l1 : i == 2 ? b.l2 : b.l3;
+
+            // (A, t0) = t0 + a0 * bi
+            long lo = a.l0 * bi;
+            long hi = mulHigh(a.l0, bi);
+            t0 += lo;
+            long ac = hi + carry(t0, lo);
+
+            // (C, _) = t0 + m * p0, the low word is zero by the choice of m
+            long m = t0 * INV;
+            lo = m * P0;
+            long cc = mulHigh(m, P0) + carry(t0 + lo, lo);
+
+            // (A, t1) = t1 + a1 * bi + A
+            lo = a.l1 * bi;
+            hi = mulHigh(a.l1, bi);
+            t1 += lo;
+            hi += carry(t1, lo);
+            t1 += ac;
+            ac = hi + carry(t1, ac);
+
+            // (C, t0) = t1 + m * p1 + C
+            lo = m * P1;
+            hi = mulHigh(m, P1);
+            t0 = t1 + lo;
+            hi += carry(t0, lo);
+            t0 += cc;
+            cc = hi + carry(t0, cc);
+
+            // (A, t2) = t2 + a2 * bi + A
+            lo = a.l2 * bi;
+            hi = mulHigh(a.l2, bi);
+            t2 += lo;
+            hi += carry(t2, lo);
+            t2 += ac;
+            ac = hi + carry(t2, ac);
+
+            // (C, t1) = t2 + m * p2 + C
+            lo = m * P2;
+            hi = mulHigh(m, P2);
+            t1 = t2 + lo;
+            hi += carry(t1, lo);
+            t1 += cc;
+            cc = hi + carry(t1, cc);
+
+            // (A, t3) = t3 + a3 * bi + A
+            lo = a.l3 * bi;
+            hi = mulHigh(a.l3, bi);
+            t3 += lo;
+            hi += carry(t3, lo);
+            t3 += ac;
+            ac = hi + carry(t3, ac);
+
+            // (C, t2) = t3 + m * p3 + C
+            lo = m * P3;
+            hi = mulHigh(m, P3);
+            t2 = t3 + lo;
+            hi += carry(t2, lo);
+            t2 += cc;
+            cc = hi + carry(t2, cc);
+
+            t3 = cc + ac;
+        }
+
+        return reduce(t0, t1, t2, t3);
+    }
+
+    /**
+     * Creates an element from a value below 2p, subtracting p if needed.
+     */
+    private static Fp reduce(long r0, long r1, long r2, long r3) {
+        long s0 = r0 - P0;
+        long b = borrow(r0, P0, 0);
+        long s1 = r1 - P1 - b;
+        b = borrow(r1, P1, b);
+        long s2 = r2 - P2 - b;
+        b = borrow(r2, P2, b);
+        long s3 = r3 - P3 - b;
+        b = borrow(r3, P3, b);
+
+        return b == 0 ? new Fp(s0, s1, s2, s3) : new Fp(r0, r1, r2, r3);
+    }
+
+    private static Fp limbs(BigInteger v) {
+        return new Fp(v.longValue(), v.shiftRight(64).longValue(), v.shiftRight(128).longValue(),
+                v.shiftRight(192).longValue());
+    }
+
+    private static long carry(long sum, long x) {
+        return Long.compareUnsigned(sum, x) < 0 ? 1 : 0;
+    }
+
+    /**
+     * Returns the carry out of {@code x + y + c}, given their sum.
+     */
+    private static long carry(long sum, long x, long c) {
+        return (Long.compareUnsigned(sum, x) < 0 || (c != 0 && sum == x)) ? 1 : 0;
+    }
+
+    /**
+     * Returns the borrow out of {@code x - y - c}.
+     */
+    private static long borrow(long x, long y, long c) {
+        return (Long.compareUnsigned(x, y) < 0 || (c != 0 && x == y)) ? 1 : 0;
     }
 
     @Override
@@ -117,16 +329,20 @@ public class Fp implements Field<Fp> {
 
         Fp fp = (Fp) o;
 
-        return !(v != null ? v.compareTo(fp.v) != 0 : fp.v != null);
+        return l0 == fp.l0 && l1 == fp.l1 && l2 == fp.l2 && l3 == fp.l3 && valid == fp.valid;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(v);
+        int result = Long.hashCode(l0);
+        result = 31 * result + Long.hashCode(l1);
+        result = 31 * result + Long.hashCode(l2);
+        result = 31 * result + Long.hashCode(l3);
+        return result;
     }
 
     @Override
     public String toString() {
-        return v.toString();
+        return toBigInteger().toString();
     }
 }
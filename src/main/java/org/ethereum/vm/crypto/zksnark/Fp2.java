@@ -44,8 +44,8 @@ public class Fp2 implements Field<Fp2> {
     static final Fp2 NON_RESIDUE = new Fp2(BigInteger.valueOf(9), BigInteger.ONE);
 
     static final Fp[] FROBENIUS_COEFFS_B = new Fp[] {
-            new Fp(BigInteger.ONE),
-            new Fp(new BigInteger("21888242871839275222246405745257275088696311157297823662689037894645226208582"))
+            Fp.create(BigInteger.ONE),
+            Fp.create(new BigInteger("21888242871839275222246405745257275088696311157297823662689037894645226208582"))
     };
 
     Fp a;
@@ -57,7 +57,7 @@ public class Fp2 implements Field<Fp2> {
     }
 
     Fp2(BigInteger a, BigInteger b) {
-        this(new Fp(a), new Fp(b));
+        this(Fp.create(a), Fp.create(b));
     }
 
     @Override
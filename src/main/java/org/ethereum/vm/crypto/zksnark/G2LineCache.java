@@ -0,0 +1,61 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.crypto.zksnark;
+
+import java.util.List;
+
+import org.ethereum.vm.crypto.zksnark.PairingCheck.EllCoeffs;
+import org.ethereum.vm.util.LruCache;
+
+/**
+ * A thread-safe, size-bounded cache of the Miller loop line coefficients of
+ * {@link BN128G2} points, with least-recently-used eviction.
+ *
+ * The coefficients depend on the G2 point only, so points which are paired over
+ * and over again, like the ones of a verifying key, are processed only once.
+ * See {@link PairingCheck#create(G2LineCache)}.
+ */
+public class G2LineCache extends LruCache<BN128G2, List<EllCoeffs>> {
+
+    public static final int DEFAULT_CAPACITY = 64;
+
+    public G2LineCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity
+     *            the max number of entries; zero disables caching
+     */
+    public G2LineCache(int capacity) {
+        super(capacity);
+    }
+
+    /**
+     * Returns the line coefficients of the given point, computing them if absent.
+     *
+     * @param g2
+     *            a point in affine coordinates
+     * @return the line coefficients
+     */
+    List<EllCoeffs> get(BN128G2 g2) {
+        return get(g2, PairingCheck::calcEllCoeffs);
+    }
+}
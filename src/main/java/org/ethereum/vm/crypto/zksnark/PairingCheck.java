@@ -20,6 +20,8 @@ package org.ethereum.vm.crypto.zksnark;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Implementation of a Pairing Check operation over points of two twisted
@@ -39,8 +41,12 @@ import java.util.List;
  *
  * Usage:
  * <ul>
+ * <li>create a check with {@link #create()}, or with
+ * {@link #create(G2LineCache)} to reuse the line coefficients of G2 points
+ * across checks</li>
  * <li>add pairs sequentially with {@link #addPair(BN128G1, BN128G2)}</li>
- * <li>run check with {@link #run()} after all paris have been added</li>
+ * <li>run check with {@link #run()} after all paris have been added, or with
+ * {@link #run(ForkJoinPool)} to spread the work over several threads</li>
  * <li>get result with {@link #result()}</li>
  * </ul>
  *
@@ -58,11 +64,22 @@ public class PairingCheck {
     List<Pair> pairs = new ArrayList<>();
     Fp12 product = Fp12._1;
 
-    private PairingCheck() {
+    private final G2LineCache cache;
+
+    private PairingCheck(G2LineCache cache) {
+        this.cache = cache;
     }
 
     public static PairingCheck create() {
-        return new PairingCheck();
+        return new PairingCheck(null);
+    }
+
+    /**
+     * Creates a pairing check which takes the line coefficients of G2 points from
+     * the given cache.
+     */
+    public static PairingCheck create(G2LineCache cache) {
+        return new PairingCheck(cache);
     }
 
     public void addPair(BN128G1 g1, BN128G2 g2) {
@@ -71,30 +88,82 @@ public class PairingCheck {
 
     public void run() {
 
-        for (Pair pair : pairs) {
+        List<Pair> nonTrivial = nonTrivialPairs();
 
-            Fp12 miller = pair.millerLoop();
+        if (!nonTrivial.isEmpty()) // run miller loop only if necessary
+            product = millerLoop(nonTrivial);
 
-            if (!miller.equals(Fp12._1)) // run mul code only if necessary
-                product = product.mul(miller);
+        // finalize
+        product = finalExponentiation(product);
+    }
+
+    /**
+     * Same as {@link #run()}, but splits the pairs into as many groups as the
+     * parallelism of the pool and runs the Miller loops of the groups concurrently.
+     * The partial products are multiplied in the order of the groups, thus the
+     * result doesn't depend on scheduling.
+     */
+    public void run(ForkJoinPool pool) {
+
+        List<Pair> nonTrivial = nonTrivialPairs();
+        int n = nonTrivial.size();
+        int groups = Math.min(pool.getParallelism(), n);
+
+        List<ForkJoinTask<Fp12>> tasks = new ArrayList<>(groups);
+        for (int i = 0; i < groups; i++) {
+            List<Pair> group = nonTrivial.subList(i * n / groups, (i + 1) * n / groups);
+            tasks.add(pool.submit(() -> millerLoop(group)));
+        }
+
+        for (ForkJoinTask<Fp12> task : tasks) {
+            Fp12 miller = task.join();
+            product = product == Fp12._1 ? miller : product.mul(miller);
         }
 
         // finalize
         product = finalExponentiation(product);
     }
 
-    public int result() {
-        return product.equals(Fp12._1) ? 1 : 0;
+    private List<Pair> nonTrivialPairs() {
+
+        List<Pair> res = new ArrayList<>(pairs.size());
+
+        for (Pair pair : pairs) {
+
+            // miller loop result equals "1" if at least one of the points is zero
+            if (!pair.g1.isZero() && !pair.g2.isZero())
+                res.add(pair);
+        }
+
+        return res;
     }
 
-    private static Fp12 millerLoop(BN128G1 g1, BN128G2 g2) {
+    private Fp12 millerLoop(List<Pair> group) {
 
-        // convert to affine coordinates
-        g1 = g1.toAffine();
-        g2 = g2.toAffine();
+        List<BN128G1> g1s = new ArrayList<>(group.size());
+        List<List<EllCoeffs>> coeffs = new ArrayList<>(group.size());
 
-        // calculate Ell coefficients
-        List<EllCoeffs> coeffs = calcEllCoeffs(g2);
+        for (Pair pair : group) {
+
+            BN128G2 g2 = pair.g2.toAffine();
+
+            g1s.add(pair.g1.toAffine());
+            coeffs.add(cache != null ? cache.get(g2) : calcEllCoeffs(g2));
+        }
+
+        return millerLoop(g1s, coeffs);
+    }
+
+    public int result() {
+        return product.equals(Fp12._1) ? 1 : 0;
+    }
+
+    /**
+     * Computes the product of the Miller loops of all the pairs at once, the
+     * accumulator is squared only once per bit of {@link #LOOP_COUNT} rather than
+     * once per bit and pair.
+     */
+    private static Fp12 millerLoop(List<BN128G1> g1s, List<List<EllCoeffs>> coeffs) {
 
         Fp12 f = Fp12._1;
         int idx = 0;
@@ -102,27 +171,38 @@ public class PairingCheck {
         // for each bit except most significant one
         for (int i = LOOP_COUNT.bitLength() - 2; i >= 0; i--) {
 
-            EllCoeffs c = coeffs.get(idx++);
-            f = f.squared();
-            f = f.mulBy024(c.ell0, g1.y.mul(c.ellVW), g1.x.mul(c.ellVV));
+            if (f != Fp12._1) // 1^2 = 1
+                f = f.squared();
+            f = mulByLines(f, g1s, coeffs, idx++);
 
             if (LOOP_COUNT.testBit(i)) {
-                c = coeffs.get(idx++);
-                f = f.mulBy024(c.ell0, g1.y.mul(c.ellVW), g1.x.mul(c.ellVV));
+                f = mulByLines(f, g1s, coeffs, idx++);
             }
 
         }
 
-        EllCoeffs c = coeffs.get(idx++);
-        f = f.mulBy024(c.ell0, g1.y.mul(c.ellVW), g1.x.mul(c.ellVV));
+        f = mulByLines(f, g1s, coeffs, idx++);
+        f = mulByLines(f, g1s, coeffs, idx);
+
+        return f;
+    }
+
+    /**
+     * Evaluates the idx-th line of every pair at its G1 point and multiplies the
+     * accumulator by the results.
+     */
+    private static Fp12 mulByLines(Fp12 f, List<BN128G1> g1s, List<List<EllCoeffs>> coeffs, int idx) {
 
-        c = coeffs.get(idx);
-        f = f.mulBy024(c.ell0, g1.y.mul(c.ellVW), g1.x.mul(c.ellVV));
+        for (int k = 0; k < g1s.size(); k++) {
+            BN128G1 g1 = g1s.get(k);
+            EllCoeffs c = coeffs.get(k).get(idx);
+            f = f.mulBy024(c.ell0, g1.y.mul(c.ellVW), g1.x.mul(c.ellVV));
+        }
 
         return f;
     }
 
-    private static List<EllCoeffs> calcEllCoeffs(BN128G2 base) {
+    static List<EllCoeffs> calcEllCoeffs(BN128G2 base) {
 
         List<EllCoeffs> coeffs = new ArrayList<>();
 
@@ -277,23 +357,12 @@ public class PairingCheck {
             this.g1 = g1;
             this.g2 = g2;
         }
-
-        Fp12 millerLoop() {
-
-            // miller loop result equals "1" if at least one of the points is zero
-            if (g1.isZero())
-                return Fp12._1;
-            if (g2.isZero())
-                return Fp12._1;
-
-            return PairingCheck.millerLoop(g1, g2);
-        }
     }
 
     static class EllCoeffs {
-        Fp2 ell0;
-        Fp2 ellVW;
-        Fp2 ellVV;
+        final Fp2 ell0;
+        final Fp2 ellVW;
+        final Fp2 ellVV;
 
         EllCoeffs(Fp2 ell0, Fp2 ellVW, Fp2 ellVV) {
             this.ell0 = ell0;
@@ -0,0 +1,123 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import java.util.Arrays;
+
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.invoke.ProgramInvoke;
+
+/**
+ * A pool of call frames for executing transactions one after another.
+ *
+ * The program of each call depth, along with its stack and memory, is kept and
+ * reset for the next call at the same depth, instead of being allocated for
+ * every internal call. A frame is only reused once the previous call at its
+ * depth has completed, which always holds as calls at the same depth run one
+ * after another.
+ *
+ * Program results are not pooled, as they're handed over to the callers and end
+ * up in the transaction receipts.
+ *
+ * @ImplNote This class is not thread-safe; use one context per thread, see
+ *           {@link #forCurrentThread()}.
+ */
+public class ExecutionContext {
+
+    private static final ThreadLocal<ExecutionContext> contexts = ThreadLocal.withInitial(ExecutionContext::new);
+
+    // the memory a released frame keeps for reuse, larger buffers are dropped
+    private static final int RETAINED_MEMORY = 64 * 1024;
+
+    // frames indexed by call depth + 1, as the transaction-level program is at -1
+    private Program[] frames = new Program[16];
+
+    /**
+     * Returns the context of the current thread.
+     *
+     * @return the context, created on first use
+     */
+    public static ExecutionContext forCurrentThread() {
+        return contexts.get();
+    }
+
+    /**
+     * Returns a program for the given invocation, reusing the frame of its call
+     * depth if any.
+     *
+     * @param ops
+     *            the program code
+     * @param invoke
+     *            the program invocation
+     * @param spec
+     *            the chain spec
+     * @return a program ready to run
+     */
+    public Program acquire(byte[] ops, ProgramInvoke invoke, Spec spec) {
+        int index = invoke.getCallDepth() + 1;
+        if (index >= frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(frames.length * 2, index + 1));
+        }
+
+        Program program = frames[index];
+        if (program == null) {
+            program = new Program(ops, invoke, spec);
+            program.setContext(this);
+            frames[index] = program;
+        } else {
+            program.reset(ops, invoke, spec);
+        }
+        return program;
+    }
+
+    /**
+     * Returns the number of call depths which have a pooled frame.
+     *
+     * @return the number of pooled frames
+     */
+    public int size() {
+        int size = 0;
+        for (Program frame : frames) {
+            if (frame != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Drops the references the pooled frames hold to the last transaction, such as
+     * its repositories, results and large memory buffers, while keeping the frames
+     * for reuse. This is done after every transaction, so that an idle context
+     * doesn't keep the state of a past block reachable.
+     */
+    public void release() {
+        for (Program frame : frames) {
+            if (frame != null) {
+                frame.release(RETAINED_MEMORY);
+            }
+        }
+    }
+
+    /**
+     * Releases all the pooled frames.
+     */
+    public void clear() {
+        Arrays.fill(frames, null);
+    }
+}
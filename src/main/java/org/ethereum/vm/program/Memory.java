@@ -17,21 +17,33 @@
  */
 package org.ethereum.vm.program;
 
-import static java.lang.Math.ceil;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static org.ethereum.vm.util.ByteArrayUtil.EMPTY_BYTE_ARRAY;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.ethereum.vm.DataWord;
 
+/**
+ * Program memory, backed by a single contiguous byte array.
+ *
+ * The backing array grows in multiples of {@link #CHUNK_SIZE}, at least
+ * doubling each time, so that expansion is amortized constant per byte. Newly
+ * allocated bytes are zero; {@link #clear()} only zeroes the words that were
+ * actually touched.
+ */
 public class Memory {
 
     private static final int CHUNK_SIZE = 1024;
     private static final int WORD_SIZE = 32;
 
-    private List<byte[]> chunks = new LinkedList<>();
+    // leave some head room, as some VMs reserve header words in arrays
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private byte[] buffer = EMPTY_BYTE_ARRAY;
     private int softSize;
 
     public byte[] read(int address, int size) {
@@ -40,27 +52,7 @@ public class Memory {
         }
 
         extend(address, size);
-        byte[] data = new byte[size];
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        int toGrab = data.length;
-        int start = 0;
-
-        while (toGrab > 0) {
-            int copied = grabMax(chunkIndex, chunkOffset, toGrab, data, start);
-
-            // read next chunk from the start
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toGrab -= copied;
-            start += copied;
-        }
-
-        return data;
+        return Arrays.copyOfRange(buffer, address, address + size);
     }
 
     public void write(int address, byte[] data, int dataSize, boolean limited) {
@@ -76,9 +68,6 @@ public class Memory {
             extend(address, dataSize);
         }
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
         int toCapture;
         if (limited) {
             toCapture = (address + dataSize > softSize) ? softSize - address : dataSize;
@@ -86,17 +75,8 @@ public class Memory {
             toCapture = dataSize;
         }
 
-        int start = 0;
-        while (toCapture > 0) {
-            int captured = captureMax(chunkIndex, chunkOffset, toCapture, data, start);
-
-            // capture next chunk
-            ++chunkIndex;
-            chunkOffset = 0;
-
-            // mark remind
-            toCapture -= captured;
-            start += captured;
+        if (toCapture > 0) {
+            System.arraycopy(data, 0, buffer, address, toCapture);
         }
     }
 
@@ -112,31 +92,30 @@ public class Memory {
 
         final int newSize = address + size;
 
-        int toAllocate = newSize - internalSize();
-        if (toAllocate > 0) {
-            addChunks((int) ceil((double) toAllocate / CHUNK_SIZE));
+        if (newSize > buffer.length) {
+            grow(newSize);
         }
 
-        toAllocate = newSize - softSize;
+        int toAllocate = newSize - softSize;
         if (toAllocate > 0) {
-            toAllocate = (int) ceil((double) toAllocate / WORD_SIZE) * WORD_SIZE;
+            toAllocate = (toAllocate + WORD_SIZE - 1) / WORD_SIZE * WORD_SIZE;
             softSize += toAllocate;
         }
     }
 
     public DataWord readWord(int address) {
-        return DataWord.of(read(address, 32));
+        extend(address, WORD_SIZE);
+        return DataWord.of(buffer, address);
+    }
+
+    public void writeWord(int address, DataWord value) {
+        extend(address, WORD_SIZE);
+        value.copyTo(buffer, address);
     }
 
     // just access expecting all data valid
     public byte readByte(int address) {
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        byte[] chunk = chunks.get(chunkIndex);
-
-        return chunk[chunkOffset];
+        return buffer[address];
     }
 
     public int size() {
@@ -144,35 +123,35 @@ public class Memory {
     }
 
     public int internalSize() {
-        return chunks.size() * CHUNK_SIZE;
+        return buffer.length;
     }
 
+    /**
+     * Returns a copy of the active memory, split into chunks of 1 KB.
+     */
     public List<byte[]> getChunks() {
-        return new LinkedList<>(chunks);
-    }
-
-    private int captureMax(int chunkIndex, int chunkOffset, int size, byte[] src, int srcPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toCapture = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(src, srcPos, chunk, chunkOffset, toCapture);
-        return toCapture;
+        List<byte[]> chunks = new ArrayList<>();
+        for (int i = 0; i < softSize; i += CHUNK_SIZE) {
+            chunks.add(Arrays.copyOfRange(buffer, i, i + CHUNK_SIZE));
+        }
+        return chunks;
     }
 
-    private int grabMax(int chunkIndex, int chunkOffset, int size, byte[] dest, int destPos) {
-
-        byte[] chunk = chunks.get(chunkIndex);
-        int toGrab = min(size, chunk.length - chunkOffset);
-
-        System.arraycopy(chunk, chunkOffset, dest, destPos, toGrab);
-
-        return toGrab;
+    /**
+     * Resets the memory to empty, keeping the allocated buffer for reuse.
+     */
+    public void clear() {
+        Arrays.fill(buffer, 0, softSize, (byte) 0);
+        softSize = 0;
     }
 
-    private void addChunks(int num) {
-        for (int i = 0; i < num; ++i) {
-            chunks.add(new byte[CHUNK_SIZE]);
+    private void grow(int minCapacity) {
+        long capacity = (minCapacity + (long) CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+        capacity = min(max(capacity, 2L * buffer.length), MAX_CAPACITY);
+        if (capacity < minCapacity) {
+            throw new OutOfMemoryError("Memory size exceeds the limit: " + minCapacity);
         }
+
+        buffer = Arrays.copyOf(buffer, (int) capacity);
     }
 }
@@ -27,6 +27,7 @@ import static org.ethereum.vm.util.ByteArrayUtil.nullToEmpty;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.function.Function;
 
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.MessageCall;
@@ -35,6 +36,7 @@ import org.ethereum.vm.VM;
 import org.ethereum.vm.chainspec.PrecompiledContract;
 import org.ethereum.vm.chainspec.PrecompiledContractContext;
 import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.client.Code;
 import org.ethereum.vm.client.Repository;
 import org.ethereum.vm.program.exception.BytecodeExecutionException;
 import org.ethereum.vm.program.exception.CallTooDeepException;
@@ -46,6 +48,7 @@ import org.ethereum.vm.program.exception.StackUnderflowException;
 import org.ethereum.vm.program.invoke.ProgramInvoke;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
+import org.ethereum.vm.program.invoke.StorageRecorder;
 import org.ethereum.vm.util.HashUtil;
 import org.ethereum.vm.util.HexUtil;
 import org.ethereum.vm.util.Pair;
@@ -57,33 +60,44 @@ public class Program {
     private static final Logger logger = LoggerFactory.getLogger(Program.class);
 
     /**
-     * This attribute defines the number of recursive calls allowed in the EVM Note:
-     * For the JVM to reach this level without a StackOverflow exception, ethereumj
-     * may need to be started with a JVM argument to increase the stack size. For
-     * example: -Xss10m
+     * This attribute defines the number of recursive calls allowed in the EVM.
+     * Nested calls don't recurse on the JVM stack, see {@link VM#play(Program)}.
      */
     private static final int MAX_DEPTH = 1024;
 
     // Max size for stack checks
-    private static final int MAX_STACKSIZE = 1024;
+    private static final int MAX_STACKSIZE = Stack.MAX_SIZE;
 
-    private ProgramInvokeFactory programInvokeFactory = new ProgramInvokeFactoryImpl();
+    private static final ProgramInvokeFactory programInvokeFactory = new ProgramInvokeFactoryImpl();
+
+    private ExecutionContext context;
     private ProgramInvoke invoke;
     private ProgramResult result;
 
     private Spec spec;
+    private VM vm;
     private ProgramPreprocess preprocessed;
 
     private Stack stack;
     private Memory memory;
     private Repository repo;
     private Repository originalRepo;
+    private StorageRecorder storageRecorder;
     private byte[] returnDataBuffer;
 
     private byte[] ops;
+    private byte[] codeHash;
     private int pc;
     private boolean stopped;
 
+    // the last instruction of the pre-charged basic block, or -1
+    private int blockLast = -1;
+
+    // nested call handed over to the frame loop of the VM
+    private boolean deferNestedCalls;
+    private Program pendingProgram;
+    private Function<ProgramResult, ProgramResult> pendingCompletion;
+
     public Program(byte[] ops, ProgramInvoke programInvoke, Spec spec) {
         this.ops = nullToEmpty(ops);
         this.invoke = programInvoke;
@@ -93,6 +107,7 @@ public class Program {
         this.stack = new Stack();
         this.repo = programInvoke.getRepository();
         this.originalRepo = programInvoke.getOriginalRepository();
+        this.storageRecorder = programInvoke.getStorageRecorder();
 
         this.spec = spec;
     }
@@ -101,13 +116,101 @@ public class Program {
         this(ops, programInvoke, Spec.DEFAULT);
     }
 
+    /**
+     * Re-initializes this program for another invocation, keeping the allocated
+     * stack and memory.
+     */
+    void reset(byte[] ops, ProgramInvoke programInvoke, Spec spec) {
+        this.ops = nullToEmpty(ops);
+        this.codeHash = null;
+        this.invoke = programInvoke;
+        this.result = ProgramResult.createEmptyResult(invoke.getGasLimit());
+
+        this.memory.clear();
+        this.stack.clear();
+        this.repo = programInvoke.getRepository();
+        this.originalRepo = programInvoke.getOriginalRepository();
+        this.storageRecorder = programInvoke.getStorageRecorder();
+        this.returnDataBuffer = null;
+
+        this.spec = spec;
+        this.vm = null;
+        this.preprocessed = null;
+
+        this.pc = 0;
+        this.stopped = false;
+        this.blockLast = -1;
+        this.deferNestedCalls = false;
+        this.pendingProgram = null;
+        this.pendingCompletion = null;
+    }
+
+    /**
+     * Drops the references to the state of the last invocation, so that a pooled
+     * frame doesn't keep it reachable. The memory is only kept for reuse up to the
+     * given size.
+     */
+    void release(int retainedMemory) {
+        this.ops = EMPTY_BYTE_ARRAY;
+        this.codeHash = null;
+        this.invoke = null;
+        this.result = null;
+
+        if (memory.internalSize() > retainedMemory) {
+            this.memory = new Memory();
+        } else {
+            this.memory.clear();
+        }
+        this.stack.clear();
+        this.repo = null;
+        this.originalRepo = null;
+        this.storageRecorder = null;
+        this.returnDataBuffer = null;
+
+        this.vm = null;
+        this.preprocessed = null;
+        this.pendingProgram = null;
+        this.pendingCompletion = null;
+    }
+
+    /**
+     * Sets the context whose frames are reused for the nested calls and creations.
+     */
+    void setContext(ExecutionContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Sets the keccak256 hash of the program code, under which its analysis is
+     * cached. Programs without a hash, such as init code, are analyzed on every
+     * run.
+     */
+    public void setCodeHash(byte[] codeHash) {
+        this.codeHash = codeHash;
+    }
+
     public ProgramPreprocess getProgramPreprocess() {
         if (preprocessed == null) {
-            preprocessed = ProgramPreprocess.compile(ops);
+            preprocessed = spec.getProgramPreprocessCache().get(codeHash, ops);
         }
         return preprocessed;
     }
 
+    /**
+     * Returns the VM executing this program, which is also used for the nested
+     * calls and creations.
+     */
+    public VM getVM() {
+        if (vm == null) {
+            vm = new VM(spec);
+        }
+        return vm;
+    }
+
+    public void setVM(VM vm) {
+        this.vm = vm;
+    }
+
     public ProgramResult getResult() {
         return result;
     }
@@ -170,6 +273,19 @@ public class Program {
         }
     }
 
+    /**
+     * Returns the position of the last instruction of the basic block being
+     * executed, whose gas has been charged and stack validated on entry, or -1 if
+     * instructions are being charged one by one.
+     */
+    public int getBlockLast() {
+        return blockLast;
+    }
+
+    public void setBlockLast(int blockLast) {
+        this.blockLast = blockLast;
+    }
+
     public boolean isStopped() {
         return stopped;
     }
@@ -199,6 +315,22 @@ public class Program {
         return data;
     }
 
+    /**
+     * Pushes the next <code>n</code> bytes of code onto the stack, without copying
+     * them out of the code first, and moves the program counter past them.
+     *
+     * @param n
+     *            the number of bytes to push
+     */
+    public void sweepAndPush(int n) {
+        verifyStackOverflow(0, 1); // Sanity Check
+        stack.push(ops, pc, n);
+
+        pc += n;
+        if (pc >= ops.length)
+            stop();
+    }
+
     public DataWord stackPop() {
         return stack.pop();
     }
@@ -228,7 +360,7 @@ public class Program {
     }
 
     public void memorySave(DataWord addrB, DataWord value) {
-        memory.write(addrB.intValue(), value.getData(), value.getData().length, false);
+        memory.writeWord(addrB.intValue(), value);
     }
 
     public void memorySaveLimited(int addr, byte[] data, int dataSize) {
@@ -306,6 +438,10 @@ public class Program {
         return this.originalRepo;
     }
 
+    public StorageRecorder getStorageRecorder() {
+        return this.storageRecorder;
+    }
+
     /**
      * Create contract for {@link OpCode#CREATE}
      */
@@ -325,9 +461,7 @@ public class Program {
         byte[] contractAddress = HashUtil.calcNewAddress(senderAddress, nonce);
         byte[] programCode = memoryChunk(memStart.intValue(), memSize.intValue());
 
-        ProgramResult callResult = createContractImpl(value, programCode, contractAddress, gas);
-        setReturnDataBuffer(callResult.getReturnData());
-        return callResult;
+        return createContractImpl(value, programCode, contractAddress, gas);
     }
 
     /**
@@ -348,9 +482,7 @@ public class Program {
         byte[] programCode = memoryChunk(memStart.intValue(), memSize.intValue());
         byte[] contractAddress = HashUtil.calcSaltAddress(senderAddress, programCode, salt.getData());
 
-        ProgramResult callResult = createContractImpl(value, programCode, contractAddress, gas);
-        setReturnDataBuffer(callResult.getReturnData());
-        return callResult;
+        return createContractImpl(value, programCode, contractAddress, gas);
     }
 
     /**
@@ -375,9 +507,7 @@ public class Program {
                 outDataOffs, outDataSize);
         PrecompiledContract contract = spec.getPrecompiledContracts().getContractForAddress(codeAddress);
 
-        ProgramResult callResult = callContractImpl(msg, contract);
-        setReturnDataBuffer(callResult.getReturnData());
-        return callResult;
+        return callContractImpl(msg, contract);
     }
 
     /**
@@ -434,14 +564,21 @@ public class Program {
                     track,
                     this.invoke.getBlockStore(),
                     false);
-            Program program = new Program(programCode, programInvoke, spec);
+            Program program = newProgram(programCode, programInvoke);
 
-            new VM(spec).play(program);
-            result = program.getResult();
+            return execute(program, r -> completeCreate(newAddress, track, internalTx, r));
         } else {
             result = ProgramResult.createEmptyResult(gas);
         }
 
+        return completeCreate(newAddress, track, internalTx, result);
+    }
+
+    /**
+     * Post-processes the result of a contract creation.
+     */
+    private ProgramResult completeCreate(byte[] newAddress, Repository track, InternalTransaction internalTx,
+            ProgramResult result) {
         // [7] SAVE THE CONTRACT CODE
         if (result.getException() == null && !result.isRevert()) {
             byte[] code = result.getReturnData();
@@ -497,6 +634,7 @@ public class Program {
         // [10] MERGE RESULT INTO PARENT
         getResult().merge(result);
 
+        setReturnDataBuffer(result.getReturnData());
         return result;
     }
 
@@ -568,7 +706,9 @@ public class Program {
                 }
             }
         } else {
-            byte[] programCode = getRepository().getCode(codeAddress);
+            // the interned code carries its hash, which keys the cached analysis
+            Code code = getRepository().getInternedCode(codeAddress);
+            byte[] programCode = code == null ? getRepository().getCode(codeAddress) : code.getBytes();
             if (isNotEmpty(programCode)) {
                 ProgramInvoke programInvoke = programInvokeFactory.createProgramInvoke(this,
                         msg.getType().callIsDelegate() ? getCallerAddress() : getOwnerAddress(),
@@ -579,14 +719,23 @@ public class Program {
                         track,
                         this.invoke.getBlockStore(),
                         msg.getType().callIsStatic() || isStaticCall());
-                Program program = new Program(programCode, programInvoke, spec);
-                new VM(spec).play(program);
-                result = program.getResult();
+                Program program = newProgram(programCode, programInvoke);
+                program.setCodeHash(code == null ? null : code.getHash());
+
+                return execute(program, r -> completeCall(msg, contextAddress, track, internalTx, r));
             } else {
                 result = ProgramResult.createEmptyResult(msg.getGas());
             }
         }
 
+        return completeCall(msg, contextAddress, track, internalTx, result);
+    }
+
+    /**
+     * Post-processes the result of a message call.
+     */
+    private ProgramResult completeCall(MessageCall msg, byte[] contextAddress, Repository track,
+            InternalTransaction internalTx, ProgramResult result) {
         // [7] POST EXECUTION PROCESSING
         if (result.getException() == null && !result.isRevert()) {
             // commit changes
@@ -627,9 +776,63 @@ public class Program {
         // [9] MERGE RESULT INTO PARENT
         getResult().merge(result);
 
+        setReturnDataBuffer(result.getReturnData());
         return result;
     }
 
+    private Program newProgram(byte[] code, ProgramInvoke programInvoke) {
+        return context == null ? new Program(code, programInvoke, spec) : context.acquire(code, programInvoke, spec);
+    }
+
+    /**
+     * Executes a nested program and completes the call with its result.
+     *
+     * If this program is driven by the frame loop of {@link VM#play(Program)}, the
+     * nested program is handed over to the loop, which completes the call once the
+     * nested program stops, see {@link #takePendingProgram()} and
+     * {@link #resume(ProgramResult)}. Otherwise, it's executed right away.
+     *
+     * @return the completed result, or null if the execution is deferred
+     */
+    private ProgramResult execute(Program program, Function<ProgramResult, ProgramResult> completion) {
+        program.setVM(getVM());
+
+        if (deferNestedCalls) {
+            pendingProgram = program;
+            pendingCompletion = completion;
+            return null;
+        }
+
+        getVM().play(program);
+        return completion.apply(program.getResult());
+    }
+
+    /**
+     * Sets whether nested calls are handed over to the caller instead of being
+     * executed right away.
+     */
+    public void setDeferNestedCalls(boolean deferNestedCalls) {
+        this.deferNestedCalls = deferNestedCalls;
+    }
+
+    /**
+     * Returns and clears the nested program waiting to be executed, if any.
+     */
+    public Program takePendingProgram() {
+        Program program = pendingProgram;
+        pendingProgram = null;
+        return program;
+    }
+
+    /**
+     * Completes the deferred nested call with the result of the nested program.
+     */
+    public void resume(ProgramResult result) {
+        Function<ProgramResult, ProgramResult> completion = pendingCompletion;
+        pendingCompletion = null;
+        completion.apply(result);
+    }
+
     public void spendGas(long gasValue, String cause) {
         logger.debug("Spend: cause = [{}], gas = [{}]", cause, gasValue);
 
@@ -660,7 +863,9 @@ public class Program {
     }
 
     public void storageSave(DataWord key, DataWord value) {
-        getRepository().putStorageRow(getOwnerAddress().getLast20Bytes(), key, value);
+        byte[] address = getOwnerAddress().getLast20Bytes();
+        storageRecorder.recordStorageRow(address, key);
+        getRepository().putStorageRow(address, key, value);
     }
 
     public byte[] getCode() {
@@ -672,6 +877,14 @@ public class Program {
         return nullToEmpty(code);
     }
 
+    public int getCodeSizeAt(DataWord address) {
+        return invoke.getRepository().getCodeSize(address.getLast20Bytes());
+    }
+
+    public byte[] getCodeHashAt(DataWord address) {
+        return invoke.getRepository().getCodeHash(address.getLast20Bytes());
+    }
+
     public DataWord getOwnerAddress() {
         return invoke.getOwnerAddress();
     }
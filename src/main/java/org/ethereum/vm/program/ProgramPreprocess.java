@@ -17,9 +17,9 @@
  */
 package org.ethereum.vm.program;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
+import org.ethereum.vm.InstructionTable;
 import org.ethereum.vm.OpCode;
 
 /**
@@ -28,33 +28,213 @@ import org.ethereum.vm.OpCode;
  * Features included:
  * <ul>
  * <li>Collect the list of JUMP destinations</li>
+ * <li>Mark the bytes that are PUSH data rather than opcodes</li>
+ * <li>Split the code into basic blocks, when an {@link InstructionTable} is
+ * given</li>
  * </ul>
+ *
+ * The first two are kept as bitmaps with one bit per code byte, so a 24 KB
+ * contract needs 6 KB in total and a jump check is a single array lookup.
+ *
+ * A basic block is a run of instructions with static gas cost, entered only at
+ * its first instruction and left only after its last one. It ends before a
+ * JUMPDEST, after a JUMP, JUMPI, STOP or GAS instruction, and before an
+ * instruction whose gas cost is dynamic (memory, SSTORE, calls, etc.) or which
+ * is invalid; such instructions are charged on their own. For each block, the
+ * total gas cost and the range of stack sizes which can't underflow or overflow
+ * are precomputed, so that the interpreter charges and validates the block once
+ * on entry.
+ *
+ * Instances are immutable and may be shared between programs, see
+ * {@link ProgramPreprocessCache}.
  */
 public class ProgramPreprocess {
-    private Set<Integer> jumpdest = new HashSet<>();
+
+    private static final int JUMPDEST = OpCode.JUMPDEST.asInt();
+    private static final int PUSH1 = OpCode.PUSH1.asInt();
+    private static final int PUSH32 = OpCode.PUSH32.asInt();
+
+    private final int length;
+    private final long[] jumpdest;
+    private final long[] pushData;
+
+    // basic blocks, sorted by the start position
+    private final int[] blockStart;
+    private final int[] blockLast;
+    private final long[] blockGas;
+    private final int[] blockMinStack;
+    private final int[] blockMaxStack;
+
+    private ProgramPreprocess(int length, long[] jumpdest, long[] pushData, Blocks blocks) {
+        this.length = length;
+        this.jumpdest = jumpdest;
+        this.pushData = pushData;
+
+        this.blockStart = Arrays.copyOf(blocks.start, blocks.size);
+        this.blockLast = Arrays.copyOf(blocks.last, blocks.size);
+        this.blockGas = Arrays.copyOf(blocks.gas, blocks.size);
+        this.blockMinStack = Arrays.copyOf(blocks.minStack, blocks.size);
+        this.blockMaxStack = Arrays.copyOf(blocks.maxStack, blocks.size);
+    }
 
     public boolean hasJumpDest(int pc) {
-        return jumpdest.contains(pc);
+        return pc >= 0 && pc < length && isSet(jumpdest, pc);
+    }
+
+    /**
+     * Returns whether the byte at the given position is the immediate data of a
+     * PUSH instruction.
+     */
+    public boolean isPushData(int pc) {
+        return pc >= 0 && pc < length && isSet(pushData, pc);
+    }
+
+    /**
+     * Returns the index of the basic block starting at the given position, or -1 if
+     * there is none.
+     */
+    public int getBlock(int pc) {
+        return Math.max(-1, Arrays.binarySearch(blockStart, pc));
+    }
+
+    /**
+     * Returns the position of the last instruction of a basic block.
+     */
+    public int getBlockLast(int block) {
+        return blockLast[block];
+    }
+
+    /**
+     * Returns the total gas cost of a basic block.
+     */
+    public long getBlockGas(int block) {
+        return blockGas[block];
+    }
+
+    /**
+     * Returns the minimum stack size on entry of a basic block.
+     */
+    public int getBlockMinStack(int block) {
+        return blockMinStack[block];
+    }
+
+    /**
+     * Returns the maximum stack size on entry of a basic block.
+     */
+    public int getBlockMaxStack(int block) {
+        return blockMaxStack[block];
     }
 
     public static ProgramPreprocess compile(byte[] ops) {
-        ProgramPreprocess ret = new ProgramPreprocess();
+        long[] jumpdest = new long[(ops.length + 63) >>> 6];
+        long[] pushData = new long[(ops.length + 63) >>> 6];
+        mark(ops, jumpdest, pushData);
 
-        for (int i = 0; i < ops.length; ++i) {
-            OpCode op = OpCode.code(ops[i]);
-            if (op == null) {
-                continue;
+        return new ProgramPreprocess(ops.length, jumpdest, pushData, new Blocks());
+    }
+
+    /**
+     * Compiles the code, including the basic blocks resolved against the given
+     * instruction table.
+     */
+    public static ProgramPreprocess compile(byte[] ops, InstructionTable table) {
+        long[] jumpdest = new long[(ops.length + 63) >>> 6];
+        long[] pushData = new long[(ops.length + 63) >>> 6];
+        mark(ops, jumpdest, pushData);
+
+        Blocks blocks = new Blocks();
+        int pc = 0;
+        while (pc < ops.length) {
+            int start = pc, last = pc;
+            long gas = 0;
+            int depth = 0, minStack = 0, maxStack = Stack.MAX_SIZE;
+
+            while (pc < ops.length) {
+                InstructionTable.Instruction instruction = table.get(ops[pc]);
+                OpCode op = instruction.getOp();
+                if (op == null || instruction.getHandler() == null) {
+                    // charged and validated by the instruction itself
+                    pc++;
+                    break;
+                }
+
+                gas += instruction.getGas();
+                minStack = Math.max(minStack, op.require() - depth);
+                depth += op.ret() - op.require();
+                maxStack = Math.min(maxStack, Stack.MAX_SIZE - depth);
+
+                last = pc;
+                pc += (op.val() >= OpCode.PUSH1.val() && op.val() <= OpCode.PUSH32.val())
+                        ? op.val() - OpCode.PUSH1.val() + 2
+                        : 1;
+                if (op == OpCode.JUMP || op == OpCode.JUMPI || op == OpCode.STOP || op == OpCode.GAS
+                        || (pc < ops.length && isSet(jumpdest, pc))) {
+                    break;
+                }
             }
 
-            if (op.equals(OpCode.JUMPDEST)) {
-                ret.jumpdest.add(i);
+            if (gas > 0 && maxStack >= minStack) {
+                blocks.add(start, last, gas, minStack, maxStack);
             }
+        }
+
+        return new ProgramPreprocess(ops.length, jumpdest, pushData, blocks);
+    }
+
+    /**
+     * Marks the JUMPDEST instructions and the PUSH data of the code.
+     */
+    private static void mark(byte[] ops, long[] jumpdest, long[] pushData) {
+        for (int i = 0; i < ops.length; ++i) {
+            int op = ops[i] & 0xff;
 
-            if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
-                i += op.asInt() - OpCode.PUSH1.asInt() + 1;
+            if (op == JUMPDEST) {
+                set(jumpdest, i);
+            }
+
+            if (op >= PUSH1 && op <= PUSH32) {
+                int end = Math.min(i + op - PUSH1 + 1, ops.length - 1);
+                while (i < end) {
+                    set(pushData, ++i);
+                }
             }
         }
+    }
+
+    private static boolean isSet(long[] bitmap, int index) {
+        return (bitmap[index >>> 6] & (1L << index)) != 0;
+    }
 
-        return ret;
+    private static void set(long[] bitmap, int index) {
+        bitmap[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * The basic blocks collected while compiling, in growable arrays.
+     */
+    private static class Blocks {
+        private int size;
+        private int[] start = new int[0];
+        private int[] last = new int[0];
+        private long[] gas = new long[0];
+        private int[] minStack = new int[0];
+        private int[] maxStack = new int[0];
+
+        private void add(int start, int last, long gas, int minStack, int maxStack) {
+            if (size == this.start.length) {
+                int capacity = Math.max(16, size * 2);
+                this.start = Arrays.copyOf(this.start, capacity);
+                this.last = Arrays.copyOf(this.last, capacity);
+                this.gas = Arrays.copyOf(this.gas, capacity);
+                this.minStack = Arrays.copyOf(this.minStack, capacity);
+                this.maxStack = Arrays.copyOf(this.maxStack, capacity);
+            }
+            this.start[size] = start;
+            this.last[size] = last;
+            this.gas[size] = gas;
+            this.minStack[size] = minStack;
+            this.maxStack[size] = maxStack;
+            size++;
+        }
     }
 }
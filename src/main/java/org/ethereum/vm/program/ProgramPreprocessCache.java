@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.util.ByteArrayWrapper;
+import org.ethereum.vm.util.HashUtil;
+import org.ethereum.vm.util.LruCache;
+
+/**
+ * A thread-safe, size-bounded cache of {@link ProgramPreprocess} results, keyed
+ * by the keccak256 hash of the code, with least-recently-used eviction.
+ *
+ * Frequently called contracts are analyzed only once instead of on every
+ * message call into them. When bound to a spec, the analysis includes the basic
+ * blocks, whose gas cost depends on the spec.
+ */
+public class ProgramPreprocessCache extends LruCache<ByteArrayWrapper, ProgramPreprocess> {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final Spec spec;
+
+    public ProgramPreprocessCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param capacity
+     *            the max number of entries; zero disables caching
+     */
+    public ProgramPreprocessCache(int capacity) {
+        this(null, capacity);
+    }
+
+    /**
+     * Creates a cache bound to a spec.
+     *
+     * @param spec
+     *            the spec to resolve the basic blocks against, or null to skip the
+     *            block analysis
+     * @param capacity
+     *            the max number of entries; zero disables caching
+     */
+    public ProgramPreprocessCache(Spec spec, int capacity) {
+        super(capacity);
+        this.spec = spec;
+    }
+
+    /**
+     * Returns the analysis of the given code, computing it if absent.
+     *
+     * The code is hashed to look it up, which costs more than analyzing it; prefer
+     * {@link #get(byte[], byte[])} when the hash is already known.
+     *
+     * @param code
+     *            the program code
+     * @return the analysis result
+     */
+    public ProgramPreprocess get(byte[] code) {
+        if (getMaxWeight() == 0 || code.length == 0) {
+            return compile(code);
+        }
+
+        return get(HashUtil.keccak256(code), code);
+    }
+
+    /**
+     * Returns the analysis of the given code, computing it if absent.
+     *
+     * @param codeHash
+     *            the keccak256 hash of the code, or null to analyze it without
+     *            caching
+     * @param code
+     *            the program code
+     * @return the analysis result
+     */
+    public ProgramPreprocess get(byte[] codeHash, byte[] code) {
+        if (codeHash == null) {
+            return compile(code);
+        }
+
+        return get(new ByteArrayWrapper(codeHash), k -> compile(code));
+    }
+
+    private ProgramPreprocess compile(byte[] code) {
+        return spec == null ? ProgramPreprocess.compile(code)
+                : ProgramPreprocess.compile(code, spec.getInstructionTable());
+    }
+}
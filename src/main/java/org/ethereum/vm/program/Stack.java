@@ -17,47 +17,301 @@
  */
 package org.ethereum.vm.program;
 
+import static org.ethereum.vm.util.UInt256.LIMBS;
+
+import java.util.Arrays;
+
 import org.ethereum.vm.DataWord;
+import org.ethereum.vm.util.UInt256;
 
 /**
  * Program runtime stack.
+ *
+ * Items are stored as 4-limb slots in a flat {@code long[]} (see
+ * {@link UInt256}), and the arithmetic, comparison and bitwise operations work
+ * in place on the top slots, so executing them creates no garbage.
+ *
+ * @ImplNote This class is not thread-safe and performs no bounds checking; the
+ *           caller is expected to validate the stack size beforehand, see
+ *           {@link Program#verifyStackUnderflow(int)} and
+ *           {@link Program#verifyStackOverflow(int, int)}.
  */
 public class Stack {
 
-    private java.util.Stack<DataWord> stack = new java.util.Stack<>();
+    public static final int MAX_SIZE = 1024;
+
+    private static final int INITIAL_CAPACITY = 32;
+
+    private long[] slots = new long[INITIAL_CAPACITY * LIMBS];
+    private int size;
 
-    public synchronized DataWord pop() {
-        return stack.pop();
+    public DataWord pop() {
+        return DataWord.of(slots, --size * LIMBS);
     }
 
     public void push(DataWord item) {
-        stack.push(item);
+        int off = reserve();
+        item.copyTo(slots, off);
+    }
+
+    /**
+     * Pushes {@code length} bytes of the source, starting at {@code pos}, as a
+     * big-endian word. Bytes beyond the end of the source are read as zero.
+     */
+    public void push(byte[] src, int pos, int length) {
+        int off = reserve();
+        UInt256.set(slots, off, 0, 0, 0, 0);
+        for (int i = 0; i < length && pos + i < src.length; i++) {
+            int p = DataWord.SIZE - length + i;
+            slots[off + (p >>> 3)] |= (src[pos + i] & 0xffL) << ((7 - (p & 7)) << 3);
+        }
+    }
+
+    public void push(long value) {
+        int off = reserve();
+        UInt256.set(slots, off, 0, 0, 0, value);
+    }
+
+    /**
+     * Removes the top item without materializing it.
+     */
+    public void drop() {
+        size--;
+    }
+
+    /**
+     * Duplicates the n-th item from the top, where {@code n = 1} is the top.
+     */
+    public void dup(int n) {
+        int src = (size - n) * LIMBS;
+        int off = reserve();
+        UInt256.copy(slots, off, slots, src);
     }
 
     public void swap(int from, int to) {
         if (isAccessible(from) && isAccessible(to) && (from != to)) {
-            DataWord tmp = stack.get(from);
-            stack.set(from, stack.set(to, tmp));
+            int a = from * LIMBS, b = to * LIMBS;
+            for (int i = 0; i < LIMBS; i++) {
+                long tmp = slots[a + i];
+                slots[a + i] = slots[b + i];
+                slots[b + i] = tmp;
+            }
         }
     }
 
     public DataWord peek() {
-        return stack.peek();
+        return get(size - 1);
     }
 
     public DataWord get(int index) {
-        return stack.get(index);
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return DataWord.of(slots, index * LIMBS);
     }
 
     public int size() {
-        return stack.size();
+        return size;
     }
 
     private boolean isAccessible(int from) {
-        return from >= 0 && from < stack.size();
+        return from >= 0 && from < size;
     }
 
     public DataWord[] toArray() {
-        return stack.toArray(new DataWord[0]);
+        DataWord[] array = new DataWord[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = DataWord.of(slots, i * LIMBS);
+        }
+        return array;
+    }
+
+    /**
+     * Removes all the items, keeping the allocated capacity for reuse.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    // =======================
+    // In-place operations, named after the opcodes. The first operand is the
+    // top item; the result replaces the consumed items.
+    // =======================
+
+    public void add() {
+        int a = top(), b = a - LIMBS;
+        UInt256.add(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void mul() {
+        int a = top(), b = a - LIMBS;
+        UInt256.mul(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void sub() {
+        int a = top(), b = a - LIMBS;
+        UInt256.sub(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void div() {
+        int a = top(), b = a - LIMBS;
+        UInt256.div(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void sdiv() {
+        int a = top(), b = a - LIMBS;
+        UInt256.sdiv(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void mod() {
+        int a = top(), b = a - LIMBS;
+        UInt256.mod(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void smod() {
+        int a = top(), b = a - LIMBS;
+        UInt256.smod(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void addmod() {
+        int a = top(), b = a - LIMBS, c = b - LIMBS;
+        UInt256.addmod(slots, c, slots, a, slots, b, slots, c);
+        size -= 2;
+    }
+
+    public void mulmod() {
+        int a = top(), b = a - LIMBS, c = b - LIMBS;
+        if (UInt256.isZero(slots, a) || UInt256.isZero(slots, b)) {
+            UInt256.set(slots, c, 0, 0, 0, 0);
+        } else {
+            UInt256.mulmod(slots, c, slots, a, slots, b, slots, c);
+        }
+        size -= 2;
+    }
+
+    public void exp() {
+        int a = top(), b = a - LIMBS;
+        UInt256.exp(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void signExtend() {
+        int a = top(), b = a - LIMBS;
+        size--;
+        if (UInt256.fitsIn(slots, a, 5)) {
+            UInt256.signExtend(slots, b, slots, b, (int) slots[a + 3]);
+        }
+    }
+
+    public void lt() {
+        int a = top(), b = a - LIMBS;
+        setBoolean(b, UInt256.compare(slots, a, slots, b) < 0);
+        size--;
+    }
+
+    public void gt() {
+        int a = top(), b = a - LIMBS;
+        setBoolean(b, UInt256.compare(slots, a, slots, b) > 0);
+        size--;
+    }
+
+    public void slt() {
+        int a = top(), b = a - LIMBS;
+        setBoolean(b, UInt256.compareSigned(slots, a, slots, b) < 0);
+        size--;
+    }
+
+    public void sgt() {
+        int a = top(), b = a - LIMBS;
+        setBoolean(b, UInt256.compareSigned(slots, a, slots, b) > 0);
+        size--;
+    }
+
+    public void eq() {
+        int a = top(), b = a - LIMBS;
+        setBoolean(b, UInt256.equals(slots, a, slots, b));
+        size--;
+    }
+
+    public void isZero() {
+        int a = top();
+        setBoolean(a, UInt256.isZero(slots, a));
+    }
+
+    public void and() {
+        int a = top(), b = a - LIMBS;
+        UInt256.and(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void or() {
+        int a = top(), b = a - LIMBS;
+        UInt256.or(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void xor() {
+        int a = top(), b = a - LIMBS;
+        UInt256.xor(slots, b, slots, a, slots, b);
+        size--;
+    }
+
+    public void not() {
+        int a = top();
+        UInt256.not(slots, a, slots, a);
+    }
+
+    public void byteAt() {
+        int a = top(), b = a - LIMBS;
+        long value = UInt256.fitsIn(slots, a, 5) ? UInt256.getByte(slots, b, (int) slots[a + 3]) & 0xffL : 0;
+        UInt256.set(slots, b, 0, 0, 0, value);
+        size--;
+    }
+
+    public void shl() {
+        int a = top(), b = a - LIMBS;
+        UInt256.shiftLeft(slots, b, slots, b, shiftAmount(a));
+        size--;
+    }
+
+    public void shr() {
+        int a = top(), b = a - LIMBS;
+        UInt256.shiftRight(slots, b, slots, b, shiftAmount(a));
+        size--;
+    }
+
+    public void sar() {
+        int a = top(), b = a - LIMBS;
+        UInt256.shiftRightSigned(slots, b, slots, b, shiftAmount(a));
+        size--;
+    }
+
+    private int top() {
+        return (size - 1) * LIMBS;
+    }
+
+    private int shiftAmount(int off) {
+        // anything beyond 256 behaves the same
+        return UInt256.fitsIn(slots, off, 16) ? (int) slots[off + 3] : 256;
+    }
+
+    private void setBoolean(int off, boolean value) {
+        UInt256.set(slots, off, 0, 0, 0, value ? 1 : 0);
+    }
+
+    private int reserve() {
+        int off = size * LIMBS;
+        if (off == slots.length) {
+            slots = Arrays.copyOf(slots, Math.min(slots.length * 2, MAX_SIZE * LIMBS));
+        }
+        size++;
+        return off;
     }
 }
@@ -0,0 +1,161 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program.invoke;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.util.ByteArrayWrapper;
+
+/**
+ * A read-only view of the storage at the beginning of a transaction, for the
+ * net gas metering of SSTORE (EIP-1283).
+ *
+ * Instead of copying the whole state up front, the original value of a slot is
+ * journaled when the slot is first written, see
+ * {@link #recordStorageRow(byte[], DataWord)}. A slot without a journal entry
+ * hasn't been written in the transaction, so its value is read through from the
+ * underlying repository.
+ *
+ * @ImplNote Only the storage is guaranteed to reflect the original state; the
+ *           other queries are answered by the underlying repository. This class
+ *           is not thread-safe.
+ */
+public class OriginalRepository implements Repository, StorageRecorder {
+
+    private final Repository repository;
+    private final Map<ByteArrayWrapper, Map<DataWord, DataWord>> journal = new HashMap<>();
+
+    /**
+     * Creates an original view of the given repository.
+     *
+     * @param repository
+     *            the repository the transaction is executed against, whose storage
+     *            must only be written by the programs of the transaction until it
+     *            completes
+     */
+    public OriginalRepository(Repository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public void recordStorageRow(byte[] address, DataWord key) {
+        Map<DataWord, DataWord> storage = journal.computeIfAbsent(new ByteArrayWrapper(address),
+                k -> new HashMap<>());
+        if (!storage.containsKey(key)) {
+            storage.put(key, repository.getStorageRow(address, key));
+        }
+    }
+
+    @Override
+    public DataWord getStorageRow(byte[] address, DataWord key) {
+        Map<DataWord, DataWord> storage = journal.get(new ByteArrayWrapper(address));
+        if (storage != null && storage.containsKey(key)) {
+            return storage.get(key);
+        }
+        return repository.getStorageRow(address, key);
+    }
+
+    @Override
+    public boolean exists(byte[] address) {
+        return repository.exists(address);
+    }
+
+    @Override
+    public long getNonce(byte[] address) {
+        return repository.getNonce(address);
+    }
+
+    @Override
+    public byte[] getCode(byte[] address) {
+        return repository.getCode(address);
+    }
+
+    @Override
+    public int getCodeSize(byte[] address) {
+        return repository.getCodeSize(address);
+    }
+
+    @Override
+    public byte[] getCodeHash(byte[] address) {
+        return repository.getCodeHash(address);
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] address) {
+        return repository.getBalance(address);
+    }
+
+    @Override
+    public void createAccount(byte[] address) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void delete(byte[] address) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long increaseNonce(byte[] address) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long setNonce(byte[] address, long nonce) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void saveCode(byte[] address, byte[] code) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void putStorageRow(byte[] address, DataWord key, DataWord value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] address, BigInteger value) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Repository startTracking() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Repository clone() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void commit() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void rollback() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -159,10 +159,25 @@ public interface ProgramInvoke {
     Repository getRepository();
 
     /**
-     * Returns the original repository.
+     * Returns the original repository, i.e. the state at the beginning of the
+     * transaction.
+     *
+     * @see OriginalRepository
      */
     Repository getOriginalRepository();
 
+    /**
+     * Returns the recorder to tell before a storage row is written, which keeps the
+     * original repository up to date.
+     *
+     * @return the storage recorder
+     * @ImplNote the default implementation does nothing, which suits an original
+     *           repository that is a full copy of the state
+     */
+    default StorageRecorder getStorageRecorder() {
+        return StorageRecorder.NONE;
+    }
+
     /**
      * Returns the block storage interface.
      *
@@ -49,14 +49,14 @@ public class ProgramInvokeFactoryImpl implements ProgramInvokeFactory {
         BigInteger difficulty = block.getDifficulty();
         long gasLimit = block.getGasLimit();
 
-        Repository originalRepository = repository.clone();
+        OriginalRepository originalRepository = new OriginalRepository(repository);
         int callDepth = -1;
 
         return new ProgramInvokeImpl(DataWord.of(address), DataWord.of(origin), DataWord.of(caller),
                 gas, DataWord.of(gasPrice), DataWord.of(callValue), callData,
                 DataWord.of(prevHash), DataWord.of(coinbase), DataWord.of(timestamp), DataWord.of(number),
                 DataWord.of(difficulty), DataWord.of(gasLimit),
-                repository, originalRepository, blockStore, callDepth, false);
+                repository, originalRepository, originalRepository, blockStore, callDepth, false);
     }
 
     @Override
@@ -76,10 +76,11 @@ public class ProgramInvokeFactoryImpl implements ProgramInvokeFactory {
         DataWord gasLimit = program.getBlockGasLimit();
 
         Repository originalRepository = program.getOriginalRepository();
+        StorageRecorder storageRecorder = program.getStorageRecorder();
         int callDepth = program.getCallDepth() + 1;
 
         return new ProgramInvokeImpl(toAddress, origin, callerAddress, gas, gasPrice, value, data,
                 prevHash, coinbase, timestamp, number, difficulty, gasLimit,
-                repository, originalRepository, blockStore, callDepth, isStaticCall);
+                repository, originalRepository, storageRecorder, blockStore, callDepth, isStaticCall);
     }
 }
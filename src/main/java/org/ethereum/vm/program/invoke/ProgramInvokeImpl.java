@@ -44,6 +44,7 @@ public class ProgramInvokeImpl implements ProgramInvoke {
      */
     private final Repository repository;
     private final Repository originalRepository;
+    private final StorageRecorder storageRecorder;
     private final BlockStore blockStore;
 
     private int callDepth;
@@ -54,6 +55,16 @@ public class ProgramInvokeImpl implements ProgramInvoke {
             DataWord blockCoinbase, DataWord blockTimestamp, DataWord blockNumber, DataWord blockDifficulty,
             DataWord gasLimit, Repository repository, Repository originalRepository, BlockStore blockStore,
             int callDepth, boolean isStaticCall) {
+        this(address, origin, caller, gas, gasPrice, value, data, blockPrevHash, blockCoinbase, blockTimestamp,
+                blockNumber, blockDifficulty, gasLimit, repository, originalRepository, StorageRecorder.NONE,
+                blockStore, callDepth, isStaticCall);
+    }
+
+    public ProgramInvokeImpl(DataWord address, DataWord origin, DataWord caller,
+            long gas, DataWord gasPrice, DataWord value, byte[] data, DataWord blockPrevHash,
+            DataWord blockCoinbase, DataWord blockTimestamp, DataWord blockNumber, DataWord blockDifficulty,
+            DataWord gasLimit, Repository repository, Repository originalRepository,
+            StorageRecorder storageRecorder, BlockStore blockStore, int callDepth, boolean isStaticCall) {
 
         Objects.requireNonNull(address);
         Objects.requireNonNull(origin);
@@ -89,6 +100,7 @@ public class ProgramInvokeImpl implements ProgramInvoke {
 
         this.repository = repository;
         this.originalRepository = originalRepository;
+        this.storageRecorder = storageRecorder;
         this.blockStore = blockStore;
 
         this.callDepth = callDepth;
@@ -218,6 +230,11 @@ public class ProgramInvokeImpl implements ProgramInvoke {
         return originalRepository;
     }
 
+    @Override
+    public StorageRecorder getStorageRecorder() {
+        return storageRecorder;
+    }
+
     @Override
     public BlockStore getBlockStore() {
         return blockStore;
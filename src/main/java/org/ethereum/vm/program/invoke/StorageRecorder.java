@@ -0,0 +1,47 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program.invoke;
+
+import org.ethereum.vm.DataWord;
+
+/**
+ * Keeps the original values of the storage rows written in a transaction, by
+ * being told before a row is first written.
+ *
+ * @see OriginalRepository
+ */
+public interface StorageRecorder {
+
+    /**
+     * A recorder which does nothing, for an original repository which is a full
+     * copy of the state.
+     */
+    StorageRecorder NONE = (address, key) -> {
+    };
+
+    /**
+     * Records the original value of a storage row, if not recorded yet. This must
+     * be called before the row is written.
+     *
+     * @param address
+     *            the account address
+     * @param key
+     *            the storage key
+     */
+    void recordStorageRow(byte[] address, DataWord key);
+}
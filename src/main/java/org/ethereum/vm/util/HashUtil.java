@@ -28,6 +28,17 @@ import org.bouncycastle.jcajce.provider.digest.Keccak;
 
 public class HashUtil {
 
+    private static final byte[] EMPTY_DATA_HASH = keccak256(new byte[0]);
+
+    /**
+     * Returns the Keccak-256 hash of empty data.
+     *
+     * @return a copy of the 32 bytes digest
+     */
+    public static byte[] getEmptyDataHash() {
+        return EMPTY_DATA_HASH.clone();
+    }
+
     /**
      * Computes the Keccak-256 hash digest.
      *
@@ -0,0 +1,268 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thread-safe, bounded cache with least-recently-used eviction, which keeps
+ * hit, miss and eviction counts. NULL values are cached as well.
+ *
+ * The cache is limited either to a number of entries, or to a total weight of
+ * the values, e.g. their approximate size in bytes. It can be split into
+ * independently locked segments, each holding an equal share of the limit,
+ * which makes the eviction order approximate.
+ *
+ * Values are loaded outside of the lock, so racing threads may load the same
+ * key; the loaders are expected to compute identical results.
+ */
+public class LruCache<K, V> {
+
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final Segment<K, V>[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * Creates a cache limited to a number of entries, with exact LRU eviction.
+     *
+     * @param capacity
+     *            the max number of entries; zero disables caching
+     */
+    public LruCache(int capacity) {
+        this(capacity, v -> 1, 1);
+    }
+
+    /**
+     * Creates a cache limited to a total weight.
+     *
+     * @param maxWeight
+     *            the max total weight of the values; zero disables caching
+     * @param weigher
+     *            the weight of a value, which may be NULL
+     * @param segments
+     *            the number of independently locked segments, a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public LruCache(long maxWeight, ToLongFunction<V> weigher, int segments) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("Capacity can't be negative: " + maxWeight);
+        }
+        if (segments <= 0 || (segments & (segments - 1)) != 0) {
+            throw new IllegalArgumentException("Segments must be a power of two: " + segments);
+        }
+
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.segments = new Segment[segments];
+        for (int i = 0; i < segments; i++) {
+            this.segments[i] = new Segment<>(maxWeight / segments);
+        }
+    }
+
+    /**
+     * Returns the cached value, loading it on a miss.
+     */
+    public V get(K key, Function<K, V> loader) {
+        if (maxWeight == 0) {
+            return loader.apply(key);
+        }
+
+        Segment<K, V> segment = segmentOf(key);
+        long stamp;
+        synchronized (segment) {
+            if (segment.map.containsKey(key)) {
+                hits.increment();
+                return segment.map.get(key);
+            }
+            stamp = segment.writes;
+        }
+
+        misses.increment();
+        V value = loader.apply(key);
+        putIfUnchanged(segment, key, value, stamp);
+        return value;
+    }
+
+    /**
+     * Loads a value into the cache if not cached, without counting a lookup.
+     */
+    public void load(K key, Function<K, V> loader) {
+        Segment<K, V> segment = segmentOf(key);
+        long stamp;
+        synchronized (segment) {
+            if (segment.map.containsKey(key)) {
+                return;
+            }
+            stamp = segment.writes;
+        }
+
+        loads.increment();
+        putIfUnchanged(segment, key, loader.apply(key), stamp);
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentOf(key);
+        synchronized (segment) {
+            segment.writes++;
+            store(segment, key, value);
+        }
+    }
+
+    public void remove(K key) {
+        Segment<K, V> segment = segmentOf(key);
+        synchronized (segment) {
+            segment.writes++;
+            if (segment.map.containsKey(key)) {
+                segment.weight -= weigher.applyAsLong(segment.map.remove(key));
+            }
+        }
+    }
+
+    /**
+     * Removes all the entries, keeping the statistics.
+     */
+    public void clear() {
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                segment.writes++;
+                segment.map.clear();
+                segment.weight = 0;
+            }
+        }
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        loads.reset();
+    }
+
+    /**
+     * Caches a loaded value, unless the segment has been written since the load
+     * started, in which case the value may be stale.
+     */
+    private void putIfUnchanged(Segment<K, V> segment, K key, V value, long stamp) {
+        synchronized (segment) {
+            if (segment.writes == stamp && !segment.map.containsKey(key)) {
+                store(segment, key, value);
+            }
+        }
+    }
+
+    private void store(Segment<K, V> segment, K key, V value) {
+        if (segment.map.containsKey(key)) {
+            segment.weight -= weigher.applyAsLong(segment.map.get(key));
+        }
+        segment.map.put(key, value);
+        segment.weight += weigher.applyAsLong(value);
+
+        Iterator<Map.Entry<K, V>> it = segment.map.entrySet().iterator();
+        while (segment.weight > segment.maxWeight && it.hasNext()) {
+            segment.weight -= weigher.applyAsLong(it.next().getValue());
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Returns the number of cached entries.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the total weight of the cached entries.
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                weight += segment.weight;
+            }
+        }
+        return weight;
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of the values loaded ahead, see
+     * {@link #load(Object, Function)}.
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * Returns the ratio of the lookups served from the cache, or zero if there has
+     * been no lookup.
+     */
+    public double getHitRate() {
+        long h = getHits();
+        long total = h + getMisses();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private Segment<K, V> segmentOf(K key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private static class Segment<K, V> {
+        private final long maxWeight;
+        private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+        private long writes;
+
+        private Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+    }
+}
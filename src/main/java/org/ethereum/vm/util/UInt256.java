@@ -0,0 +1,702 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.util;
+
+/**
+ * 256-bit unsigned arithmetic on primitive {@code long} limbs.
+ *
+ * A value occupies a slot of {@link #LIMBS} consecutive longs in a
+ * {@code long[]}, most significant limb first, so that a slot has the same
+ * layout as the 32-byte big-endian representation. Every operation writes its
+ * result into a destination slot and reads all of its operands before writing,
+ * so the destination may alias any of the operands.
+ *
+ * All arithmetic is modulo 2^256, following the EVM semantics (e.g. division by
+ * zero yields zero).
+ */
+public class UInt256 {
+
+    public static final int LIMBS = 4;
+
+    private static final long MASK_32 = 0xffffffffL;
+
+    private UInt256() {
+    }
+
+    // =======================
+    // Conversion
+    // =======================
+
+    /**
+     * Loads up to 32 big-endian bytes, right-aligned, into a slot.
+     */
+    public static void load(long[] r, int ri, byte[] src, int srcPos, int length) {
+        r[ri] = r[ri + 1] = r[ri + 2] = r[ri + 3] = 0;
+        for (int i = 0; i < length; i++) {
+            int pos = 32 - length + i;
+            r[ri + (pos >>> 3)] |= (src[srcPos + i] & 0xffL) << ((7 - (pos & 7)) << 3);
+        }
+    }
+
+    /**
+     * Stores a slot as 32 big-endian bytes.
+     */
+    public static void store(long[] a, int ai, byte[] dst, int dstPos) {
+        for (int i = 0; i < LIMBS; i++) {
+            long v = a[ai + i];
+            int p = dstPos + (i << 3);
+            dst[p] = (byte) (v >>> 56);
+            dst[p + 1] = (byte) (v >>> 48);
+            dst[p + 2] = (byte) (v >>> 40);
+            dst[p + 3] = (byte) (v >>> 32);
+            dst[p + 4] = (byte) (v >>> 24);
+            dst[p + 5] = (byte) (v >>> 16);
+            dst[p + 6] = (byte) (v >>> 8);
+            dst[p + 7] = (byte) v;
+        }
+    }
+
+    public static void set(long[] r, int ri, long l0, long l1, long l2, long l3) {
+        r[ri] = l0;
+        r[ri + 1] = l1;
+        r[ri + 2] = l2;
+        r[ri + 3] = l3;
+    }
+
+    public static void copy(long[] r, int ri, long[] a, int ai) {
+        r[ri] = a[ai];
+        r[ri + 1] = a[ai + 1];
+        r[ri + 2] = a[ai + 2];
+        r[ri + 3] = a[ai + 3];
+    }
+
+    // =======================
+    // Predicates
+    // =======================
+
+    public static boolean isZero(long[] a, int ai) {
+        return (a[ai] | a[ai + 1] | a[ai + 2] | a[ai + 3]) == 0;
+    }
+
+    public static boolean isNegative(long[] a, int ai) {
+        return a[ai] < 0;
+    }
+
+    /**
+     * Returns whether the value fits into {@code bits} bits, i.e. is less than
+     * 2^bits, where {@code 0 <= bits <= 64}.
+     */
+    public static boolean fitsIn(long[] a, int ai, int bits) {
+        if ((a[ai] | a[ai + 1] | a[ai + 2]) != 0) {
+            return false;
+        }
+        return bits >= 64 || (a[ai + 3] >>> bits) == 0;
+    }
+
+    public static boolean equals(long[] a, int ai, long[] b, int bi) {
+        return a[ai] == b[bi] && a[ai + 1] == b[bi + 1] && a[ai + 2] == b[bi + 2] && a[ai + 3] == b[bi + 3];
+    }
+
+    /**
+     * Compares two values as unsigned integers.
+     */
+    public static int compare(long[] a, int ai, long[] b, int bi) {
+        for (int i = 0; i < LIMBS; i++) {
+            if (a[ai + i] != b[bi + i]) {
+                return Long.compareUnsigned(a[ai + i], b[bi + i]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compares two values as two's complement signed integers.
+     */
+    public static int compareSigned(long[] a, int ai, long[] b, int bi) {
+        if (a[ai] != b[bi]) {
+            return Long.compare(a[ai], b[bi]);
+        }
+        return compare(a, ai, b, bi);
+    }
+
+    /**
+     * Returns the number of bytes needed to represent the value, ignoring leading
+     * zeros.
+     */
+    public static int bytesOccupied(long[] a, int ai) {
+        for (int i = 0; i < LIMBS; i++) {
+            if (a[ai + i] != 0) {
+                return ((LIMBS - i) << 3) - (Long.numberOfLeadingZeros(a[ai + i]) >>> 3);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the n-th byte of the 32-byte big-endian representation.
+     */
+    public static byte getByte(long[] a, int ai, int index) {
+        if (index < 0 || index >= 32) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return (byte) (a[ai + (index >>> 3)] >>> ((7 - (index & 7)) << 3));
+    }
+
+    // =======================
+    // Bitwise operations
+    // =======================
+
+    public static void and(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        set(r, ri, a[ai] & b[bi], a[ai + 1] & b[bi + 1], a[ai + 2] & b[bi + 2], a[ai + 3] & b[bi + 3]);
+    }
+
+    public static void or(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        set(r, ri, a[ai] | b[bi], a[ai + 1] | b[bi + 1], a[ai + 2] | b[bi + 2], a[ai + 3] | b[bi + 3]);
+    }
+
+    public static void xor(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        set(r, ri, a[ai] ^ b[bi], a[ai + 1] ^ b[bi + 1], a[ai + 2] ^ b[bi + 2], a[ai + 3] ^ b[bi + 3]);
+    }
+
+    public static void not(long[] r, int ri, long[] a, int ai) {
+        set(r, ri, ~a[ai], ~a[ai + 1], ~a[ai + 2], ~a[ai + 3]);
+    }
+
+    /**
+     * r = a << n, where the shift is treated as unsigned; yields zero when
+     * {@code n >= 256}.
+     */
+    public static void shiftLeft(long[] r, int ri, long[] a, int ai, int n) {
+        shift(r, ri, a, ai, -n, 0);
+    }
+
+    /**
+     * r = a >>> n; yields zero when {@code n >= 256}.
+     */
+    public static void shiftRight(long[] r, int ri, long[] a, int ai, int n) {
+        shift(r, ri, a, ai, n, 0);
+    }
+
+    /**
+     * r = a >> n, where a is signed; yields zero or minus one when
+     * {@code n >= 256}.
+     */
+    public static void shiftRightSigned(long[] r, int ri, long[] a, int ai, int n) {
+        shift(r, ri, a, ai, n, a[ai] >> 63);
+    }
+
+    /**
+     * Extends the sign bit of the k-th lowest byte, where {@code 0 <= k < 32}.
+     */
+    public static void signExtend(long[] r, int ri, long[] a, int ai, int k) {
+        int bit = (k << 3) + 7;
+        int idx = LIMBS - 1 - (bit >>> 6);
+        int s = bit & 63;
+
+        long x = a[ai + idx];
+        long fill = ((x >>> s) & 1) == 0 ? 0 : -1L;
+        long upper = s == 63 ? 0 : (-1L << (s + 1));
+
+        copy(r, ri, a, ai);
+        r[ri + idx] = (x & ~upper) | (fill & upper);
+        for (int i = 0; i < idx; i++) {
+            r[ri + i] = fill;
+        }
+    }
+
+    // =======================
+    // Arithmetic operations
+    // =======================
+
+    public static void add(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        long a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+        long b0 = b[bi], b1 = b[bi + 1], b2 = b[bi + 2], b3 = b[bi + 3];
+
+        long r3 = a3 + b3;
+        long c = Long.compareUnsigned(r3, a3) < 0 ? 1 : 0;
+        long r2 = a2 + b2 + c;
+        c = carry(r2, a2, c);
+        long r1 = a1 + b1 + c;
+        c = carry(r1, a1, c);
+        long r0 = a0 + b0 + c;
+
+        set(r, ri, r0, r1, r2, r3);
+    }
+
+    public static void sub(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        long a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+        long b0 = b[bi], b1 = b[bi + 1], b2 = b[bi + 2], b3 = b[bi + 3];
+
+        long r3 = a3 - b3;
+        long c = Long.compareUnsigned(a3, b3) < 0 ? 1 : 0;
+        long r2 = a2 - b2 - c;
+        c = borrow(a2, b2, c);
+        long r1 = a1 - b1 - c;
+        c = borrow(a1, b1, c);
+        long r0 = a0 - b0 - c;
+
+        set(r, ri, r0, r1, r2, r3);
+    }
+
+    /**
+     * r = -a (two's complement).
+     */
+    public static void negate(long[] r, int ri, long[] a, int ai) {
+        long a0 = a[ai], a1 = a[ai + 1], a2 = a[ai + 2], a3 = a[ai + 3];
+
+        long r3 = -a3;
+        long c = a3 == 0 ? 0 : 1;
+        long r2 = -a2 - c;
+        c |= a2 == 0 ? 0 : 1;
+        long r1 = -a1 - c;
+        c |= a1 == 0 ? 0 : 1;
+        long r0 = -a0 - c;
+
+        set(r, ri, r0, r1, r2, r3);
+    }
+
+    public static void mul(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        // limbs in little-endian order
+        long a0 = a[ai + 3], a1 = a[ai + 2], a2 = a[ai + 1], a3 = a[ai];
+        long b0 = b[bi + 3], b1 = b[bi + 2], b2 = b[bi + 1], b3 = b[bi];
+
+        long lo, t, carry;
+
+        // row 0
+        long r0 = a0 * b0;
+        carry = mulHigh(a0, b0);
+        lo = a0 * b1;
+        long r1 = lo + carry;
+        carry = mulHigh(a0, b1) + carry(r1, lo, 0);
+        lo = a0 * b2;
+        long r2 = lo + carry;
+        carry = mulHigh(a0, b2) + carry(r2, lo, 0);
+        long r3 = a0 * b3 + carry;
+
+        // row 1
+        lo = a1 * b0;
+        t = r1 + lo;
+        carry = mulHigh(a1, b0) + carry(t, lo, 0);
+        r1 = t;
+        lo = a1 * b1;
+        t = r2 + lo;
+        long c1 = carry(t, lo, 0);
+        long t2 = t + carry;
+        carry = mulHigh(a1, b1) + c1 + carry(t2, carry, 0);
+        r2 = t2;
+        r3 += a1 * b2 + carry;
+
+        // row 2
+        lo = a2 * b0;
+        t = r2 + lo;
+        carry = mulHigh(a2, b0) + carry(t, lo, 0);
+        r2 = t;
+        r3 += a2 * b1 + carry;
+
+        // row 3
+        r3 += a3 * b0;
+
+        set(r, ri, r3, r2, r1, r0);
+    }
+
+    /**
+     * r = a / b (unsigned); yields zero when b is zero.
+     */
+    public static void div(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        divMod(r, ri, true, a, ai, b, bi);
+    }
+
+    /**
+     * r = a % b (unsigned); yields zero when b is zero.
+     */
+    public static void mod(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        divMod(r, ri, false, a, ai, b, bi);
+    }
+
+    /**
+     * r = a / b (signed, truncated towards zero); yields zero when b is zero.
+     */
+    public static void sdiv(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        if (isZero(b, bi)) {
+            set(r, ri, 0, 0, 0, 0);
+            return;
+        }
+
+        boolean negative = isNegative(a, ai) != isNegative(b, bi);
+        long[] t = new long[2 * LIMBS];
+        abs(t, 0, a, ai);
+        abs(t, LIMBS, b, bi);
+        div(r, ri, t, 0, t, LIMBS);
+        if (negative) {
+            negate(r, ri, r, ri);
+        }
+    }
+
+    /**
+     * r = a % b (signed, the result takes the sign of a); yields zero when b is
+     * zero.
+     */
+    public static void smod(long[] r, int ri, long[] a, int ai, long[] b, int bi) {
+        if (isZero(b, bi)) {
+            set(r, ri, 0, 0, 0, 0);
+            return;
+        }
+
+        boolean negative = isNegative(a, ai);
+        long[] t = new long[2 * LIMBS];
+        abs(t, 0, a, ai);
+        abs(t, LIMBS, b, bi);
+        mod(r, ri, t, 0, t, LIMBS);
+        if (negative) {
+            negate(r, ri, r, ri);
+        }
+    }
+
+    /**
+     * r = (a + b) % m, computed without intermediate overflow; yields zero when m
+     * is zero.
+     */
+    public static void addmod(long[] r, int ri, long[] a, int ai, long[] b, int bi, long[] m, int mi) {
+        if (isZero(m, mi)) {
+            set(r, ri, 0, 0, 0, 0);
+            return;
+        }
+
+        int[] u = new int[2 * LIMBS + 1];
+        int[] x = toDigits(a, ai);
+        int[] y = toDigits(b, bi);
+        long c = 0;
+        for (int i = 0; i < 2 * LIMBS; i++) {
+            long s = (x[i] & MASK_32) + (y[i] & MASK_32) + c;
+            u[i] = (int) s;
+            c = s >>> 32;
+        }
+        u[2 * LIMBS] = (int) c;
+
+        reduce(r, ri, u, m, mi);
+    }
+
+    /**
+     * r = (a * b) % m, computed without intermediate overflow; yields zero when m
+     * is zero.
+     */
+    public static void mulmod(long[] r, int ri, long[] a, int ai, long[] b, int bi, long[] m, int mi) {
+        if (isZero(m, mi)) {
+            set(r, ri, 0, 0, 0, 0);
+            return;
+        }
+
+        int[] x = toDigits(a, ai);
+        int[] y = toDigits(b, bi);
+        int[] u = new int[4 * LIMBS];
+        for (int i = 0; i < 2 * LIMBS; i++) {
+            long c = 0;
+            long xi = x[i] & MASK_32;
+            if (xi == 0) {
+                continue;
+            }
+            for (int j = 0; j < 2 * LIMBS; j++) {
+                long t = xi * (y[j] & MASK_32) + (u[i + j] & MASK_32) + c;
+                u[i + j] = (int) t;
+                c = t >>> 32;
+            }
+            u[i + 2 * LIMBS] = (int) c;
+        }
+
+        reduce(r, ri, u, m, mi);
+    }
+
+    /**
+     * r = a ^ e, modulo 2^256.
+     */
+    public static void exp(long[] r, int ri, long[] a, int ai, long[] e, int ei) {
+        // [0, 4): result, [4, 8): base, [8, 12): exponent
+        long[] t = new long[3 * LIMBS];
+        set(t, 0, 0, 0, 0, 1);
+        copy(t, LIMBS, a, ai);
+        copy(t, 2 * LIMBS, e, ei);
+
+        for (int i = 0; i < LIMBS; i++) {
+            long bits = t[2 * LIMBS + i];
+            if (bits == 0 && isOne(t, 0)) {
+                continue; // leading zero limbs
+            }
+            for (int j = 63; j >= 0; j--) {
+                mul(t, 0, t, 0, t, 0);
+                if (((bits >>> j) & 1) != 0) {
+                    mul(t, 0, t, 0, t, LIMBS);
+                }
+            }
+        }
+
+        copy(r, ri, t, 0);
+    }
+
+    // =======================
+    // Helpers
+    // =======================
+
+    /**
+     * Returns the carry out of {@code sum = x + y + c}, given the sum and x.
+     */
+    private static long carry(long sum, long x, long c) {
+        return (Long.compareUnsigned(sum, x) < 0 || (c != 0 && sum == x)) ? 1 : 0;
+    }
+
+    /**
+     * Returns the borrow out of {@code x - y - c}.
+     */
+    private static long borrow(long x, long y, long c) {
+        return (Long.compareUnsigned(x, y) < 0 || (c != 0 && x == y)) ? 1 : 0;
+    }
+
+    /**
+     * Returns the high 64 bits of the unsigned 128-bit product x * y.
+     */
+    public static long mulHigh(long x, long y) {
+        long x0 = x & MASK_32, x1 = x >>> 32;
+        long y0 = y & MASK_32, y1 = y >>> 32;
+        long w0 = x0 * y0;
+        long t = x1 * y0 + (w0 >>> 32);
+        long w1 = (t & MASK_32) + x0 * y1;
+        return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+    }
+
+    private static boolean isOne(long[] a, int ai) {
+        return (a[ai] | a[ai + 1] | a[ai + 2]) == 0 && a[ai + 3] == 1;
+    }
+
+    private static void abs(long[] r, int ri, long[] a, int ai) {
+        if (isNegative(a, ai)) {
+            negate(r, ri, a, ai);
+        } else {
+            copy(r, ri, a, ai);
+        }
+    }
+
+    private static void shift(long[] r, int ri, long[] a, int ai, int n, long fill) {
+        // positive n shifts towards the least significant end
+        if (n >= 256 || n <= -256) {
+            set(r, ri, fill, fill, fill, fill);
+            return;
+        }
+
+        long x0 = a[ai], x1 = a[ai + 1], x2 = a[ai + 2], x3 = a[ai + 3];
+        int limbs = n >> 6;
+        int bits = n & 63;
+        for (int i = 0; i < LIMBS; i++) {
+            int src = i - limbs;
+            long hi = limb(x0, x1, x2, x3, src - 1, fill);
+            long lo = limb(x0, x1, x2, x3, src, fill);
+            r[ri + i] = bits == 0 ? lo : (lo >>> bits) | (hi << (64 - bits));
+        }
+    }
+
+    private static long limb(long x0, long x1, long x2, long x3, int index, long fill) {
+        switch (index) {
+        case 0:
+            return x0;
+        case 1:
+            return x1;
+        case 2:
+            return x2;
+        case 3:
+            return x3;
+        default:
+            return index < 0 ? fill : 0;
+        }
+    }
+
+    private static void divMod(long[] r, int ri, boolean quotient, long[] a, int ai, long[] b, int bi) {
+        if (isZero(b, bi)) {
+            set(r, ri, 0, 0, 0, 0);
+            return;
+        }
+
+        int cmp = compare(a, ai, b, bi);
+        if (cmp < 0) {
+            if (quotient) {
+                set(r, ri, 0, 0, 0, 0);
+            } else {
+                copy(r, ri, a, ai);
+            }
+            return;
+        }
+        if (cmp == 0) {
+            set(r, ri, 0, 0, 0, quotient ? 1 : 0);
+            return;
+        }
+
+        // fast path for 64-bit operands
+        if (fitsIn(a, ai, 64)) {
+            long x = a[ai + 3], y = b[bi + 3];
+            set(r, ri, 0, 0, 0, quotient ? Long.divideUnsigned(x, y) : Long.remainderUnsigned(x, y));
+            return;
+        }
+
+        int[] u = toDigits(a, ai);
+        int[] v = toDigits(b, bi);
+        int m = digitLength(u);
+        int n = digitLength(v);
+        int[] q = new int[m - n + 1];
+        int[] rem = new int[n];
+        divide(u, m, v, n, q, rem);
+
+        fromDigits(r, ri, quotient ? q : rem);
+    }
+
+    /**
+     * r = u % m, where u is a little-endian digit array of any length.
+     */
+    private static void reduce(long[] r, int ri, int[] u, long[] m, int mi) {
+        int[] v = toDigits(m, mi);
+        int un = digitLength(u);
+        int vn = digitLength(v);
+        if (un < vn) {
+            fromDigits(r, ri, u);
+            return;
+        }
+
+        int[] q = new int[un - vn + 1];
+        int[] rem = new int[vn];
+        divide(u, un, v, vn, q, rem);
+
+        fromDigits(r, ri, rem);
+    }
+
+    /**
+     * Converts a slot into 8 little-endian 32-bit digits.
+     */
+    private static int[] toDigits(long[] a, int ai) {
+        int[] d = new int[2 * LIMBS];
+        for (int i = 0; i < LIMBS; i++) {
+            long v = a[ai + LIMBS - 1 - i];
+            d[2 * i] = (int) v;
+            d[2 * i + 1] = (int) (v >>> 32);
+        }
+        return d;
+    }
+
+    /**
+     * Converts up to 8 little-endian 32-bit digits into a slot.
+     */
+    private static void fromDigits(long[] r, int ri, int[] d) {
+        for (int i = 0; i < LIMBS; i++) {
+            long lo = 2 * i < d.length ? d[2 * i] & MASK_32 : 0;
+            long hi = 2 * i + 1 < d.length ? d[2 * i + 1] & MASK_32 : 0;
+            r[ri + LIMBS - 1 - i] = (hi << 32) | lo;
+        }
+    }
+
+    private static int digitLength(int[] d) {
+        int n = d.length;
+        while (n > 0 && d[n - 1] == 0) {
+            n--;
+        }
+        return n;
+    }
+
+    /**
+     * Knuth's Algorithm D (TAOCP vol. 2, 4.3.1) on 32-bit digits.
+     *
+     * @param u
+     *            dividend, m significant digits
+     * @param v
+     *            divisor, n significant digits, {@code 1 <= n <= m}
+     * @param q
+     *            quotient, at least {@code m - n + 1} digits
+     * @param rem
+     *            remainder, at least {@code n} digits
+     */
+    private static void divide(int[] u, int m, int[] v, int n, int[] q, int[] rem) {
+        if (n == 1) {
+            long d = v[0] & MASK_32;
+            long k = 0;
+            for (int j = m - 1; j >= 0; j--) {
+                long cur = (k << 32) | (u[j] & MASK_32);
+                q[j] = (int) Long.divideUnsigned(cur, d);
+                k = Long.remainderUnsigned(cur, d);
+            }
+            rem[0] = (int) k;
+            return;
+        }
+
+        // normalize so that the top digit of the divisor has its high bit set
+        int s = Integer.numberOfLeadingZeros(v[n - 1]);
+        int[] vn = new int[n];
+        for (int i = n - 1; i > 0; i--) {
+            vn[i] = (v[i] << s) | (s == 0 ? 0 : v[i - 1] >>> (32 - s));
+        }
+        vn[0] = v[0] << s;
+
+        int[] un = new int[m + 1];
+        un[m] = s == 0 ? 0 : u[m - 1] >>> (32 - s);
+        for (int i = m - 1; i > 0; i--) {
+            un[i] = (u[i] << s) | (s == 0 ? 0 : u[i - 1] >>> (32 - s));
+        }
+        un[0] = u[0] << s;
+
+        long vTop = vn[n - 1] & MASK_32;
+        long vNext = vn[n - 2] & MASK_32;
+        for (int j = m - n; j >= 0; j--) {
+            // estimate the quotient digit
+            long num = ((un[j + n] & MASK_32) << 32) | (un[j + n - 1] & MASK_32);
+            long qhat = Long.divideUnsigned(num, vTop);
+            long rhat = Long.remainderUnsigned(num, vTop);
+            while (qhat > MASK_32
+                    || Long.compareUnsigned(qhat * vNext, (rhat << 32) | (un[j + n - 2] & MASK_32)) > 0) {
+                qhat--;
+                rhat += vTop;
+                if (rhat > MASK_32) {
+                    break;
+                }
+            }
+
+            // multiply and subtract
+            long k = 0;
+            long t;
+            for (int i = 0; i < n; i++) {
+                long p = qhat * (vn[i] & MASK_32);
+                t = (un[i + j] & MASK_32) - k - (p & MASK_32);
+                un[i + j] = (int) t;
+                k = (p >>> 32) - (t >> 32);
+            }
+            t = (un[j + n] & MASK_32) - k;
+            un[j + n] = (int) t;
+
+            // add back if the estimate was one too large
+            if (t < 0) {
+                qhat--;
+                k = 0;
+                for (int i = 0; i < n; i++) {
+                    t = (un[i + j] & MASK_32) + (vn[i] & MASK_32) + k;
+                    un[i + j] = (int) t;
+                    k = t >>> 32;
+                }
+                un[j + n] += (int) k;
+            }
+            q[j] = (int) qhat;
+        }
+
+        // unnormalize the remainder
+        for (int i = 0; i < n - 1; i++) {
+            rem[i] = (un[i] >>> s) | (s == 0 ? 0 : un[i + 1] << (32 - s));
+        }
+        rem[n - 1] = un[n - 1] >>> s;
+    }
+}
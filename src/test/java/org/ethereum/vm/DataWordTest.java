@@ -21,6 +21,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.math.BigInteger;
+import java.util.Random;
 
 import org.ethereum.vm.util.HexUtil;
 import org.junit.Test;
@@ -496,6 +497,65 @@ public class DataWordTest {
                         .shiftRightSigned(DataWord.of("0x0100")));
     }
 
+    @Test
+    public void testArithmeticAgainstBigInteger() {
+        Random random = new Random(1234);
+        for (int i = 0; i < 20000; i++) {
+            DataWord a = randomWord(random);
+            DataWord b = randomWord(random);
+            DataWord c = randomWord(random);
+            BigInteger x = a.value(), y = b.value(), z = c.value();
+            BigInteger sx = a.sValue(), sy = b.sValue();
+
+            assertEquals(wrap(x.add(y)), a.add(b));
+            assertEquals(wrap(x.subtract(y)), a.sub(b));
+            assertEquals(wrap(x.multiply(y)), a.mul(b));
+            assertEquals(y.signum() == 0 ? DataWord.ZERO : wrap(x.divide(y)), a.div(b));
+            assertEquals(y.signum() == 0 ? DataWord.ZERO : wrap(x.mod(y)), a.mod(b));
+            assertEquals(y.signum() == 0 ? DataWord.ZERO : wrap(sx.divide(sy)), a.sDiv(b));
+            assertEquals(y.signum() == 0 ? DataWord.ZERO
+                    : wrap(sx.abs().mod(sy.abs()).multiply(
+                            BigInteger.valueOf(sx.signum() < 0 ? -1 : 1))),
+                    a.sMod(b));
+            assertEquals(z.signum() == 0 ? DataWord.ZERO : wrap(x.add(y).mod(z)), a.addmod(b, c));
+            assertEquals(z.signum() == 0 ? DataWord.ZERO : wrap(x.multiply(y).mod(z)), a.mulmod(b, c));
+            assertEquals(wrap(x.modPow(y, DataWord.TWO_POW_256)), a.exp(b));
+            assertEquals(wrap(sx.negate()), a.negate());
+            assertEquals(Integer.signum(x.compareTo(y)), Integer.signum(a.compareTo(b)));
+            assertEquals(Integer.signum(sx.compareTo(sy)), Integer.signum(a.signedCompareTo(b)));
+
+            int shift = random.nextInt(300);
+            DataWord s = DataWord.of(shift);
+            assertEquals(shift >= 256 ? DataWord.ZERO : wrap(x.shiftLeft(shift)), a.shiftLeft(s));
+            assertEquals(wrap(x.shiftRight(shift)), a.shiftRight(s));
+            assertEquals(wrap(sx.shiftRight(Math.min(shift, 256))), a.shiftRightSigned(s));
+
+            int k = random.nextInt(32);
+            BigInteger low = x.and(BigInteger.ONE.shiftLeft(k * 8 + 8).subtract(BigInteger.ONE));
+            BigInteger extended = low.testBit(k * 8 + 7) ? low.subtract(BigInteger.ONE.shiftLeft(k * 8 + 8)) : low;
+            assertEquals(wrap(extended), a.signExtend((byte) k));
+        }
+    }
+
+    private static DataWord wrap(BigInteger value) {
+        return DataWord.of(value.and(DataWord.MAX_VALUE));
+    }
+
+    private static DataWord randomWord(Random random) {
+        switch (random.nextInt(6)) {
+        case 0:
+            return DataWord.ZERO;
+        case 1:
+            return DataWord.of(random.nextInt(4)).negate();
+        case 2:
+            return DataWord.of(random.nextLong());
+        default:
+            byte[] data = new byte[1 + random.nextInt(DataWord.SIZE)];
+            random.nextBytes(data);
+            return DataWord.of(data);
+        }
+    }
+
     public static BigInteger pow(BigInteger x, BigInteger y) {
         if (y.compareTo(BigInteger.ZERO) < 0)
             throw new IllegalArgumentException();
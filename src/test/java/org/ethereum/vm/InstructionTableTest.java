@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import org.ethereum.vm.chainspec.ByzantiumSpec;
+import org.ethereum.vm.chainspec.ConstantinopleSpec;
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.Program;
+import org.ethereum.vm.program.exception.IllegalOperationException;
+import org.ethereum.vm.program.exception.OutOfGasException;
+import org.ethereum.vm.program.exception.StackUnderflowException;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.Test;
+
+public class InstructionTableTest extends TestBase {
+
+    @Test
+    public void testStaticEntries() {
+        Spec spec = new ByzantiumSpec();
+        InstructionTable table = spec.getInstructionTable();
+        assertSame(table, spec.getInstructionTable());
+
+        InstructionTable.Instruction add = table.get(OpCode.ADD.val());
+        assertEquals(OpCode.ADD, add.getOp());
+        assertEquals(3, add.getGas());
+        assertEquals(2, add.getMinStack());
+        assertEquals(1025, add.getMaxStack());
+        assertNotNull(add.getHandler());
+
+        InstructionTable.Instruction sload = table.get(OpCode.SLOAD.val());
+        assertEquals(spec.getFeeSchedule().getSLOAD(), sload.getGas());
+
+        // dynamic gas cost is left to the VM
+        assertNull(table.get(OpCode.SSTORE.val()).getHandler());
+        assertNull(table.get(OpCode.CALL.val()).getHandler());
+    }
+
+    @Test
+    public void testForkDisabledOpcodes() {
+        InstructionTable byzantium = new ByzantiumSpec().getInstructionTable();
+        InstructionTable constantinople = new ConstantinopleSpec().getInstructionTable();
+
+        for (OpCode op : new OpCode[] { OpCode.SHL, OpCode.SHR, OpCode.SAR, OpCode.EXTCODEHASH, OpCode.CREATE2 }) {
+            assertNull(byzantium.get(op.val()).getOp());
+            assertEquals(op, constantinople.get(op.val()).getOp());
+        }
+        assertNull(byzantium.get((byte) 0xef).getOp());
+    }
+
+    @Test
+    public void testInvalidOpcode() {
+        VM vm = new VM(new ByzantiumSpec(), VM.Interpreter.TABLE);
+        program = new Program(HexUtil.fromHexString("600160011B"), invoke);
+        try {
+            vm.step(program);
+            vm.step(program);
+            vm.step(program);
+            fail();
+        } catch (IllegalOperationException e) {
+            assertTrue(program.isStopped());
+            assertEquals(0, program.getGasLeft());
+        }
+    }
+
+    @Test(expected = StackUnderflowException.class)
+    public void testStackUnderflow() {
+        VM vm = new VM(Spec.DEFAULT, VM.Interpreter.TABLE);
+        program = new Program(HexUtil.fromHexString("600101"), invoke);
+        vm.step(program);
+        vm.step(program);
+    }
+
+    @Test
+    public void testSameResultAsSwitch() {
+        // PUSH1 0x0a, JUMPDEST, PUSH1 0x01, SWAP1, SUB, DUP1, PUSH1 0x02, JUMPI, GAS,
+        // PC, MSIZE, STOP
+        byte[] code = HexUtil.fromHexString("600a5b60019003806002575a585900");
+
+        Program expected = new Program(code, invoke);
+        new VM(Spec.DEFAULT, VM.Interpreter.SWITCH).play(expected);
+
+        Program actual = new Program(code, invoke);
+        VM vm = new VM(Spec.DEFAULT, VM.Interpreter.TABLE);
+        vm.play(actual);
+        assertSame(vm, actual.getVM());
+
+        assertNull(actual.getResult().getException());
+        assertEquals(expected.getGasLeft(), actual.getGasLeft());
+        assertEquals(expected.getStack().size(), actual.getStack().size());
+        for (int i = 0; i < expected.getStack().size(); i++) {
+            assertEquals(expected.getStack().get(i), actual.getStack().get(i));
+        }
+    }
+
+    @Test
+    public void testOutOfGasInBasicBlock() {
+        invoke = spy(invoke);
+        when(invoke.getGasLimit()).thenReturn(10L);
+
+        // PUSH1 0x01, PUSH1 0x02, ADD, PUSH1 0x03: the block costs 12
+        VM vm = new VM(Spec.DEFAULT, VM.Interpreter.TABLE);
+        program = new Program(HexUtil.fromHexString("6001600201600300"), invoke);
+
+        // charged one by one, as the block can't be paid
+        vm.step(program);
+        assertEquals(7, program.getGasLeft());
+        vm.step(program);
+        vm.step(program);
+        assertEquals(1, program.getGasLeft());
+        try {
+            vm.step(program);
+            fail();
+        } catch (OutOfGasException e) {
+            assertEquals(0, program.getGasLeft());
+        }
+    }
+
+    @Test
+    public void testBasicBlockChargedOnEntry() {
+        VM vm = new VM(Spec.DEFAULT, VM.Interpreter.TABLE);
+        program = new Program(HexUtil.fromHexString("6001600201600300"), invoke);
+        long gas = program.getGasLeft();
+
+        vm.step(program);
+        assertEquals(gas - 12, program.getGasLeft());
+        vm.step(program);
+        vm.step(program);
+        vm.step(program);
+        assertEquals(gas - 12, program.getGasLeft());
+        assertEquals(2, program.getStack().size());
+    }
+}
@@ -23,7 +23,9 @@ import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
+import org.ethereum.vm.chainspec.BaseSpec;
 import org.ethereum.vm.program.Program;
 import org.ethereum.vm.program.invoke.ProgramInvoke;
 import org.ethereum.vm.util.BytecodeCompiler;
@@ -86,4 +88,34 @@ public class VMComplexTest extends TestBase {
         assertEquals(18223, program.getResult().getGasUsed());
         assertNull(exception);
     }
+
+    @Test // contract call recursive, up to the max depth
+    public void test2() throws InterruptedException {
+        // call itself with all the gas
+        String code = "PUSH1 0x00 PUSH1 0x00 PUSH1 0x00 PUSH1 0x00 PUSH1 0x00 ADDRESS GAS CALL STOP";
+        byte[] codeB = BytecodeCompiler.compile(code);
+
+        repository.createAccount(address);
+        repository.saveCode(address, codeB);
+
+        // the spec of base has no call gas cap
+        VM vm = new VM(new BaseSpec());
+        Program program = new Program(codeB, invoke, new BaseSpec());
+
+        // the call chain must not depend on the thread stack size
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                vm.play(program);
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        }, "small-stack", 128 * 1024);
+        thread.start();
+        thread.join();
+
+        assertNull(error.get());
+        assertNull(program.getResult().getException());
+        assertEquals(1024, program.getResult().getInternalTransactions().size());
+    }
 }
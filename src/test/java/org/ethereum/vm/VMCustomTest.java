@@ -237,6 +237,32 @@ public class VMCustomTest extends TestBase {
         }
     }
 
+    @Test // memory size overflows, reported with the low 64 bits of the size
+    public void testMemoryOverflow() {
+        assertEquals("Gas value overflow: actual[31], limit[2147483647];", stepUntilException(
+                "6001" + "7fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff" + "52"));
+        assertEquals("Gas value overflow: actual[8], limit[2147483647];", stepUntilException(
+                "678000000000000000" + "678000000000000000" + "6001" + "68010000000000000007"
+                        + "600060006000" + "f1"));
+        assertEquals("Gas value overflow: actual[2147483648], limit[2147483647];", stepUntilException(
+                "6001" + "637fffffff" + "f3"));
+        assertEquals("Not enough gas for 'LOG0' operation executing: opGas[8], programGas[999994];",
+                stepUntilException("68010000000000000001" + "6000" + "a0"));
+    }
+
+    private String stepUntilException(String code) {
+        VM vm = new VM();
+        program = new Program(HexUtil.fromHexString(code), invoke);
+        try {
+            while (!program.isStopped()) {
+                vm.step(program);
+            }
+        } catch (OutOfGasException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
     @Test // ADDRESS OP
     public void testADDRESS_1() {
         VM vm = new VM();
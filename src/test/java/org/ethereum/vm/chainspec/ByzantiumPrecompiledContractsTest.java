@@ -26,13 +26,17 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.client.Repository;
 import org.ethereum.vm.crypto.ECKey;
+import org.ethereum.vm.crypto.zksnark.G2LineCache;
 import org.ethereum.vm.program.InternalTransaction;
 import org.ethereum.vm.program.ProgramResult;
 import org.ethereum.vm.util.HexUtil;
+import org.ethereum.vm.util.Pair;
 import org.junit.Test;
 
 public class ByzantiumPrecompiledContractsTest {
@@ -155,6 +159,55 @@ public class ByzantiumPrecompiledContractsTest {
         assertEquals(expected2, HexUtil.toHexString(result));
     }
 
+    @Test
+    public void ecRecoverCacheTest() {
+        BasePrecompiledContracts.ECRecover contract = new BasePrecompiledContracts.ECRecover(2);
+        byte[] data = HexUtil.fromHexString("14431339128bd25f2c7f93baa611e367"
+                + "472048757f4ad67f6d71a5ca0da550f5"
+                + "00000000000000000000000000000000"
+                + "0000000000000000000000000000001c"
+                + "51e4dbbbcebade695a3f0fdf10beb8b5"
+                + "f83fda161e1a3105a14c41168bf3dce0"
+                + "46eabf35680328e26ef4579caf8aeb2c"
+                + "f9ece05dbf67a4f3d1f28c7b1d0e3546");
+        String expected = "0000000000000000000000007f8b3b04bf34618f4a1723fba96b5db211279a2b";
+
+        assertEquals(expected, HexUtil.toHexString(contract.execute(wrapData(data)).getRight()));
+        assertEquals(0, contract.getCache().getHits());
+
+        // the cached result can't be altered through the returned array
+        contract.execute(wrapData(data)).getRight()[31] = 0;
+        assertEquals(expected, HexUtil.toHexString(contract.execute(wrapData(data)).getRight()));
+        assertEquals(2, contract.getCache().getHits());
+        assertEquals(1, contract.getCache().getMisses());
+
+        // a longer input is keyed by its first 128 bytes
+        byte[] longer = Arrays.copyOf(data, 160);
+        assertEquals(expected, HexUtil.toHexString(contract.execute(wrapData(longer)).getRight()));
+        assertEquals(3, contract.getCache().getHits());
+
+        // failures are cached as well
+        byte[] invalid = data.clone();
+        invalid[63] = 26;
+        assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(wrapData(invalid)).getRight());
+        assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(wrapData(invalid)).getRight());
+        assertEquals(4, contract.getCache().getHits());
+
+        // inputs which can't be parsed bypass the cache
+        assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(wrapData(null)).getRight());
+        assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(wrapData(new byte[64])).getRight());
+        assertEquals(2, contract.getCache().getMisses());
+
+        contract.getCache().clear();
+        contract.getCache().resetStatistics();
+        assertEquals(0, contract.getCache().getHitRate(), 0);
+
+        BasePrecompiledContracts.ECRecover uncached = new BasePrecompiledContracts.ECRecover(0);
+        assertEquals(expected, HexUtil.toHexString(uncached.execute(wrapData(data)).getRight()));
+        assertEquals(expected, HexUtil.toHexString(uncached.execute(wrapData(data)).getRight()));
+        assertEquals(0, uncached.getCache().getHits());
+    }
+
     @Test
     public void modExpTest() {
         DataWord addr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000005");
@@ -264,4 +317,138 @@ public class ByzantiumPrecompiledContractsTest {
         assertEquals(0, contract.getGasForData(null));
         assertArrayEquals(EMPTY_BYTE_ARRAY, contract.execute(wrapData(null)).getRight());
     }
+
+    private static final String G1 = "0000000000000000000000000000000000000000000000000000000000000001"
+            + "0000000000000000000000000000000000000000000000000000000000000002";
+
+    private static final String G1_NEG = "0000000000000000000000000000000000000000000000000000000000000001"
+            + "30644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd45";
+
+    private static final String G2 = "198e9393920d483a7260bfb731fb5d25f1aa493335a9e71297e485b7aef312c2"
+            + "1800deef121f1e76426a00665e5c4479674322d4f75edadd46debd5cd992f6ed"
+            + "090689d0585ff075ec9e99ad690c3395bc4b313370b38ef355acdadcd122975b"
+            + "12c85ea5db8c6deb4aab71808dcb408fe3d1e7690c43d37b4ce6cc0166fa7daa";
+
+    @Test
+    public void bn128AdditionTest() {
+        DataWord addr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000006");
+        PrecompiledContract contract = precompiledContracts.getContractForAddress(addr);
+
+        // G + 2G = 3G
+        byte[] data = HexUtil.fromHexString(G1
+                + "030644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd3"
+                + "15ed738c0e0a7c92e7845f96b2ae9c0a68a6a449e3538fc7ff3ebf7a5a18a2c4");
+        String expected = "0769bf9ac56bea3ff40232bcb1b6bd159315d84715b8e679f2d355961915abf0"
+                + "2ab799bee0489429554fdb7c8d086475319e63b40b9c5b57cdf1ff3dd9fe2261";
+        assertEquals(expected, HexUtil.toHexString(contract.execute(wrapData(data)).getRight()));
+
+        // G + (-G) = 0
+        data = HexUtil.fromHexString(G1 + G1_NEG);
+        byte[] result = contract.execute(wrapData(data)).getRight();
+        assertEquals(64, result.length);
+        assertEquals(BigInteger.ZERO, bytesToBigInteger(result));
+
+        // 0 + 0 = 0
+        assertEquals(BigInteger.ZERO, bytesToBigInteger(contract.execute(wrapData(null)).getRight()));
+
+        // (1, 3) is not on the curve
+        data = HexUtil.fromHexString(G1.substring(0, 64)
+                + "0000000000000000000000000000000000000000000000000000000000000003");
+        assertEquals(false, contract.execute(wrapData(data)).getLeft());
+
+        // x >= p
+        data = HexUtil.fromHexString("30644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd48"
+                + "0000000000000000000000000000000000000000000000000000000000000002");
+        assertEquals(false, contract.execute(wrapData(data)).getLeft());
+    }
+
+    @Test
+    public void bn128MultiplicationTest() {
+        DataWord addr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000007");
+        PrecompiledContract contract = precompiledContracts.getContractForAddress(addr);
+
+        String[][] cases = {
+                { "0000000000000000000000000000000000000000000000000000000000000000",
+                        "00000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000" },
+                { "0000000000000000000000000000000000000000000000000000000000000001",
+                        G1 },
+                { "0000000000000000000000000000000000000000000000000000000000000002",
+                        "030644e72e131a029b85045b68181585d97816a916871ca8d3c208c16d87cfd315ed738c0e0a7c92e7845f96b2ae9c0a68a6a449e3538fc7ff3ebf7a5a18a2c4" },
+                { "0000000000000000000000000000000000000000000000000000000000000009",
+                        "039730ea8dff1254c0fee9c0ea777d29a9c710b7e616683f194f18c43b43b869073a5ffcc6fc7a28c30723d6e58ce577356982d65b833a5a5c15bf9024b43d98" },
+                // r - 1
+                { "30644e72e131a029b85045b68181585d2833e84879b9709143e1f593f0000000",
+                        G1_NEG },
+                // r
+                { "30644e72e131a029b85045b68181585d2833e84879b9709143e1f593f0000001",
+                        "00000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000" },
+                { "ffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff",
+                        "2f588cffe99db877a4434b598ab28f81e0522910ea52b45f0adaa772b2d5d35212f42fa8fd34fb1b33d8c6a718b6590198389b26fc9d8808d971f8b009777a97" },
+                { "1234567890abcdef1234567890abcdef1234567890abcdef1234567890abcdef",
+                        "19c1e4e5202ab724d766a7dd7534562e225d0e33c8ce19b697eb719d39954fdb1c16dbebb5e86b0d5a9a8454af8c4faad6dea7d798144bbdd01631c592073b3b" },
+        };
+
+        for (String[] c : cases) {
+            byte[] data = HexUtil.fromHexString(G1 + c[0]);
+            assertEquals(c[0], c[1], HexUtil.toHexString(contract.execute(wrapData(data)).getRight()));
+        }
+    }
+
+    @Test
+    public void bn128PairingTest() {
+        DataWord addr = DataWord.of("0000000000000000000000000000000000000000000000000000000000000008");
+        PrecompiledContract contract = precompiledContracts.getContractForAddress(addr);
+
+        // e(G1, G2) * e(-G1, G2) = 1
+        byte[] data = HexUtil.fromHexString(G1 + G2 + G1_NEG + G2);
+        assertEquals(BigInteger.ONE, bytesToBigInteger(contract.execute(wrapData(data)).getRight()));
+
+        // e(G1, G2) * e(G1, G2) != 1
+        data = HexUtil.fromHexString(G1 + G2 + G1 + G2);
+        assertEquals(BigInteger.ZERO, bytesToBigInteger(contract.execute(wrapData(data)).getRight()));
+
+        // empty input
+        assertEquals(BigInteger.ONE, bytesToBigInteger(contract.execute(wrapData(null)).getRight()));
+
+        // input length is not a multiple of the pair size
+        data = HexUtil.fromHexString(G1 + G2 + "00");
+        assertEquals(false, contract.execute(wrapData(data)).getLeft());
+    }
+
+    @Test
+    public void bn128PairingParallelTest() {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        PrecompiledContract parallel = new ByzantiumPrecompiledContracts.BN128Pairing(new G2LineCache(), pool, 4);
+        PrecompiledContract sequential = new ByzantiumPrecompiledContracts.BN128Pairing(new G2LineCache(0));
+
+        try {
+            StringBuilder valid = new StringBuilder(), invalid = new StringBuilder();
+            for (int i = 0; i < 5; i++) {
+                valid.append(G1 + G2 + G1_NEG + G2);
+                invalid.append(G1 + G2 + (i == 3 ? G1 : G1_NEG) + G2);
+            }
+            String notOnCurve = valid.substring(0, 192 * 2 * 7)
+                    + G1.substring(0, 64) + "0000000000000000000000000000000000000000000000000000000000000003"
+                    + G2 + valid.substring(192 * 2 * 8);
+
+            for (String input : new String[] { valid.toString(), invalid.toString(), notOnCurve,
+                    G1 + G2 + G1_NEG + G2 }) {
+                byte[] data = HexUtil.fromHexString(input);
+                Pair<Boolean, byte[]> expected = sequential.execute(wrapData(data));
+                Pair<Boolean, byte[]> result = parallel.execute(wrapData(data));
+
+                assertEquals(expected.getLeft(), result.getLeft());
+                assertArrayEquals(expected.getRight(), result.getRight());
+            }
+
+            byte[] data = HexUtil.fromHexString(valid.toString());
+            assertEquals(BigInteger.ONE, bytesToBigInteger(parallel.execute(wrapData(data)).getRight()));
+            data = HexUtil.fromHexString(invalid.toString());
+            assertEquals(BigInteger.ZERO, bytesToBigInteger(parallel.execute(wrapData(data)).getRight()));
+            data = HexUtil.fromHexString(notOnCurve);
+            assertEquals(false, parallel.execute(wrapData(data)).getLeft());
+        } finally {
+            pool.shutdown();
+        }
+    }
 }
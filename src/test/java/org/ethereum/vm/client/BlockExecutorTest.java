@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.TestTransactionBase;
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.After;
+import org.junit.Test;
+
+public class BlockExecutorTest extends TestTransactionBase {
+
+    // increments the storage row 0 by one
+    private static final byte[] COUNTER = HexUtil.fromHexString("60016000540160005500");
+
+    private final byte[] counter = address(200);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testParallel() {
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            txs.add(transfer(address(100 + i), address(300 + i), 0));
+            txs.add(transfer(caller, i % 4 == 0 ? counter : address(100 + i), i));
+        }
+
+        Repository sequential = newRepository();
+        Repository parallel = newRepository();
+        List<TransactionReceipt> expected = execute(sequential, block, txs, null);
+        List<TransactionReceipt> receipts = execute(parallel, block, txs, executor);
+
+        for (int i = 0; i < txs.size(); i++) {
+            assertNotNull(receipts.get(i));
+            assertEquals(expected.get(i).toString(), receipts.get(i).toString());
+        }
+        assertEquals(DataWord.of(8), parallel.getStorageRow(counter, DataWord.ZERO));
+        assertEquals(sequential.getBalance(caller), parallel.getBalance(caller));
+        assertEquals(32, parallel.getNonce(caller));
+        for (int i = 0; i < 32; i++) {
+            assertEquals(sequential.getBalance(address(100 + i)), parallel.getBalance(address(100 + i)));
+            assertEquals(sequential.getBalance(address(300 + i)), parallel.getBalance(address(300 + i)));
+        }
+    }
+
+    @Test
+    public void testBlockGasLimit() {
+        // fits 6 transfers, as the limit is checked against the gas limit of the
+        // transaction plus the gas used so far
+        Block block = new BlockMock(number, prevHash, coinbase, timestamp, gas + 5 * 21_000L);
+
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            txs.add(transfer(address(100 + i), address(300 + i), 0));
+        }
+
+        List<TransactionReceipt> receipts = execute(newRepository(), block, txs, executor);
+        for (int i = 0; i < txs.size(); i++) {
+            if (i < 6) {
+                assertNotNull(receipts.get(i));
+            } else {
+                assertNull(receipts.get(i));
+            }
+        }
+        assertEquals(execute(newRepository(), block, txs, null).toString(), receipts.toString());
+    }
+
+    private Repository newRepository() {
+        Repository repo = new RepositoryMock();
+        repo.saveCode(counter, COUNTER);
+        repo.addBalance(caller, premine);
+        for (int i = 0; i < 32; i++) {
+            repo.addBalance(address(100 + i), premine);
+        }
+        return repo;
+    }
+
+    private List<TransactionReceipt> execute(Repository repo, Block block, List<Transaction> txs,
+            ExecutorService executor) {
+        return new BlockExecutor(repo, blockStore, Spec.DEFAULT, new ProgramInvokeFactoryImpl(), executor)
+                .execute(block, txs);
+    }
+
+    private Transaction transfer(byte[] from, byte[] to, long nonce) {
+        return new TransactionMock(false, from, to, nonce, BigInteger.TEN, data, gas, gasPrice);
+    }
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigInteger;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.TestTransactionBase;
+import org.ethereum.vm.util.LruCache;
+import org.junit.Test;
+
+public class CachingRepositoryTest extends TestTransactionBase {
+
+    private final byte[] address1 = address(11);
+    private final byte[] address2 = address(12);
+
+    @Test
+    public void testReadThrough() {
+        Repository backing = spy(new RepositoryMock());
+        backing.addBalance(address1, BigInteger.TEN);
+        backing.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+
+        CachingRepository repo = new CachingRepository(backing, 1024 * 1024);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(BigInteger.TEN, repo.getBalance(address1));
+            assertTrue(repo.exists(address1));
+            assertEquals(DataWord.ONE, repo.getStorageRow(address1, DataWord.ONE));
+            assertNull(repo.getStorageRow(address1, DataWord.ZERO));
+            assertNull(repo.getCode(address2));
+        }
+
+        verify(backing, times(1)).getBalance(address1);
+        verify(backing, times(1)).getStorageRow(address1, DataWord.ONE);
+        verify(backing, times(1)).getStorageRow(address1, DataWord.ZERO);
+        verify(backing, times(1)).getCode(address2);
+
+        assertEquals(5, repo.getAccountCache().getHits());
+        assertEquals(1, repo.getAccountCache().getMisses());
+        assertEquals(4, repo.getStorageCache().getHits());
+        assertEquals(2, repo.getStorageCache().getMisses());
+        assertEquals(2.0 / 3, repo.getCodeCache().getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testWriteThrough() {
+        Repository backing = new RepositoryMock();
+        CachingRepository repo = new CachingRepository(backing, 1024 * 1024);
+
+        assertFalse(repo.exists(address1));
+        repo.addBalance(address1, BigInteger.ONE);
+        repo.increaseNonce(address1);
+        repo.saveCode(address1, new byte[] { 1 });
+        repo.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+
+        assertTrue(repo.exists(address1));
+        assertEquals(BigInteger.ONE, repo.getBalance(address1));
+        assertEquals(1, repo.getNonce(address1));
+        assertArrayEquals(new byte[] { 1 }, repo.getCode(address1));
+        assertEquals(DataWord.ONE, repo.getStorageRow(address1, DataWord.ONE));
+        assertEquals(DataWord.ONE, backing.getStorageRow(address1, DataWord.ONE));
+
+        repo.delete(address1);
+        assertFalse(repo.exists(address1));
+        assertNull(repo.getCode(address1));
+        assertNull(repo.getStorageRow(address1, DataWord.ONE));
+    }
+
+    @Test
+    public void testTracking() {
+        Repository backing = new RepositoryMock();
+        CachingRepository repo = new CachingRepository(backing, 1024 * 1024);
+        repo.addBalance(address1, BigInteger.TEN);
+
+        Repository track = repo.startTracking();
+        track.addBalance(address1, BigInteger.ONE);
+        track.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+        assertEquals(BigInteger.TEN, repo.getBalance(address1));
+
+        Repository discarded = repo.startTracking();
+        discarded.putStorageRow(address1, DataWord.ZERO, DataWord.ONE);
+        discarded.rollback();
+
+        track.commit();
+        assertEquals(BigInteger.valueOf(11), repo.getBalance(address1));
+        assertEquals(BigInteger.valueOf(11), backing.getBalance(address1));
+        assertEquals(DataWord.ONE, repo.getStorageRow(address1, DataWord.ONE));
+        assertNull(repo.getStorageRow(address1, DataWord.ZERO));
+    }
+
+    @Test
+    public void testRollbackInvalidates() {
+        Repository backing = spy(new RepositoryMock());
+        CachingRepository repo = new CachingRepository(backing, 1024 * 1024);
+        repo.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+        repo.getBalance(address1);
+
+        repo.rollback();
+        assertEquals(0, repo.getAccountCache().size());
+        assertEquals(0, repo.getStorageCache().size());
+
+        repo.getStorageRow(address1, DataWord.ONE);
+        verify(backing, times(1)).getStorageRow(address1, DataWord.ONE);
+    }
+
+    @Test
+    public void testEviction() {
+        CachingRepository repo = new CachingRepository(new RepositoryMock(), 0, 64 * 1024, 0);
+        byte[] code = new byte[1024];
+
+        for (int i = 0; i < 1000; i++) {
+            byte[] address = address(i);
+            repo.saveCode(address, code);
+            repo.getCode(address);
+        }
+
+        LruCache<?, ?> cache = repo.getCodeCache();
+        assertTrue(cache.getWeight() <= cache.getMaxWeight());
+        assertTrue(cache.size() > 0 && cache.size() < 1000);
+        assertEquals(1000 - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    public void testPrefetch() {
+        Repository backing = spy(new RepositoryMock());
+        backing.saveCode(address1, new byte[] { 1 });
+        backing.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+
+        CachingRepository repo = new CachingRepository(backing, 64 * 1024, 64 * 1024, 64 * 1024, Runnable::run);
+        repo.prefetch(new AccessSet().addStorageRow(address1, DataWord.ONE).addAccount(address2));
+        assertEquals(2, repo.getAccountCache().getLoads());
+        assertEquals(2, repo.getCodeCache().getLoads());
+        assertEquals(1, repo.getStorageCache().getLoads());
+
+        assertTrue(repo.exists(address1));
+        assertFalse(repo.exists(address2));
+        assertEquals(1, repo.getCodeSize(address1));
+        assertEquals(DataWord.ONE, repo.getStorageRow(address1, DataWord.ONE));
+        assertEquals(0, repo.getAccountCache().getMisses());
+        assertEquals(0, repo.getCodeCache().getMisses());
+        assertEquals(0, repo.getStorageCache().getMisses());
+        verify(backing, times(1)).getStorageRow(address1, DataWord.ONE);
+    }
+
+    @Test
+    public void testPrefetchOnCallingThreadByDefault() {
+        CachingRepository repo = new CachingRepository(new RepositoryMock(), 1024 * 1024);
+        repo.prefetch(new AccessSet().addStorageRow(address1, DataWord.ONE));
+
+        // loaded before returning
+        assertEquals(1, repo.getStorageCache().getLoads());
+    }
+
+    @Test
+    public void testPrefetchDoesNotOverwrite() {
+        Repository backing = spy(new RepositoryMock());
+        backing.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+        CachingRepository repo = new CachingRepository(backing, 64 * 1024, 64 * 1024, 64 * 1024, Runnable::run);
+
+        // a write lands while the prefetch is loading the old value
+        doAnswer(invocation -> {
+            DataWord value = (DataWord) invocation.callRealMethod();
+            repo.putStorageRow(address1, DataWord.ONE, DataWord.of(2));
+            return value;
+        }).when(backing).getStorageRow(address1, DataWord.ONE);
+
+        repo.prefetch(new AccessSet().addStorageRow(address1, DataWord.ONE));
+        assertEquals(DataWord.of(2), repo.getStorageRow(address1, DataWord.ONE));
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.ethereum.vm.util.HashUtil;
+import org.junit.Test;
+
+public class CodeStoreTest {
+
+    @Test
+    public void testIntern() {
+        CodeStore store = new CodeStore();
+        byte[] bytes = { 1, 2, 3 };
+
+        Code code = store.intern(bytes);
+        assertSame(code, store.intern(bytes.clone()));
+        assertSame(code, store.intern(HashUtil.keccak256(bytes), bytes.clone()));
+        assertNotSame(code, store.intern(new byte[] { 1, 2 }));
+        assertEquals(2, store.size());
+
+        assertArrayEquals(HashUtil.keccak256(bytes), code.getHash());
+        assertEquals(3, code.getSize());
+        assertSame(Code.EMPTY, store.intern(new byte[0]));
+        assertNull(store.intern(null));
+    }
+
+    @Test
+    public void testInternCopies() {
+        CodeStore store = new CodeStore();
+        byte[] bytes = { 1, 2, 3 };
+        byte[] hash = HashUtil.keccak256(bytes);
+
+        Code code = store.intern(hash, bytes);
+        bytes[0] = 9;
+        hash[0] ^= 1;
+        code.getHash()[1] ^= 1;
+
+        assertArrayEquals(new byte[] { 1, 2, 3 }, code.getBytes());
+        assertArrayEquals(HashUtil.keccak256(code.getBytes()), code.getHash());
+        assertSame(code, store.intern(new byte[] { 1, 2, 3 }));
+    }
+}
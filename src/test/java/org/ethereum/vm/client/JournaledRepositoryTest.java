@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigInteger;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.TestTransactionBase;
+import org.ethereum.vm.util.HashUtil;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.Test;
+
+public class JournaledRepositoryTest extends TestTransactionBase {
+
+    private final byte[] address1 = address(11);
+    private final byte[] address2 = address(12);
+
+    @Test
+    public void testCommitAndRollback() {
+        JournaledRepository root = new JournaledRepository();
+        root.addBalance(address1, BigInteger.TEN);
+        root.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+
+        Repository track1 = root.startTracking();
+        track1.addBalance(address1, BigInteger.ONE);
+        track1.putStorageRow(address1, DataWord.ONE, DataWord.ZERO);
+
+        Repository track2 = track1.startTracking();
+        track2.increaseNonce(address2);
+        track2.saveCode(address2, new byte[] { 1 });
+        track2.putStorageRow(address1, DataWord.ZERO, DataWord.ONE);
+        track2.commit();
+
+        Repository track3 = track1.startTracking();
+        track3.delete(address1);
+        assertFalse(track1.exists(address1));
+        track3.rollback();
+
+        assertEquals(BigInteger.valueOf(11), track1.getBalance(address1));
+        assertEquals(DataWord.ZERO, track1.getStorageRow(address1, DataWord.ONE));
+        assertEquals(DataWord.ONE, track1.getStorageRow(address1, DataWord.ZERO));
+        assertEquals(1, track1.getNonce(address2));
+        assertArrayEquals(new byte[] { 1 }, track1.getCode(address2));
+
+        // the committed changes of track2 are undone along with track1
+        track1.rollback();
+        assertEquals(BigInteger.TEN, root.getBalance(address1));
+        assertEquals(DataWord.ONE, root.getStorageRow(address1, DataWord.ONE));
+        assertNull(root.getStorageRow(address1, DataWord.ZERO));
+        assertFalse(root.exists(address2));
+        assertNull(root.getCode(address2));
+    }
+
+    @Test
+    public void testCodeSizeAndHash() {
+        JournaledRepository root = new JournaledRepository();
+        byte[] code = { 1, 2, 3 };
+        root.saveCode(address1, code);
+        root.saveCode(address2, code.clone());
+
+        // identical code is shared
+        assertSame(root.getCode(address1), root.getCode(address2));
+        assertEquals(3, root.getCodeSize(address1));
+        assertArrayEquals(HashUtil.keccak256(code), root.getCodeHash(address1));
+
+        Repository track = root.startTracking();
+        track.saveCode(address1, new byte[0]);
+        assertEquals(0, track.getCodeSize(address1));
+        assertArrayEquals(HashUtil.getEmptyDataHash(), track.getCodeHash(address1));
+        track.rollback();
+        assertEquals(3, root.getCodeSize(address1));
+
+        assertEquals(0, root.getCodeSize(address(13)));
+        assertArrayEquals(HashUtil.getEmptyDataHash(), root.getCodeHash(address(13)));
+    }
+
+    @Test
+    public void testRootRollback() {
+        JournaledRepository root = new JournaledRepository();
+        root.addBalance(address1, BigInteger.TEN);
+        root.commit();
+
+        root.addBalance(address1, BigInteger.ONE);
+        root.startTracking().increaseNonce(address2);
+        root.rollback();
+
+        assertEquals(BigInteger.TEN, root.getBalance(address1));
+        assertFalse(root.exists(address2));
+    }
+
+    @Test
+    public void testTrackerLeftOpen() {
+        JournaledRepository root = new JournaledRepository();
+        Repository track1 = root.startTracking();
+        Repository track2 = track1.startTracking();
+        track2.addBalance(address1, BigInteger.TEN);
+
+        // writing through the parent discards the open child
+        track1.addBalance(address2, BigInteger.ONE);
+        assertFalse(track1.exists(address1));
+
+        track1.commit();
+        track2.commit(); // no-op
+        assertFalse(root.exists(address1));
+        assertEquals(BigInteger.ONE, root.getBalance(address2));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testWriteAfterCommit() {
+        Repository track = new JournaledRepository().startTracking();
+        track.commit();
+        track.addBalance(address1, BigInteger.ONE);
+    }
+
+    @Test
+    public void testClone() {
+        JournaledRepository root = new JournaledRepository();
+        Repository track = root.startTracking();
+        track.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+
+        Repository clone = track.clone();
+        track.rollback();
+
+        assertNull(root.getStorageRow(address1, DataWord.ONE));
+        assertEquals(DataWord.ONE, clone.getStorageRow(address1, DataWord.ONE));
+    }
+
+    @Test
+    public void testRevertedCall() {
+        repository = new JournaledRepository();
+        repository.addBalance(caller, premine);
+
+        // SSTORE(0, 1); REVERT(0, 0)
+        repository.saveCode(address, HexUtil.fromHexString("600160005560006000fd"));
+        TransactionReceipt receipt = new TransactionExecutor(transaction, block, repository, blockStore).run();
+
+        assertFalse(receipt.isSuccess());
+        assertNull(repository.getStorageRow(address, DataWord.ZERO));
+        assertEquals(1, repository.getNonce(caller));
+
+        // SSTORE(0, 1)
+        repository.saveCode(address, HexUtil.fromHexString("6001600055"));
+        transaction = new TransactionMock(false, caller, address, 1, value, data, gas, gasPrice);
+        receipt = new TransactionExecutor(transaction, block, repository, blockStore).run();
+
+        assertTrue(receipt.isSuccess());
+        assertEquals(DataWord.ONE, repository.getStorageRow(address, DataWord.ZERO));
+    }
+
+    @Test
+    public void testRevertedWritesNotFlushed() {
+        JournaledRepository backing = new JournaledRepository();
+        backing.saveCode(address1, new byte[] { 1 });
+        backing.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+        backing = spy(backing);
+
+        JournaledRepository root = new JournaledRepository(backing);
+        root.addBalance(address1, BigInteger.ONE);
+        root.getStorageRow(address1, DataWord.ONE);
+        root.getCode(address1);
+        Repository track = root.startTracking();
+        track.putStorageRow(address1, DataWord.ONE, DataWord.ZERO);
+        track.putStorageRow(address1, DataWord.ZERO, DataWord.ONE);
+        track.saveCode(address1, new byte[] { 2 });
+        track.rollback();
+        root.commit();
+
+        verify(backing, never()).putStorageRow(any(), any(), any());
+        verify(backing, never()).saveCode(any(), any());
+        assertEquals(BigInteger.ONE, backing.getBalance(address1));
+        assertEquals(DataWord.ONE, backing.getStorageRow(address1, DataWord.ONE));
+        assertArrayEquals(new byte[] { 1 }, backing.getCode(address1));
+    }
+}
@@ -169,7 +169,7 @@ public class RepositoryMock implements Repository {
         public long nonce = 0;
         public BigInteger balance = BigInteger.ZERO;
         public byte[] code = new byte[0];
-        public Map<DataWord, DataWord> storage = new HashMap<>();
+        public StorageMap storage = new StorageMap();
 
         public Account() {
         }
@@ -178,7 +178,7 @@ public class RepositoryMock implements Repository {
             this.nonce = parent.nonce;
             this.balance = parent.balance;
             this.code = parent.code;
-            this.storage = new HashMap<>(parent.storage);
+            this.storage = new StorageMap(parent.storage);
         }
 
         public Account clone() {
@@ -186,7 +186,7 @@ public class RepositoryMock implements Repository {
             a.nonce = nonce;
             a.balance = balance;
             a.code = code.clone();
-            a.storage = new HashMap<>(storage);
+            a.storage = new StorageMap(storage);
 
             return a;
         }
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.TestTransactionBase;
+import org.junit.Test;
+
+public class SnapshotRepositoryTest extends TestTransactionBase {
+
+    private final byte[] address1 = address(11);
+    private final byte[] address2 = address(12);
+
+    @Test
+    public void testForkIsolation() {
+        SnapshotRepository repo = new SnapshotRepository();
+        repo.addBalance(address1, BigInteger.TEN);
+        repo.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+        repo.saveCode(address1, new byte[] { 1 });
+        StateSnapshot snapshot = repo.snapshot();
+
+        SnapshotRepository fork = snapshot.fork();
+        fork.addBalance(address1, BigInteger.ONE);
+        fork.putStorageRow(address1, DataWord.ONE, DataWord.ZERO);
+        fork.delete(address2);
+        fork.increaseNonce(address2);
+
+        // neither the snapshot nor the original repository sees the fork
+        repo.putStorageRow(address1, DataWord.ZERO, DataWord.ONE);
+        SnapshotRepository other = snapshot.fork();
+        assertEquals(BigInteger.TEN, other.getBalance(address1));
+        assertEquals(DataWord.ONE, other.getStorageRow(address1, DataWord.ONE));
+        assertNull(other.getStorageRow(address1, DataWord.ZERO));
+        assertFalse(other.exists(address2));
+        assertArrayEquals(new byte[] { 1 }, other.getCode(address1));
+        assertEquals(1, snapshot.size());
+
+        assertEquals(BigInteger.valueOf(11), fork.getBalance(address1));
+        assertEquals(DataWord.ZERO, fork.getStorageRow(address1, DataWord.ONE));
+        assertEquals(1, fork.getNonce(address2));
+    }
+
+    @Test
+    public void testTracking() {
+        SnapshotRepository repo = new SnapshotRepository();
+        repo.addBalance(address1, BigInteger.TEN);
+
+        Repository track1 = repo.startTracking();
+        track1.addBalance(address1, BigInteger.ONE);
+        Repository track2 = track1.startTracking();
+        track2.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+        track2.rollback();
+        Repository track3 = track1.startTracking();
+        track3.saveCode(address2, new byte[] { 1 });
+        track3.commit();
+        track1.commit();
+
+        assertEquals(BigInteger.valueOf(11), repo.getBalance(address1));
+        assertNull(repo.getStorageRow(address1, DataWord.ONE));
+        assertEquals(1, repo.getCodeSize(address2));
+
+        repo.rollback();
+        assertEquals(BigInteger.ZERO, repo.getBalance(address1));
+        assertFalse(repo.exists(address2));
+    }
+
+    @Test
+    public void testConcurrentSimulations() throws Exception {
+        SnapshotRepository state = new SnapshotRepository();
+        state.addBalance(caller, premine);
+        StateSnapshot snapshot = state.snapshot();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TransactionReceipt>> futures = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                futures.add(executor.submit(() -> {
+                    SnapshotRepository fork = snapshot.fork();
+                    TransactionReceipt receipt = new TransactionExecutor(transaction, block, fork, blockStore).run();
+                    assertEquals(1, fork.getNonce(caller));
+                    return receipt;
+                }));
+            }
+            for (Future<TransactionReceipt> future : futures) {
+                assertTrue(future.get().isSuccess());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, snapshot.fork().getNonce(caller));
+        assertEquals(premine, snapshot.fork().getBalance(caller));
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ethereum.vm.DataWord;
+import org.junit.Test;
+
+public class StorageMapTest {
+
+    private static final DataWord ABSENT = DataWord.of(-1);
+
+    @Test
+    public void testAgainstHashMap() {
+        Random random = new Random(1);
+        StorageMap map = new StorageMap();
+        Map<DataWord, DataWord> expected = new HashMap<>();
+
+        for (int i = 0; i < 100_000; i++) {
+            // a mix of small and hashed keys, as used by contracts
+            DataWord key = random.nextBoolean() ? DataWord.of(random.nextInt(2000)) : randomWord(random);
+            int op = random.nextInt(10);
+            if (op < 6) {
+                DataWord value = op == 0 ? null : DataWord.of(random.nextInt());
+                assertEquals(expected.put(key, value), map.put(key, value));
+            } else if (op < 8) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else if (op < 9) {
+                assertEquals(expected.containsKey(key), map.containsKey(key));
+                assertEquals(expected.get(key), map.get(key));
+            } else {
+                assertEquals(expected.getOrDefault(key, ABSENT), map.getOrDefault(key, ABSENT));
+                DataWord value = DataWord.of(random.nextInt());
+                DataWord previous = expected.getOrDefault(key, ABSENT);
+                expected.put(key, value);
+                assertEquals(previous, map.put(key, value, ABSENT));
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(expected, new StorageMap(map));
+    }
+
+    private static DataWord randomWord(Random random) {
+        byte[] bytes = new byte[DataWord.SIZE];
+        random.nextBytes(bytes);
+        return DataWord.of(bytes);
+    }
+
+    @Test
+    public void testSlotLookup() {
+        StorageMap map = new StorageMap();
+        map.put(DataWord.ONE, DataWord.of(7));
+        map.put(DataWord.ZERO, null);
+
+        long[] slots = new long[8];
+        DataWord.ONE.copyTo(slots, 0);
+        assertTrue(map.get(slots, 0, slots, 4));
+        assertArrayEquals(DataWord.of(7).getData(), DataWord.of(slots, 4).getData());
+
+        DataWord.ZERO.copyTo(slots, 0);
+        assertFalse(map.get(slots, 0, slots, 4));
+        assertTrue(map.containsKey(DataWord.ZERO));
+        assertNull(map.get(DataWord.ZERO));
+    }
+
+    @Test
+    public void testClear() {
+        StorageMap map = new StorageMap();
+        for (int i = 0; i < 100; i++) {
+            map.put(DataWord.of(i), DataWord.of(i));
+        }
+        map.clear();
+
+        assertEquals(0, map.size());
+        assertFalse(map.containsKey(DataWord.ONE));
+        assertTrue(map.entrySet().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        StorageMap map = new StorageMap();
+        for (int i = 0; i < 1000; i++) {
+            map.put(DataWord.of(i), DataWord.of(i * 7));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t;
+                results.add(executor.submit(() -> {
+                    for (int n = 0; n < 200_000; n++) {
+                        int i = (n * 4 + offset) % 1000;
+                        if (!DataWord.of(i * 7).equals(map.get(DataWord.of(i)))) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -34,8 +34,12 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.FeeSchedule;
 import org.ethereum.vm.OpCode;
 import org.ethereum.vm.TestTransactionBase;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.chainspec.ConstantinopleSpec;
 import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.ExecutionContext;
 import org.ethereum.vm.program.InternalTransaction;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
 import org.ethereum.vm.util.ByteArrayUtil;
 import org.ethereum.vm.util.ByteArrayWrapper;
 import org.ethereum.vm.util.BytecodeCompiler;
@@ -67,6 +71,22 @@ public class TransactionExecutorTest extends TestTransactionBase {
         assertEquals(Unit.ETH, balance2);
     }
 
+    @Test
+    public void testPrefetchNextTransaction() {
+        byte[] other = address(100);
+        Transaction next = spy(transaction);
+        when(next.getTo()).thenReturn(other);
+        when(next.getAccessHints()).thenReturn(new AccessSet().addStorageRow(other, DataWord.ONE));
+
+        CachingRepository repo = new CachingRepository(repository, 0, 0, 1024 * 1024, Runnable::run);
+        TransactionExecutor executor = new TransactionExecutor(transaction, block, repo, blockStore);
+        executor.setNextTransaction(next);
+        assertTrue(executor.run().isSuccess());
+
+        assertEquals(1, repo.getStorageCache().getLoads());
+        assertEquals(1, repo.getStorageCache().size());
+    }
+
     @Test
     public void testRecursiveCall() {
         // contract Test {
@@ -104,6 +124,83 @@ public class TransactionExecutorTest extends TestTransactionBase {
         }
     }
 
+    @Test
+    public void testRecursiveCallWithContext() {
+        byte[] code = HexUtil.fromHexString(
+                "608060405260043610610041576000357c0100000000000000000000000000000000000000000000000000000000900463ffffffff168063b3de648b14610046575b600080fd5b34801561005257600080fd5b5061007160048036038101908080359060200190929190505050610073565b005b6000811115610139573073ffffffffffffffffffffffffffffffffffffffff1660405180807f662875696e743235362900000000000000000000000000000000000000000000815250600a01905060405180910390207c01000000000000000000000000000000000000000000000000000000009004600183036040518263ffffffff167c0100000000000000000000000000000000000000000000000000000000028152600401808281526020019150506000604051808303816000875af192505050505b5056");
+        repository.saveCode(address, code);
+
+        byte[] method = HashUtil.keccak256("f(uint256)".getBytes(StandardCharsets.UTF_8));
+        byte[] data = ByteArrayUtil.merge(Arrays.copyOf(method, 4), DataWord.of(1000).getData());
+        Transaction tx1 = spy(transaction);
+        when(tx1.getData()).thenReturn(data);
+        Transaction tx2 = spy(transaction);
+        when(tx2.getData()).thenReturn(data);
+        when(tx2.getNonce()).thenReturn(1L);
+
+        VM vm = new VM();
+        ExecutionContext context = new ExecutionContext();
+        TransactionReceipt receipt1 = vm.execute(context, tx1, block, repository, blockStore, 0);
+        int frames = context.size();
+        TransactionReceipt receipt2 = vm.execute(context, tx2, block, repository, blockStore, 0);
+
+        assertTrue(receipt1.isSuccess());
+        assertTrue(receipt2.isSuccess());
+        assertTrue(frames > 2);
+        assertEquals(frames, context.size());
+
+        // the frames are reused without leaking state
+        assertEquals(receipt1.getGasUsed(), receipt2.getGasUsed());
+        assertEquals(receipt1.getInternalTransactions().size(), receipt2.getInternalTransactions().size());
+        assertFalse(receipt1.getInternalTransactions().isEmpty());
+    }
+
+    @Test
+    public void testPreprocessCacheKeyedByInternedCode() {
+        // PUSH1 3, JUMP, JUMPDEST, STOP
+        repository.saveCode(address, HexUtil.fromHexString("6003565b00"));
+        Spec spec = new ConstantinopleSpec();
+
+        // the mock repository doesn't intern code, so nothing is hashed nor cached
+        assertTrue(new TransactionExecutor(transaction, block, repository, blockStore, spec,
+                new ProgramInvokeFactoryImpl(), 0).run().isSuccess());
+        assertEquals(0, spec.getProgramPreprocessCache().getMisses());
+
+        JournaledRepository journaled = new JournaledRepository(repository);
+        for (int nonce = 1; nonce <= 2; nonce++) {
+            Transaction tx = spy(transaction);
+            when(tx.getNonce()).thenReturn((long) nonce);
+            assertTrue(new TransactionExecutor(tx, block, journaled, blockStore, spec,
+                    new ProgramInvokeFactoryImpl(), 0).run().isSuccess());
+        }
+        assertEquals(1, spec.getProgramPreprocessCache().getMisses());
+        assertEquals(1, spec.getProgramPreprocessCache().getHits());
+    }
+
+    @Test
+    public void testNetGasMetering() {
+        // SSTORE(0, 0); SSTORE(0, 1) with an original value of 1, see EIP-1283
+        repository.saveCode(address, HexUtil.fromHexString("60006000556001600055"));
+        repository.putStorageRow(address, DataWord.ZERO, DataWord.ONE);
+
+        Spec spec = new ConstantinopleSpec();
+        Transaction tx1 = spy(transaction);
+        Transaction tx2 = spy(transaction);
+        when(tx2.getNonce()).thenReturn(1L);
+
+        TransactionReceipt receipt1 = new TransactionExecutor(tx1, block, repository, blockStore, spec,
+                new ProgramInvokeFactoryImpl(), 0).run();
+        TransactionReceipt receipt2 = new TransactionExecutor(tx2, block, repository, blockStore, spec,
+                new ProgramInvokeFactoryImpl(), 0).run();
+
+        // 5212 gas used and 4800 refunded, in both transactions
+        assertTrue(receipt1.isSuccess());
+        assertEquals(21_000L + 5212L - 4800L, receipt1.getGasUsed());
+        assertTrue(receipt2.isSuccess());
+        assertEquals(21_000L + 5212L - 4800L, receipt2.getGasUsed());
+        assertEquals(DataWord.ONE, repository.getStorageRow(address, DataWord.ZERO));
+    }
+
     @Test
     public void testCallWithMaxGas() {
         String asm = "PUSH1 0x88" // out size
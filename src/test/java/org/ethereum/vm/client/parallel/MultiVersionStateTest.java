@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.TestTransactionBase;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.client.RepositoryMock;
+import org.ethereum.vm.client.Transaction;
+import org.ethereum.vm.client.TransactionExecutor;
+import org.ethereum.vm.client.TransactionMock;
+import org.ethereum.vm.client.TransactionReceipt;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.After;
+import org.junit.Test;
+
+public class MultiVersionStateTest extends TestTransactionBase {
+
+    // increments the storage row 0 by one
+    private static final byte[] COUNTER = HexUtil.fromHexString("60016000540160005500");
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testTransactions() {
+        byte[] counter = address(200);
+        List<Transaction> txs = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            // independent transfers
+            txs.add(transfer(address(100 + i), address(300 + i), 0));
+        }
+        for (int i = 0; i < 10; i++) {
+            // transfers from the same sender, each depending on the previous one
+            txs.add(transfer(caller, address(100 + i), i));
+            // calls conflicting on the same storage row
+            txs.add(transfer(address(120 + i), counter, 0));
+        }
+        // rejected, as the balance received within the block doesn't cover the gas
+        txs.add(transfer(address(300), address(400), 0));
+
+        Repository sequential = new RepositoryMock();
+        Repository parallel = new RepositoryMock();
+        for (Repository repo : new Repository[] { sequential, parallel }) {
+            repo.saveCode(counter, COUNTER);
+            repo.addBalance(caller, premine);
+            for (int i = 0; i < 40; i++) {
+                repo.addBalance(address(100 + i), premine);
+            }
+        }
+
+        List<TransactionReceipt> expected = new ArrayList<>();
+        for (Transaction tx : txs) {
+            expected.add(new TransactionExecutor(tx, block, sequential, blockStore).run());
+        }
+
+        MultiVersionState state = new MultiVersionState(parallel);
+        List<TransactionReceipt> receipts = state.execute(txs.size(),
+                (i, repo) -> new TransactionExecutor(txs.get(i), block, repo, blockStore).run(), executor);
+        state.commit();
+
+        for (int i = 0; i < txs.size(); i++) {
+            assertEquals(String.valueOf(expected.get(i)), String.valueOf(receipts.get(i)));
+        }
+        assertEquals(DataWord.of(10), parallel.getStorageRow(counter, DataWord.ZERO));
+        for (byte[] address : new byte[][] { caller, counter, address(400) }) {
+            assertEquals(sequential.getBalance(address), parallel.getBalance(address));
+            assertEquals(sequential.getNonce(address), parallel.getNonce(address));
+        }
+        for (int i = 0; i < 40; i++) {
+            assertEquals(sequential.getBalance(address(100 + i)), parallel.getBalance(address(100 + i)));
+            assertEquals(sequential.getBalance(address(300 + i)), parallel.getBalance(address(300 + i)));
+        }
+    }
+
+    @Test
+    public void testDeleteAccount() {
+        byte[] a = address(100);
+        Repository base = new RepositoryMock();
+        base.putStorageRow(a, DataWord.ZERO, DataWord.ONE);
+        base.saveCode(a, new byte[] { 1 });
+
+        List<MultiVersionState.Task<Object>> tasks = new ArrayList<>();
+        tasks.add((i, repo) -> {
+            repo.putStorageRow(a, DataWord.ONE, DataWord.ONE);
+            return null;
+        });
+        tasks.add((i, repo) -> {
+            repo.delete(a);
+            return null;
+        });
+        tasks.add((i, repo) -> {
+            repo.putStorageRow(a, DataWord.of(2), DataWord.of(2));
+            return repo.getStorageRow(a, DataWord.ONE);
+        });
+
+        MultiVersionState state = new MultiVersionState(base);
+        List<Object> results = state.execute(tasks.size(), (i, repo) -> tasks.get(i).run(i, repo), executor);
+        state.commit();
+
+        assertNull(results.get(2));
+        assertTrue(base.exists(a));
+        assertEquals(0, base.getCode(a).length);
+        assertNull(base.getStorageRow(a, DataWord.ZERO));
+        assertNull(base.getStorageRow(a, DataWord.ONE));
+        assertEquals(DataWord.of(2), base.getStorageRow(a, DataWord.of(2)));
+    }
+
+    @Test
+    public void testValidation() {
+        byte[] a = address(100);
+        MultiVersionState state = new MultiVersionState(new RepositoryMock());
+
+        TransactionView view1 = new TransactionView(state, 1, 1);
+        assertFalse(view1.exists(a));
+        assertTrue(state.validate(view1));
+
+        TransactionView view0 = new TransactionView(state, 0, 1);
+        view0.addBalance(a, BigInteger.ONE);
+        state.publish(view0);
+        assertFalse(state.validate(view1));
+
+        // a later transaction doesn't invalidate an earlier one
+        TransactionView view2 = new TransactionView(state, 2, 1);
+        view2.addBalance(a, BigInteger.ONE);
+        state.publish(view2);
+        assertEquals(BigInteger.ONE, new TransactionView(state, 1, 2).getBalance(a));
+    }
+
+    private Transaction transfer(byte[] from, byte[] to, long nonce) {
+        return new TransactionMock(false, from, to, nonce, BigInteger.TEN, data, gas, gasPrice);
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.util.HashUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogStructuredRepositoryTest {
+
+    private final byte[] address1 = new byte[20];
+    private final byte[] address2 = DataWord.ONE.getLast20Bytes();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPersistence() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (LogStructuredRepository repository = new LogStructuredRepository(dir)) {
+            repository.addBalance(address1, BigInteger.TEN);
+            repository.increaseNonce(address1);
+            repository.saveCode(address1, new byte[] { 1, 2 });
+            repository.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+            repository.commit();
+
+            repository.addBalance(address2, BigInteger.ONE); // not committed
+        }
+
+        try (LogStructuredRepository repository = new LogStructuredRepository(dir)) {
+            assertEquals(BigInteger.TEN, repository.getBalance(address1));
+            assertEquals(1, repository.getNonce(address1));
+            assertArrayEquals(new byte[] { 1, 2 }, repository.getCode(address1));
+            assertEquals(DataWord.ONE, repository.getStorageRow(address1, DataWord.ONE));
+            assertNull(repository.getStorageRow(address1, DataWord.ZERO));
+            assertFalse(repository.exists(address2));
+            assertNull(repository.getCode(address2));
+        }
+    }
+
+    @Test
+    public void testDeleteAndRecreate() throws IOException {
+        try (LogStructuredRepository repository = new LogStructuredRepository(folder.getRoot().toPath())) {
+            repository.saveCode(address1, new byte[] { 1 });
+            repository.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+            repository.delete(address1);
+            assertFalse(repository.exists(address1));
+
+            repository.createAccount(address1);
+            assertTrue(repository.exists(address1));
+            assertArrayEquals(new byte[0], repository.getCode(address1));
+            assertNull(repository.getStorageRow(address1, DataWord.ONE));
+        }
+    }
+
+    @Test
+    public void testTracking() throws IOException {
+        try (LogStructuredRepository repository = new LogStructuredRepository(folder.getRoot().toPath())) {
+            repository.addBalance(address1, BigInteger.TEN);
+            repository.putStorageRow(address1, DataWord.ONE, DataWord.ONE);
+
+            Repository track = repository.startTracking();
+            track.addBalance(address1, BigInteger.ONE.negate());
+            track.putStorageRow(address1, DataWord.ZERO, DataWord.ONE);
+            Repository nested = track.startTracking();
+            nested.delete(address2);
+            nested.addBalance(address2, BigInteger.ONE);
+            nested.commit();
+            track.rollback();
+            assertEquals(BigInteger.TEN, repository.getBalance(address1));
+            assertFalse(repository.exists(address2));
+
+            track = repository.startTracking();
+            track.addBalance(address1, BigInteger.ONE.negate());
+            track.putStorageRow(address1, DataWord.ZERO, DataWord.ONE);
+            track.addBalance(address2, BigInteger.ONE);
+            track.commit();
+
+            assertEquals(BigInteger.valueOf(9), repository.getBalance(address1));
+            assertEquals(DataWord.ONE, repository.getStorageRow(address1, DataWord.ZERO));
+            assertEquals(DataWord.ONE, repository.getStorageRow(address1, DataWord.ONE));
+            assertEquals(BigInteger.ONE, repository.getBalance(address2));
+
+            // an account replaced within a tracker
+            track = repository.startTracking();
+            track.delete(address1);
+            track.addBalance(address1, BigInteger.ONE);
+            track.commit();
+
+            assertEquals(BigInteger.ONE, repository.getBalance(address1));
+            assertNull(repository.getStorageRow(address1, DataWord.ONE));
+        }
+    }
+
+    @Test
+    public void testSharedCode() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        byte[] code = { 1, 2, 3 };
+        try (LogStructuredRepository repository = new LogStructuredRepository(dir, 4096, 0)) {
+            repository.saveCode(address1, code);
+            repository.saveCode(address2, code.clone());
+            repository.commit();
+
+            repository.delete(address1);
+            for (int i = 0; i < 1000; i++) {
+                repository.addBalance(address2, BigInteger.ONE);
+                repository.commit();
+            }
+            assertTrue(repository.compact() > 0);
+        }
+
+        try (LogStructuredRepository repository = new LogStructuredRepository(dir, 4096, 0)) {
+            assertArrayEquals(code, repository.getCode(address2));
+            assertEquals(3, repository.getCodeSize(address2));
+            assertArrayEquals(HashUtil.keccak256(code), repository.getCodeHash(address2));
+            assertEquals(0, repository.getCodeSize(address1));
+            assertArrayEquals(HashUtil.getEmptyDataHash(), repository.getCodeHash(address1));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (LogStructuredRepository repository = new LogStructuredRepository(dir, 4096, 0)) {
+            for (int i = 0; i < 100; i++) {
+                repository.putStorageRow(address1, DataWord.of(i), DataWord.of(i));
+            }
+            repository.delete(address1);
+            for (int i = 0; i < 1000; i++) {
+                repository.addBalance(address2, BigInteger.ONE);
+                repository.commit();
+            }
+
+            assertTrue(repository.compact() > 0);
+            assertEquals(BigInteger.valueOf(1000), repository.getBalance(address2));
+        }
+
+        try (LogStructuredRepository repository = new LogStructuredRepository(dir, 4096, 0)) {
+            assertEquals(BigInteger.valueOf(1000), repository.getBalance(address2));
+            assertFalse(repository.exists(address1));
+        }
+    }
+}
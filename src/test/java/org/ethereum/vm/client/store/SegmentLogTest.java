@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.client.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SegmentLogTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCommitAndRollback() throws IOException {
+        try (SegmentLog log = new SegmentLog(folder.getRoot().toPath(), SEGMENT_SIZE)) {
+            log.put(bytes(1), bytes(1, 1));
+            assertArrayEquals(bytes(1, 1), log.get(bytes(1)));
+            log.commit();
+
+            log.put(bytes(1), bytes(1, 2));
+            log.put(bytes(2), bytes(2));
+            assertArrayEquals(bytes(1, 2), log.get(bytes(1)));
+            log.rollback();
+
+            assertArrayEquals(bytes(1, 1), log.get(bytes(1)));
+            assertNull(log.get(bytes(2)));
+            assertEquals(1, log.size());
+        }
+    }
+
+    @Test
+    public void testRecovery() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_SIZE)) {
+            for (int i = 0; i < 1000; i++) {
+                log.put(bytes(i % 100), bytes(i, i >> 8));
+                if (i % 10 == 9) {
+                    log.commit();
+                }
+            }
+            log.put(bytes(1), bytes(0)); // not committed
+            assertTrue(log.getSegmentCount() > 1);
+        }
+
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_SIZE)) {
+            assertEquals(100, log.size());
+            for (int i = 900; i < 1000; i++) {
+                assertArrayEquals(bytes(i, i >> 8), log.get(bytes(i % 100)));
+            }
+        }
+    }
+
+    @Test
+    public void testTornWrite() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_SIZE)) {
+            log.put(bytes(1), bytes(1));
+            log.commit();
+        }
+
+        // a record header followed by garbage, as if the process died mid-write
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("segment-0000000000.log").toFile(), "rw")) {
+            file.seek(8 + 1 + 1 + 4 + 8 + 4);
+            file.writeInt(1);
+            file.writeInt(1);
+            file.writeInt(0x12345678);
+        }
+
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_SIZE)) {
+            assertArrayEquals(bytes(1), log.get(bytes(1)));
+            log.put(bytes(2), bytes(2));
+            log.commit();
+        }
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_SIZE)) {
+            assertArrayEquals(bytes(1), log.get(bytes(1)));
+            assertArrayEquals(bytes(2), log.get(bytes(2)));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        Path dir = folder.getRoot().toPath();
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_SIZE)) {
+            log.put(bytes(10), bytes(10));
+            log.commit();
+            for (int i = 0; i < 2000; i++) {
+                log.put(bytes(i % 10), bytes(i, i >> 8));
+                log.commit();
+            }
+
+            int segments = log.getSegmentCount();
+            int compacted = log.compact(key -> key[0] != 10);
+            assertTrue(compacted > 0);
+            assertTrue(log.getSegmentCount() < segments);
+            assertNull(log.get(bytes(10)));
+        }
+
+        try (SegmentLog log = new SegmentLog(dir, SEGMENT_SIZE)) {
+            for (int i = 1990; i < 2000; i++) {
+                assertArrayEquals(bytes(i, i >> 8), log.get(bytes(i % 10)));
+            }
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
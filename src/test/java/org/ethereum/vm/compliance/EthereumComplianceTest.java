@@ -38,17 +38,21 @@ import org.ethereum.vm.client.BlockStore;
 import org.ethereum.vm.client.BlockStoreMock;
 import org.ethereum.vm.client.Repository;
 import org.ethereum.vm.client.RepositoryMock;
+import org.ethereum.vm.client.store.LogStructuredRepository;
 import org.ethereum.vm.compliance.spec.Account;
 import org.ethereum.vm.compliance.spec.Environment;
 import org.ethereum.vm.compliance.spec.Exec;
 import org.ethereum.vm.compliance.spec.TestCase;
 import org.ethereum.vm.program.Program;
 import org.ethereum.vm.program.ProgramResult;
+import org.ethereum.vm.program.invoke.OriginalRepository;
 import org.ethereum.vm.program.invoke.ProgramInvoke;
 import org.ethereum.vm.program.invoke.ProgramInvokeImpl;
 import org.ethereum.vm.util.HashUtil;
 import org.ethereum.vm.util.HexUtil;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.web3j.rlp.RlpEncoder;
@@ -65,8 +69,25 @@ public class EthereumComplianceTest {
 
     private ObjectMapper objectMapper = new ObjectMapper();
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void runAllTests() throws IOException {
+        runAllTests(VM.Interpreter.SWITCH, false);
+    }
+
+    @Test
+    public void runAllTestsWithTableInterpreter() throws IOException {
+        runAllTests(VM.Interpreter.TABLE, false);
+    }
+
+    @Test
+    public void runAllTestsWithLogStructuredRepository() throws IOException {
+        runAllTests(VM.Interpreter.SWITCH, true);
+    }
+
+    private void runAllTests(VM.Interpreter interpreter, boolean persistent) throws IOException {
 
         TypeReference<HashMap<String, TestCase>> typeRef = new TypeReference<HashMap<String, TestCase>>() {
         };
@@ -81,7 +102,14 @@ public class EthereumComplianceTest {
         for (File file : files) {
             HashMap<String, TestCase> suite = objectMapper.readValue(file, typeRef);
             for (Entry<String, TestCase> entry : suite.entrySet()) {
-                runTest(file.getName(), entry.getKey(), entry.getValue());
+                if (persistent) {
+                    try (LogStructuredRepository repository = new LogStructuredRepository(
+                            folder.newFolder().toPath(), 64 * 1024, 0)) {
+                        runTest(file.getName(), entry.getKey(), entry.getValue(), interpreter, repository);
+                    }
+                } else {
+                    runTest(file.getName(), entry.getKey(), entry.getValue(), interpreter, new RepositoryMock());
+                }
             }
         }
     }
@@ -92,7 +120,8 @@ public class EthereumComplianceTest {
      * @param testName
      * @param testCase
      */
-    private void runTest(String fileName, String testName, TestCase testCase) {
+    private void runTest(String fileName, String testName, TestCase testCase, VM.Interpreter interpreter,
+            Repository repository) {
         logger.info("Running test: file = {}, test = {}", fileName, testName);
 
         Exec exec = testCase.getExec();
@@ -113,20 +142,19 @@ public class EthereumComplianceTest {
         DataWord difficulty = DataWord.of(env.getCurrentDifficulty());
         DataWord gasLimit = DataWord.of(env.getCurrentGasLimit());
 
-        RepositoryMock mock = new RepositoryMock();
         for (Entry<String, Account> entry : testCase.getPre().entrySet()) {
             byte[] ad = HexUtil.fromHexString(entry.getKey());
             Account ac = entry.getValue();
-            mock.createAccount(ad);
-            mock.addBalance(ad, DataWord.of(ac.getBalance()).value());
-            mock.saveCode(ad, HexUtil.fromHexString(ac.getCode()));
-            mock.setNonce(ad, DataWord.of(ac.getNonce()).intValue());
+            repository.createAccount(ad);
+            repository.addBalance(ad, DataWord.of(ac.getBalance()).value());
+            repository.saveCode(ad, HexUtil.fromHexString(ac.getCode()));
+            repository.setNonce(ad, DataWord.of(ac.getNonce()).intValue());
             for (Entry<String, String> row : ac.getStorage().entrySet()) {
-                mock.putStorageRow(ad, DataWord.of(row.getKey()), DataWord.of(row.getValue()));
+                repository.putStorageRow(ad, DataWord.of(row.getKey()), DataWord.of(row.getValue()));
             }
         }
-        Repository repository = mock;
-        Repository originalRepository = mock.clone();
+        repository.commit();
+        OriginalRepository originalRepository = new OriginalRepository(repository);
         BlockStore blockStore = new BlockStoreMock();
         int callDepth = 0;
         boolean isStaticCall = false;
@@ -137,10 +165,11 @@ public class EthereumComplianceTest {
                 return address -> null;
             }
         };
-        VM vm = new VM(spec);
+        VM vm = new VM(spec, interpreter);
         ProgramInvoke programInvoke = new ProgramInvokeImpl(address, origin, caller, gas, gasPrice, value, data,
-                prevHash, coinbase, timestamp, number, difficulty, gasLimit, repository, originalRepository, blockStore,
-                callDepth, isStaticCall);
+                prevHash, coinbase, timestamp, number, difficulty, gasLimit, repository, originalRepository,
+                originalRepository,
+                blockStore, callDepth, isStaticCall);
         Program program = new Program(code, programInvoke, spec);
 
         vm.play(program);
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.crypto;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.params.ECPrivateKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.crypto.signers.HMacDSAKCalculator;
+import org.ethereum.vm.util.HashUtil;
+import org.junit.Test;
+
+public class ECKeyTest {
+
+    private static final BigInteger N = ECKey.CURVE.getN();
+
+    /**
+     * Signs the hash and finds the header byte which recovers the signer.
+     */
+    private static ECKey.ECDSASignature sign(BigInteger privateKey, byte[] messageHash) {
+        ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+        signer.init(true, new ECPrivateKeyParameters(privateKey, ECKey.CURVE));
+        BigInteger[] rs = signer.generateSignature(messageHash);
+
+        byte[] pub = ECKey.CURVE.getG().multiply(privateKey).getEncoded(false);
+        for (int recId = 0; recId < 4; recId++) {
+            ECKey.ECDSASignature sig = new ECKey.ECDSASignature(rs[0], rs[1]);
+            if (Arrays.equals(pub, ECKey.recoverPubBytesFromSignature(recId, sig, messageHash))) {
+                sig.v = (byte) (27 + recId);
+                return sig;
+            }
+        }
+        throw new IllegalStateException("Key not recoverable");
+    }
+
+    private static byte[] address(BigInteger privateKey) {
+        byte[] pub = ECKey.CURVE.getG().multiply(privateKey).getEncoded(false);
+        return HashUtil.sha3omit12(Arrays.copyOfRange(pub, 1, pub.length));
+    }
+
+    @Test
+    public void testSignatureToAddress() throws ECKey.SignatureException {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 10; i++) {
+            BigInteger key = new BigInteger(256, random).mod(N);
+            byte[] hash = HashUtil.keccak256(BigInteger.valueOf(i).toByteArray());
+
+            assertArrayEquals(address(key), ECKey.signatureToAddress(hash, sign(key, hash)));
+        }
+    }
+
+    @Test
+    public void testSignaturesToAddresses() throws ECKey.SignatureException {
+        Random random = new Random(1);
+        int count = 20;
+
+        byte[][] hashes = new byte[count][];
+        ECKey.ECDSASignature[] sigs = new ECKey.ECDSASignature[count];
+        byte[][] expected = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            BigInteger key = new BigInteger(256, random).mod(N);
+            hashes[i] = HashUtil.keccak256(BigInteger.valueOf(i).toByteArray());
+            sigs[i] = sign(key, hashes[i]);
+            expected[i] = address(key);
+        }
+
+        // unrecoverable ones
+        sigs[3] = ECKey.ECDSASignature.fromComponents(sigs[3].r.toByteArray(), sigs[3].s.toByteArray(), (byte) 26);
+        sigs[7] = new ECKey.ECDSASignature(BigInteger.ZERO, sigs[7].s);
+        sigs[7].v = 27;
+        hashes[11] = new byte[31];
+        sigs[15] = null;
+        sigs[16] = new ECKey.ECDSASignature(BigInteger.valueOf(5), BigInteger.ONE);
+        sigs[16].v = 27;
+        expected[3] = expected[7] = expected[11] = expected[15] = expected[16] = null;
+
+        // a valid signature of another hash recovers some other address
+        hashes[18] = hashes[19];
+        expected[18] = ECKey.signatureToAddress(hashes[18], sigs[18]);
+
+        byte[][] addresses = ECKey.signaturesToAddresses(hashes, sigs);
+
+        assertEquals(count, addresses.length);
+        for (int i = 0; i < count; i++) {
+            assertArrayEquals("signature " + i, expected[i], addresses[i]);
+        }
+    }
+
+    @Test
+    public void testSignaturesToAddressesNotOnCurve() {
+        byte[] hash = HashUtil.keccak256(new byte[0]);
+        for (int r : new int[] { 5, 7, 9, 10 }) {
+            ECKey.ECDSASignature sig = new ECKey.ECDSASignature(BigInteger.valueOf(r), BigInteger.ONE);
+            sig.v = 27;
+
+            byte[][] addresses = ECKey.signaturesToAddresses(new byte[][] { hash },
+                    new ECKey.ECDSASignature[] { sig });
+            assertEquals(1, addresses.length);
+            assertNull("r = " + r, addresses[0]);
+        }
+    }
+
+    @Test
+    public void testSignaturesToAddressesEmpty() {
+        assertEquals(0, ECKey.signaturesToAddresses(new byte[0][], new ECKey.ECDSASignature[0]).length);
+    }
+
+    @Test
+    public void testBatchInverse() {
+        Random random = new Random(1);
+        BigInteger[] values = new BigInteger[10];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 4 == 1 ? null : new BigInteger(256, random).mod(N);
+        }
+
+        BigInteger[] inverses = ECKey.batchInverse(values, N);
+
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                assertNull(inverses[i]);
+            } else {
+                assertNotNull(inverses[i]);
+                assertEquals(values[i].modInverse(N), inverses[i]);
+            }
+        }
+    }
+}
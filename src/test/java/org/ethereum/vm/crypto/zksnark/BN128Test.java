@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.crypto.zksnark;
+
+import static org.ethereum.vm.crypto.zksnark.Params.R;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BN128Test {
+
+    /**
+     * Plain double-and-add, as a reference.
+     */
+    private static <T extends Field<T>> BN128<T> naiveMul(BN128<T> p, BigInteger s) {
+        BN128<T> res = p.zero();
+        for (int i = s.bitLength() - 1; i >= 0; i--) {
+            res = res.dbl();
+            if (s.testBit(i)) {
+                res = res.add(p);
+            }
+        }
+        return res.toEthNotation();
+    }
+
+    private static BigInteger[] scalars(Random random) {
+        return new BigInteger[] {
+                BigInteger.ONE,
+                BigInteger.valueOf(2),
+                BigInteger.valueOf(7),
+                BigInteger.valueOf(8),
+                R.subtract(BigInteger.ONE),
+                R,
+                R.add(BigInteger.ONE),
+                BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE),
+                new BigInteger(128, random),
+                new BigInteger(254, random),
+                new BigInteger(256, random)
+        };
+    }
+
+    @Test
+    public void testWnaf() {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 1000; i++) {
+            BigInteger k = new BigInteger(random.nextInt(256) + 1, random);
+
+            int[] naf = BN128.wnaf(k, BN128.WINDOW);
+
+            BigInteger sum = BigInteger.ZERO;
+            int last = Integer.MAX_VALUE;
+            for (int j = naf.length - 1; j >= 0; j--) {
+                sum = sum.shiftLeft(1).add(BigInteger.valueOf(naf[j]));
+                if (naf[j] != 0) {
+                    assertEquals(1, naf[j] & 1);
+                    assertTrue(Math.abs(naf[j]) < 1 << (BN128.WINDOW - 1));
+                    assertTrue(last - j >= BN128.WINDOW);
+                    last = j;
+                }
+            }
+            assertEquals(k, sum);
+        }
+    }
+
+    @Test
+    public void testDecompose() {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 1000; i++) {
+            BigInteger s = new BigInteger(254, random).mod(R);
+
+            BigInteger[] k = BN128Fp.decompose(s);
+
+            assertEquals(s, k[0].add(k[1].multiply(BN128Fp.LAMBDA)).mod(R));
+            assertTrue(k[0].bitLength() <= 128);
+            assertTrue(k[1].bitLength() <= 128);
+        }
+    }
+
+    @Test
+    public void testEndomorphism() {
+        BN128Fp p = (BN128Fp) BN128Fp.GENERATOR.dbl();
+
+        assertEquals(naiveMul(p, BN128Fp.LAMBDA), p.endomorphism().toEthNotation());
+    }
+
+    @Test
+    public void testMulG1() {
+        Random random = new Random(1);
+        BN128<Fp> g = BN128Fp.GENERATOR;
+        BN128<Fp> p = g.mul(new BigInteger(254, random));
+
+        for (BigInteger s : scalars(random)) {
+            assertEquals(naiveMul(g, s), g.mul(s).toEthNotation());
+            assertEquals(naiveMul(p, s), p.mul(s).toEthNotation());
+        }
+    }
+
+    @Test
+    public void testMulG2() {
+        Random random = new Random(1);
+        BN128<Fp2> q = PairingCheckTest.G2.mul(new BigInteger(254, random));
+
+        for (BigInteger s : scalars(random)) {
+            assertEquals(naiveMul(q, s), q.mul(s).toEthNotation());
+        }
+    }
+
+    @Test
+    public void testFixedBaseTable() {
+        Random random = new Random(1);
+        BN128<Fp> p = BN128Fp.GENERATOR.mul(BigInteger.valueOf(5));
+        FixedBaseTable<Fp> table = new FixedBaseTable<>(p, 64);
+
+        assertTrue(table.mul(BigInteger.ZERO).isZero());
+        for (int i = 0; i < 20; i++) {
+            BigInteger s = new BigInteger(random.nextBoolean() ? 64 : 200, random);
+            assertEquals(naiveMul(p, s), table.mul(s).toEthNotation());
+        }
+    }
+}
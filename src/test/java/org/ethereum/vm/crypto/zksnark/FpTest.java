@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.crypto.zksnark;
+
+import static org.ethereum.vm.crypto.zksnark.Params.P;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FpTest {
+
+    private static BigInteger random(Random random) {
+        switch (random.nextInt(4)) {
+        case 0:
+            return P.subtract(BigInteger.valueOf(random.nextInt(3) + 1));
+        case 1:
+            return BigInteger.valueOf(random.nextInt(3));
+        default:
+            return new BigInteger(256, random).mod(P);
+        }
+    }
+
+    @Test
+    public void testArithmetic() {
+        Random random = new Random(1);
+
+        for (int i = 0; i < 2_000; i++) {
+            BigInteger a = random(random), b = random(random);
+            Fp x = Fp.create(a), y = Fp.create(b);
+
+            assertEquals(a, x.toBigInteger());
+            assertEquals(a.add(b).mod(P), x.add(y).toBigInteger());
+            assertEquals(a.subtract(b).mod(P), x.sub(y).toBigInteger());
+            assertEquals(a.multiply(b).mod(P), x.mul(y).toBigInteger());
+            assertEquals(a.multiply(a).mod(P), x.squared().toBigInteger());
+            assertEquals(a.shiftLeft(1).mod(P), x.dbl().toBigInteger());
+            assertEquals(a.negate().mod(P), x.negate().toBigInteger());
+            if (a.signum() != 0) {
+                assertEquals(a.modInverse(P), x.inverse().toBigInteger());
+                assertEquals(Fp._1, x.mul(x.inverse()));
+            }
+        }
+    }
+
+    @Test
+    public void testEncoding() {
+        BigInteger v = new BigInteger("1234567890abcdef1234567890abcdef1234567890abcdef1234567890abcdef", 16);
+        Fp x = Fp.create(v.toByteArray());
+
+        assertEquals(v, new BigInteger(1, x.bytes()));
+        assertEquals(v.toString(), x.toString());
+        assertEquals(Fp.create(v), x);
+        assertEquals(Fp.create(v).hashCode(), x.hashCode());
+        assertNotEquals(Fp._1, x);
+    }
+
+    @Test
+    public void testValidity() {
+        assertTrue(Fp.create(P.subtract(BigInteger.ONE)).isValid());
+        assertTrue(Fp.ZERO.isZero());
+
+        Fp p = Fp.create(P);
+        assertFalse(p.isValid());
+        assertFalse(p.isZero());
+        assertNotEquals(Fp.ZERO, p);
+
+        assertFalse(Fp.create(BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE)).isValid());
+    }
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.crypto.zksnark;
+
+import static org.ethereum.vm.crypto.zksnark.Params.R;
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class PairingCheckTest {
+
+    static final BN128G1 G1 = BN128G1.create(new byte[] { 1 }, new byte[] { 2 });
+
+    static final BN128G2 G2 = BN128G2.create(
+            bytes("1800deef121f1e76426a00665e5c4479674322d4f75edadd46debd5cd992f6ed"),
+            bytes("198e9393920d483a7260bfb731fb5d25f1aa493335a9e71297e485b7aef312c2"),
+            bytes("12c85ea5db8c6deb4aab71808dcb408fe3d1e7690c43d37b4ce6cc0166fa7daa"),
+            bytes("090689d0585ff075ec9e99ad690c3395bc4b313370b38ef355acdadcd122975b"));
+
+    static byte[] bytes(String hex) {
+        return new BigInteger(hex, 16).toByteArray();
+    }
+
+    static BN128G1 g1(long k) {
+        return new BN128G1(G1.mul(BigInteger.valueOf(k).mod(R)).toAffine());
+    }
+
+    static BN128G2 g2(long k) {
+        return new BN128G2(G2.mul(BigInteger.valueOf(k).mod(R)).toAffine());
+    }
+
+    static int check(G2LineCache cache, Object... points) {
+        PairingCheck check = PairingCheck.create(cache);
+        for (int i = 0; i < points.length; i += 2) {
+            check.addPair((BN128G1) points[i], (BN128G2) points[i + 1]);
+        }
+        check.run();
+        return check.result();
+    }
+
+    @Test
+    public void testBilinearity() {
+        // e(3 * G1, 5 * G2) * e(-15 * G1, G2) = 1
+        assertEquals(1, check(null, g1(3), g2(5), g1(-15), G2));
+        assertEquals(0, check(null, g1(3), g2(5), g1(-14), G2));
+
+        // e(G1, G2) != 1
+        assertEquals(0, check(null, G1, G2));
+    }
+
+    @Test
+    public void testMultiPairing() {
+        // e(2 * G1, 3 * G2) * e(4 * G1, 5 * G2) * e(-6 * G1, G2) * e(-5 * G1, 4 * G2) =
+        // 1
+        assertEquals(1, check(null, g1(2), g2(3), g1(4), g2(5), g1(-6), G2, g1(-5), g2(4)));
+        assertEquals(0, check(null, g1(2), g2(3), g1(4), g2(5), g1(-6), G2, g1(-5), g2(3)));
+    }
+
+    @Test
+    public void testZeroPoints() {
+        BN128G1 zero1 = new BN128G1(BN128Fp.ZERO);
+        BN128G2 zero2 = new BN128G2(BN128Fp2.ZERO);
+
+        assertEquals(1, check(null));
+        assertEquals(1, check(null, zero1, G2, G1, zero2));
+        assertEquals(1, check(null, zero1, G2, G1, g2(2), g1(-2), G2));
+        assertEquals(0, check(null, zero1, G2, G1, G2));
+    }
+
+    @Test
+    public void testCache() {
+        G2LineCache cache = new G2LineCache(2);
+        BN128G2 q = g2(7);
+
+        assertEquals(1, check(cache, g1(7), G2, g1(-1), q));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        assertEquals(1, check(cache, g1(14), G2, g1(-2), q));
+        assertEquals(0, check(cache, g1(14), G2, g1(-1), q));
+        assertEquals(4, cache.getHits());
+        assertEquals(2, cache.size());
+
+        // evicts the least recently used point
+        assertEquals(1, check(cache, g1(3), G2, g1(-1), g2(3)));
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getMisses());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(5.0 / 8, cache.getHitRate(), 0);
+        cache.resetStatistics();
+        assertEquals(0, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void testCacheDisabled() {
+        G2LineCache cache = new G2LineCache(0);
+
+        assertEquals(1, check(cache, g1(3), g2(5), g1(-15), G2));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testParallelRun() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        BN128G1 zero1 = new BN128G1(BN128Fp.ZERO);
+
+        try {
+            for (int pairs = 0; pairs <= 9; pairs++) {
+                PairingCheck sequential = PairingCheck.create();
+                PairingCheck parallel = PairingCheck.create();
+
+                // sum of k * (-1)^k over the pairs, balanced by the last one
+                long sum = 0;
+                for (int k = 1; k <= pairs; k++) {
+                    long s = k % 2 == 0 ? k : -k;
+                    BN128G1 p = k == 3 ? zero1 : g1(s);
+                    sum += k == 3 ? 0 : s;
+                    sequential.addPair(p, G2);
+                    parallel.addPair(p, G2);
+                }
+                sequential.addPair(g1(-sum), G2);
+                parallel.addPair(g1(-sum), G2);
+
+                sequential.run();
+                parallel.run(pool);
+
+                assertEquals(1, sequential.result());
+                assertEquals(sequential.product, parallel.product);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
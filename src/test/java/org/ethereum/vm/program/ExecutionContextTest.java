@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.TestBase;
+import org.ethereum.vm.chainspec.Spec;
+import org.ethereum.vm.program.invoke.ProgramInvoke;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.Test;
+
+public class ExecutionContextTest extends TestBase {
+
+    @Test
+    public void testReuseFrame() {
+        ExecutionContext context = new ExecutionContext();
+        byte[] code = HexUtil.fromHexString("6001");
+
+        Program program = context.acquire(code, invoke, Spec.DEFAULT);
+        ProgramResult result = program.getResult();
+        program.stackPush(DataWord.ONE);
+        program.memorySave(0, new byte[64]);
+        program.step();
+        program.stop();
+        program.spendGas(100, "test");
+
+        Program reused = context.acquire(code, invoke, Spec.DEFAULT);
+        assertSame(program, reused);
+        assertNotSame(result, reused.getResult());
+        assertEquals(0, reused.getStack().size());
+        assertEquals(0, reused.getMemSize());
+        assertEquals(0, reused.getPC());
+        assertFalse(reused.isStopped());
+        assertEquals(0, reused.getGasUsed());
+        assertNull(reused.takePendingProgram());
+        assertEquals(1, context.size());
+    }
+
+    @Test
+    public void testFramePerDepth() {
+        ExecutionContext context = new ExecutionContext();
+        ProgramInvoke deep = spy(invoke);
+        when(deep.getCallDepth()).thenReturn(1023);
+
+        Program program1 = context.acquire(new byte[0], invoke, Spec.DEFAULT);
+        Program program2 = context.acquire(new byte[0], deep, Spec.DEFAULT);
+        assertNotSame(program1, program2);
+        assertEquals(2, context.size());
+
+        context.clear();
+        assertEquals(0, context.size());
+    }
+
+    @Test
+    public void testRelease() {
+        ExecutionContext context = new ExecutionContext();
+        Program program = context.acquire(HexUtil.fromHexString("6001"), invoke, Spec.DEFAULT);
+        program.memorySave(1024 * 1024, new byte[32]);
+
+        context.release();
+        assertNull(program.getResult());
+        assertNull(program.getRepository());
+        assertNull(program.getOriginalRepository());
+        assertEquals(0, program.getMemSize());
+        assertEquals(1, context.size());
+
+        // the released frame is reused
+        assertSame(program, context.acquire(new byte[0], invoke, Spec.DEFAULT));
+        assertEquals(invoke.getGasLimit(), program.getGasLeft());
+    }
+}
@@ -55,6 +55,31 @@ public class MemoryTest {
         return (int) ceil((double) dataSize / chunkSize) * chunkSize;
     }
 
+    @Test
+    public void testExtendGrowsGeometrically() {
+        Memory memory = new Memory();
+        memory.extend(0, CHUNK_SIZE);
+        assertEquals(CHUNK_SIZE, memory.internalSize());
+
+        memory.extend(CHUNK_SIZE, 1);
+        assertEquals(2 * CHUNK_SIZE, memory.internalSize());
+
+        memory.extend(2 * CHUNK_SIZE, 1);
+        assertEquals(4 * CHUNK_SIZE, memory.internalSize());
+        assertEquals(2 * CHUNK_SIZE + WORD_SIZE, memory.size());
+    }
+
+    @Test
+    public void testClear() {
+        Memory memory = new Memory();
+        memory.writeWord(100, DataWord.ONE);
+        assertEquals(DataWord.ONE, memory.readWord(100));
+
+        memory.clear();
+        assertEquals(0, memory.size());
+        assertEquals(DataWord.ZERO, memory.readWord(100));
+    }
+
     @Test
     public void memorySave_1() {
 
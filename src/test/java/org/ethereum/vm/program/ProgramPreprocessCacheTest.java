@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.ethereum.vm.util.HexUtil;
+import org.junit.Test;
+
+public class ProgramPreprocessCacheTest {
+
+    @Test
+    public void testHitAndMiss() {
+        ProgramPreprocessCache cache = new ProgramPreprocessCache(16);
+        byte[] code = HexUtil.fromHexString("6004565b00"); // PUSH1 4, JUMP, JUMPDEST, STOP
+
+        ProgramPreprocess first = cache.get(code);
+        ProgramPreprocess second = cache.get(code.clone());
+        assertSame(first, second);
+        assertTrue(first.hasJumpDest(3));
+
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(0.5, cache.getHitRate(), 0);
+    }
+
+    @Test
+    public void testEviction() {
+        ProgramPreprocessCache cache = new ProgramPreprocessCache(2);
+        byte[] a = { 0x01 }, b = { 0x02 }, c = { 0x03 };
+
+        cache.get(a);
+        cache.get(b);
+        cache.get(a); // a becomes the most recently used
+        cache.get(c); // evicts b
+        assertEquals(2, cache.size());
+
+        cache.get(a);
+        cache.get(b);
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testWithoutHash() {
+        ProgramPreprocessCache cache = new ProgramPreprocessCache(16);
+        byte[] code = HexUtil.fromHexString("6004565b00");
+
+        assertTrue(cache.get(null, code).hasJumpDest(3));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMisses());
+    }
+}
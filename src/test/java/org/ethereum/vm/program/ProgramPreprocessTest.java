@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.ethereum.vm.chainspec.ByzantiumSpec;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.Test;
+
+public class ProgramPreprocessTest {
+
+    @Test
+    public void testJumpDest() {
+        // PUSH2 0x5b5b, JUMPDEST, PUSH32 (truncated) 0x5b
+        byte[] code = HexUtil.fromHexString("615b5b5b7f5b");
+        ProgramPreprocess preprocess = ProgramPreprocess.compile(code);
+
+        assertFalse(preprocess.hasJumpDest(0));
+        assertFalse(preprocess.hasJumpDest(1));
+        assertFalse(preprocess.hasJumpDest(2));
+        assertTrue(preprocess.hasJumpDest(3));
+        assertFalse(preprocess.hasJumpDest(5));
+        assertFalse(preprocess.hasJumpDest(6));
+        assertFalse(preprocess.hasJumpDest(-1));
+
+        assertTrue(preprocess.isPushData(1));
+        assertTrue(preprocess.isPushData(2));
+        assertFalse(preprocess.isPushData(3));
+        assertFalse(preprocess.isPushData(4));
+        assertTrue(preprocess.isPushData(5));
+    }
+
+    @Test
+    public void testLargeCode() {
+        byte[] code = new byte[24 * 1024];
+        code[code.length - 1] = 0x5b;
+        ProgramPreprocess preprocess = ProgramPreprocess.compile(code);
+
+        assertTrue(preprocess.hasJumpDest(code.length - 1));
+        assertFalse(preprocess.hasJumpDest(code.length));
+    }
+
+    @Test
+    public void testBasicBlocks() {
+        // 0: PUSH1 0x01, 2: PUSH1 0x02, 4: ADD, 5: PUSH1 0x00, 7: MSTORE,
+        // 8: JUMPDEST, 9: POP, 10: SLOAD, 11: PUSH1 0x08, 13: JUMP, 14: STOP
+        byte[] code = HexUtil.fromHexString("60016002016000525b505460085600");
+        ProgramPreprocess preprocess = ProgramPreprocess.compile(code, new ByzantiumSpec().getInstructionTable());
+
+        int block = preprocess.getBlock(0);
+        assertTrue(block >= 0);
+        assertEquals(5, preprocess.getBlockLast(block));
+        assertEquals(4 * 3, preprocess.getBlockGas(block));
+        assertEquals(0, preprocess.getBlockMinStack(block));
+        assertEquals(Stack.MAX_SIZE - 2, preprocess.getBlockMaxStack(block));
+
+        // MSTORE is charged on its own
+        assertEquals(-1, preprocess.getBlock(7));
+
+        block = preprocess.getBlock(8);
+        assertTrue(block >= 0);
+        assertEquals(13, preprocess.getBlockLast(block));
+        assertEquals(1 + 2 + 200 + 3 + 8, preprocess.getBlockGas(block));
+        assertEquals(2, preprocess.getBlockMinStack(block));
+
+        assertEquals(-1, preprocess.getBlock(9));
+        assertEquals(-1, preprocess.getBlock(14));
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import static org.junit.Assert.assertEquals;
+
+import org.ethereum.vm.DataWord;
+import org.junit.Test;
+
+public class StackTest {
+
+    @Test
+    public void testPushPopGrow() {
+        Stack stack = new Stack();
+        for (int i = 0; i < Stack.MAX_SIZE; i++) {
+            stack.push(DataWord.of(i));
+        }
+        assertEquals(Stack.MAX_SIZE, stack.size());
+
+        for (int i = Stack.MAX_SIZE - 1; i >= 0; i--) {
+            assertEquals(DataWord.of(i), stack.pop());
+        }
+        assertEquals(0, stack.size());
+    }
+
+    @Test
+    public void testDupAndSwap() {
+        Stack stack = new Stack();
+        stack.push(DataWord.of(1));
+        stack.push(DataWord.of(2));
+        stack.dup(2);
+        assertEquals(DataWord.of(1), stack.peek());
+
+        stack.swap(stack.size() - 1, stack.size() - 2);
+        assertEquals(DataWord.of(2), stack.peek());
+        assertEquals(DataWord.of(1), stack.get(stack.size() - 2));
+    }
+
+    @Test
+    public void testPushCode() {
+        Stack stack = new Stack();
+        byte[] code = { 0x60, 0x01, 0x02 };
+        stack.push(code, 1, 2);
+        assertEquals(DataWord.of(0x0102), stack.pop());
+
+        // bytes beyond the end of code read as zero
+        stack.push(code, 2, 2);
+        assertEquals(DataWord.of(0x0200), stack.pop());
+    }
+
+    @Test
+    public void testInPlaceOperations() {
+        Stack stack = new Stack();
+        stack.push(DataWord.of(3));
+        stack.push(DataWord.of(10));
+        stack.sub(); // 10 - 3
+        assertEquals(1, stack.size());
+        assertEquals(DataWord.of(7), stack.peek());
+
+        stack.push(DataWord.of(5));
+        stack.push(DataWord.of(4));
+        stack.push(DataWord.of(8));
+        stack.addmod(); // (8 + 4) % 5
+        assertEquals(2, stack.size());
+        assertEquals(DataWord.of(2), stack.peek());
+
+        stack.lt(); // 2 < 7
+        assertEquals(DataWord.ONE, stack.peek());
+
+        stack.isZero();
+        assertEquals(DataWord.ZERO, stack.pop());
+    }
+}
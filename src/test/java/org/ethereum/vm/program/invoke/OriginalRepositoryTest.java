@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program.invoke;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.client.Repository;
+import org.ethereum.vm.client.RepositoryMock;
+import org.ethereum.vm.util.HexUtil;
+import org.junit.Test;
+
+public class OriginalRepositoryTest {
+
+    private final byte[] address = HexUtil.fromHexString("23a6049381fd2cfb0661d9de206613b83d53d7df");
+
+    @Test
+    public void testRecordStorageRow() {
+        Repository repository = new RepositoryMock();
+        repository.putStorageRow(address, DataWord.ONE, DataWord.ONE);
+        OriginalRepository original = new OriginalRepository(repository);
+
+        original.recordStorageRow(address, DataWord.ONE);
+        original.recordStorageRow(address, DataWord.ZERO);
+        repository.putStorageRow(address, DataWord.ONE, DataWord.of(2));
+        repository.putStorageRow(address, DataWord.ZERO, DataWord.of(2));
+
+        // recorded again after being written
+        original.recordStorageRow(address, DataWord.ONE);
+
+        assertEquals(DataWord.ONE, original.getStorageRow(address, DataWord.ONE));
+        assertNull(original.getStorageRow(address, DataWord.ZERO));
+    }
+
+    @Test
+    public void testReadThrough() {
+        Repository repository = new RepositoryMock();
+        OriginalRepository original = new OriginalRepository(repository);
+
+        repository.putStorageRow(address, DataWord.ONE, DataWord.ONE);
+        assertEquals(DataWord.ONE, original.getStorageRow(address, DataWord.ONE));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() {
+        new OriginalRepository(new RepositoryMock()).putStorageRow(address, DataWord.ONE, DataWord.ONE);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.function.Function;
+
+import org.junit.Test;
+
+public class LruCacheTest {
+
+    private static final Function<Integer, String> LOADER = String::valueOf;
+
+    @Test
+    public void testEviction() {
+        LruCache<Integer, String> cache = new LruCache<>(2);
+
+        cache.get(1, LOADER);
+        cache.get(2, LOADER);
+        cache.get(1, LOADER); // 1 becomes the most recently used
+        cache.get(3, LOADER); // evicts 2
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+
+        cache.get(1, LOADER);
+        cache.get(2, LOADER);
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+    }
+
+    @Test
+    public void testNullValue() {
+        LruCache<Integer, String> cache = new LruCache<>(2);
+
+        assertNull(cache.get(1, k -> null));
+        assertNull(cache.get(1, LOADER));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testDisabled() {
+        LruCache<Integer, String> cache = new LruCache<>(0);
+
+        assertEquals("1", cache.get(1, LOADER));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testClearKeepsStatistics() {
+        LruCache<Integer, String> cache = new LruCache<>(2);
+        cache.get(1, LOADER);
+        cache.get(1, LOADER);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0.5, cache.getHitRate(), 0);
+
+        cache.resetStatistics();
+        assertEquals(0, cache.getHitRate(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeCapacity() {
+        new LruCache<>(-1);
+    }
+}
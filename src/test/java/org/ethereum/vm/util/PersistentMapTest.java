@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) [2018] [ The Semux Developers ]
+ * Copyright (c) [2016] [ <ether.camp> ]
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentMapTest {
+
+    /**
+     * A key with few distinct hash codes, to exercise the collision nodes.
+     */
+    private static class Key {
+        private final int value;
+
+        private Key(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value % 97;
+        }
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(1);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentMap<Integer, Integer> map = PersistentMap.empty();
+
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(5_000) - 2_500;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (int key = -2_500; key < 2_500; key++) {
+            assertEquals(expected.get(key), map.get(key));
+        }
+        Map<Integer, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void testCollisions() {
+        PersistentMap<Key, Integer> map = PersistentMap.empty();
+        for (int i = 0; i < 1_000; i++) {
+            map = map.put(new Key(i), i);
+        }
+        for (int i = 0; i < 1_000; i += 2) {
+            map = map.remove(new Key(i));
+        }
+
+        assertEquals(500, map.size());
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), map.get(new Key(i)));
+        }
+    }
+
+    @Test
+    public void testImmutability() {
+        PersistentMap<String, String> map1 = PersistentMap.<String, String>empty().put("a", "1");
+        PersistentMap<String, String> map2 = map1.put("a", "2").put("b", "2");
+        PersistentMap<String, String> map3 = map2.remove("a");
+
+        assertEquals("1", map1.get("a"));
+        assertNull(map1.get("b"));
+        assertEquals("2", map2.get("a"));
+        assertFalse(map3.containsKey("a"));
+        assertEquals(1, map3.size());
+
+        assertSame(map1, map1.put("a", map1.get("a")));
+        assertSame(map3, map3.remove("a"));
+        assertSame(PersistentMap.empty(), PersistentMap.empty().remove("a"));
+    }
+}